@@ -0,0 +1,131 @@
+package edu.rice.comp416.mapper;
+
+import edu.rice.comp416.mapper.benchmark.ReadSimulator;
+import edu.rice.comp416.mapper.reader.FastqParser;
+import edu.rice.comp416.mapper.reader.FastqRecord;
+import edu.rice.comp416.mapper.util.MismatchScanner;
+import edu.rice.comp416.mapper.util.PackedSequence;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of aligning single reads against a simulated reference. It lives in the mapper
+ * package to reach the package-private alignment methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MapperBenchmark {
+    private static final int K = 13;
+
+    @Param({"kmer", "fm", "trie"})
+    public String indexType;
+
+    @Param({"30000"})
+    public int referenceLength;
+
+    private Path directory;
+    private Mapper mapper;
+    private Mapper.Seeder seeder;
+    private List<FastqRecord> reads;
+    private List<String> references;
+    private PackedSequence packedReference;
+    private List<Integer> starts;
+    private MismatchScanner scanner;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        ReadSimulator simulator = new ReadSimulator(416);
+        String reference = simulator.reference(this.referenceLength);
+
+        this.directory = Files.createTempDirectory("benchmark");
+        Path fasta = this.directory.resolve("reference.fasta");
+        Path first = this.directory.resolve("sample1.fastq");
+        Path second = this.directory.resolve("sample2.fastq");
+        ReadSimulator.writeFasta(fasta, "reference", reference);
+        simulator.writePairs(reference, 1000, 150, first, second);
+
+        this.mapper =
+                new Mapper(
+                        fasta.toString(),
+                        List.of(first.toString(), second.toString()),
+                        this.directory.resolve("out.sam").toString());
+        this.mapper.generateReferenceIndex(K, Mapper.IndexType.fromName(this.indexType));
+        this.seeder = this.mapper.new Seeder(K);
+
+        this.reads = new ArrayList<>();
+        this.references = new ArrayList<>();
+        this.packedReference = PackedSequence.fromSequence(reference);
+        this.starts = new ArrayList<>();
+        this.scanner = new MismatchScanner();
+        try (FastqParser parser = new FastqParser(first.toString())) {
+            FastqRecord read = new FastqRecord();
+            while (parser.next(read)) {
+                // Reads that do not map are compared against themselves.
+                Mapper.Result result = this.mapper.align(read, this.seeder, true);
+                int length = read.getSequenceLength();
+                this.reads.add(read);
+                this.references.add(
+                        result == null
+                                ? read.getSequence()
+                                : reference.substring(result.getPos(), result.getPos() + length));
+                this.starts.add(result == null ? 0 : result.getPos());
+                read = new FastqRecord();
+            }
+        }
+        this.next = 0;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (String name :
+                List.of("reference.fasta", "sample1.fastq", "sample2.fastq", "out.sam")) {
+            Files.deleteIfExists(this.directory.resolve(name));
+        }
+        Files.deleteIfExists(this.directory);
+    }
+
+    @Benchmark
+    public Mapper.Result align() throws UnsupportedEncodingException {
+        FastqRecord read = this.reads.get(this.next);
+        this.next = (this.next + 1) % this.reads.size();
+        return this.mapper.align(read, this.seeder, true);
+    }
+
+    @Benchmark
+    public String getCigar() {
+        int i = this.next;
+        this.next = (this.next + 1) % this.reads.size();
+        return Mapper.getCigar(this.references.get(i), this.reads.get(i).getSequence());
+    }
+
+    @Benchmark
+    public int scanMismatches() {
+        int i = this.next;
+        this.next = (this.next + 1) % this.reads.size();
+        this.scanner.scan(
+                this.packedReference, this.starts.get(i), this.reads.get(i).getSequenceView());
+        return this.scanner.getCigar().length() + this.scanner.getNumMismatches();
+    }
+}
@@ -0,0 +1,39 @@
+package edu.rice.comp416.mapper.benchmark;
+
+import edu.rice.comp416.mapper.util.BWT;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the Burrows-Wheeler transform of a reference. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BWTBenchmark {
+    @Param({"30000", "1000000"})
+    public int referenceLength;
+
+    private String reference;
+
+    @Setup
+    public void setup() {
+        this.reference = new ReadSimulator(416).reference(this.referenceLength);
+    }
+
+    @Benchmark
+    public String encode() {
+        return BWT.encode(this.reference);
+    }
+}
@@ -0,0 +1,72 @@
+package edu.rice.comp416.mapper.benchmark;
+
+import edu.rice.comp416.mapper.reader.FastqParser;
+import edu.rice.comp416.mapper.reader.FastqRecord;
+import edu.rice.comp416.mapper.reader.ReadFastq;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.biojava.nbio.genome.io.fastq.Fastq;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of parsing a FASTQ file with the native parser and with BioJava. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FastqBenchmark {
+    private Path directory;
+    private Path first;
+
+    @Setup
+    public void setup() throws IOException {
+        ReadSimulator simulator = new ReadSimulator(416);
+        String reference = simulator.reference(30000);
+
+        this.directory = Files.createTempDirectory("benchmark");
+        this.first = this.directory.resolve("sample1.fastq");
+        simulator.writePairs(
+                reference, 20000, 150, this.first, this.directory.resolve("sample2.fastq"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.first);
+        Files.deleteIfExists(this.directory.resolve("sample2.fastq"));
+        Files.deleteIfExists(this.directory);
+    }
+
+    @Benchmark
+    public long parseNative() throws IOException {
+        long bases = 0;
+        try (FastqParser parser = new FastqParser(this.first.toString())) {
+            FastqRecord record = new FastqRecord();
+            while (parser.next(record)) {
+                bases += record.getSequenceLength();
+            }
+        }
+        return bases;
+    }
+
+    @Benchmark
+    public long parseBioJava() throws IOException {
+        long bases = 0;
+        for (Fastq fastq : ReadFastq.readFromFile(this.first.toString())) {
+            bases += fastq.getSequence().length();
+        }
+        return bases;
+    }
+}
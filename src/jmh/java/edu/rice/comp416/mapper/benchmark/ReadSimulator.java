@@ -0,0 +1,163 @@
+package edu.rice.comp416.mapper.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Deterministic simulator of a reference genome and paired-end reads sampled from it. The same
+ * seed always yields the same reference and reads, so benchmark runs are comparable.
+ *
+ * <p>Each pair comes from a fragment of 300 to 500 bases: the first read is the start of the
+ * fragment and the second read is the reverse complement of its end. Bases are substituted at
+ * {@link #MUTATION_RATE}.
+ */
+public class ReadSimulator {
+
+    /** Probability that a read base differs from the reference. */
+    public static final double MUTATION_RATE = 0.01;
+
+    private static final int MIN_INSERT_SIZE = 300;
+    private static final int MAX_INSERT_SIZE = 500;
+
+    private final Random random;
+
+    /**
+     * Construct a new simulator.
+     *
+     * @param seed Seed of the random number generator.
+     */
+    public ReadSimulator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generate a random reference sequence.
+     *
+     * @param length Number of bases.
+     * @return Reference sequence over A,C,G,T.
+     */
+    public String reference(int length) {
+        char[] bases = new char[length];
+        for (int i = 0; i < length; i++) {
+            bases[i] = "ACGT".charAt(this.random.nextInt(4));
+        }
+
+        return new String(bases);
+    }
+
+    /**
+     * Sample a read from the reference.
+     *
+     * @param reference Reference sequence.
+     * @param length Read length.
+     * @return Read sequence, on the forward or reverse strand with equal probability.
+     */
+    public String read(String reference, int length) {
+        int start = this.random.nextInt(reference.length() - length + 1);
+        String read = mutate(reference.substring(start, start + length));
+        return this.random.nextBoolean() ? read : reverseComplement(read);
+    }
+
+    /**
+     * Write a reference to a FASTA file.
+     *
+     * @param path Output path.
+     * @param name Name of the reference.
+     * @param reference Reference sequence.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void writeFasta(Path path, String name, String reference) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write(">" + name + "\n");
+            for (int i = 0; i < reference.length(); i += 70) {
+                writer.write(reference, i, Math.min(70, reference.length() - i));
+                writer.write("\n");
+            }
+        }
+    }
+
+    /**
+     * Sample read pairs from the reference and write them to two FASTQ files.
+     *
+     * @param reference Reference sequence.
+     * @param numPairs Number of read pairs.
+     * @param readLength Read length.
+     * @param first Output path of the first reads.
+     * @param second Output path of the second reads.
+     * @throws IOException If the files cannot be written.
+     */
+    public void writePairs(
+            String reference, int numPairs, int readLength, Path first, Path second)
+            throws IOException {
+        String quality = "I".repeat(readLength);
+
+        try (BufferedWriter firstWriter = Files.newBufferedWriter(first);
+                BufferedWriter secondWriter = Files.newBufferedWriter(second)) {
+            for (int i = 0; i < numPairs; i++) {
+                int insertSize =
+                        MIN_INSERT_SIZE
+                                + this.random.nextInt(MAX_INSERT_SIZE - MIN_INSERT_SIZE + 1);
+                int start = this.random.nextInt(reference.length() - insertSize + 1);
+                String fragment = reference.substring(start, start + insertSize);
+
+                String firstRead = mutate(fragment.substring(0, readLength));
+                String secondRead =
+                        mutate(reverseComplement(fragment.substring(insertSize - readLength)));
+
+                writeFastq(firstWriter, "SIM" + i + "/1", firstRead, quality);
+                writeFastq(secondWriter, "SIM" + i + "/2", secondRead, quality);
+            }
+        }
+    }
+
+    /**
+     * Substitute random bases of a sequence.
+     *
+     * @param s Input sequence.
+     * @return Sequence with each base replaced by another one at {@link #MUTATION_RATE}.
+     */
+    private String mutate(String s) {
+        char[] bases = s.toCharArray();
+        for (int i = 0; i < bases.length; i++) {
+            if (this.random.nextDouble() < MUTATION_RATE) {
+                String others = "ACGT".replace(String.valueOf(bases[i]), "");
+                bases[i] = others.charAt(this.random.nextInt(others.length()));
+            }
+        }
+
+        return new String(bases);
+    }
+
+    /**
+     * Get the reverse complement of a sequence over A,C,G,T.
+     *
+     * @param s Input sequence.
+     * @return Reverse complement of the sequence.
+     */
+    private static String reverseComplement(String s) {
+        char[] bases = new char[s.length()];
+        for (int i = 0; i < s.length(); i++) {
+            bases[s.length() - 1 - i] = "TGCA".charAt("ACGT".indexOf(s.charAt(i)));
+        }
+
+        return new String(bases);
+    }
+
+    /**
+     * Write a FASTQ record.
+     *
+     * @param writer Output writer.
+     * @param description Description of the read.
+     * @param sequence Read sequence.
+     * @param quality Read quality.
+     * @throws IOException If the record cannot be written.
+     */
+    private static void writeFastq(
+            BufferedWriter writer, String description, String sequence, String quality)
+            throws IOException {
+        writer.write("@" + description + "\n" + sequence + "\n+\n" + quality + "\n");
+    }
+}
@@ -0,0 +1,77 @@
+package edu.rice.comp416.mapper.benchmark;
+
+import edu.rice.comp416.mapper.Mapper;
+import edu.rice.comp416.mapper.reader.ReadFasta;
+import edu.rice.comp416.mapper.util.Reference;
+import edu.rice.comp416.mapper.util.SAMWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of SAM record emission. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SAMWriterBenchmark {
+    private Path directory;
+    private Reference reference;
+    private SAMWriter samWriter;
+    private Mapper.Result first;
+    private Mapper.Result second;
+
+    @Setup
+    public void setup() throws IOException {
+        ReadSimulator simulator = new ReadSimulator(416);
+        String sequence = simulator.reference(30000);
+
+        this.directory = Files.createTempDirectory("benchmark");
+        Path fasta = this.directory.resolve("reference.fasta");
+        ReadSimulator.writeFasta(fasta, "reference", sequence);
+        this.reference = Reference.fromFasta(ReadFasta.readFromFile(fasta.toString()));
+
+        String read = sequence.substring(1000, 1150);
+        String quality = "I".repeat(150);
+        this.first = new Mapper.Result("SIM0/1", read, quality, 0, 1000, 60, "150=", false);
+        this.second = new Mapper.Result("SIM0/2", read, quality, 0, 1250, 60, "150=", true);
+    }
+
+    @Setup(Level.Iteration)
+    public void openWriter() {
+        String path = this.directory.resolve("out.sam").toString();
+        this.samWriter = new SAMWriter(path, this.reference);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeWriter() {
+        this.samWriter.close();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.directory.resolve("out.sam"));
+        Files.deleteIfExists(this.directory.resolve("reference.fasta"));
+        Files.deleteIfExists(this.directory);
+    }
+
+    @Benchmark
+    public void addAlignment() {
+        this.samWriter.addAlignment(this.first, this.second, true, 60, true);
+        this.samWriter.addAlignment(this.second, this.first, false, 60, true);
+    }
+}
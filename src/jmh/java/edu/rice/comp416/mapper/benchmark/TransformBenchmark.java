@@ -0,0 +1,66 @@
+package edu.rice.comp416.mapper.benchmark;
+
+import edu.rice.comp416.mapper.util.KmerEncoder;
+import edu.rice.comp416.mapper.util.Transform;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of k-mer iteration and reverse complement over single reads. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TransformBenchmark {
+    @Param({"150"})
+    public int readLength;
+
+    @Param({"13"})
+    public int k;
+
+    private String read;
+    private KmerEncoder encoder;
+
+    @Setup
+    public void setup() {
+        ReadSimulator simulator = new ReadSimulator(416);
+        this.read = simulator.read(simulator.reference(10000), this.readLength);
+        this.encoder = new KmerEncoder(this.k);
+    }
+
+    @Benchmark
+    public void getKmers(Blackhole blackhole) {
+        Iterator<String> kmers = Transform.getKmers(this.read, this.k);
+        while (kmers.hasNext()) {
+            blackhole.consume(kmers.next());
+        }
+    }
+
+    @Benchmark
+    public void kmerEncoder(Blackhole blackhole) {
+        this.encoder.reset(this.read);
+        while (this.encoder.next()) {
+            blackhole.consume(this.encoder.getCode());
+            blackhole.consume(this.encoder.getReverseCode());
+        }
+    }
+
+    @Benchmark
+    public String getReverseComplement() throws UnsupportedEncodingException {
+        return Transform.getReverseComplement(this.read);
+    }
+}
@@ -0,0 +1,68 @@
+package edu.rice.comp416.mapper.benchmark;
+
+import edu.rice.comp416.mapper.util.Transform;
+import edu.rice.comp416.mapper.util.Trie;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of building and querying the k-mer trie. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TrieBenchmark {
+    @Param({"30000"})
+    public int referenceLength;
+
+    @Param({"13"})
+    public int k;
+
+    private String reference;
+    private Trie trie;
+
+    /** K-mers of simulated reads, looked up in turn. */
+    private List<String> kmers;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        ReadSimulator simulator = new ReadSimulator(416);
+        this.reference = simulator.reference(this.referenceLength);
+        this.trie = Trie.fromKmers(Transform.getKmers(this.reference, this.k));
+
+        this.kmers = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Transform.getKmers(simulator.read(this.reference, 150), this.k)
+                    .forEachRemaining(this.kmers::add);
+        }
+        this.next = 0;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MINUTES)
+    public Trie fromKmers() {
+        return Trie.fromKmers(Transform.getKmers(this.reference, this.k));
+    }
+
+    @Benchmark
+    public void position(Blackhole blackhole) {
+        blackhole.consume(this.trie.position(this.kmers.get(this.next)));
+        this.next = (this.next + 1) % this.kmers.size();
+    }
+}
@@ -1,13 +1,22 @@
 package edu.rice.comp416.mapper;
 
+import edu.rice.comp416.mapper.reader.ReadFasta;
+import edu.rice.comp416.mapper.reader.ReadFastq;
+import edu.rice.comp416.mapper.util.KmerIndex;
+import edu.rice.comp416.mapper.util.SeedShape;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class Main {
+    /** Flags that are followed by a value. */
+    private static final String VALUE_FLAGS = "bcfgikmMPrStUw";
+
     public static void main(String[] args) {
         if (args.length == 0) {
             reportError(
@@ -16,12 +25,31 @@ public class Main {
             System.exit(1);
         }
 
-        // Parse all flags.
+        // Parse all flags and their values. Every other argument is an input or output file.
         Set<Character> flags = new HashSet<>();
+        Map<Character, String> flagValues = new HashMap<>();
+        List<String> files = new ArrayList<>();
 
-        for (String arg : args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
             if (arg.length() == 2 && arg.startsWith("-")) {
-                flags.add(arg.charAt(1));
+                char flag = arg.charAt(1);
+                flags.add(flag);
+
+                if (VALUE_FLAGS.indexOf(flag) >= 0) {
+                    if (i + 1 == args.length) {
+                        reportError(
+                                "Flag '"
+                                        + arg
+                                        + "' requires a value.\n"
+                                        + "\tTry '-h' for information on command-line syntax.\n");
+                        printHelpMessage();
+                        System.exit(1);
+                    }
+                    flagValues.put(flag, args[++i]);
+                }
+            } else {
+                files.add(arg);
             }
         }
 
@@ -30,38 +58,54 @@ public class Main {
             System.exit(0);
         }
 
+        // The 'index' command writes the reference index instead of mapping reads.
+        boolean indexCommand = !files.isEmpty() && files.get(0).equals("index");
+        if (indexCommand) {
+            files.remove(0);
+        }
+
         // Parse sample files and reference file.
         List<String> sampleFiles = new ArrayList<>();
         String refFile = "";
         String outFile = "";
 
-        for (String arg : args) {
-            if (arg.endsWith(".fasta")) {
+        for (String arg : files) {
+            if (indexCommand && arg.endsWith(".idx")) {
+                if (outFile.isBlank()) {
+                    outFile = arg;
+                } else {
+                    reportError(
+                            "Can only supply one output index file.\n"
+                                    + "\tTry '-h' for information on command-line syntax.\n");
+                    printHelpMessage();
+                    System.exit(1);
+                }
+            } else if (ReadFasta.isFastaFile(arg) || arg.endsWith(".idx")) {
                 if (refFile.isBlank()) {
                     refFile = arg;
                 } else {
                     reportError(
-                            "Can only supply one reference FASTA file.\n"
+                            "Can only supply one reference FASTA or index file.\n"
                                     + "\tTry '-h' for information on command-line syntax.\n");
                     printHelpMessage();
                     System.exit(1);
                 }
-            } else if (arg.endsWith(".sam")) {
+            } else if (arg.endsWith(".sam") || arg.endsWith(".bam")) {
                 if (outFile.isBlank()) {
                     outFile = arg;
                 } else {
                     reportError(
-                            "Can only supply one output SAM file.\n"
+                            "Can only supply one output SAM or BAM file.\n"
                                     + "\tTry '-h' for information on command-line syntax.\n");
                     printHelpMessage();
                     System.exit(1);
                 }
-            } else if (arg.endsWith(".fastq")) {
+            } else if (ReadFastq.isFastqFile(arg)) {
                 sampleFiles.add(arg);
             }
         }
 
-        if (refFile.isBlank()) {
+        if (refFile.isBlank() || (indexCommand && !ReadFasta.isFastaFile(refFile))) {
             reportError(
                     "A reference FASTA file must be supplied.\n"
                             + "\tTry '-h' for information on command-line syntax.\n");
@@ -69,9 +113,91 @@ public class Main {
             System.exit(1);
         }
 
+        // Reads that fail with the first k-mer size fall back to each of the others in turn.
+        List<Integer> kmerSizes = new ArrayList<>();
+        if (flagValues.containsKey('k')) {
+            try {
+                for (String k : flagValues.get('k').split(",", -1)) {
+                    kmerSizes.add(Integer.parseInt(k));
+                }
+            } catch (NumberFormatException e) {
+                kmerSizes.clear();
+            }
+            for (int i = 1; i < kmerSizes.size(); i++) {
+                if (kmerSizes.get(i) >= kmerSizes.get(i - 1)) {
+                    kmerSizes.clear();
+                }
+            }
+            if (kmerSizes.isEmpty() || flagValues.containsKey('M')) {
+                reportError(
+                        "Kmer sizes must be decreasing integers, and cannot be combined with a"
+                                + " spaced seed mask.\n"
+                                + "\tTry '-h' for information on command-line syntax.\n");
+                printHelpMessage();
+                System.exit(1);
+            }
+            for (int k : kmerSizes) {
+                if (k <= 0 || k > KmerIndex.MAX_K) {
+                    reportError(
+                            "K-mer size must be between 1 and "
+                                    + KmerIndex.MAX_K
+                                    + ".\n\tTry '-h' for information on command-line syntax.\n");
+                    printHelpMessage();
+                    System.exit(1);
+                }
+            }
+        }
+
+        // Seeds are contiguous 13-mers unless a k, a spaced seed mask or a minimizer window is
+        // given.
+        SeedShape seedShape = null;
+        try {
+            seedShape =
+                    new SeedShape(
+                            kmerSizes.isEmpty()
+                                    ? flagValues.getOrDefault('M', "1".repeat(13))
+                                    : "1".repeat(kmerSizes.get(0)),
+                            Integer.parseInt(flagValues.getOrDefault('w', "1")));
+        } catch (NumberFormatException e) {
+            reportError(
+                    "Minimizer window must be a positive integer.\n"
+                            + "\tTry '-h' for information on command-line syntax.\n");
+            printHelpMessage();
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            reportError(
+                    e.getMessage() + "\n\tTry '-h' for information on command-line syntax.\n");
+            printHelpMessage();
+            System.exit(1);
+        }
+
+        if (indexCommand) {
+            if (!outFile.endsWith(".idx")) {
+                reportError(
+                        "An output index file must be supplied.\n"
+                                + "\tTry '-h' for information on command-line syntax.\n");
+                printHelpMessage();
+                System.exit(1);
+            }
+
+            try {
+                Mapper.writeIndex(refFile, outFile, seedShape);
+            } catch (FileNotFoundException e) {
+                reportError(e.getMessage());
+                System.exit(1);
+            } catch (IOException e) {
+                reportError(
+                        "Failed to write the reference index. See the stack tree for more"
+                                + " information.\n");
+                e.printStackTrace();
+                System.exit(1);
+            }
+            return;
+        }
+
         if (outFile.isBlank()) {
             reportError(
-                    "An output SAM file must be supplied.\n"
+                    "An output SAM or BAM file must be supplied.\n"
                             + "\tTry '-h' for information on command-line syntax.\n");
             printHelpMessage();
             System.exit(1);
@@ -85,9 +211,29 @@ public class Main {
             System.exit(1);
         }
 
+        Mapper.IndexType indexType = Mapper.IndexType.KMER;
+        try {
+            indexType = Mapper.IndexType.fromName(flagValues.getOrDefault('i', "kmer"));
+        } catch (IllegalArgumentException e) {
+            reportError(
+                    e.getMessage() + "\n\tTry '-h' for information on command-line syntax.\n");
+            printHelpMessage();
+            System.exit(1);
+        }
+
+        Mapper.FastqParserType parserType = Mapper.FastqParserType.NATIVE;
+        try {
+            parserType = Mapper.FastqParserType.fromName(flagValues.getOrDefault('f', "native"));
+        } catch (IllegalArgumentException e) {
+            reportError(
+                    e.getMessage() + "\n\tTry '-h' for information on command-line syntax.\n");
+            printHelpMessage();
+            System.exit(1);
+        }
+
         Mapper mapper = null;
         try {
-            mapper = new Mapper(refFile, sampleFiles, outFile);
+            mapper = new Mapper(refFile, sampleFiles, outFile, parserType);
         } catch (FileNotFoundException e) {
             reportError(e.getMessage());
             System.exit(1);
@@ -99,8 +245,95 @@ public class Main {
             System.exit(1);
         }
 
-        mapper.generateReferenceKmerTrie(13);
-        mapper.map(13);
+        try {
+            mapper.setBatchSize(Integer.parseInt(flagValues.getOrDefault('b', "4096")));
+        } catch (IllegalArgumentException e) {
+            reportError(
+                    "Batch size must be a positive integer.\n"
+                            + "\tTry '-h' for information on command-line syntax.\n");
+            printHelpMessage();
+            System.exit(1);
+        }
+        try {
+            mapper.setMaxSeedOccurrences(Integer.parseInt(flagValues.getOrDefault('m', "500")));
+        } catch (IllegalArgumentException e) {
+            reportError(
+                    "Maximum seed occurrences must be a positive integer.\n"
+                            + "\tTry '-h' for information on command-line syntax.\n");
+            printHelpMessage();
+            System.exit(1);
+        }
+        if (flagValues.containsKey('g')) {
+            try {
+                mapper.setGapThreshold(Integer.parseInt(flagValues.get('g')));
+            } catch (IllegalArgumentException e) {
+                reportError(
+                        "Gap threshold must be a non-negative integer.\n"
+                                + "\tTry '-h' for information on command-line syntax.\n");
+                printHelpMessage();
+                System.exit(1);
+            }
+        }
+        if (flagValues.containsKey('S')) {
+            try {
+                mapper.setSortBufferSize(Long.parseLong(flagValues.get('S')) << 20);
+            } catch (IllegalArgumentException e) {
+                reportError(
+                        "Sort buffer size must be a positive integer.\n"
+                                + "\tTry '-h' for information on command-line syntax.\n");
+                printHelpMessage();
+                System.exit(1);
+            }
+        }
+        mapper.setOrderedOutput(!flags.contains('u'));
+        mapper.setSortedOutput(flags.contains('s'));
+        mapper.setMateRescue(flags.contains('p'));
+        mapper.setUnmappedOutput(flagValues.get('U'));
+        mapper.setReportFile(flagValues.get('r'));
+        if (flagValues.containsKey('P')) {
+            try {
+                mapper.setProgressInterval(Integer.parseInt(flagValues.get('P')));
+            } catch (IllegalArgumentException e) {
+                reportError(
+                        "Progress interval must be a non-negative integer.\n"
+                                + "\tTry '-h' for information on command-line syntax.\n");
+                printHelpMessage();
+                System.exit(1);
+            }
+        }
+        if (flagValues.containsKey('t')) {
+            try {
+                mapper.setSuccessThreshold(Double.parseDouble(flagValues.get('t')));
+            } catch (IllegalArgumentException e) {
+                reportError(
+                        "Success threshold must be a number above 0 and at most 1.\n"
+                                + "\tTry '-h' for information on command-line syntax.\n");
+                printHelpMessage();
+                System.exit(1);
+            }
+        }
+        if (flagValues.containsKey('c')) {
+            try {
+                mapper.setReadCacheSize(Integer.parseInt(flagValues.get('c')));
+            } catch (IllegalArgumentException e) {
+                reportError(
+                        "Read cache size must be a non-negative integer of at most 2^30.\n"
+                                + "\tTry '-h' for information on command-line syntax.\n");
+                printHelpMessage();
+                System.exit(1);
+            }
+        }
+
+        try {
+            mapper.generateReferenceIndex(seedShape, indexType);
+            for (int i = 1; i < kmerSizes.size(); i++) {
+                mapper.addFallbackSeeds(kmerSizes.get(i));
+            }
+        } catch (IllegalArgumentException e) {
+            reportError(e.getMessage());
+            System.exit(1);
+        }
+        mapper.map();
     }
 
     public static void reportMessage(String message) {
@@ -117,17 +350,52 @@ public class Main {
                 "Multi-Seed Consensus Reference-Based Mapper\n"
                     + "Command syntax:\n"
                     + "\tmap [OPTIONS] REF SAMPLE SAMPLE OUT\n"
+                    + "\tmap index REF INDEX\n"
                     + "\n"
                     + "Required arguments:\n"
-                    + "\tREF is the pathname (absolute or relative) to the reference fastq file\n"
+                    + "\tREF is the pathname (absolute or relative) to the reference fastq file,"
+                    + " or to an index file written by 'index' when mapping\n"
                     + "\tSAMPLE is the pathname (absolute or relative) to the sample fasta file\n"
-                    + "\tOUT is the pathname (absolute or relative) to the output sam file\n"
+                    + "\tOUT is the pathname (absolute or relative) to the output sam or bam file\n"
+                    + "\tINDEX is the pathname (absolute or relative) to the output idx file\n"
                     + "\n"
                     + "Optional flags:\n"
                     + "\t-h\t  prints this message\n"
+                    + "\t-b SIZE\t  maps read pairs in batches of SIZE pairs (default 4096)\n"
+                    + "\t-c COUNT\t  caches the outcome of up to COUNT pairs for pairs with the"
+                    + " same sequences (default off)\n"
+                    + "\t-f PARSER\t  FASTQ parser: 'native' (default) or 'biojava'\n"
+                    + "\t-g COUNT\t  realigns reads with more than COUNT mismatches allowing for"
+                    + " insertions and deletions (default off)\n"
+                    + "\t-i TYPE\t  seed index to align with: 'kmer' (default), 'fm' or 'trie'\n"
+                    + "\t-k K[,K...]\t  seeds with contiguous K-mers, and seeds reads that fail"
+                    + " again with each shorter K in turn, e.g. 21,15,11 (default 13)\n"
+                    + "\t-m COUNT\t  skips seeds that occur more than COUNT times (default 500)\n"
+                    + "\t-M MASK\t  seeds with the spaced seed MASK of '1' for the bases a seed"
+                    + " uses and '0' for the bases it skips, e.g. 1101101101101101101 (default"
+                    + " 13 ones)\n"
+                    + "\t-p\t  looks for a mate near its pair once the insert size is learned from"
+                    + " the first pairs, instead of seeding it\n"
+                    + "\t-P SECONDS\t  prints the number of pairs mapped so far every SECONDS"
+                    + " seconds\n"
+                    + "\t-r FILE\t  writes a JSON report with the metrics of every stage of the"
+                    + " run to FILE\n"
+                    + "\t-s\t  sorts alignments by coordinate\n"
+                    + "\t-S MB\t  sorts with MB megabytes of memory, beyond which sorted runs"
+                    + " are spilled to temporary files (default 512, at most a quarter of the"
+                    + " heap)\n"
+                    + "\t-t FRACTION\t  aligns a read if FRACTION of its seeds vote for the same"
+                    + " diagonal (default 0.2)\n"
+                    + "\t-U PREFIX\t  also writes pairs with an unmapped read to PREFIX.1.fastq and"
+                    + " PREFIX.2.fastq\n"
+                    + "\t-u\t  writes alignments as soon as they are mapped, not in input order\n"
+                    + "\t-w WINDOW\t  only indexes and looks up the minimizers of every WINDOW"
+                    + " consecutive seeds (default 1, every seed)\n"
                     + "\n"
                     + "Example use:\n"
-                    + "\tmap reference.fasta sample1.fastq sample2.fastq out.sam";
+                    + "\tmap reference.fasta sample1.fastq sample2.fastq out.sam\n"
+                    + "\tmap index reference.fasta reference.idx\n"
+                    + "\tmap reference.idx sample1.fastq sample2.fastq out.sam";
         System.out.println(helpMessage);
     }
 }
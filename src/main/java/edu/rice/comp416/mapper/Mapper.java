@@ -1,290 +1,1644 @@
 package edu.rice.comp416.mapper;
 
+import edu.rice.comp416.mapper.reader.FastqParser;
+import edu.rice.comp416.mapper.reader.FastqRecord;
+import edu.rice.comp416.mapper.reader.FastqSource;
+import edu.rice.comp416.mapper.reader.FastqWriter;
+import edu.rice.comp416.mapper.reader.PairedFastqReader;
 import edu.rice.comp416.mapper.reader.ReadFasta;
 import edu.rice.comp416.mapper.reader.ReadFastq;
+import edu.rice.comp416.mapper.util.BandedAligner;
+import edu.rice.comp416.mapper.util.DiagonalCounter;
+import edu.rice.comp416.mapper.util.FMIndex;
+import edu.rice.comp416.mapper.util.Histogram;
+import edu.rice.comp416.mapper.util.IndexFile;
+import edu.rice.comp416.mapper.util.InsertSizeDistribution;
+import edu.rice.comp416.mapper.util.JsonWriter;
+import edu.rice.comp416.mapper.util.KmerIndex;
+import edu.rice.comp416.mapper.util.Metrics;
+import edu.rice.comp416.mapper.util.MismatchScanner;
+import edu.rice.comp416.mapper.util.PackedSequence;
+import edu.rice.comp416.mapper.util.ReadCache;
+import edu.rice.comp416.mapper.util.Reference;
 import edu.rice.comp416.mapper.util.SAMWriter;
+import edu.rice.comp416.mapper.util.SeedEncoder;
+import edu.rice.comp416.mapper.util.SeedIndex;
+import edu.rice.comp416.mapper.util.SeedShape;
+import edu.rice.comp416.mapper.util.SequenceHasher;
 import edu.rice.comp416.mapper.util.Timer;
 import edu.rice.comp416.mapper.util.Transform;
 import edu.rice.comp416.mapper.util.Trie;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
-import org.biojava.nbio.core.sequence.DNASequence;
-import org.biojava.nbio.genome.io.fastq.Fastq;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 /** Mapper class. */
 public class Mapper {
 
-    /** Loaded FASTA file for reference genome. */
-    private final LinkedHashMap<String, DNASequence> reference;
+    /** Reference genome, loaded from a FASTA file or an index file. */
+    private final Reference reference;
 
-    /** List of tries for each reference genome. Assumes referenceTrie.size() == 1 */
+    /** Seed index used to align reads. */
+    private IndexType indexType;
+
+    /** List of tries for each contig, with positions in the concatenated reference. */
     private final List<Trie> referenceTrie;
 
-    /** List of strings for each reference string. Assumes referenceString.size() == 1 */
-    private final List<String> referenceString;
+    /** Seed index over all contigs of the reference, or null until it is generated. */
+    private SeedIndex referenceIndex;
+
+    /** Shape of the seeds of the index, which reads are seeded with; null until it is known. */
+    private SeedShape seedShape;
+
+    /** Shapes of the seeds that reads fall back to, in order, if they fail to align. */
+    private final List<SeedShape> fallbackShapes = new ArrayList<>();
+
+    /** K-mer index of each fallback shape. */
+    private final List<SeedIndex> fallbackIndexes = new ArrayList<>();
+
+    /** FASTQ reads for sample genomes, read in lockstep. */
+    private final PairedFastqReader samples;
+
+    /** Output sam or bam file path. */
+    private final String outFile;
+
+    /** SAM writer instance, created when mapping starts. */
+    private SAMWriter samWriter;
+
+    /** Prefix of the FASTQ files that pairs with an unmapped read are written to, or null. */
+    private String unmappedPrefix;
+
+    /** Writers of the FASTQ files of unmapped pairs, one per sample, open while mapping. */
+    private final List<FastqWriter> unmappedWriters = new ArrayList<>();
+
+    /** Number of reads written as unmapped, and how many of them have a mapped mate. */
+    private long numUnmappedReads;
+
+    private long numSingletons;
+
+    /** Fraction of the seeds of a read that must vote for a diagonal to align the read. */
+    private double successThreshold = 0.2;
+
+    /** Mapping quality of a read whose best diagonal has no competitor. */
+    public static final int MAX_MAPPING_QUALITY = 60;
+
+    /** Longest indel that gapped alignment finds. */
+    private static final int BAND_WIDTH = 16;
+
+    /** Reads with more mismatches than this without gaps are realigned with gaps. */
+    private int gapThreshold = Integer.MAX_VALUE;
+
+    /** Number of confidently mapped pairs that the insert size distribution is learned from. */
+    private static final int NUM_INSERT_SIZES = 1000;
+
+    /**
+     * Number of leading pairs that the insert sizes are learned from at most. If they do not
+     * hold enough confidently mapped pairs, the rest of the pairs are mapped without rescue.
+     */
+    private static final int MAX_INSERT_SIZE_PAIRS = 20 * NUM_INSERT_SIZES;
+
+    /** Largest insert size of a proper pair that is not mapped with a learned distribution. */
+    private static final int MAX_PROPER_INSERT_SIZE = 1000;
+
+    /** Mapping quality of both mates of a pair for its insert size to be learned from. */
+    private static final int MIN_INSERT_SIZE_MAPPING_QUALITY = 30;
+
+    /** Largest fraction of mismatching bases of a mate that is found near its pair. */
+    private static final double RESCUE_MISMATCH_RATE = 0.1;
+
+    /** Insert size distribution of the pairs, or null unless mates are rescued. */
+    private InsertSizeDistribution insertSizes;
+
+    /**
+     * Number of leading batches, in input order, that the insert sizes were learned from. Guarded
+     * by the insert size distribution.
+     */
+    private long numLearnedBatches;
+
+    /** Number of mates found near their pair rather than by seeding. */
+    private final AtomicLong numRescuedMates = new AtomicLong();
+
+    /** Seeds that occur at more reference positions than this are skipped. */
+    private int maxSeedOccurrences = 500;
+
+    /** Number of read pairs that are mapped together as a single unit of work. */
+    private int batchSize = 4096;
+
+    /** Number of mapping workers. */
+    private int numWorkers = Runtime.getRuntime().availableProcessors();
+
+    /** Whether alignments are written in the same order as the input reads. */
+    private boolean orderedOutput = true;
+
+    /** Whether alignments are sorted by coordinate before they are written. */
+    private boolean sortedOutput = false;
+
+    /** Memory budget for sorting alignments, in bytes. */
+    private long sortBufferSize = Math.min(512L << 20, Runtime.getRuntime().maxMemory() / 4);
+
+    /** Path of the JSON report written at the end of a run, or null. */
+    private String reportFile;
+
+    /** Seconds between progress lines, or 0 for none. */
+    private int progressInterval;
+
+    /** Number of read pairs written so far, for progress lines. */
+    private final AtomicLong numPairsWritten = new AtomicLong();
+
+    /** Outcomes of recently mapped pairs by their sequences, shared by the workers, or null. */
+    private ReadCache<CachedPair> readCache;
+
+    /**
+     * Constructor for the mapper class, which parses the sample files with the native parser.
+     *
+     * @param referenceFile Reference fasta file path, or index file path written by {@link
+     *     #writeIndex(String, String, int)}.
+     * @param sampleFiles List of sample fastq file paths.
+     * @param outFile Output sam or bam file path.
+     * @throws IOException If an exception occurs when fasta, index and fastq files are being
+     *     read.
+     */
+    public Mapper(String referenceFile, List<String> sampleFiles, String outFile)
+            throws IOException {
+        this(referenceFile, sampleFiles, outFile, FastqParserType.NATIVE);
+    }
+
+    /**
+     * Constructor for the mapper class.
+     *
+     * @param referenceFile Reference fasta file path, or index file path written by {@link
+     *     #writeIndex(String, String, int)}.
+     * @param sampleFiles List of sample fastq file paths.
+     * @param outFile Output sam or bam file path.
+     * @param parserType Parser of the sample fastq files.
+     * @throws IOException If an exception occurs when fasta, index and fastq files are being
+     *     read.
+     */
+    public Mapper(
+            String referenceFile,
+            List<String> sampleFiles,
+            String outFile,
+            FastqParserType parserType)
+            throws IOException {
+        this.indexType = IndexType.KMER;
+        this.referenceTrie = new ArrayList<>();
+
+        Timer referenceLoadTimer = new Timer();
+        if (referenceFile.endsWith(".idx")) {
+            IndexFile indexFile = IndexFile.load(referenceFile);
+            this.reference = indexFile.getReference();
+            this.referenceIndex = indexFile.getIndex();
+            this.seedShape = indexFile.getIndex().getShape();
+        } else {
+            this.reference = Reference.fromFasta(ReadFasta.readFromFile(referenceFile));
+        }
+        referenceLoadTimer.stop();
+
+        Timer samplesLoadTimer = new Timer();
+        List<FastqSource> sources = new ArrayList<>();
+        for (String sampleFile : sampleFiles) {
+            sources.add(
+                    parserType == FastqParserType.BIOJAVA
+                            ? ReadFastq.openSource(sampleFile)
+                            : new FastqParser(sampleFile));
+        }
+        this.samples = new PairedFastqReader(sources);
+        samplesLoadTimer.stop();
+
+        System.out.println(
+                "Loaded reference sequence in "
+                        + referenceLoadTimer.getTimeInSeconds()
+                        + " seconds.");
+        System.out.println(
+                "Loaded "
+                        + this.samples.getNumSources()
+                        + " sample sequence(s) in "
+                        + samplesLoadTimer.getTimeInSeconds()
+                        + " seconds.");
+
+        this.outFile = outFile;
+    }
+
+    /**
+     * Build the k-mer index of a reference fasta file and write it to an index file, which can
+     * then be given to the mapper in place of the fasta file.
+     *
+     * @param referenceFile Reference fasta file path.
+     * @param indexFile Output index file path.
+     * @param k Kmer size.
+     * @throws IOException If the fasta file cannot be read or the index file cannot be written.
+     */
+    public static void writeIndex(String referenceFile, String indexFile, int k)
+            throws IOException {
+        writeIndex(referenceFile, indexFile, SeedShape.contiguous(k));
+    }
+
+    /**
+     * Build the seed index of a reference fasta file, e.g. of spaced seeds or minimizers, and
+     * write it to an index file. Reads mapped against the index file are seeded with the same
+     * shape.
+     *
+     * @param referenceFile Reference fasta file path.
+     * @param indexFile Output index file path.
+     * @param shape Shape of the seeds.
+     * @throws IOException If the fasta file cannot be read or the index file cannot be written.
+     */
+    public static void writeIndex(String referenceFile, String indexFile, SeedShape shape)
+            throws IOException {
+        Timer referenceLoadTimer = new Timer();
+        Reference reference = Reference.fromFasta(ReadFasta.readFromFile(referenceFile));
+        System.out.println(
+                "Loaded reference sequence in "
+                        + referenceLoadTimer.getTimeInSeconds()
+                        + " seconds.");
+
+        Timer indexTimer = new Timer();
+        KmerIndex index = KmerIndex.fromReference(reference, shape);
+        System.out.println(
+                "Generated reference sequence kmer index in "
+                        + indexTimer.getTimeInSeconds()
+                        + " seconds.");
+        printIndexSize(index, reference);
+
+        Timer writeTimer = new Timer();
+        IndexFile.save(indexFile, reference, index);
+        System.out.println(
+                "Wrote reference index in " + writeTimer.getTimeInSeconds() + " seconds.");
+    }
+
+    /**
+     * Print the number of positions of a k-mer index, which sampling seeds shrinks.
+     *
+     * @param index K-mer index.
+     * @param reference Indexed reference.
+     */
+    private static void printIndexSize(KmerIndex index, Reference reference) {
+        System.out.println(
+                "Indexed "
+                        + index.getNumPositions()
+                        + " seeds of "
+                        + index.getShape()
+                        + " ("
+                        + Math.round(
+                                100.0 * index.getNumPositions() / reference.getSequence().length())
+                        + " per 100 bases).");
+    }
+
+    /**
+     * Generate seed index from loaded reference fasta file. If the reference was loaded from an
+     * index file, its k-mer index is used as it is.
+     *
+     * @param k Kmer size.
+     * @param indexType Type of seed index to generate.
+     * @throws IllegalArgumentException If the loaded index file does not match k and indexType.
+     */
+    public void generateReferenceIndex(int k, IndexType indexType) {
+        generateReferenceIndex(SeedShape.contiguous(k), indexType);
+    }
+
+    /**
+     * Generate seed index from loaded reference fasta file with seeds of a given shape, which
+     * reads are then seeded with. Spaced seeds and minimizers are only supported by the k-mer
+     * index. If the reference was loaded from an index file, its k-mer index is used as it is.
+     *
+     * @param shape Shape of the seeds.
+     * @param indexType Type of seed index to generate.
+     * @throws IllegalArgumentException If the loaded index file does not match shape and
+     *     indexType, or if indexType does not support the shape.
+     */
+    public void generateReferenceIndex(SeedShape shape, IndexType indexType) {
+        if (this.referenceIndex != null) {
+            if (indexType != IndexType.KMER || !this.seedShape.equals(shape)) {
+                throw new IllegalArgumentException(
+                        "The index file holds a kmer index of "
+                                + this.seedShape
+                                + ", which does not match the requested "
+                                + indexType.getName()
+                                + " index of "
+                                + shape
+                                + ".");
+            }
+            return;
+        }
+
+        if (indexType != IndexType.KMER && (!shape.isContiguous() || shape.isSampled())) {
+            throw new IllegalArgumentException(
+                    "Spaced seeds and minimizers are only supported by the kmer index.");
+        }
+
+        Timer timer = new Timer();
+
+        int k = shape.getK();
+        this.indexType = indexType;
+        this.seedShape = shape;
+
+        if (indexType == IndexType.TRIE) {
+            // Contigs are independent, so their tries are built in parallel and kept in order.
+            IntStream.range(0, this.reference.getNumContigs())
+                    .parallel()
+                    .mapToObj(
+                            i -> {
+                                int start = this.reference.getStart(i);
+                                String sequence =
+                                        this.reference
+                                                .getSequence()
+                                                .substring(
+                                                        start,
+                                                        start + this.reference.getLength(i));
+                                return Trie.fromSequence(sequence, k, start);
+                            })
+                    .forEachOrdered(this.referenceTrie::add);
+        } else if (indexType == IndexType.FM) {
+            this.referenceIndex = FMIndex.fromReference(this.reference, k);
+        } else {
+            this.referenceIndex = KmerIndex.fromReference(this.reference, shape);
+        }
+
+        System.out.println(
+                "Generated reference sequence "
+                        + indexType.getName()
+                        + " index in "
+                        + timer.getTimeInSeconds()
+                        + " seconds.");
+        if (this.referenceIndex instanceof KmerIndex) {
+            printIndexSize((KmerIndex) this.referenceIndex, this.reference);
+        }
+    }
+
+    /**
+     * Add a tier of shorter seeds that reads fall back to if they fail to align with the seeds
+     * of the index and of the tiers added before. Long seeds are specific and have few hits, so
+     * most reads align quickly with them, and only the reads that fail, e.g. divergent ones, are
+     * seeded again with shorter, more sensitive seeds. The tier is a k-mer index of contiguous
+     * k-mers, sampled with the minimizer window of the index, built from the loaded reference.
+     *
+     * @param k Kmer size, positive and smaller than the seeds of the index and of the tiers added
+     *     before.
+     * @throws IllegalArgumentException If the index is not a k-mer index or k is not positive and
+     *     smaller.
+     * @throws IllegalStateException If the index has not been generated or loaded.
+     */
+    public void addFallbackSeeds(int k) {
+        if (this.seedShape == null) {
+            throw new IllegalStateException("The seed index must be generated first.");
+        }
+        if (this.indexType != IndexType.KMER) {
+            throw new IllegalArgumentException(
+                    "Fallback seeds are only supported by the kmer index.");
+        }
+
+        SeedShape last =
+                this.fallbackShapes.isEmpty()
+                        ? this.seedShape
+                        : this.fallbackShapes.get(this.fallbackShapes.size() - 1);
+        if (k >= last.getK()) {
+            throw new IllegalArgumentException(
+                    "Fallback seeds must be shorter than the seeds before them.");
+        }
+        if (k <= 0) {
+            throw new IllegalArgumentException(
+                    "K-mer size must be between 1 and " + KmerIndex.MAX_K + ".");
+        }
+
+        SeedShape shape = new SeedShape("1".repeat(k), this.seedShape.getWindow());
+        Timer timer = new Timer();
+        KmerIndex index = KmerIndex.fromReference(this.reference, shape);
+        System.out.println(
+                "Generated fallback kmer index in " + timer.getTimeInSeconds() + " seconds.");
+        printIndexSize(index, this.reference);
+
+        this.fallbackShapes.add(shape);
+        this.fallbackIndexes.add(index);
+    }
+
+    /**
+     * Set the fraction of the seeds of a read that must vote for the same diagonal for the read
+     * to align. Lower thresholds align more divergent reads, but also more reads by chance.
+     *
+     * @param successThreshold Fraction of the seeds, above 0 and at most 1.
+     * @throws IllegalArgumentException If the threshold is out of range.
+     */
+    public void setSuccessThreshold(double successThreshold) {
+        if (!(successThreshold > 0 && successThreshold <= 1)) {
+            throw new IllegalArgumentException("Success threshold must be above 0 and at most 1.");
+        }
+        this.successThreshold = successThreshold;
+    }
+
+    /**
+     * Get the shape of the seeds of a tier.
+     *
+     * @param tier Tier of the seeds, 0 for the seeds of the index.
+     * @return Shape of the seeds.
+     */
+    private SeedShape getTierShape(int tier) {
+        return tier == 0 ? this.seedShape : this.fallbackShapes.get(tier - 1);
+    }
+
+    /**
+     * Set whether alignments are written in the same order as the input reads. Unordered output
+     * lets the writer consume batches as soon as any worker finishes them.
+     *
+     * @param orderedOutput True to keep the input order; false otherwise.
+     */
+    public void setOrderedOutput(boolean orderedOutput) {
+        this.orderedOutput = orderedOutput;
+    }
+
+    /**
+     * Set whether alignments are sorted by coordinate before they are written. Sorted alignments
+     * are buffered up to the sort buffer size, and sorted runs are spilled to temporary files
+     * beyond it.
+     *
+     * @param sortedOutput True to sort by coordinate; false otherwise.
+     */
+    public void setSortedOutput(boolean sortedOutput) {
+        this.sortedOutput = sortedOutput;
+    }
+
+    /**
+     * Set the memory budget for sorting alignments.
+     *
+     * @param sortBufferSize Memory budget in bytes.
+     */
+    public void setSortBufferSize(long sortBufferSize) {
+        if (sortBufferSize <= 0) {
+            throw new IllegalArgumentException("Sort buffer size must be positive.");
+        }
+        this.sortBufferSize = sortBufferSize;
+    }
+
+    /**
+     * Set the number of read pairs that are mapped together as a single unit of work. Larger
+     * batches amortize the hand-off between pipeline stages over more reads.
+     *
+     * @param batchSize Number of read pairs per batch.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the number of mapping workers, which defaults to the number of processors.
+     *
+     * @param numWorkers Number of workers.
+     */
+    void setNumWorkers(int numWorkers) {
+        if (numWorkers <= 0) {
+            throw new IllegalArgumentException("Number of workers must be positive.");
+        }
+        this.numWorkers = numWorkers;
+    }
+
+    /**
+     * Set the number of reference positions above which a seed is skipped. Seeds from repeats
+     * cost time to scan and only add votes to diagonals that compete with the true one.
+     *
+     * @param maxSeedOccurrences Maximum number of occurrences of a seed.
+     */
+    public void setMaxSeedOccurrences(int maxSeedOccurrences) {
+        if (maxSeedOccurrences <= 0) {
+            throw new IllegalArgumentException("Maximum seed occurrences must be positive.");
+        }
+        this.maxSeedOccurrences = maxSeedOccurrences;
+    }
+
+    /**
+     * Set the number of mismatches above which a read is realigned with gaps. Gapped alignment
+     * finds indels, which ungapped alignment reports as runs of mismatches, but costs far more
+     * than counting mismatches, so only reads that are likely to have an indel are realigned. By
+     * default, no reads are.
+     *
+     * @param gapThreshold Largest number of mismatches of a read that is not realigned.
+     */
+    public void setGapThreshold(int gapThreshold) {
+        if (gapThreshold < 0) {
+            throw new IllegalArgumentException("Gap threshold must not be negative.");
+        }
+        this.gapThreshold = gapThreshold;
+    }
+
+    /**
+     * Set whether a mate is looked for near its pair. The insert size distribution is learned
+     * from the first pairs that map confidently. After that, once one mate maps, the other one is
+     * looked for at the starts that give a likely insert size, instead of seeding it against the
+     * whole reference, and pairs whose first mate fails to map are mapped from the second mate.
+     *
+     * @param mateRescue True to look for mates near their pair; false to map mates on their own.
+     */
+    public void setMateRescue(boolean mateRescue) {
+        this.insertSizes = mateRescue ? new InsertSizeDistribution(NUM_INSERT_SIZES) : null;
+    }
+
+    /**
+     * Set where pairs with an unmapped read are written to, besides the unmapped records of the
+     * SAM or BAM file. Each sample gets its own FASTQ file, PREFIX.1.fastq, PREFIX.2.fastq and so
+     * on, so that the pairs can be mapped again, e.g. against another reference.
+     *
+     * @param unmappedPrefix Prefix of the FASTQ files, or null to not write them.
+     */
+    public void setUnmappedOutput(String unmappedPrefix) {
+        this.unmappedPrefix = unmappedPrefix;
+    }
+
+    /**
+     * Set where a JSON report of the run is written to. Besides the totals, it holds the metrics
+     * of each pipeline stage, i.e. parse, seeding, CIGAR and write latencies, queue depths and
+     * the busy and wait time of every thread, which tell whether the run is bound by reading,
+     * mapping or writing.
+     *
+     * @param reportFile Path of the report, or null to not write one.
+     */
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    /**
+     * Set the size of the cache of mapping outcomes. Pairs whose reads have the same sequences as
+     * a recently mapped pair, e.g. in amplicon or high-depth runs, take the outcome of that pair
+     * rather than being mapped again. The outcome of each read is its position, strand, mapping
+     * quality and CIGAR string, or that it is unmapped.
+     *
+     * @param readCacheSize Largest number of pairs whose outcome is kept, or 0 for no cache.
+     * @throws IllegalArgumentException If the size is negative or too large.
+     */
+    public void setReadCacheSize(int readCacheSize) {
+        if (readCacheSize < 0) {
+            throw new IllegalArgumentException("Read cache size must not be negative.");
+        }
+        this.readCache = readCacheSize > 0 ? new ReadCache<>(readCacheSize) : null;
+    }
+
+    /**
+     * Set how often a progress line with the number of pairs mapped so far is printed.
+     *
+     * @param progressInterval Seconds between progress lines, or 0 for none.
+     * @throws IllegalArgumentException If the interval is negative.
+     */
+    public void setProgressInterval(int progressInterval) {
+        if (progressInterval < 0) {
+            throw new IllegalArgumentException("Progress interval must not be negative.");
+        }
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Perform mapping of sample reads on reference genome. Reads are streamed through a pipeline
+     * of a reader thread, mapping workers and a writer, so that only a bounded number of read
+     * batches are held in memory at any time. Reads are seeded with the shape of the seeds of
+     * the index, so the index must have been generated or loaded.
+     */
+    public void map() {
+        Timer timer = new Timer();
+
+        int numWorkers = this.numWorkers;
+
+        System.out.println("Running mapper on " + numWorkers + " threads.");
+
+        this.samWriter =
+                new SAMWriter(this.outFile, this.reference, this.sortedOutput, this.sortBufferSize);
+
+        // Here, we create executor service for the reader and the mapping workers. Alignments
+        // are written from the current thread.
+        ExecutorService executorService = Executors.newFixedThreadPool(numWorkers + 1);
+
+        // The reader fills batches from a fixed pool, and the writer returns them once they are
+        // written. This bounds memory, blocks the reader when the workers or the writer fall
+        // behind, and lets batches reuse their read and result buffers.
+        int maxInFlight = 4 * numWorkers;
+        BlockingQueue<Batch> freeBatches = new ArrayBlockingQueue<>(maxInFlight);
+        for (int i = 0; i < maxInFlight; i++) {
+            freeBatches.add(new Batch(this.batchSize));
+        }
+        BlockingQueue<Batch> readQueue = new ArrayBlockingQueue<>(maxInFlight + numWorkers);
+        BlockingQueue<Batch> resultQueue = new ArrayBlockingQueue<>(maxInFlight + numWorkers);
+
+        // Every thread keeps its own metrics, which are only read once it is done.
+        Metrics readerMetrics = new Metrics("reader");
+        List<Metrics> workerMetrics = new ArrayList<>();
+        for (int i = 0; i < numWorkers; i++) {
+            workerMetrics.add(new Metrics("worker-" + (i + 1)));
+        }
+        Metrics writerMetrics = new Metrics("writer");
+
+        // First exception thrown by a worker. The writer stops at the end marker of the failed
+        // worker, since in ordered output it would otherwise wait for the lost batch forever.
+        AtomicReference<Throwable> workerFailure = new AtomicReference<>();
+
+        this.numPairsWritten.set(0);
+        long startNanos = System.nanoTime();
+        ScheduledExecutorService progressService = null;
+        if (this.progressInterval > 0) {
+            progressService =
+                    Executors.newSingleThreadScheduledExecutor(
+                            runnable -> {
+                                Thread thread = new Thread(runnable, "progress");
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+            progressService.scheduleAtFixedRate(
+                    () -> printProgress(startNanos),
+                    this.progressInterval,
+                    this.progressInterval,
+                    TimeUnit.SECONDS);
+        }
+
+        try {
+            if (this.unmappedPrefix != null) {
+                for (int i = 0; i < this.samples.getNumSources(); i++) {
+                    this.unmappedWriters.add(
+                            new FastqWriter(this.unmappedPrefix + "." + (i + 1) + ".fastq"));
+                }
+            }
+
+            Future<Integer> reader =
+                    executorService.submit(
+                            () -> readBatches(freeBatches, readQueue, numWorkers, readerMetrics));
+
+            List<Future<Void>> workers = new ArrayList<>();
+            for (Metrics metrics : workerMetrics) {
+                workers.add(
+                        executorService.submit(
+                                () ->
+                                        mapBatches(
+                                                readQueue, resultQueue, workerFailure, metrics)));
+            }
+
+            writeBatches(resultQueue, freeBatches, numWorkers, workerFailure, writerMetrics);
+
+            // Surface any exception thrown by the reader or the workers.
+            int numPairs = reader.get();
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+
+            System.out.println(
+                    "Mapped "
+                            + numPairs * this.samples.getNumSources()
+                            + " reads in "
+                            + timer.getTimeInSeconds()
+                            + " seconds ("
+                            + timer.getRate(numPairs)
+                            + " pairs/sec with batch size "
+                            + this.batchSize
+                            + ").");
+            System.out.println(
+                    "Wrote "
+                            + this.numUnmappedReads
+                            + " unmapped reads, "
+                            + this.numSingletons
+                            + " of which have a mapped mate.");
+            if (this.insertSizes != null) {
+                System.out.println(
+                        "Rescued "
+                                + this.numRescuedMates.get()
+                                + " mates near their pairs"
+                                + (this.insertSizes.isReady()
+                                        ? " (insert size "
+                                                + this.insertSizes.getMedian()
+                                                + ", likely between "
+                                                + this.insertSizes.getMin()
+                                                + " and "
+                                                + this.insertSizes.getMax()
+                                                + ")."
+                                        : "; too few pairs to learn the insert size."));
+            }
+            if (!this.fallbackShapes.isEmpty()) {
+                Metrics mapping = Metrics.merge("mapping", workerMetrics);
+                for (int i = 0; i <= this.fallbackShapes.size(); i++) {
+                    System.out.println(
+                            "Seeds of k="
+                                    + getTierShape(i).getK()
+                                    + " aligned "
+                                    + mapping.getCounter(getTierCounterName(i, "aligned_reads"))
+                                            .get()
+                                    + " of "
+                                    + mapping.getCounter(getTierCounterName(i, "reads")).get()
+                                    + " reads"
+                                    + (i == 0 ? "." : " that failed with longer seeds."));
+                }
+            }
+            if (this.readCache != null) {
+                System.out.println(
+                        "Read cache answered "
+                                + this.readCache.getHits()
+                                + " of "
+                                + (this.readCache.getHits() + this.readCache.getMisses())
+                                + " pairs ("
+                                + String.format("%.1f", 100 * this.readCache.getHitRate())
+                                + "% hit rate, "
+                                + this.readCache.getEvictions()
+                                + " evictions).");
+            }
+
+            if (this.reportFile != null) {
+                List<Metrics> stages = new ArrayList<>();
+                stages.add(readerMetrics);
+                stages.addAll(workerMetrics);
+                stages.add(writerMetrics);
+                writeReport(numWorkers, numPairs, timer, stages);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                Main.reportError(e.getCause().getMessage());
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                Main.reportError(
+                        "An execution exception occurred. See stack trace for more details.");
+                e.printStackTrace();
+            }
+        } catch (InterruptedException e) {
+            Main.reportError(
+                    "An interrupted exception occurred. See stack trace for more details.");
+            e.printStackTrace();
+        } catch (IOException e) {
+            Main.reportError(e.getMessage());
+        } finally {
+            // Stop the reader and the workers if the run failed before they finished.
+            executorService.shutdownNow();
+            if (progressService != null) {
+                progressService.shutdownNow();
+            }
+            this.samWriter.close();
+            for (FastqWriter writer : this.unmappedWriters) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Main.reportError(e.getMessage());
+                }
+            }
+            this.unmappedWriters.clear();
+            try {
+                this.samples.close();
+            } catch (IOException e) {
+                Main.reportError(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Print the number of read pairs written so far and the rate since mapping started.
+     *
+     * @param startNanos Time mapping started, from {@link System#nanoTime()}.
+     */
+    private void printProgress(long startNanos) {
+        long numPairs = this.numPairsWritten.get();
+        double seconds = (System.nanoTime() - startNanos) * 1e-9;
+        System.out.println(
+                "Mapped "
+                        + numPairs
+                        + " pairs in "
+                        + Math.round(seconds)
+                        + " seconds ("
+                        + Math.round(numPairs / Math.max(seconds, 1e-9))
+                        + " pairs/sec).");
+    }
+
+    /**
+     * Write the JSON report of a finished run to the report file.
+     *
+     * @param numWorkers Number of mapping workers.
+     * @param numPairs Number of read pairs that were mapped.
+     * @param timer Timer started when mapping started.
+     * @param stages Metrics of the reader, each worker and the writer, in that order.
+     * @throws IOException If the report file cannot be written.
+     */
+    private void writeReport(int numWorkers, long numPairs, Timer timer, List<Metrics> stages)
+            throws IOException {
+        JsonWriter json = new JsonWriter();
+        json.beginObject();
+        json.name("output").value(this.outFile);
+        json.name("index").value(this.indexType.getName());
+        json.name("k").value(this.seedShape.getK());
+        json.name("seed_mask").value(this.seedShape.getMask());
+        json.name("minimizer_window").value(this.seedShape.getWindow());
+        json.name("workers").value(numWorkers);
+        json.name("batch_size").value(this.batchSize);
+        json.name("pairs").value(numPairs);
+        json.name("reads").value(numPairs * this.samples.getNumSources());
+        json.name("seconds").value(timer.getTimeInSeconds());
+        json.name("pairs_per_second").value(timer.getRate(numPairs));
+        json.name("unmapped_reads").value(this.numUnmappedReads);
+        json.name("singletons").value(this.numSingletons);
+        if (this.insertSizes != null) {
+            json.name("rescued_mates").value(this.numRescuedMates.get());
+        }
+        json.name("success_threshold").value(this.successThreshold);
+        if (!this.fallbackShapes.isEmpty()) {
+            Metrics mapping = Metrics.merge("mapping", stages.subList(1, stages.size() - 1));
+            json.name("seed_tiers").beginArray();
+            for (int i = 0; i <= this.fallbackShapes.size(); i++) {
+                json.beginObject();
+                json.name("k").value(getTierShape(i).getK());
+                json.name("reads").value(mapping.getCounter(getTierCounterName(i, "reads")).get());
+                json.name("aligned_reads")
+                        .value(mapping.getCounter(getTierCounterName(i, "aligned_reads")).get());
+                json.endObject();
+            }
+            json.endArray();
+        }
+        if (this.readCache != null) {
+            json.name("read_cache").beginObject();
+            json.name("capacity").value(this.readCache.getCapacity());
+            json.name("hits").value(this.readCache.getHits());
+            json.name("misses").value(this.readCache.getMisses());
+            json.name("hit_rate").value(this.readCache.getHitRate());
+            json.name("evictions").value(this.readCache.getEvictions());
+            json.endObject();
+        }
+
+        // Workers are summed up as a single stage, and also listed one by one.
+        List<Metrics> workers = stages.subList(1, stages.size() - 1);
+        json.name("stages").beginObject();
+        json.name("reader");
+        stages.get(0).writeJson(json);
+        json.name("mapping");
+        Metrics.merge("mapping", workers).writeJson(json);
+        json.name("writer");
+        stages.get(stages.size() - 1).writeJson(json);
+        json.endObject();
+        json.name("threads").beginArray();
+        for (Metrics metrics : stages) {
+            metrics.writeJson(json);
+        }
+        json.endArray();
+        json.endObject();
+
+        Files.writeString(Path.of(this.reportFile), json.toString() + "\n");
+    }
+
+    /**
+     * Reader stage of the mapping pipeline. Groups read pairs from the samples into batches and
+     * hands them to the workers. Reads are parsed into the records of the batch, which are reused
+     * once the batch is written.
+     *
+     * @param freeBatches Pool of batches that can be filled.
+     * @param readQueue Queue to put read batches into.
+     * @param numWorkers Number of workers, each of which receives an end marker.
+     * @param metrics Metrics of the reader thread.
+     * @return Number of read pairs that were read.
+     * @throws InterruptedException If interrupted while waiting for a free batch or queue space.
+     * @throws IOException If a sample file cannot be read, or if the sample files have different
+     *     numbers of reads.
+     */
+    private int readBatches(
+            BlockingQueue<Batch> freeBatches,
+            BlockingQueue<Batch> readQueue,
+            int numWorkers,
+            Metrics metrics)
+            throws InterruptedException, IOException {
+        Histogram parseNanos = metrics.getHistogram("parse_batch_ns");
+        Histogram queueDepth = metrics.getHistogram("read_queue_depth");
+        int numPairs = 0;
+
+        try {
+            long sequenceNumber = 0;
+            boolean finished = false;
+            while (!finished) {
+                long waitStart = System.nanoTime();
+                Batch batch = freeBatches.take();
+                long parseStart = System.nanoTime();
+                metrics.addWaitTime(parseStart - waitStart);
+                batch.reset(sequenceNumber);
+
+                while (batch.numPairs < this.batchSize) {
+                    // Read current pair of samples into the next records of the batch.
+                    List<FastqRecord> curReads = batch.nextPair(this.samples.getNumSources());
+
+                    // There are no more reads. Halt.
+                    if (!this.samples.next(curReads)) {
+                        finished = true;
+                        break;
+                    }
+
+                    // Increase number of read pairs.
+                    numPairs += 1;
+                    batch.numPairs += 1;
+                }
+
+                if (batch.numPairs == 0) {
+                    freeBatches.put(batch);
+                } else {
+                    waitStart = System.nanoTime();
+                    parseNanos.record(waitStart - parseStart);
+                    queueDepth.record(readQueue.size());
+                    readQueue.put(batch);
+                    metrics.addWaitTime(System.nanoTime() - waitStart);
+                    sequenceNumber += 1;
+                }
+            }
+        } finally {
+            for (int i = 0; i < numWorkers; i++) {
+                readQueue.put(Batch.END);
+            }
+            metrics.getCounter("pairs").add(numPairs);
+            metrics.finish();
+        }
+
+        return numPairs;
+    }
+
+    /**
+     * Construct the seeder of a worker, chained to a seeder of every tier of fallback seeds.
+     *
+     * @param metrics Metrics of the worker, which the seeders record into.
+     * @return Seeder of the seeds of the index.
+     */
+    private Seeder newSeeder(Metrics metrics) {
+        Seeder seeder = new Seeder(this.seedShape, metrics);
+        Seeder last = seeder;
+        for (int i = 0; i < this.fallbackShapes.size(); i++) {
+            SeedIndex index = this.fallbackIndexes.get(i);
+            last.fallback = new Seeder(this.fallbackShapes.get(i), index, i + 1, metrics);
+            last = last.fallback;
+        }
+        return seeder;
+    }
+
+    /**
+     * Get the name of a counter of a tier of seeds.
+     *
+     * @param tier Tier of the seeds, 0 for the seeds of the index.
+     * @param name Name of the counter within the tier.
+     * @return Name of the counter.
+     */
+    private static String getTierCounterName(int tier, String name) {
+        return "seed_tier_" + tier + "_" + name;
+    }
+
+    /**
+     * Worker stage of the mapping pipeline. Aligns every read pair of the batches it receives.
+     *
+     * @param readQueue Queue to take read batches from.
+     * @param resultQueue Queue to put mapped batches into.
+     * @param failure Holder of the first exception thrown by a worker, set before the worker
+     *     puts its end marker.
+     * @param metrics Metrics of the worker thread, which its seeder also records into.
+     * @return Nothing.
+     * @throws InterruptedException If interrupted while waiting for a batch or queue space.
+     */
+    private Void mapBatches(
+            BlockingQueue<Batch> readQueue,
+            BlockingQueue<Batch> resultQueue,
+            AtomicReference<Throwable> failure,
+            Metrics metrics)
+            throws InterruptedException {
+        // Each worker reuses a single seeder for all of its reads.
+        Seeder seeder = newSeeder(metrics);
+        Histogram mapNanos = metrics.getHistogram("map_batch_ns");
+
+        try {
+            while (true) {
+                long waitStart = System.nanoTime();
+                Batch batch = readQueue.take();
+                if (batch == Batch.END) {
+                    metrics.addWaitTime(System.nanoTime() - waitStart);
+                    break;
+                }
+
+                // Waiting for the insert sizes of the batches before is idle time as well.
+                boolean rescue = awaitInsertSizes(batch.sequenceNumber);
+                batch.rescue = rescue;
+                long mapStart = System.nanoTime();
+                metrics.addWaitTime(mapStart - waitStart);
+
+                for (int i = 0; i < batch.numPairs; i++) {
+                    batch.results.add(mapPair(batch.reads.get(i), seeder, rescue));
+                }
+                if (this.insertSizes != null
+                        && !rescue
+                        && batch.sequenceNumber < getNumInsertSizeBatches()) {
+                    learnInsertSizes(batch);
+                }
+
+                waitStart = System.nanoTime();
+                mapNanos.record(waitStart - mapStart);
+                resultQueue.put(batch);
+                metrics.addWaitTime(System.nanoTime() - waitStart);
+            }
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        } finally {
+            resultQueue.put(Batch.END);
+            metrics.finish();
+        }
+
+        return null;
+    }
+
+    /**
+     * Writer stage of the mapping pipeline. Writes mapped batches through samWriter, either in
+     * input order or as soon as they arrive.
+     *
+     * @param resultQueue Queue to take mapped batches from.
+     * @param freeBatches Pool to return batches to once they are written.
+     * @param numWorkers Number of workers to receive an end marker from.
+     * @param workerFailure Holder of the first exception thrown by a worker.
+     * @param metrics Metrics of the writer thread.
+     * @throws InterruptedException If interrupted while waiting for a batch.
+     * @throws IOException If the FASTQ files of unmapped pairs cannot be written.
+     * @throws ExecutionException If a worker failed, with the exception it threw.
+     */
+    private void writeBatches(
+            BlockingQueue<Batch> resultQueue,
+            BlockingQueue<Batch> freeBatches,
+            int numWorkers,
+            AtomicReference<Throwable> workerFailure,
+            Metrics metrics)
+            throws InterruptedException, IOException, ExecutionException {
+        Histogram writeNanos = metrics.getHistogram("write_batch_ns");
+        Histogram queueDepth = metrics.getHistogram("result_queue_depth");
+        Histogram pendingBatches = metrics.getHistogram("pending_batches");
+
+        // Batches that arrived before the batches preceding them.
+        Map<Long, Batch> pending = new HashMap<>();
+        long nextSequenceNumber = 0;
+
+        try {
+            int finishedWorkers = 0;
+            while (finishedWorkers < numWorkers) {
+                queueDepth.record(resultQueue.size());
+                long waitStart = System.nanoTime();
+                Batch batch = resultQueue.take();
+                metrics.addWaitTime(System.nanoTime() - waitStart);
+                if (batch == Batch.END) {
+                    if (workerFailure.get() != null) {
+                        throw new ExecutionException(workerFailure.get());
+                    }
+                    finishedWorkers += 1;
+                    continue;
+                }
+
+                if (!this.orderedOutput) {
+                    writeBatch(batch, writeNanos);
+                    freeBatches.put(batch);
+                    continue;
+                }
+
+                pending.put(batch.sequenceNumber, batch);
+                pendingBatches.record(pending.size());
+                while ((batch = pending.remove(nextSequenceNumber)) != null) {
+                    writeBatch(batch, writeNanos);
+                    freeBatches.put(batch);
+                    nextSequenceNumber += 1;
+                }
+            }
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    /**
+     * Write the alignments of a mapped batch. Reads that failed to map are written as unmapped
+     * records, and their pairs are also written to the FASTQ files of unmapped pairs if set.
+     *
+     * @param batch Mapped batch.
+     * @param writeNanos Histogram of the time taken to write a batch.
+     * @throws IOException If the FASTQ files of unmapped pairs cannot be written.
+     */
+    private void writeBatch(Batch batch, Histogram writeNanos) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < batch.numPairs; i++) {
+            List<Result> aligns = batch.results.get(i);
+            if (aligns.size() != 2) {
+                continue;
+            }
+
+            List<FastqRecord> reads = batch.reads.get(i);
+            for (int j = 0; j < 2; j++) {
+                Result result = aligns.get(j);
+                Result mate = aligns.get(1 - j);
+                if (result != null) {
+                    boolean properPair = mate != null && isProperPair(result, mate, batch.rescue);
+                    this.samWriter.addAlignment(
+                            result, mate, j == 0, result.getMappingQuality(), properPair);
+                    continue;
+                }
+
+                FastqRecord read = reads.get(j);
+                this.samWriter.addUnmappedRead(
+                        read.getDescription(), read.getSequence(), read.getQuality(), mate, j == 0);
+                this.numUnmappedReads += 1;
+                if (mate != null) {
+                    this.numSingletons += 1;
+                }
+            }
+
+            if (!this.unmappedWriters.isEmpty() && aligns.contains(null)) {
+                for (int j = 0; j < reads.size(); j++) {
+                    this.unmappedWriters.get(j).write(reads.get(j));
+                }
+            }
+        }
+
+        writeNanos.record(System.nanoTime() - start);
+        this.numPairsWritten.addAndGet(batch.numPairs);
+    }
+
+    /**
+     * Wait until it is known whether the insert sizes are learned from the batches before a
+     * batch. The distribution is learned from whole batches in input order, and a batch only
+     * rescues mates if the batches before it completed the distribution, so that the output
+     * does not depend on which worker finishes first. Until then, workers wait for the batches
+     * before theirs to be learned from, which usually takes only the first batch. Only the
+     * batches of the first {@link #MAX_INSERT_SIZE_PAIRS} pairs are learned from, so that workers
+     * stop waiting for each other even if the distribution is never complete.
+     *
+     * @param sequenceNumber Position of the batch in the input.
+     * @return True if mates of the batch are rescued; false if they are mapped on their own,
+     *     including when mates are not rescued at all.
+     * @throws InterruptedException If interrupted while waiting for the batches before.
+     */
+    private boolean awaitInsertSizes(long sequenceNumber) throws InterruptedException {
+        if (this.insertSizes == null) {
+            return false;
+        }
+
+        long numBatchesBefore = Math.min(sequenceNumber, getNumInsertSizeBatches());
+        synchronized (this.insertSizes) {
+            while (!this.insertSizes.isReady() && this.numLearnedBatches < numBatchesBefore) {
+                this.insertSizes.wait();
+            }
+            return this.insertSizes.isReady();
+        }
+    }
+
+    /**
+     * Get the number of leading batches that the insert sizes are learned from at most.
+     *
+     * @return Number of batches that hold the first {@link #MAX_INSERT_SIZE_PAIRS} pairs.
+     */
+    private long getNumInsertSizeBatches() {
+        return (MAX_INSERT_SIZE_PAIRS + this.batchSize - 1) / this.batchSize;
+    }
+
+    /**
+     * Learn the insert sizes of the confidently mapped pairs of a batch, in input order, and let
+     * the workers waiting for the batch go on.
+     *
+     * @param batch Mapped batch, the first one that is not learned from yet.
+     */
+    private void learnInsertSizes(Batch batch) {
+        synchronized (this.insertSizes) {
+            for (List<Result> results : batch.results) {
+                if (results.size() == 2 && !results.contains(null)) {
+                    addInsertSize(results.get(0), results.get(1));
+                }
+            }
+            this.numLearnedBatches = batch.sequenceNumber + 1;
+            this.insertSizes.notifyAll();
+        }
+    }
+
+    /**
+     * Map the reads of a pair, either near each other once the insert size distribution is
+     * learned, or on their own. If there is a read cache, a pair with the same sequences as a
+     * cached one takes its outcome instead, and the outcome of any other pair is cached.
+     *
+     * @param curReads List of paired reads that are taken from the same fragment.
+     * @param seeder Seeder of the calling worker.
+     * @param rescueMates True to look for each mate near the other, see {@link
+     *     #awaitInsertSizes(long)}.
+     * @return List of results that include the mapped position (if mapped); else null.
+     */
+    private List<Result> mapPair(List<FastqRecord> curReads, Seeder seeder, boolean rescueMates) {
+        boolean rescue = rescueMates && curReads.size() == 2;
 
-    /** List of FASTQ reads for sample genomes. */
-    private final List<Iterator<Fastq>> samples;
+        // The outcome of a pair also depends on whether it is mapped with mate rescue.
+        CachedPair cached = null;
+        SequenceHasher hasher = seeder.hasher;
+        if (this.readCache != null) {
+            hasher.reset(rescue ? 1 : 0);
+            for (FastqRecord read : curReads) {
+                hasher.add(read.getSequenceView());
+            }
+            cached = this.readCache.get(hasher.getHigh(), hasher.getLow());
+        }
 
-    /** SAM writer instance */
-    private final SAMWriter samWriter;
+        List<Result> results;
+        if (cached != null) {
+            results = cached.getResults(curReads);
+            this.numRescuedMates.addAndGet(cached.numRescuedMates);
+        } else {
+            seeder.numRescuedMates = 0;
+            if (rescue) {
+                results = processMates(curReads.get(0), curReads.get(1), seeder);
+            } else {
+                results = processPairReads(curReads, seeder);
+            }
+            if (this.readCache != null) {
+                CachedPair pair = new CachedPair(results, seeder.numRescuedMates);
+                this.readCache.put(hasher.getHigh(), hasher.getLow(), pair);
+            }
+        }
 
-    /** Success threshold */
-    private static final double successThreshold = 0.2;
+        return results;
+    }
 
     /**
-     * Constructor for the mapper class.
+     * Process paired reads (that are taken from the same fragment). Every read is mapped on its
+     * own, also when a mate before it fails to map; once a read maps to the forward strand, its
+     * mates are only looked up on the reverse strand.
      *
-     * @param referenceFile Reference fasta file path.
-     * @param sampleFiles List of sample fastq file paths.
-     * @param outFile Output sam file path.
-     * @throws IOException If an exception occurs when fasta and fastq files are being read.
+     * @param curReads List of paired reads that are taken from the same fragment.
+     * @param seeder Seeder of the calling worker.
+     * @return List of results that include the mapped position (if mapped); else null.
      */
-    public Mapper(String referenceFile, List<String> sampleFiles, String outFile)
-            throws IOException {
-        Timer referenceLoadTimer = new Timer();
-        this.reference = ReadFasta.readFromFile(referenceFile);
-        referenceLoadTimer.stop();
+    private List<Result> processPairReads(List<FastqRecord> curReads, Seeder seeder) {
+        List<Result> results = new ArrayList<>(curReads.size());
 
-        Timer samplesLoadTimer = new Timer();
-        this.samples = new ArrayList<>();
-        for (String sampleFile : sampleFiles) {
-            this.samples.add(ReadFastq.readFromFile(sampleFile).iterator());
+        boolean skipToRevComp = false;
+        for (FastqRecord read : curReads) {
+            Result result = null;
+            try {
+                result = align(read, seeder, !skipToRevComp);
+            } catch (UnsupportedEncodingException e) {
+                Main.reportError(e.getMessage());
+            }
+
+            if (result != null && !result.getReversed()) {
+                skipToRevComp = true;
+            }
+            results.add(result);
         }
-        samplesLoadTimer.stop();
 
-        this.referenceTrie = new ArrayList<>();
-        this.referenceString = new ArrayList<>();
+        return results;
+    }
 
-        System.out.println(
-                "Loaded reference sequence in "
-                        + referenceLoadTimer.getTimeInSeconds()
-                        + " seconds.");
-        System.out.println(
-                "Loaded "
-                        + this.samples.size()
-                        + " sample sequence(s) in "
-                        + samplesLoadTimer.getTimeInSeconds()
-                        + " seconds.");
+    /**
+     * Process the two mates of a pair once the insert size distribution is learned. A mate that
+     * maps anchors a search for the other mate within the likely insert sizes, and the other mate
+     * is only seeded if that search fails. If the first mate fails to map, the second one is
+     * seeded and anchors the search for the first one instead.
+     *
+     * @param first First mate.
+     * @param second Second mate.
+     * @param seeder Seeder of the calling worker.
+     * @return Results of both mates, null for a mate that is not mapped.
+     */
+    private List<Result> processMates(FastqRecord first, FastqRecord second, Seeder seeder) {
+        Result firstResult = null;
+        Result secondResult = null;
+        try {
+            firstResult = align(first, seeder, true);
+            if (firstResult != null) {
+                secondResult = rescueMate(second, firstResult, seeder);
+                if (secondResult == null) {
+                    secondResult = align(second, seeder, firstResult.getReversed());
+                }
+            } else {
+                secondResult = align(second, seeder, true);
+                if (secondResult != null) {
+                    firstResult = rescueMate(first, secondResult, seeder);
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            Main.reportError(e.getMessage());
+        }
 
-        this.samWriter = new SAMWriter(outFile, this.reference);
+        List<Result> results = new ArrayList<>(2);
+        results.add(firstResult);
+        results.add(secondResult);
+        return results;
     }
 
     /**
-     * Generate kmer tries from loaded reference fasta file.
+     * Look for a mate on the opposite strand of its mapped pair, at the starts that give a likely
+     * insert size, by counting mismatches at every start rather than seeding the mate.
      *
-     * @param k Kmer size.
+     * @param mate Mate to look for.
+     * @param anchor Result of the mapped pair.
+     * @param seeder Seeder of the calling worker.
+     * @return Result of the mate, with the mapping quality of its pair if its start is unique and
+     *     0 otherwise; null if no start has few enough mismatches.
+     * @throws UnsupportedEncodingException If the mate is looked for on the reverse strand and
+     *     contains characters that are not nucleotide codes.
      */
-    public void generateReferenceKmerTrie(int k) {
-        Timer timer = new Timer();
+    private Result rescueMate(FastqRecord mate, Result anchor, Seeder seeder)
+            throws UnsupportedEncodingException {
+        int length = mate.getSequenceLength();
+        int contigStart = this.reference.getStart(anchor.getContig());
+        int contigLength = this.reference.getLength(anchor.getContig());
+
+        // Starts of the mate within the contig, for pairs that face each other.
+        boolean reversed = !anchor.getReversed();
+        int from;
+        int to;
+        if (reversed) {
+            from = anchor.getPos() + this.insertSizes.getMin() - length;
+            to = anchor.getPos() + this.insertSizes.getMax() - length + 1;
+        } else {
+            int anchorEnd = anchor.getPos() + anchor.getSequence().length();
+            from = anchorEnd - this.insertSizes.getMax();
+            to = anchorEnd - this.insertSizes.getMin() + 1;
+        }
+        from = Math.max(from, 0);
+        to = Math.min(to, contigLength - length + 1);
+        if (from >= to) {
+            return null;
+        }
 
-        for (Map.Entry<String, DNASequence> entry : this.reference.entrySet()) {
-            Iterator<String> kmers = Transform.getKmers(entry.getValue().getSequenceAsString(), k);
-            Trie trie = Trie.fromKmers(kmers);
-            this.referenceTrie.add(trie);
-            this.referenceString.add(entry.getValue().getSequenceAsString());
+        String sequence =
+                reversed
+                        ? Transform.getReverseComplement(mate.getSequence())
+                        : mate.getSequence();
+        MismatchScanner scanner = seeder.scanner;
+        int start =
+                scanner.search(
+                        this.reference.getSequence(),
+                        contigStart + from,
+                        contigStart + to,
+                        sequence,
+                        (int) (length * RESCUE_MISMATCH_RATE));
+        if (start < 0) {
+            return null;
         }
 
-        System.out.println(
-                "Generated reference sequence k-mer trie in "
-                        + timer.getTimeInSeconds()
-                        + " seconds.");
+        int mappingQuality =
+                scanner.getRunnerUpMismatches() > scanner.getNumMismatches()
+                        ? anchor.getMappingQuality()
+                        : 0;
+        Result result =
+                getResult(
+                        seeder,
+                        mate.getDescription(),
+                        sequence,
+                        reversed ? Transform.getReverse(mate.getQuality()) : mate.getQuality(),
+                        start,
+                        mappingQuality,
+                        reversed);
+        if (result != null) {
+            this.numRescuedMates.incrementAndGet();
+            seeder.numRescuedMates++;
+        }
+        return result;
     }
 
     /**
-     * Perform mapping of sample reads on reference genome.
+     * Add the insert size of a mapped pair to the distribution, if both mates map confidently to
+     * the same contig and face each other.
      *
-     * @param k Kmer size.
+     * @param first Result of the first mate.
+     * @param second Result of the second mate.
      */
-    public void map(int k) {
-        Timer timer = new Timer();
+    private void addInsertSize(Result first, Result second) {
+        if (Math.min(first.getMappingQuality(), second.getMappingQuality())
+                < MIN_INSERT_SIZE_MAPPING_QUALITY) {
+            return;
+        }
 
-        int processors = Runtime.getRuntime().availableProcessors();
+        int insertSize = getInsertSize(first, second);
+        if (insertSize >= 0) {
+            this.insertSizes.add(insertSize);
+        }
+    }
 
-        System.out.println("Running mapper on " + processors + " threads.");
+    /**
+     * Check if the mates of a pair are a proper pair, i.e. face each other on the same contig at
+     * a likely insert size. Insert sizes are likely within the learned distribution if the pair
+     * was mapped with it, and up to {@link #MAX_PROPER_INSERT_SIZE} otherwise, so that the flag
+     * of a pair does not depend on when the distribution was learned.
+     *
+     * @param first Result of one mate.
+     * @param second Result of the other mate.
+     * @param learned True if the pair was mapped once the insert sizes were learned.
+     * @return True if the mates are a proper pair; false otherwise.
+     */
+    private boolean isProperPair(Result first, Result second, boolean learned) {
+        int insertSize = getInsertSize(first, second);
+        if (insertSize < 0) {
+            return false;
+        } else if (learned) {
+            return insertSize >= this.insertSizes.getMin()
+                    && insertSize <= this.insertSizes.getMax();
+        }
+        return insertSize <= MAX_PROPER_INSERT_SIZE;
+    }
 
-        // Here, we create executor service and a list of callable tasks.
-        ExecutorService executorService = Executors.newFixedThreadPool(processors);
-        List<Callable<List<Result>>> tasks = new ArrayList<>();
+    /**
+     * Get the insert size of a pair whose mates face each other on the same contig, with the
+     * forward mate starting first.
+     *
+     * @param first Result of one mate.
+     * @param second Result of the other mate.
+     * @return Distance from the leftmost to the rightmost mapped base of the pair; -1 if the
+     *     mates are on different contigs or the same strand, or face away from each other.
+     */
+    private static int getInsertSize(Result first, Result second) {
+        if (first.getContig() != second.getContig()
+                || first.getReversed() == second.getReversed()) {
+            return -1;
+        }
 
-        try {
-            int numReads = 0;
-            while (true) {
-                // Add current pair of samples to the reads array.
-                List<Fastq> curReads = new ArrayList<>();
-                for (Iterator<Fastq> sample : this.samples) {
-                    if (sample.hasNext()) {
-                        curReads.add(sample.next());
-                    }
-                }
+        Result forward = first.getReversed() ? second : first;
+        Result reverse = first.getReversed() ? first : second;
+        if (forward.getPos() > reverse.getPos()) {
+            return -1;
+        }
 
-                // There are no more reads. Halt.
-                if (curReads.isEmpty()) {
-                    break;
-                }
+        int end =
+                Math.max(
+                        forward.getPos() + forward.getSequence().length(),
+                        reverse.getPos() + reverse.getSequence().length());
+        return end - forward.getPos();
+    }
 
-                // If one sample finished before others, then report error and halt.
-                if (this.samples.size() != curReads.size()) {
-                    Main.reportError("Two reads...");
-                    break;
-                }
+    /**
+     * Find alignment for read. The read is seeded with the seeds of the index first, and only
+     * if it fails to align, with each tier of fallback seeds in turn.
+     *
+     * @param read Individual read.
+     * @param seeder Seeder of the calling worker, of the seeds of the index.
+     * @param forward True to consider both strands; false to consider the reverse strand only.
+     * @return Result of the alignment if aligned; if not, returns null.
+     * @throws UnsupportedEncodingException If the read aligns to the reverse strand and contains
+     *     characters that are not nucleotide codes.
+     */
+    Result align(FastqRecord read, Seeder seeder, boolean forward)
+            throws UnsupportedEncodingException {
+        for (Seeder tier = seeder; tier != null; tier = tier.fallback) {
+            tier.tierReads.increment();
+            Result result = alignWith(read, tier, forward);
+            if (result != null) {
+                tier.tierAlignedReads.increment();
+                return result;
+            }
+        }
 
-                // Increase number of reads.
-                numReads += curReads.size();
+        return null;
+    }
 
-                // Add all tasks to our list to execute in parallel.
-                tasks.add(() -> processPairReads(curReads, k));
-            }
+    /**
+     * Find alignment for read with a single tier of seeds. The diagonal with the most seed votes
+     * on either strand is aligned, provided it has enough votes, and the margin over the
+     * runner-up diagonal gives the mapping quality. The read is seeded in place, and its strings
+     * and reverse complement are only built if it aligns.
+     *
+     * @param read Individual read.
+     * @param seeder Seeder of the tier.
+     * @param forward True to consider both strands; false to consider the reverse strand only.
+     * @return Result of the alignment if aligned; if not, returns null.
+     * @throws UnsupportedEncodingException If the read aligns to the reverse strand and contains
+     *     characters that are not nucleotide codes.
+     */
+    private Result alignWith(FastqRecord read, Seeder seeder, boolean forward)
+            throws UnsupportedEncodingException {
+        int numRequiredMatches =
+                (int) Math.round(read.getSequenceLength() * successThreshold * seeder.density);
 
-            // Invoke all processed to run them in parallel.
-            List<Future<List<Result>>> results = executorService.invokeAll(tasks);
+        seeder.seed(read.getSequenceView(), forward, numRequiredMatches);
+        DiagonalCounter forwardVotes = seeder.forwardVotes;
+        DiagonalCounter reverseVotes = seeder.reverseVotes;
 
-            // After all processes are complete, we iterate through them in a single process and
-            // write the results through samWriter.
-            for (Future<List<Result>> fr : results) {
-                List<Result> aligns = fr.get();
+        // Try the better strand first, then fall back to the other one, e.g. if the best
+        // diagonal runs across the end of a contig.
+        boolean reverseFirst = reverseVotes.getBestCount() > forwardVotes.getBestCount();
+        for (int i = 0; i < 2; i++) {
+            boolean reversed = reverseFirst == (i == 0);
+            DiagonalCounter votes = reversed ? reverseVotes : forwardVotes;
+            DiagonalCounter otherVotes = reversed ? forwardVotes : reverseVotes;
+            if (votes.getBestCount() < numRequiredMatches) {
+                continue;
+            }
 
-                if (aligns.contains(null) || aligns.size() != 2) {
-                    continue;
-                }
+            int secondCount = Math.max(votes.getSecondCount(), otherVotes.getBestCount());
+            int mappingQuality = getMappingQuality(votes.getBestCount(), secondCount);
+            String sequence = read.getSequence();
 
-                this.samWriter.addAlignment(aligns.get(0), aligns.get(1), true, 99);
-                this.samWriter.addAlignment(aligns.get(1), aligns.get(0), false, 99);
+            Result result =
+                    reversed
+                            ? getResult(
+                                    seeder,
+                                    read.getDescription(),
+                                    Transform.getReverseComplement(sequence),
+                                    Transform.getReverse(read.getQuality()),
+                                    votes.getBestDiagonal(),
+                                    mappingQuality,
+                                    true)
+                            : getResult(
+                                    seeder,
+                                    read.getDescription(),
+                                    sequence,
+                                    read.getQuality(),
+                                    votes.getBestDiagonal(),
+                                    mappingQuality,
+                                    false);
+            if (result != null) {
+                return result;
             }
+        }
 
-            System.out.println(
-                    "Mapped " + numReads + " reads in " + timer.getTimeInSeconds() + " seconds.");
-        } catch (ExecutionException e) {
-            Main.reportError("An execution exception occurred. See stack trace for more details.");
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            Main.reportError(
-                    "An interrupted exception occurred. See stack trace for more details.");
-            e.printStackTrace();
-        } finally {
-            this.samWriter.close();
-            executorService.shutdown();
+        return null;
+    }
+
+    /**
+     * Get the mapping quality of an alignment from the votes for its diagonal and for the
+     * runner-up diagonal. It scales from {@link #MAX_MAPPING_QUALITY} for a unique diagonal down
+     * to 0 when the runner-up has as many votes.
+     *
+     * @param bestCount Number of votes for the aligned diagonal.
+     * @param secondCount Number of votes for the runner-up diagonal.
+     * @return Mapping quality, between 0 and {@link #MAX_MAPPING_QUALITY}.
+     */
+    static int getMappingQuality(int bestCount, int secondCount) {
+        if (bestCount <= 0 || secondCount >= bestCount) {
+            return 0;
         }
+
+        double margin = (bestCount - secondCount) / (double) bestCount;
+        return (int) Math.round(MAX_MAPPING_QUALITY * margin);
     }
 
     /**
-     * Process paired reads (that are taken from the same fragment).
+     * Build the result of an aligned read. Alignments that do not lie within a single contig are
+     * rejected. Reads with more mismatches than the gap threshold are realigned with gaps around
+     * their diagonal.
      *
-     * @param curReads List of paired reads that are taken from the same fragment.
-     * @param k Kmer size.
-     * @return List of results that include the mapped position (if mapped); else null.
+     * @param seeder Seeder of the calling worker, whose scanner and aligner are reused.
+     * @param description Description of the read.
+     * @param sequence Read sequence, as aligned.
+     * @param quality Read quality, as aligned.
+     * @param beginPos Position of the alignment in the concatenated reference, or -1.
+     * @param mappingQuality Mapping quality of the alignment.
+     * @param reversed True if the reverse complement of the read was aligned; false otherwise.
+     * @return Result with the position relative to its contig; null if the read is unaligned.
      */
-    private List<Result> processPairReads(List<Fastq> curReads, int k) {
-        AtomicBoolean skipCurReads = new AtomicBoolean(false);
-        AtomicBoolean skipToRevComp = new AtomicBoolean(false);
-
-        return curReads.stream()
-                .map(
-                        read -> {
-                            if (!skipCurReads.get()) {
-                                try {
-                                    int beginPos;
-
-                                    if (!skipToRevComp.get()) {
-                                        String curSeq = read.getSequence();
-                                        beginPos = align(curSeq, k);
-
-                                        if (beginPos >= 0) {
-                                            skipToRevComp.set(true);
-                                            String cigar =
-                                                    getCigar(
-                                                            this.referenceString
-                                                                    .get(0)
-                                                                    .substring(
-                                                                            beginPos,
-                                                                            beginPos
-                                                                                    + read.getSequence()
-                                                                                            .length()),
-                                                            read.getSequence());
-                                            return new Result(
-                                                    read.getDescription(),
-                                                    read.getSequence(),
-                                                    read.getQuality(),
-                                                    beginPos,
-                                                    cigar,
-                                                    false);
-                                        }
-                                    }
-
-                                    String curSeqComp =
-                                            Transform.getReverseComplement(read.getSequence());
-                                    beginPos = align(curSeqComp, k);
-
-                                    if (beginPos >= 0) {
-                                        String cigar =
-                                                getCigar(
-                                                        this.referenceString
-                                                                .get(0)
-                                                                .substring(
-                                                                        beginPos,
-                                                                        beginPos
-                                                                                + read.getSequence()
-                                                                                        .length()),
-                                                        curSeqComp);
-                                        return new Result(
-                                                read.getDescription(),
-                                                curSeqComp,
-                                                Transform.getReverse(read.getQuality()),
-                                                beginPos,
-                                                cigar,
-                                                true);
-                                    }
-
-                                    skipCurReads.set(true);
-                                } catch (UnsupportedEncodingException e) {
-                                    Main.reportError(e.getMessage());
-                                }
-                            }
-                            return null;
-                        })
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * Find alignment for read.
-     *
-     * @param read Individual read sequence.
-     * @param k K-mer size.
-     * @return Position from beginning if aligned; if not, returns -1.
-     */
-    private int align(String read, int k) {
-        int numRequiredMatches = (int) Math.round(read.length() * successThreshold);
-
-        int curMatches = 0;
-        int curConsensus = -1;
-
-        int offset = 0;
-
-        Iterator<String> kmers = Transform.getKmers(read, k);
-
-        while (kmers.hasNext()) {
-            String kmer = kmers.next();
-            for (int position : this.referenceTrie.get(0).position(kmer)) {
-                if (position - offset == curConsensus) {
-                    curMatches += 1;
-
-                    if (curMatches >= numRequiredMatches) {
-                        return curConsensus;
-                    }
-                } else {
-                    curMatches = 0;
-                    curConsensus = position - offset;
-                }
-            }
+    private Result getResult(
+            Seeder seeder,
+            String description,
+            String sequence,
+            String quality,
+            int beginPos,
+            int mappingQuality,
+            boolean reversed) {
+        int contig = this.reference.getContig(beginPos);
+        if (contig < 0) {
+            return null;
+        }
+
+        int pos = beginPos - this.reference.getStart(contig);
+        if (pos + sequence.length() > this.reference.getLength(contig)) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        MismatchScanner scanner = seeder.scanner;
+        scanner.scan(this.reference.getSequence(), beginPos, sequence);
 
-            offset += 1;
+        // Reads with many mismatches may have an indel, which throws the rest of the read off
+        // the diagonal. They keep the gapped alignment only if it scores better than the read
+        // on its diagonal, scored the same way, by more than it costs to open a gap, so that
+        // a few chance matches do not move a read, e.g. next to a run of N in the reference.
+        if (scanner.getNumMismatches() > this.gapThreshold) {
+            seeder.gappedAlignments.increment();
+            BandedAligner aligner = seeder.aligner;
+            int contigStart = this.reference.getStart(contig);
+            int score =
+                    aligner.align(
+                            this.reference.getSequence(),
+                            contigStart,
+                            contigStart + this.reference.getLength(contig),
+                            beginPos,
+                            sequence);
+            if (score > aligner.getDiagonalScore() + BandedAligner.GAP_OPEN) {
+                seeder.cigarNanos.record(System.nanoTime() - start);
+                return new Result(
+                        description,
+                        sequence,
+                        quality,
+                        contig,
+                        aligner.getStart() - contigStart,
+                        mappingQuality,
+                        aligner.getCigar(),
+                        aligner.getNumEdits(),
+                        aligner.getMismatchString(),
+                        reversed);
+            }
         }
 
-        return -1;
+        seeder.cigarNanos.record(System.nanoTime() - start);
+        return new Result(
+                description,
+                sequence,
+                quality,
+                contig,
+                pos,
+                mappingQuality,
+                scanner.getCigar(),
+                scanner.getNumMismatches(),
+                scanner.getMismatchString(),
+                reversed);
     }
 
     /**
@@ -295,40 +1649,438 @@ public class Mapper {
      * @param read Read sequence.
      * @return Cigar string, only consisting of '=' and 'X' operands.
      */
-    private String getCigar(String ref, String read) {
-        int count = 0;
-        char op = '=';
+    static String getCigar(String ref, String read) {
+        MismatchScanner scanner = new MismatchScanner();
+        scanner.scan(PackedSequence.fromSequence(ref), 0, read);
+        return scanner.getCigar();
+    }
 
-        StringBuilder cigar = new StringBuilder();
+    /** Types of seed index that reads can be aligned with. */
+    public enum IndexType {
+        /** Hash index over 2-bit packed k-mers, see {@link KmerIndex}. */
+        KMER("kmer"),
+        /** FM-index over the reference, see {@link FMIndex}. */
+        FM("fm"),
+        /** Pointer-based trie over k-mer strings, see {@link Trie}. */
+        TRIE("trie");
 
-        for (int i = 0; i < ref.length(); i++) {
-            if (ref.charAt(i) == read.charAt(i)) {
-                if (op == '=') {
-                    count += 1;
-                } else {
-                    cigar.append(count);
-                    cigar.append(op);
-                    count = 1;
-                    op = '=';
+        private final String name;
+
+        IndexType(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Get the name of the index type, as given on the command line.
+         *
+         * @return Name of the index type.
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Get the index type with the given name.
+         *
+         * @param name Name of the index type.
+         * @return Index type with the given name.
+         * @throws IllegalArgumentException If there is no index type with the given name.
+         */
+        public static IndexType fromName(String name) {
+            for (IndexType type : values()) {
+                if (type.name.equals(name)) {
+                    return type;
                 }
-            } else {
-                if (op == 'X') {
-                    count += 1;
-                } else {
-                    cigar.append(count);
-                    cigar.append(op);
-                    count = 1;
-                    op = 'X';
+            }
+
+            throw new IllegalArgumentException("Unknown index type '" + name + "'.");
+        }
+    }
+
+    /** Parsers that sample FASTQ files can be read with. */
+    public enum FastqParserType {
+        /** NIO parser into reusable records, see {@link FastqParser}. */
+        NATIVE("native"),
+        /** BioJava's Sanger FASTQ reader, see {@link ReadFastq}. */
+        BIOJAVA("biojava");
+
+        private final String name;
+
+        FastqParserType(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Get the name of the parser, as given on the command line.
+         *
+         * @return Name of the parser.
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Get the parser with the given name.
+         *
+         * @param name Name of the parser.
+         * @return Parser with the given name.
+         * @throws IllegalArgumentException If there is no parser with the given name.
+         */
+        public static FastqParserType fromName(String name) {
+            for (FastqParserType type : values()) {
+                if (type.name.equals(name)) {
+                    return type;
+                }
+            }
+
+            throw new IllegalArgumentException("Unknown FASTQ parser '" + name + "'.");
+        }
+    }
+
+    /**
+     * Batch of read pairs passed between the stages of the mapping pipeline. Batches are reused,
+     * so their buffers and read records keep their capacity from one batch to the next.
+     */
+    private static class Batch {
+        /** Marker that tells the next stage that no more batches will follow. */
+        private static final Batch END = new Batch(0);
+
+        private long sequenceNumber;
+
+        /** Records of the read pairs; only the first numPairs hold reads of this batch. */
+        private final List<List<FastqRecord>> reads;
+
+        private int numPairs;
+        private final List<List<Result>> results;
+
+        /** True if the mates of the batch were mapped with the learned insert sizes. */
+        private boolean rescue;
+
+        /**
+         * Construct a new empty batch.
+         *
+         * @param capacity Number of read pairs the batch is expected to hold.
+         */
+        public Batch(int capacity) {
+            this.sequenceNumber = -1;
+            this.reads = new ArrayList<>(capacity);
+            this.results = new ArrayList<>(capacity);
+        }
+
+        /**
+         * Empty the batch so that it can be filled again.
+         *
+         * @param sequenceNumber Position of the batch in the input.
+         */
+        public void reset(long sequenceNumber) {
+            this.sequenceNumber = sequenceNumber;
+            this.numPairs = 0;
+            this.results.clear();
+            this.rescue = false;
+        }
+
+        /**
+         * Get the records to read the next pair into, allocating them on first use.
+         *
+         * @param numSamples Number of reads in a pair.
+         * @return Records of the next pair.
+         */
+        public List<FastqRecord> nextPair(int numSamples) {
+            if (this.numPairs == this.reads.size()) {
+                List<FastqRecord> pair = new ArrayList<>(numSamples);
+                for (int i = 0; i < numSamples; i++) {
+                    pair.add(new FastqRecord());
+                }
+                this.reads.add(pair);
+            }
+
+            return this.reads.get(this.numPairs);
+        }
+    }
+
+    /**
+     * Outcome of a mapped pair as kept by the read cache. Only the alignment of each read is
+     * kept, without its name, sequence or quality, so that it can be given to any pair with the
+     * same sequences.
+     */
+    private static class CachedPair {
+        /** Contig of each read, or -1 if the read is unmapped. */
+        private final int[] contigs;
+
+        private final int[] positions;
+        private final int[] mappingQualities;
+        private final String[] cigars;
+        private final int[] numMismatches;
+        private final String[] mismatchStrings;
+        private final boolean[] reversed;
+
+        /** Number of mates of the pair that were found near their pair rather than by seeding. */
+        private final int numRescuedMates;
+
+        /**
+         * Keep the outcome of a pair.
+         *
+         * @param results Results of the reads of the pair, null for a read that is not mapped.
+         * @param numRescuedMates Number of mates of the pair that were rescued.
+         */
+        public CachedPair(List<Result> results, int numRescuedMates) {
+            int n = results.size();
+            this.contigs = new int[n];
+            this.positions = new int[n];
+            this.mappingQualities = new int[n];
+            this.cigars = new String[n];
+            this.numMismatches = new int[n];
+            this.mismatchStrings = new String[n];
+            this.reversed = new boolean[n];
+            this.numRescuedMates = numRescuedMates;
+
+            for (int i = 0; i < n; i++) {
+                Result result = results.get(i);
+                if (result == null) {
+                    this.contigs[i] = -1;
+                    continue;
+                }
+                this.contigs[i] = result.getContig();
+                this.positions[i] = result.getPos();
+                this.mappingQualities[i] = result.getMappingQuality();
+                this.cigars[i] = result.getCigar();
+                this.numMismatches[i] = result.getNumMismatches();
+                this.mismatchStrings[i] = result.getMismatchString();
+                this.reversed[i] = result.getReversed();
+            }
+        }
+
+        /**
+         * Get the results of a pair with the same sequences as the cached one.
+         *
+         * @param reads Reads of the pair.
+         * @return Results of the reads, null for a read that is not mapped.
+         */
+        public List<Result> getResults(List<FastqRecord> reads) {
+            List<Result> results = new ArrayList<>(reads.size());
+            for (int i = 0; i < reads.size(); i++) {
+                FastqRecord read = reads.get(i);
+                if (this.contigs[i] < 0) {
+                    results.add(null);
+                    continue;
+                }
+
+                String sequence = read.getSequence();
+                String quality = read.getQuality();
+                if (this.reversed[i]) {
+                    try {
+                        sequence = Transform.getReverseComplement(sequence);
+                    } catch (UnsupportedEncodingException e) {
+                        // The same sequence was reverse complemented when it was mapped.
+                        throw new IllegalStateException(e);
+                    }
+                    quality = Transform.getReverse(quality);
                 }
+                results.add(
+                        new Result(
+                                read.getDescription(),
+                                sequence,
+                                quality,
+                                this.contigs[i],
+                                this.positions[i],
+                                this.mappingQualities[i],
+                                this.cigars[i],
+                                this.numMismatches[i],
+                                this.mismatchStrings[i],
+                                this.reversed[i]));
             }
+            return results;
+        }
+    }
+
+    /**
+     * Seeding engine of a mapping worker. It walks a read once, looks up every seed on both
+     * strands and lets the hits vote for their diagonal, skipping seeds that occur more than
+     * {@link #maxSeedOccurrences} times. Reads are seeded with the shape of the index, e.g. only
+     * their minimizers. Its buffers are reused from one read to the next, and
+     * it records the seeding and CIGAR metrics of its reads into the metrics of its worker.
+     */
+    class Seeder {
+        private final SeedEncoder encoder;
+
+        /** Expected fraction of the offsets of a read that yield a seed. */
+        private final double density;
+
+        private final DiagonalCounter forwardVotes;
+        private final DiagonalCounter reverseVotes;
+        private final int[] range;
+
+        /** Hits of the k-mer being looked up, one list per reference trie. */
+        private final List<List<Integer>> trieHits;
+
+        private final MismatchScanner scanner;
+        private final BandedAligner aligner;
+        private final SequenceHasher hasher;
+
+        /** Index that the seeds are looked up in. */
+        private final SeedIndex index;
+
+        /** Seeder of the next tier of shorter seeds, or null if this is the last tier. */
+        private Seeder fallback;
+
+        /** Number of reads seeded with this tier, and how many of them aligned. */
+        private final Metrics.Counter tierReads;
+
+        private final Metrics.Counter tierAlignedReads;
+
+        /** Number of mates rescued since the last pair was looked up in the read cache. */
+        private int numRescuedMates;
+
+        private final Histogram seedLookups;
+        private final Histogram seedHits;
+        private final Histogram candidateDiagonals;
+        private final Histogram cigarNanos;
+        private final Metrics.Counter gappedAlignments;
+
+        /** Number of seeds looked up and of their hits for the read being seeded. */
+        private int numLookups;
+
+        private int numHits;
+
+        /**
+         * Construct a new seeder of contiguous k-mers, whose metrics are discarded.
+         *
+         * @param k K-mer size.
+         */
+        public Seeder(int k) {
+            this(SeedShape.contiguous(k), new Metrics("seeder"));
+        }
+
+        /**
+         * Construct a new seeder of the seeds of the index.
+         *
+         * @param shape Shape of the seeds of the index.
+         * @param metrics Metrics to record into.
+         */
+        public Seeder(SeedShape shape, Metrics metrics) {
+            this(shape, referenceIndex, 0, metrics);
+        }
+
+        /**
+         * Construct a new seeder of a tier of seeds.
+         *
+         * @param shape Shape of the seeds.
+         * @param index Index of the seeds, or null for the reference tries.
+         * @param tier Tier of the seeds, 0 for the seeds of the index and 1 and up for the
+         *     fallback seeds.
+         * @param metrics Metrics to record into.
+         */
+        public Seeder(SeedShape shape, SeedIndex index, int tier, Metrics metrics) {
+            this.encoder = shape.newEncoder();
+            this.index = index;
+            this.density = shape.getDensity();
+            this.forwardVotes = new DiagonalCounter();
+            this.reverseVotes = new DiagonalCounter();
+            this.range = new int[2];
+            this.trieHits = new ArrayList<>();
+            this.scanner = new MismatchScanner();
+            this.aligner = new BandedAligner(BAND_WIDTH);
+            this.hasher = new SequenceHasher();
+            this.seedLookups = metrics.getHistogram("seed_lookups_per_read");
+            this.seedHits = metrics.getHistogram("seed_hits_per_read");
+            this.candidateDiagonals = metrics.getHistogram("candidate_diagonals_per_read");
+            this.cigarNanos = metrics.getHistogram("cigar_ns");
+            this.gappedAlignments = metrics.getCounter("gapped_alignments");
+            this.tierReads = metrics.getCounter(getTierCounterName(tier, "reads"));
+            this.tierAlignedReads = metrics.getCounter(getTierCounterName(tier, "aligned_reads"));
         }
 
-        if (count > 0) {
-            cigar.append(count);
-            cigar.append(op);
+        /**
+         * Collect the votes of the seeds of a read. Diagonals of the reverse strand are relative
+         * to the reverse complement of the read. Seeding stops early once the best diagonal has
+         * enough votes, no other diagonal can catch up with it, and the remaining seeds cannot
+         * change the mapping quality given by the margin of the two.
+         *
+         * @param read Read sequence.
+         * @param forward True to seed both strands; false to seed the reverse strand only.
+         * @param numRequiredMatches Number of votes needed to align the read.
+         */
+        public void seed(CharSequence read, boolean forward, int numRequiredMatches) {
+            this.forwardVotes.clear();
+            this.reverseVotes.clear();
+            this.numLookups = 0;
+            this.numHits = 0;
+
+            // Offset of the last seed, which is the first seed of the reverse complement.
+            int lastOffset = read.length() - this.encoder.getSpan();
+
+            this.encoder.reset(read);
+            while (this.encoder.next()) {
+                int offset = this.encoder.getOffset();
+                if (forward) {
+                    vote(this.forwardVotes, this.encoder.getCode(), offset);
+                }
+                vote(this.reverseVotes, this.encoder.getReverseCode(), lastOffset - offset);
+
+                // Every remaining seed adds at most one vote to any diagonal, so the mapping
+                // quality is fixed once adding them all to either diagonal gives the same one.
+                DiagonalCounter best =
+                        this.reverseVotes.getBestCount() > this.forwardVotes.getBestCount()
+                                ? this.reverseVotes
+                                : this.forwardVotes;
+                DiagonalCounter other =
+                        best == this.forwardVotes ? this.reverseVotes : this.forwardVotes;
+                int runnerUp = Math.max(best.getSecondCount(), other.getBestCount());
+                int bestCount = best.getBestCount();
+                int remaining = lastOffset - offset;
+                if (bestCount >= numRequiredMatches
+                        && runnerUp + remaining < bestCount
+                        && getMappingQuality(bestCount, runnerUp + remaining)
+                                == getMappingQuality(bestCount + remaining, runnerUp)) {
+                    break;
+                }
+            }
+
+            this.seedLookups.record(this.numLookups);
+            this.seedHits.record(this.numHits);
+            this.candidateDiagonals.record(this.forwardVotes.size() + this.reverseVotes.size());
         }
 
-        return cigar.toString();
+        /**
+         * Let the hits of a k-mer vote for their diagonal, using the reference trie or seed
+         * index.
+         *
+         * @param votes Votes of the strand.
+         * @param code Packed k-mer.
+         * @param offset Position of the k-mer in the read, as aligned on the strand.
+         */
+        private void vote(DiagonalCounter votes, long code, int offset) {
+            this.numLookups += 1;
+            if (indexType == IndexType.TRIE) {
+                int k = this.encoder.getK();
+                int count = 0;
+                this.trieHits.clear();
+                for (Trie trie : referenceTrie) {
+                    List<Integer> hits = trie.position(code, k);
+                    this.trieHits.add(hits);
+                    count += hits.size();
+                }
+                if (count > maxSeedOccurrences) {
+                    return;
+                }
+                this.numHits += count;
+
+                for (List<Integer> hits : this.trieHits) {
+                    for (int position : hits) {
+                        votes.add(position - offset);
+                    }
+                }
+            } else {
+                if (this.index.lookup(code, this.range) > maxSeedOccurrences) {
+                    return;
+                }
+                this.numHits += this.range[1] - this.range[0];
+
+                for (int i = this.range[0]; i < this.range[1]; i++) {
+                    votes.add(this.index.getPosition(i) - offset);
+                }
+            }
+        }
     }
 
     /** Class to represent mapping results. */
@@ -336,22 +2088,65 @@ public class Mapper {
         private final String description;
         private final String sequence;
         private final String quality;
+        /** Index of the contig in the reference. */
+        private final int contig;
+
+        /** Position of the first aligned base within the contig, 0-based. */
         private final int pos;
+
+        private final int mappingQuality;
         private final String cigar;
+
+        /** Number of mismatching bases, i.e. the NM tag, or -1 if unknown. */
+        private final int numMismatches;
+
+        /** Mismatching positions as an MD tag, or null if unknown. */
+        private final String mismatchString;
+
         private final boolean reversed;
 
         public Result(
                 String description,
                 String sequence,
                 String quality,
+                int contig,
+                int pos,
+                int mappingQuality,
+                String cigar,
+                boolean reversed) {
+            this(
+                    description,
+                    sequence,
+                    quality,
+                    contig,
+                    pos,
+                    mappingQuality,
+                    cigar,
+                    -1,
+                    null,
+                    reversed);
+        }
+
+        public Result(
+                String description,
+                String sequence,
+                String quality,
+                int contig,
                 int pos,
+                int mappingQuality,
                 String cigar,
+                int numMismatches,
+                String mismatchString,
                 boolean reversed) {
             this.description = description;
             this.sequence = sequence;
             this.quality = quality;
+            this.contig = contig;
             this.pos = pos;
+            this.mappingQuality = mappingQuality;
             this.cigar = cigar;
+            this.numMismatches = numMismatches;
+            this.mismatchString = mismatchString;
             this.reversed = reversed;
         }
 
@@ -367,14 +2162,30 @@ public class Mapper {
             return this.quality;
         }
 
+        public int getContig() {
+            return this.contig;
+        }
+
         public int getPos() {
             return this.pos;
         }
 
+        public int getMappingQuality() {
+            return this.mappingQuality;
+        }
+
         public String getCigar() {
             return this.cigar;
         }
 
+        public int getNumMismatches() {
+            return this.numMismatches;
+        }
+
+        public String getMismatchString() {
+            return this.mismatchString;
+        }
+
         public boolean getReversed() {
             return this.reversed;
         }
@@ -0,0 +1,76 @@
+package edu.rice.comp416.mapper.reader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opens input files, whether they are compressed or not. Gzip and BGZF files are recognized by
+ * their magic bytes and decompressed on background threads, see {@link InflatingChannel}.
+ */
+public class CompressedInput {
+
+    /**
+     * Open a file as a channel over its decompressed contents.
+     *
+     * @param filename File to read.
+     * @return Channel over the contents of the file.
+     * @throws IOException If the file does not exist or cannot be opened.
+     */
+    public static ReadableByteChannel openChannel(String filename) throws IOException {
+        File file = new File(filename);
+        if (!file.exists()) {
+            throw new FileNotFoundException("Input file '" + filename + "' does not exist.");
+        }
+
+        if (isCompressed(filename)) {
+            return new InflatingChannel(filename, getNumInflateThreads());
+        }
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Open a file as a stream over its decompressed contents.
+     *
+     * @param filename File to read.
+     * @return Stream over the contents of the file.
+     * @throws IOException If the file does not exist or cannot be opened.
+     */
+    public static InputStream openStream(String filename) throws IOException {
+        return Channels.newInputStream(openChannel(filename));
+    }
+
+    /**
+     * Check if a file is gzip compressed, which includes BGZF.
+     *
+     * @param filename File to check.
+     * @return True if the file starts with the gzip magic bytes; false otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isCompressed(String filename) throws IOException {
+        try (FileChannel channel =
+                FileChannel.open(new File(filename).toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(2);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Keep reading until both bytes are in.
+            }
+            return magic.position() == 2 && magic.get(0) == 31 && magic.get(1) == (byte) 139;
+        }
+    }
+
+    /**
+     * Get the number of threads that inflate the blocks of a BGZF file. Most cores are left to
+     * the mapping workers.
+     *
+     * @return Number of threads.
+     */
+    private static int getNumInflateThreads() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+}
@@ -0,0 +1,151 @@
+package edu.rice.comp416.mapper.reader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Streaming FASTQ parser over a file channel. Gzip and BGZF files are decompressed on background
+ * threads, see {@link CompressedInput}. The file is read through a large direct buffer and
+ * every record is copied straight from it into a reusable {@link FastqRecord}, without building
+ * strings or validating qualities with regular expressions. Records must have their sequence and
+ * quality on a single line each, as written by sequencers; both LF and CRLF line endings are
+ * accepted.
+ */
+public class FastqParser implements FastqSource {
+
+    /** Size of the read buffer. */
+    public static final int BUFFER_SIZE = 1 << 22;
+
+    private final String filename;
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+
+    /** Scratch field for the separator line, whose contents are ignored. */
+    private final FastqRecord.Field separator;
+
+    /** Number of records read so far. */
+    private long numRecords;
+
+    /**
+     * Open a FASTQ file for parsing.
+     *
+     * @param filename File to read, which may be gzip compressed.
+     * @throws IOException If the file does not exist or cannot be opened.
+     */
+    public FastqParser(String filename) throws IOException {
+        this.filename = filename;
+        this.channel = CompressedInput.openChannel(filename);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.flip();
+        this.separator = new FastqRecord.Field();
+        this.numRecords = 0;
+    }
+
+    @Override
+    public boolean next(FastqRecord record) throws IOException {
+        // Skip blank lines between records, e.g. at the end of the file.
+        while (true) {
+            if (!this.buffer.hasRemaining() && !fill()) {
+                return false;
+            }
+            byte b = this.buffer.get(this.buffer.position());
+            if (b != '\n' && b != '\r') {
+                break;
+            }
+            this.buffer.get();
+        }
+
+        this.numRecords += 1;
+        readLine(record.description(), '@');
+        if (!readLine(record.sequence(), 0)
+                || !readLine(this.separator, '+')
+                || !readLine(record.quality(), 0)) {
+            throw new EOFException(
+                    "Input file '" + this.filename + "' ends inside read " + this.numRecords + ".");
+        }
+
+        if (record.sequence().length() != record.quality().length()) {
+            throw new IOException(
+                    "Read "
+                            + this.numRecords
+                            + " of input file '"
+                            + this.filename
+                            + "' has a quality of different length than its sequence.");
+        }
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Read a line into a field, without the line ending.
+     *
+     * @param field Field to fill.
+     * @param prefix Character that the line must start with and that is dropped, or 0 for none.
+     * @return True if a line was read; false if the file ended before it.
+     * @throws IOException If the file cannot be read or the line lacks the prefix.
+     */
+    private boolean readLine(FastqRecord.Field field, int prefix) throws IOException {
+        field.clear();
+        if (!this.buffer.hasRemaining() && !fill()) {
+            return false;
+        }
+
+        if (prefix != 0) {
+            if (this.buffer.get(this.buffer.position()) != prefix) {
+                throw new IOException(
+                        "Read "
+                                + this.numRecords
+                                + " of input file '"
+                                + this.filename
+                                + "' is malformed: expected a line starting with '"
+                                + (char) prefix
+                                + "'.");
+            }
+            this.buffer.get();
+        }
+
+        while (true) {
+            int start = this.buffer.position();
+            int limit = this.buffer.limit();
+            int end = start;
+            while (end < limit && this.buffer.get(end) != '\n') {
+                end += 1;
+            }
+
+            field.append(this.buffer, end - start);
+            if (end < limit) {
+                this.buffer.get();
+                break;
+            }
+            if (!fill()) {
+                break;
+            }
+        }
+
+        field.trimCarriageReturn();
+        return true;
+    }
+
+    /**
+     * Refill the buffer once all of its bytes are consumed.
+     *
+     * @return True if bytes were read; false at the end of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    private boolean fill() throws IOException {
+        this.buffer.clear();
+        int n = 0;
+        while (n == 0) {
+            n = this.channel.read(this.buffer);
+        }
+        this.buffer.flip();
+        return n > 0;
+    }
+}
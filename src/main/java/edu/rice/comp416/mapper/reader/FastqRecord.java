@@ -0,0 +1,192 @@
+package edu.rice.comp416.mapper.reader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Mutable FASTQ record that is refilled for every read it holds. Its name, sequence and quality
+ * are kept as byte slices in buffers that only grow, so reading into the same record allocates
+ * nothing once the buffers fit the longest read. The sequence can be read in place through
+ * {@link #getSequenceView()}; the string accessors copy.
+ */
+public class FastqRecord {
+    private final Field description;
+    private final Field sequence;
+    private final Field quality;
+
+    /** Construct a new empty record. */
+    public FastqRecord() {
+        this.description = new Field();
+        this.sequence = new Field();
+        this.quality = new Field();
+    }
+
+    /**
+     * Fill the record from strings.
+     *
+     * @param description Description of the read, without the leading '@'.
+     * @param sequence Read sequence.
+     * @param quality Read quality.
+     */
+    public void set(String description, String sequence, String quality) {
+        this.description.set(description);
+        this.sequence.set(sequence);
+        this.quality.set(quality);
+    }
+
+    /**
+     * Get the description of the read.
+     *
+     * @return Description, without the leading '@'.
+     */
+    public String getDescription() {
+        return this.description.toString();
+    }
+
+    /**
+     * Get the read sequence.
+     *
+     * @return Read sequence.
+     */
+    public String getSequence() {
+        return this.sequence.toString();
+    }
+
+    /**
+     * Get the read quality.
+     *
+     * @return Read quality.
+     */
+    public String getQuality() {
+        return this.quality.toString();
+    }
+
+    /**
+     * Get a view of the read sequence, which is valid until the record is refilled.
+     *
+     * @return Read sequence, without copying.
+     */
+    public CharSequence getSequenceView() {
+        return this.sequence;
+    }
+
+    /**
+     * Get the length of the read sequence.
+     *
+     * @return Number of bases.
+     */
+    public int getSequenceLength() {
+        return this.sequence.length;
+    }
+
+    /**
+     * Get the buffer of the description, for parsers to fill.
+     *
+     * @return Description buffer.
+     */
+    Field description() {
+        return this.description;
+    }
+
+    /**
+     * Get the buffer of the sequence, for parsers to fill.
+     *
+     * @return Sequence buffer.
+     */
+    Field sequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Get the buffer of the quality, for parsers to fill.
+     *
+     * @return Quality buffer.
+     */
+    Field quality() {
+        return this.quality;
+    }
+
+    /** Growable byte slice of one field of a record, readable as ASCII characters. */
+    static class Field implements CharSequence {
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        /** Empty the field. */
+        void clear() {
+            this.length = 0;
+        }
+
+        /**
+         * Append bytes from a buffer, consuming them.
+         *
+         * @param buffer Buffer to read from.
+         * @param count Number of bytes to append.
+         */
+        void append(ByteBuffer buffer, int count) {
+            if (this.length + count > this.bytes.length) {
+                int capacity = Math.max(2 * this.bytes.length, this.length + count);
+                this.bytes = Arrays.copyOf(this.bytes, capacity);
+            }
+            buffer.get(this.bytes, this.length, count);
+            this.length += count;
+        }
+
+        /**
+         * Replace the contents of the field with a string.
+         *
+         * @param s ASCII string.
+         */
+        void set(String s) {
+            if (s.length() > this.bytes.length) {
+                this.bytes = new byte[Math.max(2 * this.bytes.length, s.length())];
+            }
+            for (int i = 0; i < s.length(); i++) {
+                this.bytes[i] = (byte) s.charAt(i);
+            }
+            this.length = s.length();
+        }
+
+        /**
+         * Write the bytes of the field.
+         *
+         * @param out Stream to write to.
+         * @throws IOException If the stream cannot be written.
+         */
+        void writeTo(OutputStream out) throws IOException {
+            out.write(this.bytes, 0, this.length);
+        }
+
+        /** Remove a trailing carriage return left by a CRLF line ending. */
+        void trimCarriageReturn() {
+            if (this.length > 0 && this.bytes[this.length - 1] == '\r') {
+                this.length -= 1;
+            }
+        }
+
+        @Override
+        public int length() {
+            return this.length;
+        }
+
+        @Override
+        public char charAt(int i) {
+            if (i < 0 || i >= this.length) {
+                throw new IndexOutOfBoundsException("Position " + i + " is out of bounds.");
+            }
+            return (char) (this.bytes[i] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(this.bytes, 0, this.length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
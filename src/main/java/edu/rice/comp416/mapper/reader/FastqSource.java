@@ -0,0 +1,17 @@
+package edu.rice.comp416.mapper.reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/** Stream of FASTQ records that are read into records owned by the caller. */
+public interface FastqSource extends Closeable {
+
+    /**
+     * Read the next record.
+     *
+     * @param record Record to fill.
+     * @return True if a record was read; false at the end of the input.
+     * @throws IOException If the input cannot be read or is not valid FASTQ.
+     */
+    boolean next(FastqRecord record) throws IOException;
+}
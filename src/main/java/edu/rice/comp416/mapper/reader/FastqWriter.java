@@ -0,0 +1,57 @@
+package edu.rice.comp416.mapper.reader;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writer of FASTQ records, e.g. of reads that did not map. Records are written straight from
+ * their buffers, without building strings. Files ending in .gz are gzip-compressed.
+ */
+public class FastqWriter implements Closeable {
+
+    /** Size of the output buffer. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final OutputStream out;
+
+    /**
+     * Create a new FASTQ file.
+     *
+     * @param path Path to the new FASTQ file.
+     * @throws IOException If the file cannot be created.
+     */
+    public FastqWriter(String path) throws IOException {
+        OutputStream file = new FileOutputStream(path);
+        if (path.endsWith(".gz")) {
+            file = new GZIPOutputStream(file, BUFFER_SIZE);
+        }
+        this.out = new BufferedOutputStream(file, BUFFER_SIZE);
+    }
+
+    /**
+     * Write a record.
+     *
+     * @param record Record to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(FastqRecord record) throws IOException {
+        this.out.write('@');
+        record.description().writeTo(this.out);
+        this.out.write('\n');
+        record.sequence().writeTo(this.out);
+        this.out.write('\n');
+        this.out.write('+');
+        this.out.write('\n');
+        record.quality().writeTo(this.out);
+        this.out.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.out.close();
+    }
+}
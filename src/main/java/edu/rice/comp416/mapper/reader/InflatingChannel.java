@@ -0,0 +1,346 @@
+package edu.rice.comp416.mapper.reader;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Channel over the decompressed contents of a gzip file. Decompression runs ahead of the reader
+ * on background threads, so that inflating the input overlaps with parsing and mapping it. BGZF
+ * files, which are made of independently compressed blocks of at most 64 KB, are split into their
+ * blocks and inflated in parallel; the blocks are still handed out in file order. Other gzip
+ * files are inflated by a single thread, as a deflate stream cannot be split.
+ */
+public class InflatingChannel implements ReadableByteChannel {
+
+    /** Size of the chunks that a plain gzip stream is inflated into. */
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    /** Number of chunks or blocks that may be inflated ahead of the reader, per thread. */
+    private static final int READ_AHEAD = 16;
+
+    /** Length of the fixed part of a gzip member header. */
+    private static final int HEADER_LENGTH = 12;
+
+    /** Marker chunk that ends the stream. */
+    private static final byte[] END = new byte[0];
+
+    private final String filename;
+
+    /** Inflated chunks in file order, which may still be in progress. */
+    private final BlockingQueue<Future<byte[]>> chunks;
+
+    /** Thread that reads the compressed file. */
+    private final Thread producer;
+
+    /** Threads that inflate BGZF blocks, or null for plain gzip files. */
+    private final ExecutorService inflaters;
+
+    /** Inflater of each inflating thread, reset for every block. */
+    private final ThreadLocal<Inflater> inflater =
+            ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /** Chunk that is currently being read. */
+    private ByteBuffer current;
+
+    private boolean finished;
+    private boolean open;
+
+    /**
+     * Open a gzip file and start inflating it.
+     *
+     * @param filename Gzip or BGZF file to read.
+     * @param numThreads Number of threads that inflate the blocks of a BGZF file.
+     * @throws IOException If the file cannot be opened.
+     */
+    public InflatingChannel(String filename, int numThreads) throws IOException {
+        this.filename = filename;
+        this.current = ByteBuffer.wrap(END);
+        this.finished = false;
+        this.open = true;
+
+        InputStream in = new BufferedInputStream(new FileInputStream(filename), 1 << 16);
+        boolean bgzf = isBgzf(in);
+        this.chunks = new ArrayBlockingQueue<>(READ_AHEAD * (bgzf ? numThreads : 1));
+        this.inflaters =
+                bgzf
+                        ? Executors.newFixedThreadPool(
+                                numThreads,
+                                r -> {
+                                    Thread thread = new Thread(r, "inflater");
+                                    thread.setDaemon(true);
+                                    return thread;
+                                })
+                        : null;
+
+        this.producer = new Thread(() -> produce(in, bgzf), "decompressor");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!this.open) {
+            throw new ClosedChannelException();
+        }
+
+        while (!this.current.hasRemaining()) {
+            if (this.finished) {
+                return -1;
+            }
+            this.current = ByteBuffer.wrap(take());
+        }
+
+        int n = Math.min(dst.remaining(), this.current.remaining());
+        dst.put(this.current.array(), this.current.position(), n);
+        this.current.position(this.current.position() + n);
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    @Override
+    public void close() {
+        this.open = false;
+        this.producer.interrupt();
+        if (this.inflaters != null) {
+            this.inflaters.shutdownNow();
+        }
+    }
+
+    /**
+     * Check if a stream starts with a BGZF block, without consuming it.
+     *
+     * @param in Stream that supports mark and reset.
+     * @return True if the stream is BGZF; false otherwise.
+     * @throws IOException If the stream cannot be read.
+     */
+    static boolean isBgzf(InputStream in) throws IOException {
+        in.mark(HEADER_LENGTH + 6);
+        byte[] header = in.readNBytes(HEADER_LENGTH + 6);
+        in.reset();
+
+        // A gzip header with an extra field whose first subfield is 'BC' and holds 2 bytes.
+        return header.length == HEADER_LENGTH + 6
+                && header[0] == 31
+                && header[1] == (byte) 139
+                && header[2] == 8
+                && (header[3] & 4) != 0
+                && header[12] == 'B'
+                && header[13] == 'C'
+                && getShort(header, 14) == 2;
+    }
+
+    /**
+     * Producer stage: read the compressed file and queue its inflated chunks, followed by the end
+     * marker or the exception that stopped it.
+     *
+     * @param in Compressed file.
+     * @param bgzf True if the file is BGZF; false otherwise.
+     */
+    private void produce(InputStream in, boolean bgzf) {
+        try (in) {
+            if (bgzf) {
+                readBlocks(in);
+            } else {
+                inflateStream(in);
+            }
+            this.chunks.put(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException e) {
+            // The channel was closed.
+        } catch (IOException | RuntimeException e) {
+            CompletableFuture<byte[]> failure = new CompletableFuture<>();
+            failure.completeExceptionally(e);
+            try {
+                this.chunks.put(failure);
+            } catch (InterruptedException ignored) {
+                // The channel was closed.
+            }
+        }
+    }
+
+    /**
+     * Inflate a plain gzip stream into chunks on the current thread.
+     *
+     * @param in Compressed file.
+     * @throws IOException If the file cannot be read or is not valid gzip.
+     * @throws InterruptedException If the channel is closed.
+     */
+    private void inflateStream(InputStream in) throws IOException, InterruptedException {
+        GZIPInputStream gzip = new GZIPInputStream(in, 1 << 16);
+        while (true) {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int n = gzip.readNBytes(chunk, 0, CHUNK_SIZE);
+            if (n > 0) {
+                this.chunks.put(
+                        CompletableFuture.completedFuture(
+                                n == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, n)));
+            }
+            if (n < CHUNK_SIZE) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Split a BGZF file into its blocks and hand them to the inflating threads.
+     *
+     * @param in Compressed file.
+     * @throws IOException If the file cannot be read or is not valid BGZF.
+     * @throws InterruptedException If the channel is closed.
+     */
+    private void readBlocks(InputStream in) throws IOException, InterruptedException {
+        byte[] header = new byte[HEADER_LENGTH];
+        while (true) {
+            int n = in.readNBytes(header, 0, HEADER_LENGTH);
+            if (n == 0) {
+                break;
+            }
+
+            int extraLength = getShort(header, 10);
+            byte[] extra = in.readNBytes(extraLength);
+            if (n < HEADER_LENGTH || extra.length < extraLength) {
+                throw new EOFException("Truncated BGZF block header.");
+            }
+
+            int blockSize = getBlockSize(extra);
+            if (header[0] != 31 || header[1] != (byte) 139 || blockSize < 0) {
+                throw new IOException("Invalid BGZF block header.");
+            }
+
+            // The rest of the block holds the deflated data, its CRC32 and its length.
+            int remaining = blockSize + 1 - HEADER_LENGTH - extraLength;
+            byte[] data = in.readNBytes(remaining);
+            if (remaining < 8 || data.length < remaining) {
+                throw new EOFException("Truncated BGZF block.");
+            }
+
+            this.chunks.put(this.inflaters.submit(() -> inflateBlock(data)));
+        }
+    }
+
+    /**
+     * Inflate the data of a BGZF block and check it against its CRC32.
+     *
+     * @param data Deflated data, followed by the CRC32 and length of the inflated data.
+     * @return Inflated data.
+     * @throws IOException If the data is corrupt.
+     */
+    private byte[] inflateBlock(byte[] data) throws IOException {
+        int length = data.length - 8;
+        long crc = getInt(data, length) & 0xffffffffL;
+        byte[] block = new byte[getInt(data, length + 4)];
+
+        Inflater inflater = this.inflater.get();
+        inflater.reset();
+        inflater.setInput(data, 0, length);
+        try {
+            int n = 0;
+            while (n < block.length && !inflater.finished()) {
+                int count = inflater.inflate(block, n, block.length - n);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += count;
+            }
+            if (n != block.length) {
+                throw new IOException("BGZF block is shorter than its recorded length.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt BGZF block: " + e.getMessage(), e);
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(block, 0, block.length);
+        if (checksum.getValue() != crc) {
+            throw new IOException("BGZF block does not match its CRC32.");
+        }
+        return block;
+    }
+
+    /**
+     * Take the next inflated chunk, waiting for it if needed.
+     *
+     * @return Inflated chunk; {@link #END} at the end of the file.
+     * @throws IOException If the file could not be inflated.
+     */
+    private byte[] take() throws IOException {
+        try {
+            byte[] chunk = this.chunks.take().get();
+            this.finished = chunk == END;
+            return chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing.");
+        } catch (ExecutionException e) {
+            throw new IOException(
+                    "Failed to decompress input file '"
+                            + this.filename
+                            + "': "
+                            + e.getCause().getMessage(),
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Find the size of a BGZF block among the subfields of its gzip extra field.
+     *
+     * @param extra Extra field.
+     * @return Total size of the block minus one, or -1 if there is no 'BC' subfield.
+     */
+    private static int getBlockSize(byte[] extra) {
+        int i = 0;
+        while (i + 4 <= extra.length) {
+            int length = getShort(extra, i + 2);
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && length == 2 && i + 6 <= extra.length) {
+                return getShort(extra, i + 4);
+            }
+            i += 4 + length;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get a little-endian unsigned short.
+     *
+     * @param bytes Bytes to read from.
+     * @param i Position of the first byte.
+     * @return Value of the short.
+     */
+    private static int getShort(byte[] bytes, int i) {
+        return (bytes[i] & 0xff) | (bytes[i + 1] & 0xff) << 8;
+    }
+
+    /**
+     * Get a little-endian int.
+     *
+     * @param bytes Bytes to read from.
+     * @param i Position of the first byte.
+     * @return Value of the int.
+     */
+    private static int getInt(byte[] bytes, int i) {
+        return getShort(bytes, i) | getShort(bytes, i + 2) << 16;
+    }
+}
@@ -0,0 +1,66 @@
+package edu.rice.comp416.mapper.reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/** Reads several FASTQ sources in lockstep, one record from each per step. */
+public class PairedFastqReader implements Closeable {
+    private final List<FastqSource> sources;
+
+    /**
+     * Construct a reader over given sources.
+     *
+     * @param sources Sources to read in lockstep, e.g. the two files of paired-end reads.
+     */
+    public PairedFastqReader(List<FastqSource> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * Get the number of sources.
+     *
+     * @return Number of sources.
+     */
+    public int getNumSources() {
+        return this.sources.size();
+    }
+
+    /**
+     * Read the next record of every source.
+     *
+     * @param records One record to fill per source.
+     * @return True if every source had a record; false if every source has ended.
+     * @throws IOException If a source cannot be read, or if some sources ended before others.
+     */
+    public boolean next(List<FastqRecord> records) throws IOException {
+        int numRead = 0;
+        for (int i = 0; i < this.sources.size(); i++) {
+            if (this.sources.get(i).next(records.get(i))) {
+                numRead += 1;
+            }
+        }
+
+        if (numRead != 0 && numRead != this.sources.size()) {
+            throw new IOException("Sample files have different numbers of reads.");
+        }
+
+        return numRead != 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (FastqSource source : this.sources) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
@@ -3,15 +3,35 @@ package edu.rice.comp416.mapper.reader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.LinkedHashMap;
 import org.biojava.nbio.core.sequence.DNASequence;
 import org.biojava.nbio.core.sequence.io.FastaReaderHelper;
 
 public class ReadFasta {
+    /** Extensions of Fasta files, compressed or not. */
+    private static final String[] EXTENSIONS = {".fasta", ".fasta.gz"};
+
+    /**
+     * Check if a file name has a Fasta extension.
+     *
+     * @param filename File name.
+     * @return True if the file is a Fasta file, possibly gzip compressed; false otherwise.
+     */
+    public static boolean isFastaFile(String filename) {
+        for (String extension : EXTENSIONS) {
+            if (filename.endsWith(extension)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Read the input Fasta file and return an linked hashmap over Fasta lines.
      *
-     * @param filename File to read.
+     * @param filename File to read, which may be gzip compressed.
      * @return Hashmap over Fasta lines.
      * @throws IOException If the read fails.
      */
@@ -23,6 +43,11 @@ public class ReadFasta {
             throw new FileNotFoundException("Input file '" + filename + "' does not exist.");
         }
 
+        if (CompressedInput.isCompressed(filename)) {
+            try (InputStream in = CompressedInput.openStream(filename)) {
+                return FastaReaderHelper.readFastaDNASequence(in);
+            }
+        }
         return FastaReaderHelper.readFastaDNASequence(file);
     }
 }
@@ -3,15 +3,36 @@ package edu.rice.comp416.mapper.reader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 import org.biojava.nbio.genome.io.fastq.*;
 import org.biojava.nbio.genome.io.fastq.Fastq;
 import org.biojava.nbio.genome.io.fastq.FastqReader;
 
 public class ReadFastq {
+    /** Extensions of Fastq files, compressed or not. */
+    private static final String[] EXTENSIONS = {".fastq", ".fq", ".fastq.gz", ".fq.gz"};
+
+    /**
+     * Check if a file name has a Fastq extension.
+     *
+     * @param filename File name.
+     * @return True if the file is a Fastq file, possibly gzip compressed; false otherwise.
+     */
+    public static boolean isFastqFile(String filename) {
+        for (String extension : EXTENSIONS) {
+            if (filename.endsWith(extension)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Read the input Fastq file and return an iterable over Fastq lines.
      *
-     * @param filename File to read.
+     * @param filename File to read, which may be gzip compressed.
      * @return Iterable object over the Fastq lines.
      * @throws IOException If the read fails.
      */
@@ -23,6 +44,37 @@ public class ReadFastq {
         }
 
         FastqReader fastqReader = new SangerFastqReader();
+        if (CompressedInput.isCompressed(filename)) {
+            try (InputStream in = CompressedInput.openStream(filename)) {
+                return fastqReader.read(in);
+            }
+        }
         return fastqReader.read(file);
     }
+
+    /**
+     * Open the input Fastq file as a source of records, parsed by BioJava.
+     *
+     * @param filename File to read.
+     * @return Source over the Fastq records.
+     * @throws IOException If the read fails.
+     */
+    public static FastqSource openSource(String filename) throws IOException {
+        Iterator<Fastq> iterator = readFromFile(filename).iterator();
+        return new FastqSource() {
+            @Override
+            public boolean next(FastqRecord record) {
+                if (!iterator.hasNext()) {
+                    return false;
+                }
+
+                Fastq fastq = iterator.next();
+                record.set(fastq.getDescription(), fastq.getSequence(), fastq.getQuality());
+                return true;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
 }
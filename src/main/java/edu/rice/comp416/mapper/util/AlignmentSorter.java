@@ -0,0 +1,410 @@
+package edu.rice.comp416.mapper.util;
+
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.util.RuntimeIOException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External merge sort of alignments by coordinate, i.e. by contig and position. Alignments are
+ * buffered as BAM-encoded bytes until the buffer reaches its memory budget; the buffer is then
+ * sorted and spilled to a temporary file as a sorted run. Once all alignments are added, the runs
+ * are merged into the output. Alignments with equal coordinates keep the order they were added
+ * in, and unmapped alignments go last.
+ *
+ * <p>The encoded bytes and the bookkeeping of the buffered alignments grow within the memory budget
+ * together, so the buffer never holds much more than the budget. If an alignment does not fit in
+ * what is left of the budget, the buffer grows just enough for it and is spilled right after.
+ */
+class AlignmentSorter {
+
+    /** Bytes of bookkeeping per buffered alignment, next to its encoded bytes. */
+    private static final int BYTES_PER_ENTRY = 12;
+
+    /** Number of alignments the bookkeeping has room for when the buffer is empty. */
+    private static final int INITIAL_ENTRIES = 1024;
+
+    private final SAMFileHeader fileHeader;
+
+    /** Memory budget of the buffer, in bytes. */
+    private final long bufferSize;
+
+    /** Encoded alignments of the buffer, back to back. */
+    private final Buffer buffer;
+
+    private final BAMRecordCodec encoder;
+
+    /** Coordinate key of each buffered alignment. */
+    private long[] keys;
+
+    /** Offset of each buffered alignment in the buffer, followed by the end of the last one. */
+    private int[] offsets;
+
+    /** Number of buffered alignments. */
+    private int count;
+
+    /** True if the bookkeeping grew past the memory budget, so the buffer must be spilled. */
+    private boolean full;
+
+    /** Sorted runs that were spilled, in the order they were written. */
+    private final List<Path> runs;
+
+    /**
+     * Construct a new empty sorter.
+     *
+     * @param fileHeader Header of the alignments.
+     * @param bufferSize Memory budget of the buffer, in bytes.
+     */
+    AlignmentSorter(SAMFileHeader fileHeader, long bufferSize) {
+        this.fileHeader = fileHeader;
+        this.bufferSize = bufferSize;
+        this.buffer = new Buffer((int) Math.min(bufferSize / 2, 1 << 20));
+        this.encoder = new BAMRecordCodec(fileHeader);
+        this.encoder.setOutputStream(this.buffer);
+        this.keys = new long[INITIAL_ENTRIES];
+        this.offsets = new int[INITIAL_ENTRIES + 1];
+        this.count = 0;
+        this.full = false;
+        this.runs = new ArrayList<>();
+    }
+
+    /**
+     * Add an alignment, spilling the buffer if it is full.
+     *
+     * @param record Alignment to add.
+     */
+    void add(SAMRecord record) {
+        if (this.count == this.keys.length) {
+            growEntries();
+        }
+
+        this.keys[this.count] = getKey(record);
+        this.buffer.maxCapacity = this.bufferSize - (long) BYTES_PER_ENTRY * this.keys.length;
+        this.encoder.encode(record);
+        this.count += 1;
+        this.offsets[this.count] = this.buffer.length;
+
+        if (this.full
+                || this.buffer.full
+                || this.buffer.length + (long) BYTES_PER_ENTRY * this.count >= this.bufferSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Write all alignments in coordinate order, and delete the spilled runs.
+     *
+     * @param fileWriter Writer to add the alignments to.
+     */
+    void writeTo(SAMFileWriter fileWriter) {
+        try {
+            if (this.runs.isEmpty()) {
+                BAMRecordCodec decoder = new BAMRecordCodec(this.fileHeader);
+                for (int i : sort()) {
+                    int offset = this.offsets[i];
+                    decoder.setInputStream(
+                            new ByteArrayInputStream(
+                                    this.buffer.bytes, offset, this.offsets[i + 1] - offset));
+                    fileWriter.addAlignment(decoder.decode());
+                }
+            } else {
+                if (this.count > 0) {
+                    spill();
+                }
+                merge(fileWriter);
+            }
+        } finally {
+            deleteRuns();
+        }
+    }
+
+    /**
+     * Get the number of sorted runs that were spilled to disk.
+     *
+     * @return Number of runs.
+     */
+    int getNumRuns() {
+        return this.runs.size();
+    }
+
+    /**
+     * Get the memory held by the buffer, i.e. the capacity of its encoded bytes and of its
+     * bookkeeping.
+     *
+     * @return Capacity of the buffer, in bytes.
+     */
+    long getCapacity() {
+        return this.buffer.bytes.length + (long) BYTES_PER_ENTRY * this.keys.length;
+    }
+
+    /**
+     * Get the coordinate key of an alignment, which orders alignments by contig and position.
+     *
+     * @param record Alignment.
+     * @return Key of the alignment; the largest key if it is unmapped.
+     */
+    static long getKey(SAMRecord record) {
+        int contig = record.getReferenceIndex();
+        if (contig < 0) {
+            return Long.MAX_VALUE;
+        }
+        return ((long) contig << 32) | record.getAlignmentStart();
+    }
+
+    /** Sort the buffer and write it to a new temporary file as a run. */
+    private void spill() {
+        try {
+            Path run = Files.createTempFile("mapper-sort", ".run");
+            this.runs.add(run);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(run), 1 << 16)) {
+                for (int i : sort()) {
+                    int offset = this.offsets[i];
+                    out.write(this.buffer.bytes, offset, this.offsets[i + 1] - offset);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeIOException("Failed to spill sorted alignments to disk.", e);
+        }
+
+        // Start over from the initial capacity, so that the bytes and the bookkeeping of the next
+        // run split the budget by their own alignments rather than by those of this run.
+        this.buffer.reset();
+        if (this.keys.length > INITIAL_ENTRIES) {
+            this.keys = new long[INITIAL_ENTRIES];
+            this.offsets = new int[INITIAL_ENTRIES + 1];
+        }
+        this.count = 0;
+        this.full = false;
+    }
+
+    /**
+     * Grow the bookkeeping to fit more alignments, doubling it within what the encoded bytes
+     * leave of the memory budget. If there is no room left, it grows by one alignment and the
+     * buffer is marked full.
+     */
+    private void growEntries() {
+        long room = (this.bufferSize - this.buffer.bytes.length) / BYTES_PER_ENTRY;
+        int capacity = (int) Math.min(2L * this.count, room);
+        if (capacity <= this.count) {
+            capacity = this.count + 1;
+            this.full = true;
+        }
+        this.keys = Arrays.copyOf(this.keys, capacity);
+        this.offsets = Arrays.copyOf(this.offsets, capacity + 1);
+    }
+
+    /**
+     * Merge the spilled runs into the output.
+     *
+     * @param fileWriter Writer to add the alignments to.
+     */
+    private void merge(SAMFileWriter fileWriter) {
+        PriorityQueue<Run> heads = new PriorityQueue<>();
+        try {
+            for (int i = 0; i < this.runs.size(); i++) {
+                Run run = new Run(this.runs.get(i), i);
+                if (run.head != null) {
+                    heads.add(run);
+                } else {
+                    run.close();
+                }
+            }
+
+            while (!heads.isEmpty()) {
+                Run run = heads.poll();
+                fileWriter.addAlignment(run.head);
+                if (run.advance()) {
+                    heads.add(run);
+                } else {
+                    run.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeIOException("Failed to merge sorted alignments.", e);
+        } finally {
+            for (Run run : heads) {
+                run.close();
+            }
+        }
+    }
+
+    /** Delete the spilled runs. */
+    private void deleteRuns() {
+        for (Path run : this.runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                run.toFile().deleteOnExit();
+            }
+        }
+        this.runs.clear();
+    }
+
+    /**
+     * Get the order of the buffered alignments by key, breaking ties by the order they were
+     * added in. Runs a bottom-up merge sort over alignment indices.
+     *
+     * @return Indices of the buffered alignments, in sorted order.
+     */
+    private int[] sort() {
+        int[] order = new int[this.count];
+        for (int i = 0; i < this.count; i++) {
+            order[i] = i;
+        }
+
+        int[] merged = new int[this.count];
+        for (int width = 1; width < this.count; width *= 2) {
+            for (int lo = 0; lo < this.count; lo += 2 * width) {
+                int mid = Math.min(lo + width, this.count);
+                int hi = Math.min(lo + 2 * width, this.count);
+                int i = lo;
+                int j = mid;
+                for (int k = lo; k < hi; k++) {
+                    if (j >= hi || (i < mid && this.keys[order[i]] <= this.keys[order[j]])) {
+                        merged[k] = order[i++];
+                    } else {
+                        merged[k] = order[j++];
+                    }
+                }
+            }
+            int[] swap = order;
+            order = merged;
+            merged = swap;
+        }
+
+        return order;
+    }
+
+    /** Growable byte buffer that the encoder writes alignments into. */
+    private static class Buffer extends OutputStream {
+        /** Largest array the JVM reliably allocates. */
+        private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+        private final int initialCapacity;
+        private byte[] bytes;
+        private int length;
+
+        /** Capacity that the buffer may grow to, in bytes. */
+        private long maxCapacity;
+
+        /** True if the buffer grew past its maximum capacity to fit an alignment. */
+        private boolean full;
+
+        /**
+         * Construct a new empty buffer.
+         *
+         * @param capacity Initial capacity, in bytes.
+         */
+        Buffer(int capacity) {
+            this.initialCapacity = capacity;
+            this.bytes = new byte[capacity];
+            this.length = 0;
+            this.maxCapacity = capacity;
+            this.full = false;
+        }
+
+        /** Empty the buffer and shrink it back to its initial capacity. */
+        void reset() {
+            if (this.bytes.length > this.initialCapacity) {
+                this.bytes = new byte[this.initialCapacity];
+            }
+            this.length = 0;
+            this.full = false;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            this.bytes[this.length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, this.bytes, this.length, len);
+            this.length += len;
+        }
+
+        /**
+         * Grow the buffer to fit more bytes, doubling it up to its maximum capacity. If that does
+         * not fit them, it grows just enough and is marked full.
+         *
+         * @param count Number of bytes to fit.
+         */
+        private void ensureCapacity(int count) {
+            long needed = (long) this.length + count;
+            if (needed > this.bytes.length) {
+                long capacity = Math.min(2L * this.bytes.length, this.maxCapacity);
+                capacity = Math.min(capacity, MAX_ARRAY_SIZE);
+                if (capacity < needed) {
+                    capacity = needed;
+                    this.full = true;
+                }
+                this.bytes = Arrays.copyOf(this.bytes, (int) capacity);
+            }
+        }
+    }
+
+    /** Spilled run that is being merged, positioned at its next alignment. */
+    private class Run implements Comparable<Run> {
+        private final BufferedInputStream in;
+        private final BAMRecordCodec decoder;
+        private final int index;
+        private SAMRecord head;
+        private long key;
+
+        /**
+         * Open a run and read its first alignment.
+         *
+         * @param path Path of the run.
+         * @param index Position of the run among all runs.
+         * @throws IOException If the run cannot be opened.
+         */
+        Run(Path path, int index) throws IOException {
+            this.in = new BufferedInputStream(Files.newInputStream(path), 1 << 16);
+            this.decoder = new BAMRecordCodec(fileHeader);
+            this.decoder.setInputStream(this.in, path.toString());
+            this.index = index;
+            advance();
+        }
+
+        /**
+         * Read the next alignment of the run.
+         *
+         * @return True if there is a next alignment; false at the end of the run.
+         */
+        boolean advance() {
+            this.head = this.decoder.decode();
+            this.key = this.head == null ? Long.MAX_VALUE : getKey(this.head);
+            return this.head != null;
+        }
+
+        /** Close the run. */
+        void close() {
+            try {
+                this.in.close();
+            } catch (IOException e) {
+                // The run is deleted afterwards anyway.
+            }
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            // Ties go to the earlier run, which holds earlier alignments.
+            int cmp = Long.compare(this.key, other.key);
+            return cmp != 0 ? cmp : Integer.compare(this.index, other.index);
+        }
+    }
+}
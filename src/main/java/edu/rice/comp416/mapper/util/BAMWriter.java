@@ -0,0 +1,95 @@
+package edu.rice.comp416.mapper.util;
+
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
+import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.ProgressLoggerInterface;
+import htsjdk.samtools.util.RuntimeIOException;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writer of BAM files whose blocks are compressed in parallel, see {@link BgzfOutputStream}.
+ * Records are encoded with htsjdk's BAM codec on the calling thread.
+ */
+class BAMWriter implements SAMFileWriter {
+    private final SAMFileHeader fileHeader;
+    private final BgzfOutputStream out;
+    private final BAMRecordCodec codec;
+    private ProgressLoggerInterface progressLogger;
+
+    /**
+     * Create a BAM file and write its header.
+     *
+     * @param path Path to the new .bam file.
+     * @param fileHeader Header of the file.
+     * @param numThreads Number of threads that compress blocks.
+     */
+    BAMWriter(String path, SAMFileHeader fileHeader, int numThreads) {
+        this.fileHeader = fileHeader;
+        try {
+            this.out =
+                    new BgzfOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(path), 1 << 16),
+                            numThreads);
+        } catch (IOException e) {
+            throw new RuntimeIOException("Failed to create output file '" + path + "'.", e);
+        }
+
+        writeHeader();
+        this.codec = new BAMRecordCodec(fileHeader);
+        this.codec.setOutputStream(this.out, path);
+    }
+
+    @Override
+    public void addAlignment(SAMRecord record) {
+        this.codec.encode(record);
+        if (this.progressLogger != null) {
+            this.progressLogger.record(record);
+        }
+    }
+
+    @Override
+    public SAMFileHeader getFileHeader() {
+        return this.fileHeader;
+    }
+
+    @Override
+    public void setProgressLogger(ProgressLoggerInterface progressLogger) {
+        this.progressLogger = progressLogger;
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.out.close();
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
+    }
+
+    /** Write the magic number, the text header and the reference sequences. */
+    private void writeHeader() {
+        StringWriter text = new StringWriter();
+        new SAMTextHeaderCodec().encode(text, this.fileHeader);
+        byte[] textBytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        BinaryCodec codec = new BinaryCodec(this.out);
+        codec.writeBytes("BAM\1".getBytes(StandardCharsets.US_ASCII));
+        codec.writeInt(textBytes.length);
+        codec.writeBytes(textBytes);
+
+        codec.writeInt(this.fileHeader.getSequenceDictionary().size());
+        for (SAMSequenceRecord sequence : this.fileHeader.getSequenceDictionary().getSequences()) {
+            codec.writeString(sequence.getSequenceName(), true, true);
+            codec.writeInt(sequence.getSequenceLength());
+        }
+    }
+}
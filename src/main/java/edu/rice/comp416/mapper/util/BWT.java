@@ -1,77 +1,85 @@
 package edu.rice.comp416.mapper.util;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 /** Utilities for Burrows-Wheeler transform. */
 public class BWT {
 
+    /** End-of-string marker. It sorts before every other character of the input. */
+    private static final char SENTINEL = '$';
+
     /**
-     * Get the Burrows–Wheeler transform of input sequence.
+     * Get the Burrows–Wheeler transform of input sequence. Runs in linear time, by reading the
+     * transform off the suffix array.
      *
-     * @param s Input sequence.
+     * @param s Input sequence, which must not contain '$'.
      * @return Burrows-Wheeler transform of the input sequence.
      */
     public static String encode(String s) {
-        // Add dollar sign at the end of the given input.
-        String originalSequence = s + "$";
+        // Rank the distinct characters, keeping 0 for the dollar sign at the end of the input.
+        int[] ranks = new int[Character.MAX_VALUE + 1];
+        for (int i = 0; i < s.length(); i++) {
+            ranks[s.charAt(i)] = 1;
+        }
+        int alphabetSize = 1;
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (ranks[c] != 0) {
+                ranks[c] = alphabetSize++;
+            }
+        }
 
-        // Get all rotations of the string.
-        List<String> suffixes = new ArrayList<>();
-        for (int i = 0; i < originalSequence.length(); i++) {
-            suffixes.add(rotateString(originalSequence, i));
+        int[] text = new int[s.length() + 1];
+        for (int i = 0; i < s.length(); i++) {
+            text[i] = ranks[s.charAt(i)];
         }
 
-        // Sort all rotations.
-        Collections.sort(suffixes);
+        int[] sa = SuffixArray.build(text, alphabetSize);
 
-        // Get the last characters from sorted rotations.
-        StringBuilder bwtSequence = new StringBuilder();
-        for (String curSeq : suffixes) {
-            bwtSequence.append(curSeq.charAt(curSeq.length() - 1));
+        // The last character of each sorted rotation precedes the corresponding suffix.
+        char[] bwtSequence = new char[sa.length];
+        for (int i = 0; i < sa.length; i++) {
+            bwtSequence[i] = sa[i] == 0 ? SENTINEL : s.charAt(sa[i] - 1);
         }
 
-        return bwtSequence.toString();
+        return new String(bwtSequence);
     }
 
     /**
-     * Get original sequence from its Burrows-Wheeler transform.
+     * Get original sequence from its Burrows-Wheeler transform. Runs in linear time, by walking
+     * the last-to-first mapping backwards from the rotation that starts with '$'.
      *
      * @param bwt Burrows-wheeler transform.
      * @return Original sequence from bwt.
      */
     public static String decode(String bwt) {
-        List<String> suffixes = new ArrayList<>();
-        for (int i = 0; i < bwt.length(); i++) {
-            suffixes.add("");
+        int n = bwt.length();
+        if (n <= 1) {
+            return "";
         }
 
-        while (suffixes.get(0).length() < bwt.length()) {
-            for (int i = 0; i < bwt.length(); i++) {
-                suffixes.set(i, bwt.charAt(i) + suffixes.get(i));
-            }
-            Collections.sort(suffixes);
+        // Rank of each row's last character among equal characters before it.
+        int[] ranks = new int[n];
+        int[] counts = new int[Character.MAX_VALUE + 1];
+        for (int i = 0; i < n; i++) {
+            ranks[i] = counts[bwt.charAt(i)]++;
         }
 
-        for (String suffix : suffixes) {
-            if (suffix.charAt(suffix.length() - 1) == '$') {
-                return suffix.substring(0, suffix.length() - 1);
+        // First row of each character in the sorted first column, with the dollar sign first.
+        int[] firstRow = new int[Character.MAX_VALUE + 1];
+        int sum = counts[SENTINEL];
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (c != SENTINEL) {
+                firstRow[c] = sum;
+                sum += counts[c];
             }
         }
 
-        return "";
-    }
+        char[] original = new char[n - 1];
+        int row = 0;
+        for (int i = n - 2; i >= 0; i--) {
+            char c = bwt.charAt(row);
+            original[i] = c;
+            row = firstRow[c] + ranks[row];
+        }
 
-    /**
-     * Get a rotation of the given string.
-     *
-     * @param s String to rotate.
-     * @param offset Number of characters to shift by.
-     * @return Rotation of s with the given offset.
-     */
-    private static String rotateString(String s, int offset) {
-        int i = offset % s.length();
-        return s.substring(i) + s.substring(0, i);
+        return new String(original);
     }
 }
@@ -0,0 +1,459 @@
+package edu.rice.comp416.mapper.util;
+
+/**
+ * Gapped aligner for reads whose seeded diagonal is known. The whole read is aligned against the
+ * reference around the diagonal, with affine gap costs, but only cells within a band of the
+ * diagonal are computed, so insertions and deletions of up to the band width are found in time
+ * linear in the read length. Reference bases before and after the alignment are free, while all
+ * read bases are aligned; insertions at either end of the read are reported as soft clips. An
+ * insertion and a deletion can only be separated by an aligned base, and ambiguous bases, e.g.
+ * N, neither score nor cost anything, so that gaps are not opened to avoid them.
+ *
+ * <p>The band of each row is kept in primitive arrays indexed by the offset from the diagonal.
+ * Each row is computed in two passes: the first takes the diagonal and vertical moves, which
+ * only depend on the previous row and so form a loop without dependencies between cells that the
+ * JIT can unroll and vectorize; the second takes the horizontal moves, which carry a dependency
+ * from cell to cell. The traceback keeps one byte per cell.
+ *
+ * <pre>{@code
+ * BandedAligner aligner = new BandedAligner(16);
+ * int score = aligner.align(reference.getSequence(), from, to, diagonal, read);
+ * record.setCigarString(aligner.getCigar());
+ * }</pre>
+ */
+public class BandedAligner {
+
+    /** Score of a matching base. */
+    public static final int MATCH = 1;
+
+    /** Penalty of a mismatching base. */
+    public static final int MISMATCH = 4;
+
+    /** Penalty of opening a gap, on top of the penalty of its first base. */
+    public static final int GAP_OPEN = 6;
+
+    /** Penalty of each base of a gap. */
+    public static final int GAP_EXTEND = 1;
+
+    /** Score of an unreachable cell, far enough from the minimum to subtract penalties. */
+    private static final int UNREACHABLE = Integer.MIN_VALUE / 2;
+
+    /** Code of an ambiguous read base. Never equal to a reference code. */
+    private static final byte AMBIGUOUS_READ = 4;
+
+    /** Code of an ambiguous reference base. Never equal to a read code. */
+    private static final byte AMBIGUOUS_REFERENCE = 5;
+
+    /** Score of aligning a base by its read code and its reference code. */
+    private static final int[][] BASE_SCORES = new int[AMBIGUOUS_READ + 1][];
+
+    static {
+        for (int r = 0; r <= AMBIGUOUS_READ; r++) {
+            BASE_SCORES[r] = new int[AMBIGUOUS_REFERENCE + 1];
+            for (int c = 0; c < AMBIGUOUS_READ; c++) {
+                BASE_SCORES[r][c] = r == AMBIGUOUS_READ ? 0 : r == c ? MATCH : -MISMATCH;
+            }
+        }
+    }
+
+    /** Traceback of a cell whose best move is diagonal, i.e. a match or mismatch. */
+    private static final int FROM_DIAGONAL = 0;
+
+    /** Traceback of a cell whose best move ends a deletion from the read. */
+    private static final int FROM_DELETION = 1;
+
+    /** Traceback of a cell whose best move ends an insertion to the read. */
+    private static final int FROM_INSERTION = 2;
+
+    /** Traceback flag of a deletion that extends the deletion of the previous cell. */
+    private static final int DELETION_EXTENDED = 4;
+
+    /** Traceback flag of an insertion that extends the insertion of the previous cell. */
+    private static final int INSERTION_EXTENDED = 8;
+
+    /** Traceback state of a cell whose best move is not known yet. */
+    private static final int BEST = 3;
+
+    /** Largest distance of an aligned cell from the diagonal. */
+    private final int bandWidth;
+
+    /** Number of cells in a row of the band. */
+    private final int width;
+
+    /** Best scores of the current and previous rows, with an unreachable cell at the end. */
+    private int[] scores;
+
+    private int[] previousScores;
+
+    /** Best scores of diagonal moves in the current and previous rows, which gaps open from. */
+    private int[] matches;
+
+    private int[] previousMatches;
+
+    /** Best scores of insertions in the current and previous rows, laid out like the scores. */
+    private int[] insertions;
+
+    private int[] previousInsertions;
+
+    private byte[] readCodes;
+
+    /** Codes of the reference window, after a leading unreachable base. */
+    private byte[] referenceCodes;
+
+    /** Traceback of each cell, a row of the band after another. */
+    private byte[] trace;
+
+    /** Operations of the alignment, in reverse order. */
+    private byte[] operations;
+
+    private int start;
+
+    private int numEdits;
+
+    private int diagonalScore;
+
+    private final StringBuilder cigar;
+
+    private final StringBuilder mismatchString;
+
+    /**
+     * Construct a new aligner.
+     *
+     * @param bandWidth Largest number of bases the alignment can stray from the diagonal, i.e.
+     *     the longest indel it can find.
+     */
+    public BandedAligner(int bandWidth) {
+        if (bandWidth <= 0) {
+            throw new IllegalArgumentException("Band width must be positive.");
+        }
+
+        this.bandWidth = bandWidth;
+        this.width = 2 * bandWidth + 1;
+        this.scores = new int[this.width + 1];
+        this.previousScores = new int[this.width + 1];
+        this.matches = new int[this.width + 1];
+        this.previousMatches = new int[this.width + 1];
+        this.insertions = new int[this.width + 1];
+        this.previousInsertions = new int[this.width + 1];
+        this.readCodes = new byte[256];
+        this.referenceCodes = new byte[256 + this.width];
+        this.trace = new byte[257 * this.width];
+        this.operations = new byte[256 + this.width];
+        this.cigar = new StringBuilder();
+        this.mismatchString = new StringBuilder();
+    }
+
+    /**
+     * Align a read around a diagonal, staying within a range of the reference, e.g. its contig.
+     *
+     * @param reference Packed reference.
+     * @param from First reference position the alignment can cover.
+     * @param to Reference position after the last one the alignment can cover.
+     * @param diagonal Position of the reference base aligned to the first base of the read
+     *     without gaps.
+     * @param read Read sequence, as aligned.
+     * @return Score of the best alignment.
+     */
+    public int align(PackedSequence reference, int from, int to, int diagonal, CharSequence read) {
+        int length = read.length();
+        int windowStart = Math.max(from, diagonal - this.bandWidth);
+        int windowEnd = Math.min(to, diagonal + length + this.bandWidth);
+        int windowLength = windowEnd - windowStart;
+
+        // Band cell b of row i is reference position i + shift + b of the window.
+        int shift = diagonal - windowStart - this.bandWidth;
+
+        load(reference, windowStart, windowLength, read);
+        if ((length + 1) * this.width > this.trace.length) {
+            this.trace = new byte[(length + 1) * this.width];
+        }
+
+        int[] scores = this.scores;
+        int[] previousScores = this.previousScores;
+        int[] matches = this.matches;
+        int[] previousMatches = this.previousMatches;
+        int[] insertions = this.insertions;
+        int[] previousInsertions = this.previousInsertions;
+        byte[] referenceCodes = this.referenceCodes;
+        byte[] trace = this.trace;
+
+        // The first row starts the alignment anywhere in the window.
+        for (int b = 0; b < this.width; b++) {
+            int j = shift + b;
+            scores[b] = j >= 0 && j <= windowLength ? 0 : UNREACHABLE;
+            matches[b] = scores[b];
+            insertions[b] = UNREACHABLE;
+        }
+        scores[this.width] = UNREACHABLE;
+        matches[this.width] = UNREACHABLE;
+        insertions[this.width] = UNREACHABLE;
+        previousScores[this.width] = UNREACHABLE;
+        previousMatches[this.width] = UNREACHABLE;
+        previousInsertions[this.width] = UNREACHABLE;
+
+        for (int i = 1; i <= length; i++) {
+            int[] swap = previousScores;
+            previousScores = scores;
+            scores = swap;
+            swap = previousMatches;
+            previousMatches = matches;
+            matches = swap;
+            swap = previousInsertions;
+            previousInsertions = insertions;
+            insertions = swap;
+
+            int lo = Math.max(0, -(i + shift));
+            int hi = Math.min(this.width - 1, windowLength - i - shift);
+            int offset = i + shift;
+            int row = i * this.width;
+            int[] baseScores = BASE_SCORES[this.readCodes[i - 1]];
+
+            for (int b = 0; b < lo; b++) {
+                scores[b] = UNREACHABLE;
+                matches[b] = UNREACHABLE;
+                insertions[b] = UNREACHABLE;
+            }
+            for (int b = Math.max(lo, hi + 1); b < this.width; b++) {
+                scores[b] = UNREACHABLE;
+                matches[b] = UNREACHABLE;
+                insertions[b] = UNREACHABLE;
+            }
+
+            // Diagonal and vertical moves only depend on the previous row. Insertions open after
+            // a diagonal move only, so that they never follow a deletion.
+            for (int b = lo; b <= hi; b++) {
+                int diagonalScore = previousScores[b] + baseScores[referenceCodes[offset + b]];
+                int open = previousMatches[b + 1] - GAP_OPEN - GAP_EXTEND;
+                int extend = previousInsertions[b + 1] - GAP_EXTEND;
+                int insertion = Math.max(open, extend);
+                matches[b] = diagonalScore;
+                insertions[b] = insertion;
+                scores[b] = Math.max(diagonalScore, insertion);
+                trace[row + b] =
+                        (byte)
+                                ((diagonalScore >= insertion ? FROM_DIAGONAL : FROM_INSERTION)
+                                        | (extend > open ? INSERTION_EXTENDED : 0));
+            }
+
+            // Horizontal moves depend on the cell to the left, and also open after a diagonal
+            // move only.
+            int deletion = UNREACHABLE;
+            for (int b = lo + 1; b <= hi; b++) {
+                int open = matches[b - 1] - GAP_OPEN - GAP_EXTEND;
+                int extend = deletion - GAP_EXTEND;
+                deletion = Math.max(open, extend);
+                if (deletion > scores[b]) {
+                    scores[b] = deletion;
+                    trace[row + b] = (byte) ((trace[row + b] & ~3) | FROM_DELETION);
+                }
+                if (extend > open) {
+                    trace[row + b] |= DELETION_EXTENDED;
+                }
+            }
+        }
+
+        // The alignment ends anywhere in the window, preferably close to the diagonal.
+        int best = -1;
+        for (int b = 0; b < this.width; b++) {
+            if (scores[b] > UNREACHABLE
+                    && (best < 0
+                            || scores[b] > scores[best]
+                            || scores[b] == scores[best]
+                                    && Math.abs(b - this.bandWidth)
+                                            < Math.abs(best - this.bandWidth))) {
+                best = b;
+            }
+        }
+
+        this.scores = scores;
+        this.previousScores = previousScores;
+        this.matches = matches;
+        this.previousMatches = previousMatches;
+        this.insertions = insertions;
+        this.previousInsertions = previousInsertions;
+
+        // Score of the read on the diagonal itself, if it lies within the window.
+        this.diagonalScore = UNREACHABLE;
+        if (shift + this.bandWidth >= 0 && length + shift + this.bandWidth <= windowLength) {
+            this.diagonalScore = 0;
+            for (int i = 1; i <= length; i++) {
+                this.diagonalScore +=
+                        BASE_SCORES[this.readCodes[i - 1]][
+                                referenceCodes[i + shift + this.bandWidth]];
+            }
+        }
+
+        traceback(length, best, shift, windowStart);
+        return scores[best];
+    }
+
+    /**
+     * Get the score of the last read aligned on its diagonal without gaps, scored like the
+     * gapped alignment, for comparison with it.
+     *
+     * @return Score of the ungapped alignment, or a large negative score if the diagonal runs
+     *     out of the range of the reference.
+     */
+    public int getDiagonalScore() {
+        return this.diagonalScore;
+    }
+
+    /**
+     * Get the reference position of the first aligned base of the last alignment.
+     *
+     * @return Position in the reference.
+     */
+    public int getStart() {
+        return this.start;
+    }
+
+    /**
+     * Get the CIGAR string of the last alignment.
+     *
+     * @return Cigar string, consisting of '=', 'X', 'I', 'D' and 'S' operands.
+     */
+    public String getCigar() {
+        return this.cigar.toString();
+    }
+
+    /**
+     * Get the edit distance of the last alignment, i.e. its NM tag.
+     *
+     * @return Number of mismatching, inserted and deleted bases.
+     */
+    public int getNumEdits() {
+        return this.numEdits;
+    }
+
+    /**
+     * Get the mismatching and deleted reference bases of the last alignment as an MD tag.
+     *
+     * @return MD tag, e.g. "10A5^AC6".
+     */
+    public String getMismatchString() {
+        return this.mismatchString.toString();
+    }
+
+    /**
+     * Encode the read and the reference window into codes that only match between equal bases.
+     *
+     * @param reference Packed reference.
+     * @param windowStart First reference position of the window.
+     * @param windowLength Number of reference bases in the window.
+     * @param read Read sequence.
+     */
+    private void load(
+            PackedSequence reference, int windowStart, int windowLength, CharSequence read) {
+        int length = read.length();
+        if (length > this.readCodes.length) {
+            this.readCodes = new byte[length];
+        }
+        if (length + this.width > this.operations.length) {
+            this.operations = new byte[length + this.width];
+        }
+        if (windowLength + 1 > this.referenceCodes.length) {
+            this.referenceCodes = new byte[windowLength + 1];
+        }
+
+        for (int i = 0; i < length; i++) {
+            int base = Transform.encodeBase(read.charAt(i));
+            this.readCodes[i] = base < 0 ? AMBIGUOUS_READ : (byte) base;
+        }
+
+        this.referenceCodes[0] = AMBIGUOUS_REFERENCE;
+        for (int j = 0; j < windowLength; j += 32) {
+            long word = reference.getWord(windowStart + j);
+            long ambiguous = reference.getAmbiguousMask(windowStart + j);
+            for (int l = 0; l < 32 && j + l < windowLength; l++) {
+                this.referenceCodes[j + l + 1] =
+                        ((ambiguous >>> (l << 1)) & 1) != 0
+                                ? AMBIGUOUS_REFERENCE
+                                : (byte) ((word >>> (l << 1)) & 3);
+            }
+        }
+    }
+
+    /**
+     * Follow the traceback from the end of the best alignment, then build its CIGAR string and
+     * MD tag.
+     *
+     * @param length Length of the read.
+     * @param best Band cell of the end of the alignment in the last row.
+     * @param shift Offset of the band in the window.
+     * @param windowStart First reference position of the window.
+     */
+    private void traceback(int length, int best, int shift, int windowStart) {
+        int numOperations = 0;
+        int i = length;
+        int b = best;
+        int state = BEST;
+        while (i > 0) {
+            int t = this.trace[i * this.width + b];
+            if (state == BEST) {
+                state = t & 3;
+            } else if (state == FROM_DIAGONAL) {
+                boolean match = this.referenceCodes[i + shift + b] == this.readCodes[i - 1];
+                this.operations[numOperations++] = (byte) (match ? '=' : 'X');
+                state = BEST;
+                i -= 1;
+            } else if (state == FROM_DELETION) {
+                this.operations[numOperations++] = 'D';
+                state = (t & DELETION_EXTENDED) != 0 ? FROM_DELETION : FROM_DIAGONAL;
+                b -= 1;
+            } else {
+                this.operations[numOperations++] = 'I';
+                state = (t & INSERTION_EXTENDED) != 0 ? FROM_INSERTION : FROM_DIAGONAL;
+                i -= 1;
+                b += 1;
+            }
+        }
+
+        // Insertions at the ends of the read are clipped rather than inserted.
+        for (int o = numOperations - 1; o >= 0 && this.operations[o] == 'I'; o--) {
+            this.operations[o] = 'S';
+        }
+        for (int o = 0; o < numOperations && this.operations[o] == 'I'; o++) {
+            this.operations[o] = 'S';
+        }
+
+        int j = shift + b;
+        this.start = windowStart + j;
+        this.numEdits = 0;
+        this.cigar.setLength(0);
+        this.mismatchString.setLength(0);
+
+        int count = 0;
+        int numMatches = 0;
+        for (int o = numOperations - 1; o >= 0; o--) {
+            byte op = this.operations[o];
+            if (op == '=') {
+                numMatches += 1;
+            } else if (op == 'X' || op == 'D') {
+                if (op == 'X' || o == numOperations - 1 || this.operations[o + 1] != 'D') {
+                    this.mismatchString.append(numMatches);
+                    if (op == 'D') {
+                        this.mismatchString.append('^');
+                    }
+                    numMatches = 0;
+                }
+                byte code = this.referenceCodes[j + 1];
+                this.mismatchString.append(
+                        code == AMBIGUOUS_REFERENCE ? 'N' : "ACGT".charAt(code));
+            }
+            if (op != '=' && op != 'S') {
+                this.numEdits += 1;
+            }
+            if (op != 'I' && op != 'S') {
+                j += 1;
+            }
+
+            count += 1;
+            if (o == 0 || this.operations[o - 1] != op) {
+                this.cigar.append(count);
+                this.cigar.append((char) op);
+                count = 0;
+            }
+        }
+        this.mismatchString.append(numMatches);
+    }
+}
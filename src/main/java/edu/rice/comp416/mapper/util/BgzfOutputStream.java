@@ -0,0 +1,269 @@
+package edu.rice.comp416.mapper.util;
+
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream that writes BGZF, the blocked gzip format of BAM files. Written bytes are cut
+ * into blocks of at most 64 KB, which are deflated in parallel by a pool of threads and written
+ * in order, so compression does not hold up the thread that writes to the stream.
+ */
+public class BgzfOutputStream extends OutputStream {
+
+    /** Uncompressed bytes per block, which fit in a block even if they do not compress. */
+    private static final int BLOCK_SIZE =
+            BlockCompressedStreamConstants.DEFAULT_UNCOMPRESSED_BLOCK_SIZE;
+
+    /** Space for deflated data in a block, between the block header and footer. */
+    private static final int MAX_DEFLATED_SIZE =
+            BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE
+                    - BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH
+                    - BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH;
+
+    /** Number of blocks that may be in flight, per thread. */
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private final OutputStream out;
+    private final ExecutorService deflaters;
+
+    /** Blocks being deflated, in output order. */
+    private final Deque<Future<byte[]>> pending;
+
+    private final int maxPending;
+
+    /** Deflater of each deflating thread, reset for every block. */
+    private final ThreadLocal<Deflater> deflater;
+
+    /** Deflater for blocks that do not compress, which stores them as they are. */
+    private final ThreadLocal<Deflater> storer;
+
+    /** Block being filled. */
+    private byte[] block;
+
+    private int length;
+    private boolean closed;
+
+    /**
+     * Construct a stream that writes BGZF at the default compression level.
+     *
+     * @param out Stream to write the compressed blocks to.
+     * @param numThreads Number of threads that deflate blocks.
+     */
+    public BgzfOutputStream(OutputStream out, int numThreads) {
+        this(out, numThreads, BlockCompressedStreamConstants.DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    /**
+     * Construct a stream that writes BGZF.
+     *
+     * @param out Stream to write the compressed blocks to.
+     * @param numThreads Number of threads that deflate blocks.
+     * @param compressionLevel Deflate compression level, between 0 and 9.
+     */
+    public BgzfOutputStream(OutputStream out, int numThreads, int compressionLevel) {
+        this.out = out;
+        this.deflaters =
+                Executors.newFixedThreadPool(
+                        numThreads,
+                        r -> {
+                            Thread thread = new Thread(r, "deflater");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        this.pending = new ArrayDeque<>();
+        this.maxPending = BLOCKS_PER_THREAD * numThreads;
+        this.deflater = ThreadLocal.withInitial(() -> new Deflater(compressionLevel, true));
+        this.storer = ThreadLocal.withInitial(() -> new Deflater(Deflater.NO_COMPRESSION, true));
+        this.block = new byte[BLOCK_SIZE];
+        this.length = 0;
+        this.closed = false;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.block[this.length++] = (byte) b;
+        if (this.length == BLOCK_SIZE) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, BLOCK_SIZE - this.length);
+            System.arraycopy(b, off, this.block, this.length, n);
+            this.length += n;
+            off += n;
+            len -= n;
+
+            if (this.length == BLOCK_SIZE) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Write all buffered bytes as blocks, waiting for them to be deflated.
+     *
+     * @throws IOException If a block cannot be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.length > 0) {
+            submit();
+        }
+        while (!this.pending.isEmpty()) {
+            writeNext();
+        }
+        this.out.flush();
+    }
+
+    /**
+     * Write all buffered bytes followed by the BGZF end-of-file marker, and close the stream.
+     *
+     * @throws IOException If a block cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        try {
+            flush();
+            this.out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+            this.out.close();
+        } finally {
+            this.deflaters.shutdownNow();
+        }
+    }
+
+    /**
+     * Hand the current block to the deflating threads and start a new one. Blocks are written
+     * once too many are in flight.
+     *
+     * @throws IOException If a block cannot be written.
+     */
+    private void submit() throws IOException {
+        byte[] data = this.block;
+        int dataLength = this.length;
+        this.pending.add(this.deflaters.submit(() -> deflateBlock(data, dataLength)));
+        this.block = new byte[BLOCK_SIZE];
+        this.length = 0;
+
+        while (this.pending.size() > this.maxPending) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Write the oldest block in flight, waiting for it to be deflated.
+     *
+     * @throws IOException If the block cannot be written.
+     */
+    private void writeNext() throws IOException {
+        try {
+            this.out.write(this.pending.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing.");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress BGZF block.", e.getCause());
+        }
+    }
+
+    /**
+     * Deflate data into a complete BGZF block.
+     *
+     * @param data Uncompressed data.
+     * @param length Number of bytes of data.
+     * @return BGZF block, with its header and footer.
+     */
+    private byte[] deflateBlock(byte[] data, int length) {
+        byte[] deflated = new byte[MAX_DEFLATED_SIZE];
+        int deflatedLength = deflate(this.deflater.get(), data, length, deflated);
+        if (deflatedLength < 0) {
+            // The data does not compress; store it instead.
+            deflatedLength = deflate(this.storer.get(), data, length, deflated);
+        }
+
+        int blockSize =
+                BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH
+                        + deflatedLength
+                        + BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH;
+        byte[] bgzf = new byte[blockSize];
+
+        // Gzip header with the 'BC' extra subfield that holds the block size minus one.
+        bgzf[0] = 31;
+        bgzf[1] = (byte) 139;
+        bgzf[2] = 8;
+        bgzf[3] = 4;
+        bgzf[9] = (byte) 255;
+        bgzf[10] = 6;
+        bgzf[12] = 'B';
+        bgzf[13] = 'C';
+        bgzf[14] = 2;
+        putShort(bgzf, 16, blockSize - 1);
+
+        int headerLength = BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH;
+        System.arraycopy(deflated, 0, bgzf, headerLength, deflatedLength);
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        putInt(bgzf, blockSize - 8, (int) crc.getValue());
+        putInt(bgzf, blockSize - 4, length);
+        return bgzf;
+    }
+
+    /**
+     * Deflate data into a buffer.
+     *
+     * @param deflater Deflater to use.
+     * @param data Uncompressed data.
+     * @param length Number of bytes of data.
+     * @param deflated Buffer for the deflated data.
+     * @return Number of deflated bytes, or -1 if they do not fit into the buffer.
+     */
+    private static int deflate(Deflater deflater, byte[] data, int length, byte[] deflated) {
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        int deflatedLength = deflater.deflate(deflated, 0, deflated.length);
+        return deflater.finished() ? deflatedLength : -1;
+    }
+
+    /**
+     * Put a little-endian short.
+     *
+     * @param bytes Bytes to write to.
+     * @param i Position of the first byte.
+     * @param value Value of the short.
+     */
+    private static void putShort(byte[] bytes, int i, int value) {
+        bytes[i] = (byte) value;
+        bytes[i + 1] = (byte) (value >>> 8);
+    }
+
+    /**
+     * Put a little-endian int.
+     *
+     * @param bytes Bytes to write to.
+     * @param i Position of the first byte.
+     * @param value Value of the int.
+     */
+    private static void putInt(byte[] bytes, int i, int value) {
+        putShort(bytes, i, value);
+        putShort(bytes, i + 2, value >>> 16);
+    }
+}
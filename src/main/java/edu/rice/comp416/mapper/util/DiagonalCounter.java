@@ -0,0 +1,184 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.Arrays;
+
+/**
+ * Vote counter for alignment diagonals, i.e. reference position minus read offset of seed hits.
+ * Votes are kept in an open-addressing hash map from diagonal to count over primitive arrays,
+ * and the best and second best counts are tracked as votes come in. The counter is meant to be
+ * cleared and reused for every read, which only touches the slots the read used.
+ */
+public class DiagonalCounter {
+
+    /** Marker for an empty slot. Never a valid diagonal, as diagonals are above -2^31. */
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] counts;
+
+    /** Slots in use, in insertion order. */
+    private int[] used;
+
+    private int size;
+    private int mask;
+
+    private int bestDiagonal;
+    private int bestCount;
+    private int secondCount;
+
+    /** Construct a new empty counter. */
+    public DiagonalCounter() {
+        allocate(256);
+        clear();
+    }
+
+    /** Remove all votes. */
+    public void clear() {
+        for (int i = 0; i < this.size; i++) {
+            this.keys[this.used[i]] = EMPTY;
+        }
+        this.size = 0;
+        this.bestDiagonal = 0;
+        this.bestCount = 0;
+        this.secondCount = 0;
+    }
+
+    /**
+     * Add a vote for a diagonal.
+     *
+     * @param diagonal Diagonal to vote for.
+     * @return Number of votes for the diagonal so far.
+     */
+    public int add(int diagonal) {
+        int slot = hash(diagonal) & this.mask;
+        while (this.keys[slot] != EMPTY && this.keys[slot] != diagonal) {
+            slot = (slot + 1) & this.mask;
+        }
+
+        if (this.keys[slot] == EMPTY) {
+            if (2 * (this.size + 1) > this.keys.length) {
+                grow();
+                return add(diagonal);
+            }
+            this.keys[slot] = diagonal;
+            this.counts[slot] = 0;
+            this.used[this.size++] = slot;
+        }
+
+        int count = ++this.counts[slot];
+
+        // The second best count is the best count among all other diagonals.
+        if (diagonal == this.bestDiagonal || this.bestCount == 0) {
+            this.bestDiagonal = diagonal;
+            this.bestCount = count;
+        } else if (count > this.bestCount) {
+            this.secondCount = this.bestCount;
+            this.bestDiagonal = diagonal;
+            this.bestCount = count;
+        } else if (count > this.secondCount) {
+            this.secondCount = count;
+        }
+
+        return count;
+    }
+
+    /**
+     * Get the number of votes for a diagonal.
+     *
+     * @param diagonal Diagonal.
+     * @return Number of votes for the diagonal.
+     */
+    public int get(int diagonal) {
+        int slot = hash(diagonal) & this.mask;
+        while (this.keys[slot] != EMPTY) {
+            if (this.keys[slot] == diagonal) {
+                return this.counts[slot];
+            }
+            slot = (slot + 1) & this.mask;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Get the diagonal with the most votes. Ties go to the diagonal that reached the count
+     * first.
+     *
+     * @return Best diagonal; undefined if there are no votes.
+     */
+    public int getBestDiagonal() {
+        return this.bestDiagonal;
+    }
+
+    /**
+     * Get the number of votes for the best diagonal.
+     *
+     * @return Number of votes, or 0 if there are no votes.
+     */
+    public int getBestCount() {
+        return this.bestCount;
+    }
+
+    /**
+     * Get the largest number of votes for any diagonal other than the best one.
+     *
+     * @return Number of votes, or 0 if at most one diagonal has votes.
+     */
+    public int getSecondCount() {
+        return this.secondCount;
+    }
+
+    /**
+     * Get the number of distinct diagonals with votes.
+     *
+     * @return Number of diagonals.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Mix the bits of a diagonal, so that nearby diagonals land in distant slots.
+     *
+     * @param diagonal Diagonal.
+     * @return Hash of the diagonal.
+     */
+    private static int hash(int diagonal) {
+        int h = diagonal * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Double the capacity of the map, keeping all votes. */
+    private void grow() {
+        int[] oldKeys = this.keys;
+        int[] oldCounts = this.counts;
+        int[] oldUsed = this.used;
+        int oldSize = this.size;
+
+        allocate(2 * oldKeys.length);
+        for (int i = 0; i < oldSize; i++) {
+            int diagonal = oldKeys[oldUsed[i]];
+            int slot = hash(diagonal) & this.mask;
+            while (this.keys[slot] != EMPTY) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.keys[slot] = diagonal;
+            this.counts[slot] = oldCounts[oldUsed[i]];
+            this.used[this.size++] = slot;
+        }
+    }
+
+    /**
+     * Allocate empty tables.
+     *
+     * @param capacity Number of slots, a power of two.
+     */
+    private void allocate(int capacity) {
+        this.keys = new int[capacity];
+        Arrays.fill(this.keys, EMPTY);
+        this.counts = new int[capacity];
+        this.used = new int[capacity / 2];
+        this.size = 0;
+        this.mask = capacity - 1;
+    }
+}
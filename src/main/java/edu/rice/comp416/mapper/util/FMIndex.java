@@ -0,0 +1,287 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.Arrays;
+
+/**
+ * FM-index over a nucleotide sequence: the Burrows-Wheeler transform of the sequence, occurrence
+ * counts sampled every {@link #OCC_SAMPLE_RATE} rows and suffix array entries sampled every
+ * {@link #SA_SAMPLE_RATE} bases. It takes about 1.7 bytes per base, so it fits references whose
+ * k-mer index does not fit in memory, at the cost of slower position lookups.
+ */
+public class FMIndex implements SeedIndex {
+
+    /** Distance between rows with stored occurrence counts. Must be a power of two. */
+    public static final int OCC_SAMPLE_RATE = 64;
+
+    /** Distance between sequence positions whose suffix array entries are stored. */
+    public static final int SA_SAMPLE_RATE = 32;
+
+    /** Symbols of the transformed text. */
+    private static final byte SENTINEL = 0;
+
+    private static final byte AMBIGUOUS = 5;
+
+    private static final int ALPHABET_SIZE = 6;
+
+    /** Seed size used by {@link #lookup(long, int[])}. */
+    private final int k;
+
+    /** Burrows-Wheeler transform of the sequence followed by the sentinel. */
+    private final byte[] bwt;
+
+    /** Number of symbols in the text that are smaller than each symbol. */
+    private final int[] c;
+
+    /** Occurrences of symbols 1 to 5 in the BWT before every OCC_SAMPLE_RATE-th row. */
+    private final int[] occ;
+
+    /** Bit i is set if the suffix array entry of row i is sampled. */
+    private final long[] sampled;
+
+    /** Number of sampled rows before each 64-row word of sampled. */
+    private final int[] sampledRank;
+
+    /** Sampled suffix array entries, in row order. */
+    private final int[] samples;
+
+    /**
+     * Start of each segment in the indexed text. Segments are separated by one ambiguous
+     * symbol, so the position of a hit in segment j is its text position minus j.
+     */
+    private final int[] textStarts;
+
+    /**
+     * Build FM-index of given sequence. Characters other than A,C,G,T never match a seed.
+     *
+     * @param s Input sequence.
+     * @param k Seed size used for lookups, between 1 and {@link KmerIndex#MAX_K}.
+     * @return An instance of FMIndex built from given sequence.
+     */
+    public static FMIndex fromSequence(CharSequence s, int k) {
+        return build(s, new int[] {0, s.length()}, k);
+    }
+
+    /**
+     * Build FM-index over all contigs of a reference. Positions are in the concatenated sequence
+     * of the reference, and seeds that span two contigs are never found.
+     *
+     * @param reference Input reference.
+     * @param k Seed size used for lookups, between 1 and {@link KmerIndex#MAX_K}.
+     * @return An instance of FMIndex built from given reference.
+     */
+    public static FMIndex fromReference(Reference reference, int k) {
+        return build(reference.getSequence(), reference.getStarts(), k);
+    }
+
+    /**
+     * Build FM-index of a sequence made of one or more segments, with an ambiguous symbol
+     * inserted between consecutive segments.
+     *
+     * @param s Input sequence.
+     * @param starts Sorted start of each segment in s, followed by the length of s.
+     * @param k Seed size used for lookups, between 1 and {@link KmerIndex#MAX_K}.
+     * @return An instance of FMIndex built from given sequence.
+     */
+    private static FMIndex build(CharSequence s, int[] starts, int k) {
+        if (k <= 0 || k > KmerIndex.MAX_K) {
+            throw new IllegalArgumentException(
+                    "K-mer size must be between 1 and " + KmerIndex.MAX_K + ".");
+        }
+
+        int numSegments = starts.length - 1;
+        int[] textStarts = new int[numSegments];
+        for (int j = 0; j < numSegments; j++) {
+            textStarts[j] = starts[j] + j;
+        }
+
+        int n = s.length() + Math.max(0, numSegments - 1) + 1;
+        int[] text = new int[n];
+        for (int j = 0, t = 0; j < numSegments; j++) {
+            if (j > 0) {
+                text[t++] = AMBIGUOUS;
+            }
+            for (int i = starts[j]; i < starts[j + 1]; i++) {
+                int base = Transform.encodeBase(s.charAt(i));
+                text[t++] = base < 0 ? AMBIGUOUS : base + 1;
+            }
+        }
+        text[n - 1] = SENTINEL;
+
+        int[] sa = SuffixArray.build(text, ALPHABET_SIZE);
+
+        byte[] bwt = new byte[n];
+        int[] counts = new int[ALPHABET_SIZE];
+        int[] occ = new int[((n - 1) / OCC_SAMPLE_RATE + 2) * (ALPHABET_SIZE - 1)];
+        long[] sampled = new long[(n + 63) >>> 6];
+        int numSamples = 0;
+
+        for (int i = 0; i < n; i++) {
+            if ((i & (OCC_SAMPLE_RATE - 1)) == 0) {
+                int block = i / OCC_SAMPLE_RATE;
+                System.arraycopy(counts, 1, occ, block * (ALPHABET_SIZE - 1), ALPHABET_SIZE - 1);
+            }
+
+            bwt[i] = sa[i] == 0 ? SENTINEL : (byte) text[sa[i] - 1];
+            counts[bwt[i]] += 1;
+
+            if (sa[i] % SA_SAMPLE_RATE == 0) {
+                sampled[i >>> 6] |= 1L << (i & 63);
+                numSamples += 1;
+            }
+        }
+
+        if (n % OCC_SAMPLE_RATE == 0) {
+            int block = n / OCC_SAMPLE_RATE;
+            System.arraycopy(counts, 1, occ, block * (ALPHABET_SIZE - 1), ALPHABET_SIZE - 1);
+        }
+
+        int[] c = new int[ALPHABET_SIZE + 1];
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            c[symbol + 1] = c[symbol] + counts[symbol];
+        }
+
+        int[] sampledRank = new int[sampled.length];
+        for (int w = 1; w < sampled.length; w++) {
+            sampledRank[w] = sampledRank[w - 1] + Long.bitCount(sampled[w - 1]);
+        }
+
+        int[] samples = new int[numSamples];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (sa[i] % SA_SAMPLE_RATE == 0) {
+                samples[j++] = sa[i];
+            }
+        }
+
+        return new FMIndex(k, bwt, c, occ, sampled, sampledRank, samples, textStarts);
+    }
+
+    @Override
+    public int getK() {
+        return this.k;
+    }
+
+    @Override
+    public int lookup(long code, int[] range) {
+        if (code < 0) {
+            range[0] = 0;
+            range[1] = 0;
+            return 0;
+        }
+
+        // Backward search, starting from the last base of the k-mer.
+        int lo = 0;
+        int hi = this.bwt.length;
+        for (int i = 0; i < this.k && lo < hi; i++) {
+            int symbol = (int) ((code >>> (2 * i)) & 3) + 1;
+            lo = this.c[symbol] + occ(symbol, lo);
+            hi = this.c[symbol] + occ(symbol, hi);
+        }
+
+        range[0] = lo;
+        range[1] = Math.max(lo, hi);
+        return range[1] - range[0];
+    }
+
+    /**
+     * Find the range of rows whose suffixes start with a pattern of any length.
+     *
+     * @param pattern Pattern to search.
+     * @param range Output array of length two for the start and end of the range.
+     * @return Number of occurrences of the pattern.
+     */
+    public int find(CharSequence pattern, int[] range) {
+        int lo = 0;
+        int hi = this.bwt.length;
+        for (int i = pattern.length() - 1; i >= 0 && lo < hi; i--) {
+            int base = Transform.encodeBase(pattern.charAt(i));
+            if (base < 0) {
+                hi = lo;
+                break;
+            }
+            lo = this.c[base + 1] + occ(base + 1, lo);
+            hi = this.c[base + 1] + occ(base + 1, hi);
+        }
+
+        range[0] = lo;
+        range[1] = Math.max(lo, hi);
+        return range[1] - range[0];
+    }
+
+    /**
+     * Get the position of a hit by walking the BWT backwards until a sampled row is reached.
+     * Position 0 is always sampled, so the walk never has to step over the sentinel.
+     *
+     * @param i Row within a range returned by {@link #lookup(long, int[])}.
+     * @return Position of the hit in the indexed sequence.
+     */
+    @Override
+    public int getPosition(int i) {
+        int steps = 0;
+        int row = i;
+        while ((this.sampled[row >>> 6] & (1L << (row & 63))) == 0) {
+            int symbol = this.bwt[row];
+            row = this.c[symbol] + occ(symbol, row);
+            steps += 1;
+        }
+
+        int rank =
+                this.sampledRank[row >>> 6]
+                        + Long.bitCount(this.sampled[row >>> 6] & ((1L << (row & 63)) - 1));
+        int position = this.samples[rank] + steps;
+
+        // Hits never cover a separator, so they always start inside a segment.
+        int segment = Arrays.binarySearch(this.textStarts, position);
+        if (segment < 0) {
+            segment = -segment - 2;
+        }
+        return position - segment;
+    }
+
+    /**
+     * Get the length of the indexed sequence.
+     *
+     * @return Number of bases, not counting separators between segments.
+     */
+    public int length() {
+        return this.bwt.length - this.textStarts.length;
+    }
+
+    /**
+     * Count occurrences of a symbol in the BWT before a row.
+     *
+     * @param symbol Symbol between 1 and 5.
+     * @param row Row, between 0 and the length of the BWT.
+     * @return Number of occurrences of the symbol in rows 0 to row - 1.
+     */
+    private int occ(int symbol, int row) {
+        int block = row / OCC_SAMPLE_RATE;
+        int count = this.occ[block * (ALPHABET_SIZE - 1) + symbol - 1];
+        for (int i = block * OCC_SAMPLE_RATE; i < row; i++) {
+            if (this.bwt[i] == symbol) {
+                count += 1;
+            }
+        }
+
+        return count;
+    }
+
+    /** Private constructor for FM-index, to be called from static methods. */
+    private FMIndex(
+            int k,
+            byte[] bwt,
+            int[] c,
+            int[] occ,
+            long[] sampled,
+            int[] sampledRank,
+            int[] samples,
+            int[] textStarts) {
+        this.k = k;
+        this.bwt = bwt;
+        this.c = c;
+        this.occ = occ;
+        this.sampled = sampled;
+        this.sampledRank = sampledRank;
+        this.samples = samples;
+        this.textStarts = textStarts;
+    }
+}
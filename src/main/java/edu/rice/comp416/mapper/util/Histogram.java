@@ -0,0 +1,121 @@
+package edu.rice.comp416.mapper.util;
+
+/**
+ * Histogram of non-negative values in power-of-two buckets, e.g. of latencies in nanoseconds or
+ * of counts per read. Recording a value takes a few instructions and allocates nothing, so each
+ * thread keeps its own histograms, which are merged for reporting. Percentiles are the upper
+ * bounds of their buckets, i.e. they are exact up to a factor of two. Not thread-safe.
+ */
+public class Histogram {
+
+    /** Bucket 0 holds 0, and bucket b holds values from 2^(b-1) to 2^b - 1. */
+    private final long[] buckets;
+
+    private long count;
+
+    private long sum;
+
+    private long max;
+
+    /** Construct a new empty histogram. */
+    public Histogram() {
+        this.buckets = new long[64];
+    }
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     *
+     * @param value Value.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        this.buckets[64 - Long.numberOfLeadingZeros(value)] += 1;
+        this.count += 1;
+        this.sum += value;
+        this.max = Math.max(this.max, value);
+    }
+
+    /**
+     * Add all values of another histogram.
+     *
+     * @param other Histogram to add.
+     */
+    public void merge(Histogram other) {
+        for (int b = 0; b < this.buckets.length; b++) {
+            this.buckets[b] += other.buckets[b];
+        }
+        this.count += other.count;
+        this.sum += other.sum;
+        this.max = Math.max(this.max, other.max);
+    }
+
+    /**
+     * Get the number of recorded values.
+     *
+     * @return Number of values.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Get the sum of the recorded values.
+     *
+     * @return Sum of the values.
+     */
+    public long getSum() {
+        return this.sum;
+    }
+
+    /**
+     * Get the largest recorded value.
+     *
+     * @return Largest value, or 0 if there are none.
+     */
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * Get the mean of the recorded values.
+     *
+     * @return Mean value, or 0 if there are none.
+     */
+    public double getMean() {
+        return this.count == 0 ? 0 : this.sum / (double) this.count;
+    }
+
+    /**
+     * Get an upper bound of a percentile of the recorded values.
+     *
+     * @param fraction Fraction of the values at or below the percentile, between 0 and 1.
+     * @return Upper bound of the bucket of the percentile, at most the largest value.
+     */
+    public long getPercentile(double fraction) {
+        long rank = (long) Math.ceil(fraction * this.count);
+        long seen = 0;
+        for (int b = 0; b < this.buckets.length; b++) {
+            seen += this.buckets[b];
+            if (seen >= rank && seen > 0) {
+                return b == 0 ? 0 : Math.min(this.max, (1L << b) - 1);
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * Write a summary of the histogram as a JSON object.
+     *
+     * @param json Writer to write to.
+     */
+    public void writeJson(JsonWriter json) {
+        json.beginObject();
+        json.name("count").value(this.count);
+        json.name("mean").value(Math.round(getMean() * 100) / 100.0);
+        json.name("p50").value(getPercentile(0.5));
+        json.name("p90").value(getPercentile(0.9));
+        json.name("p99").value(getPercentile(0.99));
+        json.name("max").value(this.max);
+        json.endObject();
+    }
+}
@@ -0,0 +1,342 @@
+package edu.rice.comp416.mapper.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file holding a reference and its k-mer index. All tables are stored little-endian and
+ * aligned to 8 bytes, so that they can be memory-mapped as they are. Several mapper processes
+ * that load the same file share its pages through the page cache.
+ *
+ * <p>Layout: a header with the magic number, format version, header length, k, the span, window
+ * and mask of the seeds, the name and length of every contig and the table sizes; followed by
+ * the packed bases of all contigs, their runs of ambiguous bases, and the keys, offsets and
+ * positions of the k-mer index.
+ */
+public class IndexFile {
+    /** "MSCRMIDX" in ASCII. */
+    private static final long MAGIC = 0x5844494d5243534dL;
+
+    private static final int VERSION = 3;
+
+    /** Oldest version that can still be loaded, which only holds contiguous k-mers. */
+    private static final int MIN_VERSION = 2;
+
+    /** Size of the buffer used to write tables. */
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    private final Reference reference;
+    private final KmerIndex index;
+
+    /**
+     * Write a reference and its k-mer index to a file.
+     *
+     * @param path Path to the new index file.
+     * @param reference Reference to write.
+     * @param index K-mer index over all contigs of the reference.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(String path, Reference reference, KmerIndex index)
+            throws IOException {
+        PackedSequence sequence = reference.getSequence();
+
+        // Encode the names first, as they determine the header length.
+        List<byte[]> names = new ArrayList<>();
+        int headerLength = 60;
+        for (int i = 0; i < reference.getNumContigs(); i++) {
+            names.add(reference.getName(i).getBytes(StandardCharsets.UTF_8));
+            headerLength += 8 + names.get(i).length;
+        }
+        headerLength = align(headerLength);
+
+        ByteBuffer header = ByteBuffer.allocate(headerLength).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(headerLength);
+        header.putInt(index.getK());
+        header.putInt(index.getShape().getSpan());
+        header.putInt(index.getShape().getWindow());
+        header.putLong(index.getShape().getMaskBits());
+        header.putInt(reference.getNumContigs());
+        for (int i = 0; i < reference.getNumContigs(); i++) {
+            header.putInt(names.get(i).length);
+            header.put(names.get(i));
+            header.putInt(reference.getLength(i));
+        }
+        header.putInt(sequence.length());
+        header.putInt(sequence.getAmbiguousRuns().limit() / 2);
+        header.putInt(index.size());
+        header.putInt(index.getKeys().limit());
+        header.putInt(index.getNumPositions());
+        header.clear();
+
+        try (FileChannel channel =
+                FileChannel.open(
+                        Paths.get(path),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+
+            ByteBuffer buffer =
+                    ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            writeLongs(channel, buffer, sequence.getWords());
+            writeInts(channel, buffer, sequence.getAmbiguousRuns());
+            writeLongs(channel, buffer, index.getKeys());
+            writeInts(channel, buffer, index.getOffsets());
+            writeInts(channel, buffer, index.getPositions());
+        }
+    }
+
+    /**
+     * Memory-map an index file. The returned reference and index read straight from the
+     * mapped file, so loading takes time independent of the reference size.
+     *
+     * @param path Path to the index file.
+     * @return Loaded index file.
+     * @throws IOException If the file cannot be read or is not a valid index file.
+     */
+    public static IndexFile load(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer prefix = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            while (prefix.hasRemaining()) {
+                if (channel.read(prefix) < 0) {
+                    throw new EOFException("Index file '" + path + "' is truncated.");
+                }
+            }
+            prefix.flip();
+
+            if (prefix.getLong() != MAGIC) {
+                throw new IOException("File '" + path + "' is not an MSCRM index file.");
+            }
+            int version = prefix.getInt();
+            if (version < MIN_VERSION || version > VERSION) {
+                throw new IOException(
+                        "Index file '" + path + "' has unsupported version " + version + ".");
+            }
+            int headerLength = prefix.getInt();
+
+            ByteBuffer header =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, headerLength)
+                            .order(ByteOrder.LITTLE_ENDIAN);
+            header.position(16);
+            int k = header.getInt();
+            SeedShape shape = SeedShape.contiguous(k);
+            if (version >= 3) {
+                int span = header.getInt();
+                int window = header.getInt();
+                long maskBits = header.getLong();
+                try {
+                    shape = SeedShape.fromMaskBits(maskBits, span, window);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(
+                            "Index file '" + path + "' has an invalid seed shape.", e);
+                }
+                if (shape.getK() != k) {
+                    throw new IOException("Index file '" + path + "' has an invalid seed shape.");
+                }
+            }
+            int numContigs = header.getInt();
+
+            List<String> names = new ArrayList<>();
+            int[] starts = new int[numContigs + 1];
+            for (int i = 0; i < numContigs; i++) {
+                byte[] name = new byte[header.getInt()];
+                header.get(name);
+                names.add(new String(name, StandardCharsets.UTF_8));
+                starts[i + 1] = starts[i] + header.getInt();
+            }
+            int length = header.getInt();
+            int numRuns = header.getInt();
+            int size = header.getInt();
+            int capacity = header.getInt();
+            int numPositions = header.getInt();
+
+            if (length != starts[numContigs]) {
+                throw new IOException("Index file '" + path + "' has inconsistent contig lengths.");
+            }
+
+            long position = headerLength;
+            int numWords = PackedSequence.getNumWords(length);
+            LongBuffer words = mapLongs(channel, position, numWords);
+            position += 8L * numWords;
+            IntBuffer runs = mapInts(channel, position, 2 * numRuns);
+            position += align(8L * numRuns);
+            LongBuffer keys = mapLongs(channel, position, capacity);
+            position += 8L * capacity;
+            IntBuffer offsets = mapInts(channel, position, capacity + 1);
+            position += align(4L * (capacity + 1));
+            IntBuffer positions = mapInts(channel, position, numPositions);
+            position += align(4L * numPositions);
+
+            if (position > channel.size()) {
+                throw new EOFException("Index file '" + path + "' is truncated.");
+            }
+
+            PackedSequence sequence = PackedSequence.wrap(length, words, runs);
+            return new IndexFile(
+                    new Reference(names, starts, sequence),
+                    KmerIndex.wrap(shape, keys, offsets, positions, size));
+        }
+    }
+
+    /**
+     * Get the reference stored in the index file.
+     *
+     * @return Reference.
+     */
+    public Reference getReference() {
+        return this.reference;
+    }
+
+    /**
+     * Get the k-mer index stored in the index file.
+     *
+     * @return K-mer index over all contigs of the reference.
+     */
+    public KmerIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Round a size up to a multiple of 8 bytes.
+     *
+     * @param size Size in bytes.
+     * @return Aligned size in bytes.
+     */
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    /**
+     * Round a size up to a multiple of 8 bytes.
+     *
+     * @param size Size in bytes.
+     * @return Aligned size in bytes.
+     */
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * Map a table of longs from the file.
+     *
+     * @param channel File channel.
+     * @param position Position of the table in the file.
+     * @param count Number of longs.
+     * @return Read-only buffer over the table.
+     * @throws IOException If the table cannot be mapped.
+     */
+    private static LongBuffer mapLongs(FileChannel channel, long position, int count)
+            throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, 8L * count)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asLongBuffer();
+    }
+
+    /**
+     * Map a table of ints from the file.
+     *
+     * @param channel File channel.
+     * @param position Position of the table in the file.
+     * @param count Number of ints.
+     * @return Read-only buffer over the table.
+     * @throws IOException If the table cannot be mapped.
+     */
+    private static IntBuffer mapInts(FileChannel channel, long position, int count)
+            throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * count)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .asIntBuffer();
+    }
+
+    /**
+     * Write a table of longs to the file.
+     *
+     * @param channel File channel.
+     * @param buffer Buffer to stage bytes in.
+     * @param table Table to write.
+     * @throws IOException If the table cannot be written.
+     */
+    private static void writeLongs(FileChannel channel, ByteBuffer buffer, LongBuffer table)
+            throws IOException {
+        while (table.hasRemaining()) {
+            buffer.clear();
+            LongBuffer view = buffer.asLongBuffer();
+            int count = Math.min(view.capacity(), table.remaining());
+            LongBuffer chunk = table.slice();
+            chunk.limit(count);
+            view.put(chunk);
+            table.position(table.position() + count);
+
+            buffer.limit(8 * count);
+            writeFully(channel, buffer);
+        }
+    }
+
+    /**
+     * Write a table of ints to the file, padded to a multiple of 8 bytes.
+     *
+     * @param channel File channel.
+     * @param buffer Buffer to stage bytes in.
+     * @param table Table to write.
+     * @throws IOException If the table cannot be written.
+     */
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, IntBuffer table)
+            throws IOException {
+        boolean pad = (table.remaining() & 1) == 1;
+        while (table.hasRemaining()) {
+            buffer.clear();
+            IntBuffer view = buffer.asIntBuffer();
+            int count = Math.min(view.capacity(), table.remaining());
+            IntBuffer chunk = table.slice();
+            chunk.limit(count);
+            view.put(chunk);
+            table.position(table.position() + count);
+
+            buffer.limit(4 * count);
+            writeFully(channel, buffer);
+        }
+
+        if (pad) {
+            buffer.clear();
+            buffer.putInt(0);
+            buffer.flip();
+            writeFully(channel, buffer);
+        }
+    }
+
+    /**
+     * Write all remaining bytes of a buffer to the file.
+     *
+     * @param channel File channel.
+     * @param buffer Buffer to write.
+     * @throws IOException If the bytes cannot be written.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Construct an index file from its contents.
+     *
+     * @param reference Reference.
+     * @param index K-mer index over all contigs.
+     */
+    private IndexFile(Reference reference, KmerIndex index) {
+        this.reference = reference;
+        this.index = index;
+    }
+}
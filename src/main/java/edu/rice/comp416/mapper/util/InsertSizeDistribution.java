@@ -0,0 +1,105 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.Arrays;
+
+/**
+ * Insert size distribution of read pairs, learned from the first pairs that map confidently. Once
+ * enough insert sizes are added, the range of likely insert sizes is fixed from their quartiles,
+ * and further insert sizes are ignored. Insert sizes can be added from any thread, but the
+ * distribution only depends on their order.
+ */
+public class InsertSizeDistribution {
+
+    /** Number of interquartile ranges beyond the quartiles that insert sizes are likely in. */
+    private static final int NUM_INTERQUARTILE_RANGES = 2;
+
+    private final int[] insertSizes;
+
+    private int numInsertSizes;
+
+    private volatile boolean ready;
+
+    private int median;
+
+    private int min;
+
+    private int max;
+
+    /**
+     * Construct a new distribution.
+     *
+     * @param numInsertSizes Number of insert sizes to learn the distribution from.
+     */
+    public InsertSizeDistribution(int numInsertSizes) {
+        if (numInsertSizes <= 0) {
+            throw new IllegalArgumentException("Number of insert sizes must be positive.");
+        }
+
+        this.insertSizes = new int[numInsertSizes];
+    }
+
+    /**
+     * Add the insert size of a confidently mapped pair, unless the distribution is learned.
+     *
+     * @param insertSize Distance from the leftmost to the rightmost mapped base of the pair.
+     */
+    public void add(int insertSize) {
+        if (this.ready) {
+            return;
+        }
+
+        synchronized (this) {
+            if (this.ready) {
+                return;
+            }
+
+            this.insertSizes[this.numInsertSizes++] = insertSize;
+            if (this.numInsertSizes == this.insertSizes.length) {
+                Arrays.sort(this.insertSizes);
+                int n = this.insertSizes.length;
+                int lower = this.insertSizes[n / 4];
+                int upper = this.insertSizes[(3 * n) / 4];
+                this.median = this.insertSizes[n / 2];
+                this.min = Math.max(0, lower - NUM_INTERQUARTILE_RANGES * (upper - lower));
+                this.max = upper + NUM_INTERQUARTILE_RANGES * (upper - lower);
+                this.ready = true;
+            }
+        }
+    }
+
+    /**
+     * Check if enough insert sizes were added to learn the distribution.
+     *
+     * @return True if the distribution is learned; false otherwise.
+     */
+    public boolean isReady() {
+        return this.ready;
+    }
+
+    /**
+     * Get the median insert size.
+     *
+     * @return Median insert size, or 0 if the distribution is not learned yet.
+     */
+    public int getMedian() {
+        return this.median;
+    }
+
+    /**
+     * Get the smallest likely insert size.
+     *
+     * @return Smallest likely insert size, or 0 if the distribution is not learned yet.
+     */
+    public int getMin() {
+        return this.min;
+    }
+
+    /**
+     * Get the largest likely insert size.
+     *
+     * @return Largest likely insert size, or 0 if the distribution is not learned yet.
+     */
+    public int getMax() {
+        return this.max;
+    }
+}
@@ -0,0 +1,218 @@
+package edu.rice.comp416.mapper.util;
+
+/**
+ * Minimal writer of indented JSON, e.g. for run reports. Names and values are appended in order,
+ * and commas and indentation are placed between them.
+ *
+ * <pre>{@code
+ * JsonWriter json = new JsonWriter();
+ * json.beginObject().name("reads").value(40000).endObject();
+ * String report = json.toString();
+ * }</pre>
+ */
+public class JsonWriter {
+    private final StringBuilder out;
+
+    /** Whether the innermost open object or array has any members yet. */
+    private boolean empty;
+
+    /** Whether a name was just written, so that its value follows on the same line. */
+    private boolean afterName;
+
+    private int depth;
+
+    /** Construct a new writer. */
+    public JsonWriter() {
+        this.out = new StringBuilder();
+        this.empty = true;
+    }
+
+    /**
+     * Open an object.
+     *
+     * @return This writer.
+     */
+    public JsonWriter beginObject() {
+        return open('{');
+    }
+
+    /**
+     * Close the innermost object.
+     *
+     * @return This writer.
+     */
+    public JsonWriter endObject() {
+        return close('}');
+    }
+
+    /**
+     * Open an array.
+     *
+     * @return This writer.
+     */
+    public JsonWriter beginArray() {
+        return open('[');
+    }
+
+    /**
+     * Close the innermost array.
+     *
+     * @return This writer.
+     */
+    public JsonWriter endArray() {
+        return close(']');
+    }
+
+    /**
+     * Write the name of the next member of an object.
+     *
+     * @param name Name of the member.
+     * @return This writer.
+     */
+    public JsonWriter name(String name) {
+        separate();
+        appendString(name);
+        this.out.append(": ");
+        this.afterName = true;
+        return this;
+    }
+
+    /**
+     * Write a string value, or null.
+     *
+     * @param value Value.
+     * @return This writer.
+     */
+    public JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            this.out.append("null");
+        } else {
+            appendString(value);
+        }
+        return this;
+    }
+
+    /**
+     * Write an integer value.
+     *
+     * @param value Value.
+     * @return This writer.
+     */
+    public JsonWriter value(long value) {
+        separate();
+        this.out.append(value);
+        return this;
+    }
+
+    /**
+     * Write a number value. Values that are not finite are written as null.
+     *
+     * @param value Value.
+     * @return This writer.
+     */
+    public JsonWriter value(double value) {
+        separate();
+        if (Double.isFinite(value)) {
+            this.out.append(value);
+        } else {
+            this.out.append("null");
+        }
+        return this;
+    }
+
+    /**
+     * Write a boolean value.
+     *
+     * @param value Value.
+     * @return This writer.
+     */
+    public JsonWriter value(boolean value) {
+        separate();
+        this.out.append(value);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return this.out.toString();
+    }
+
+    /**
+     * Open an object or array.
+     *
+     * @param bracket Opening bracket.
+     * @return This writer.
+     */
+    private JsonWriter open(char bracket) {
+        separate();
+        this.out.append(bracket);
+        this.depth += 1;
+        this.empty = true;
+        return this;
+    }
+
+    /**
+     * Close the innermost object or array.
+     *
+     * @param bracket Closing bracket.
+     * @return This writer.
+     */
+    private JsonWriter close(char bracket) {
+        this.depth -= 1;
+        if (!this.empty) {
+            newLine();
+        }
+        this.out.append(bracket);
+        this.empty = false;
+        return this;
+    }
+
+    /** Start the next member or element, on its own line after a comma if needed. */
+    private void separate() {
+        if (this.afterName) {
+            this.afterName = false;
+            return;
+        }
+
+        if (this.depth > 0) {
+            if (!this.empty) {
+                this.out.append(',');
+            }
+            newLine();
+        }
+        this.empty = false;
+    }
+
+    /** Start a new line at the current depth. */
+    private void newLine() {
+        this.out.append('\n');
+        for (int i = 0; i < this.depth; i++) {
+            this.out.append("  ");
+        }
+    }
+
+    /**
+     * Append a quoted string, escaping quotes, backslashes and control characters.
+     *
+     * @param s String.
+     */
+    private void appendString(String s) {
+        this.out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                this.out.append('\\').append(c);
+            } else if (c == '\n') {
+                this.out.append("\\n");
+            } else if (c == '\t') {
+                this.out.append("\\t");
+            } else if (c < 0x20) {
+                this.out.append(String.format("\\u%04x", (int) c));
+            } else {
+                this.out.append(c);
+            }
+        }
+        this.out.append('"');
+    }
+}
@@ -0,0 +1,130 @@
+package edu.rice.comp416.mapper.util;
+
+/**
+ * Rolling encoder over the 2-bit packed k-mers of a sequence. Each step shifts one base into the
+ * code of the k-mer and of its reverse complement, so walking a sequence takes constant time per
+ * k-mer and allocates nothing. An encoder can be reset and reused for any number of sequences.
+ *
+ * <pre>{@code
+ * KmerEncoder encoder = new KmerEncoder(k);
+ * encoder.reset(read);
+ * while (encoder.next()) {
+ *     index.lookup(encoder.getCode(), range);
+ * }
+ * }</pre>
+ */
+public class KmerEncoder implements SeedEncoder {
+
+    /** K-mer size. */
+    private final int k;
+
+    /** Mask of the 2k low bits of a code. */
+    private final long mask;
+
+    /** Shift of the first base of a k-mer in its code. */
+    private final int shift;
+
+    private CharSequence s;
+
+    /** Position of the next base to shift in. */
+    private int i;
+
+    /** Position after the last base to shift in. */
+    private int end;
+
+    /** Number of consecutive A,C,G,T bases ending at position i - 1. */
+    private int valid;
+
+    private long code;
+
+    private long reverseCode;
+
+    /**
+     * Construct a new encoder.
+     *
+     * @param k K-mer size, between 1 and {@link KmerIndex#MAX_K}.
+     */
+    public KmerEncoder(int k) {
+        if (k <= 0 || k > KmerIndex.MAX_K) {
+            throw new IllegalArgumentException(
+                    "K-mer size must be between 1 and " + KmerIndex.MAX_K + ".");
+        }
+
+        this.k = k;
+        this.mask = (1L << (2 * k)) - 1;
+        this.shift = 2 * (k - 1);
+    }
+
+    @Override
+    public void reset(CharSequence s) {
+        reset(s, 0, s.length());
+    }
+
+    @Override
+    public void reset(CharSequence s, int start, int end) {
+        this.s = s;
+        this.i = start;
+        this.end = end;
+        this.valid = 0;
+        this.code = 0;
+        this.reverseCode = 0;
+    }
+
+    @Override
+    public boolean next() {
+        while (this.i < this.end) {
+            int base = Transform.encodeBase(this.s.charAt(this.i));
+            this.i += 1;
+
+            if (base < 0) {
+                this.valid = 0;
+                continue;
+            }
+
+            this.code = ((this.code << 2) | base) & this.mask;
+            this.reverseCode = (this.reverseCode >>> 2) | ((long) (3 - base) << this.shift);
+            this.valid += 1;
+
+            if (this.valid >= this.k) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public int getOffset() {
+        return this.i - this.k;
+    }
+
+    /**
+     * Get the code of the current k-mer.
+     *
+     * @return Packed k-mer, see {@link Transform#encodeKmer(CharSequence, int, int)}.
+     */
+    @Override
+    public long getCode() {
+        return this.code;
+    }
+
+    @Override
+    public long getReverseCode() {
+        return this.reverseCode;
+    }
+
+    @Override
+    public int getK() {
+        return this.k;
+    }
+
+    @Override
+    public int getSpan() {
+        return this.k;
+    }
+
+    @Override
+    public int getContext() {
+        return 0;
+    }
+}
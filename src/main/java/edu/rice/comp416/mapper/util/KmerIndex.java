@@ -0,0 +1,630 @@
+package edu.rice.comp416.mapper.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Seed index over 2-bit packed k-mers. Every k-mer is stored once in an open-addressing hash
+ * table, and its positions are kept in a single flat array, grouped by k-mer (CSR layout). No
+ * objects are allocated per k-mer or per position. The tables are held in buffers, so an index
+ * can equally live on the heap or be memory-mapped from an index file.
+ *
+ * <p>The index is built in parallel: the sequence is cut into chunks whose k-mers are counted and
+ * placed concurrently, with lock-free updates of the shared tables.
+ *
+ * <p>Besides every k-mer, an index can hold spaced seeds or only the minimizers of the seeds, as
+ * given by its {@link SeedShape}. Reads are then seeded with the same shape.
+ */
+public class KmerIndex implements SeedIndex {
+
+    /** Largest supported k-mer size, so that a packed k-mer fits in a long. */
+    public static final int MAX_K = 31;
+
+    /** Marker for an empty slot in the hash table. Never a valid packed k-mer. */
+    private static final long EMPTY = -1;
+
+    /** Maximum load factor of the hash table. */
+    private static final double LOAD_FACTOR = 0.7;
+
+    /** Smallest number of k-mers per chunk of a parallel build. */
+    private static final int MIN_CHUNK_SIZE = 1 << 16;
+
+    /** Number of slots per task when sorting the positions of each slot. */
+    private static final int SORT_BLOCK_SIZE = 1 << 16;
+
+    /** Atomic access to the elements of the hash table while it is built. */
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /** Atomic access to the elements of the offset table while it is built. */
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    /** Shape of the seeds, whose number of care positions is the k-mer size. */
+    private final SeedShape shape;
+
+    /** Packed k-mer stored in each slot of the hash table, or EMPTY. */
+    private final LongBuffer keys;
+
+    /** Positions of slot i are positions[offsets[i]] to positions[offsets[i + 1] - 1]. */
+    private final IntBuffer offsets;
+
+    /** Positions of all k-mers, grouped by slot and sorted in ascending order within a slot. */
+    private final IntBuffer positions;
+
+    /** Mask to turn a hash into a slot. */
+    private final int mask;
+
+    /** Number of distinct k-mers in the index. */
+    private final int size;
+
+    /**
+     * Build k-mer index from given sequence. K-mers that contain characters other than A,C,G,T
+     * are skipped.
+     *
+     * @param s Input sequence.
+     * @param k K-mer size, between 1 and {@link #MAX_K}.
+     * @param offset Offset for the position of the first k-mer in s.
+     * @return An instance of KmerIndex built from given sequence.
+     */
+    public static KmerIndex fromSequence(CharSequence s, int k, int offset) {
+        return build(
+                s,
+                new int[] {0},
+                SeedShape.contiguous(k),
+                offset,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Build k-mer index from given sequence.
+     *
+     * @param s Input sequence.
+     * @param k K-mer size, between 1 and {@link #MAX_K}.
+     * @return An instance of KmerIndex built from given sequence.
+     */
+    public static KmerIndex fromSequence(CharSequence s, int k) {
+        return fromSequence(s, k, 0);
+    }
+
+    /**
+     * Build k-mer index over all contigs of a reference. Positions are in the concatenated
+     * sequence of the reference, and k-mers that span two contigs are skipped.
+     *
+     * @param reference Input reference.
+     * @param k K-mer size, between 1 and {@link #MAX_K}.
+     * @return An instance of KmerIndex built from given reference.
+     */
+    public static KmerIndex fromReference(Reference reference, int k) {
+        return fromReference(reference, SeedShape.contiguous(k));
+    }
+
+    /**
+     * Build seed index over all contigs of a reference, e.g. of spaced seeds or minimizers.
+     * Positions are in the concatenated sequence of the reference, and seeds that span two
+     * contigs are skipped.
+     *
+     * @param reference Input reference.
+     * @param shape Shape of the seeds.
+     * @return An instance of KmerIndex built from given reference.
+     */
+    public static KmerIndex fromReference(Reference reference, SeedShape shape) {
+        return fromReference(reference, shape, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Build k-mer index over all contigs of a reference with a given degree of parallelism.
+     *
+     * @param reference Input reference.
+     * @param k K-mer size, between 1 and {@link #MAX_K}.
+     * @param parallelism Number of threads expected to build the index; 1 builds it serially.
+     * @return An instance of KmerIndex built from given reference.
+     */
+    static KmerIndex fromReference(Reference reference, int k, int parallelism) {
+        return fromReference(reference, SeedShape.contiguous(k), parallelism);
+    }
+
+    /**
+     * Build seed index over all contigs of a reference with a given degree of parallelism.
+     *
+     * @param reference Input reference.
+     * @param shape Shape of the seeds.
+     * @param parallelism Number of threads expected to build the index; 1 builds it serially.
+     * @return An instance of KmerIndex built from given reference.
+     */
+    static KmerIndex fromReference(Reference reference, SeedShape shape, int parallelism) {
+        return build(reference.getSequence(), reference.getStarts(), shape, 0, parallelism);
+    }
+
+    /**
+     * Build seed index from a sequence made of one or more segments. Seeds that contain
+     * characters other than A,C,G,T or that span two segments are skipped.
+     *
+     * @param s Input sequence.
+     * @param starts Sorted start of each segment in s; may be followed by the length of s.
+     * @param shape Shape of the seeds.
+     * @param offset Offset for the position of the first seed in s.
+     * @param parallelism Number of threads expected to build the index; 1 builds it serially.
+     * @return An instance of KmerIndex built from given sequence.
+     */
+    private static KmerIndex build(
+            CharSequence s, int[] starts, SeedShape shape, int offset, int parallelism) {
+        int k = shape.getK();
+        int numChunks = (int) Math.max(1, Math.min(4L * parallelism, s.length() / MIN_CHUNK_SIZE));
+
+        // Atomic updates keep the CPU from overlapping cache misses, so they are only used when
+        // chunks actually run concurrently.
+        boolean concurrent = numChunks > 1 && parallelism > 1;
+        if (!concurrent) {
+            numChunks = 1;
+        }
+        int chunks = numChunks;
+
+        // The number of distinct seeds is bounded by both the number of seeds and 4^k. Sampled
+        // seeds are counted first, so that the table is sized for the seeds that are kept.
+        long numSeeds = Math.max(0, s.length() - shape.getSpan() + 1);
+        if (shape.isSampled()) {
+            numSeeds =
+                    IntStream.range(0, chunks)
+                            .parallel()
+                            .mapToLong(chunk -> countSeeds(s, starts, shape, chunk, chunks))
+                            .sum();
+        }
+        long maxDistinct = Math.min(numSeeds, 1L << Math.min(2 * k, 40));
+        int capacity = tableCapacity(maxDistinct);
+
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        int[] offsets = new int[capacity + 1];
+
+        // First pass: insert every seed and count its occurrences in the entry after its slot.
+        IntStream.range(0, chunks)
+                .parallel()
+                .forEach(
+                        chunk -> {
+                            SeedEncoder encoder = shape.newEncoder();
+                            int chunkStart = getChunkStart(s, chunk, chunks);
+                            int chunkEnd = getChunkStart(s, chunk + 1, chunks);
+                            for (int j = 0; j < starts.length; j++) {
+                                if (resetChunk(encoder, s, starts, j, chunk, chunks)) {
+                                    while (encoder.next()) {
+                                        int position = encoder.getOffset();
+                                        if (position < chunkStart) {
+                                            continue;
+                                        } else if (position >= chunkEnd) {
+                                            break;
+                                        }
+                                        int slot = insert(keys, encoder.getCode(), concurrent);
+                                        if (concurrent) {
+                                            INTS.getAndAdd(offsets, slot + 1, 1);
+                                        } else {
+                                            offsets[slot + 1] += 1;
+                                        }
+                                    }
+                                }
+                            }
+                        });
+
+        // Turn counts into start offsets of each slot, followed by the total.
+        int size = prefixSum(offsets, concurrent);
+        int[] positions = new int[offsets[capacity]];
+
+        // Second pass: place each position at the next free index of its slot, so that offsets
+        // end up pointing to the start of the following slot.
+        IntStream.range(0, chunks)
+                .parallel()
+                .forEach(
+                        chunk -> {
+                            SeedEncoder encoder = shape.newEncoder();
+                            int chunkStart = getChunkStart(s, chunk, chunks);
+                            int chunkEnd = getChunkStart(s, chunk + 1, chunks);
+                            for (int j = 0; j < starts.length; j++) {
+                                if (resetChunk(encoder, s, starts, j, chunk, chunks)) {
+                                    while (encoder.next()) {
+                                        int position = encoder.getOffset();
+                                        if (position < chunkStart) {
+                                            continue;
+                                        } else if (position >= chunkEnd) {
+                                            break;
+                                        }
+                                        int slot = slotOf(keys, encoder.getCode());
+                                        int i =
+                                                concurrent
+                                                        ? (int) INTS.getAndAdd(offsets, slot, 1)
+                                                        : offsets[slot]++;
+                                        positions[i] = offset + position;
+                                    }
+                                }
+                            }
+                        });
+
+        System.arraycopy(offsets, 0, offsets, 1, capacity);
+        offsets[0] = 0;
+
+        // Concurrent chunks place their positions in any order, so sort the positions of each
+        // slot. A single chunk places them in ascending order.
+        if (concurrent) {
+            sortSlots(positions, offsets, capacity);
+        }
+
+        return new KmerIndex(
+                shape,
+                LongBuffer.wrap(keys),
+                IntBuffer.wrap(offsets),
+                IntBuffer.wrap(positions),
+                size);
+    }
+
+    /**
+     * Turn counts into their inclusive prefix sums, in parallel if asked to.
+     *
+     * @param counts Counts, summed in place.
+     * @param concurrent True to sum in parallel; false otherwise.
+     * @return Number of non-zero counts.
+     */
+    private static int prefixSum(int[] counts, boolean concurrent) {
+        if (concurrent) {
+            int size =
+                    (int)
+                            IntStream.range(0, counts.length)
+                                    .parallel()
+                                    .filter(i -> counts[i] > 0)
+                                    .count();
+            Arrays.parallelPrefix(counts, Integer::sum);
+            return size;
+        }
+
+        int size = 0;
+        int sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                size += 1;
+            }
+            sum += counts[i];
+            counts[i] = sum;
+        }
+        return size;
+    }
+
+    /**
+     * Sort the positions of each slot in parallel.
+     *
+     * @param positions Positions grouped by slot.
+     * @param offsets Start of each slot in positions, plus the total number of positions.
+     * @param capacity Number of slots.
+     */
+    private static void sortSlots(int[] positions, int[] offsets, int capacity) {
+        IntStream.range(0, (capacity + SORT_BLOCK_SIZE - 1) / SORT_BLOCK_SIZE)
+                .parallel()
+                .forEach(
+                        block -> {
+                            int end = Math.min(capacity, (block + 1) * SORT_BLOCK_SIZE);
+                            for (int slot = block * SORT_BLOCK_SIZE; slot < end; slot++) {
+                                if (offsets[slot + 1] - offsets[slot] > 1) {
+                                    Arrays.sort(positions, offsets[slot], offsets[slot + 1]);
+                                }
+                            }
+                        });
+    }
+
+    /**
+     * Count the seeds of all segments that start within a chunk of the sequence.
+     *
+     * @param s Input sequence.
+     * @param starts Sorted start of each segment in s; may be followed by the length of s.
+     * @param shape Shape of the seeds.
+     * @param chunk Index of the chunk.
+     * @param numChunks Number of chunks the sequence is cut into.
+     * @return Number of seeds.
+     */
+    private static long countSeeds(
+            CharSequence s, int[] starts, SeedShape shape, int chunk, int numChunks) {
+        SeedEncoder encoder = shape.newEncoder();
+        int chunkStart = getChunkStart(s, chunk, numChunks);
+        int chunkEnd = getChunkStart(s, chunk + 1, numChunks);
+        long count = 0;
+        for (int j = 0; j < starts.length; j++) {
+            if (resetChunk(encoder, s, starts, j, chunk, numChunks)) {
+                while (encoder.next() && encoder.getOffset() < chunkEnd) {
+                    if (encoder.getOffset() >= chunkStart) {
+                        count += 1;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the position a chunk of the sequence starts at.
+     *
+     * @param s Input sequence.
+     * @param chunk Index of the chunk, or the number of chunks for the end of the last chunk.
+     * @param numChunks Number of chunks the sequence is cut into.
+     * @return Start of the chunk.
+     */
+    private static int getChunkStart(CharSequence s, int chunk, int numChunks) {
+        return (int) ((long) s.length() * chunk / numChunks);
+    }
+
+    /**
+     * Point an encoder at the seeds of a segment that start within a chunk of the sequence.
+     * Sampled seeds are chosen from their neighbors, so the encoder also sees the neighbors
+     * just outside of the chunk. It may then emit seeds before or after the chunk, which belong
+     * to the neighboring chunks and are to be skipped.
+     *
+     * @param encoder Encoder to reset.
+     * @param s Input sequence.
+     * @param starts Sorted start of each segment in s; may be followed by the length of s.
+     * @param segment Index of the segment.
+     * @param chunk Index of the chunk.
+     * @param numChunks Number of chunks the sequence is cut into.
+     * @return True if the segment has seeds in the chunk; false otherwise.
+     */
+    private static boolean resetChunk(
+            SeedEncoder encoder,
+            CharSequence s,
+            int[] starts,
+            int segment,
+            int chunk,
+            int numChunks) {
+        int chunkStart = getChunkStart(s, chunk, numChunks);
+        int chunkEnd = getChunkStart(s, chunk + 1, numChunks);
+        int segmentEnd = segment + 1 < starts.length ? starts[segment + 1] : s.length();
+
+        int from = Math.max(chunkStart, starts[segment]);
+        int to = Math.min(chunkEnd, segmentEnd);
+        if (from >= to) {
+            return false;
+        }
+
+        // Seeds that start before the end of the chunk may run past it.
+        int context = encoder.getContext();
+        encoder.reset(
+                s,
+                Math.max(from - context, starts[segment]),
+                (int) Math.min((long) to + encoder.getSpan() - 1 + context, segmentEnd));
+        return true;
+    }
+
+    @Override
+    public int getK() {
+        return this.shape.getK();
+    }
+
+    /**
+     * Get the shape of the seeds of the index, which reads are to be seeded with.
+     *
+     * @return Seed shape.
+     */
+    public SeedShape getShape() {
+        return this.shape;
+    }
+
+    /**
+     * Get the number of distinct k-mers in the index.
+     *
+     * @return Number of distinct k-mers.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Find the slot of a packed k-mer.
+     *
+     * @param code Packed k-mer, see {@link Transform#encodeKmer(CharSequence, int, int)}.
+     * @return Slot of the k-mer if it is in the index; -1 otherwise.
+     */
+    public int find(long code) {
+        if (code < 0) {
+            return -1;
+        }
+
+        int slot = hash(code) & this.mask;
+        while (true) {
+            long key = this.keys.get(slot);
+            if (key == code) {
+                return slot;
+            } else if (key == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+    }
+
+    @Override
+    public int lookup(long code, int[] range) {
+        int slot = find(code);
+        if (slot < 0) {
+            range[0] = 0;
+            range[1] = 0;
+            return 0;
+        }
+
+        range[0] = getStart(slot);
+        range[1] = getEnd(slot);
+        return range[1] - range[0];
+    }
+
+    /**
+     * Get the number of positions a packed k-mer occurs at.
+     *
+     * @param code Packed k-mer.
+     * @return Number of occurrences of the k-mer.
+     */
+    public int count(long code) {
+        int slot = find(code);
+        return slot < 0 ? 0 : getEnd(slot) - getStart(slot);
+    }
+
+    /**
+     * Get the index of the first position of a slot.
+     *
+     * @param slot Slot returned by {@link #find(long)}.
+     * @return Index to pass to {@link #getPosition(int)}.
+     */
+    public int getStart(int slot) {
+        return this.offsets.get(slot);
+    }
+
+    /**
+     * Get the index after the last position of a slot.
+     *
+     * @param slot Slot returned by {@link #find(long)}.
+     * @return Exclusive end index to pass to {@link #getPosition(int)}.
+     */
+    public int getEnd(int slot) {
+        return this.offsets.get(slot + 1);
+    }
+
+    @Override
+    public int getPosition(int i) {
+        return this.positions.get(i);
+    }
+
+    /**
+     * Get the hash table capacity needed to hold the given number of k-mers.
+     *
+     * @param maxDistinct Upper bound on the number of distinct k-mers.
+     * @return Power of two capacity that keeps the load factor below {@link #LOAD_FACTOR}, at
+     *     most 2^30.
+     * @throws IllegalArgumentException If the capacity would be larger than 2^30.
+     */
+    static int tableCapacity(long maxDistinct) {
+        long needed = (long) Math.ceil(maxDistinct / LOAD_FACTOR) + 1;
+        if (needed > (1 << 30)) {
+            throw new IllegalArgumentException("Sequence is too large to index.");
+        }
+
+        // Smallest power of two that is at least the needed capacity, so 2^30 does not overflow.
+        return Math.max(2, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+
+    /**
+     * Insert a k-mer into a hash table, unless it is already in it.
+     *
+     * @param keys Hash table.
+     * @param code Packed k-mer.
+     * @param concurrent True if other threads may insert into the table at the same time.
+     * @return Slot of the k-mer.
+     */
+    private static int insert(long[] keys, long code, boolean concurrent) {
+        if (!concurrent) {
+            int slot = slotOf(keys, code);
+            keys[slot] = code;
+            return slot;
+        }
+
+        int mask = keys.length - 1;
+        int slot = hash(code) & mask;
+        while (true) {
+            long key = (long) LONGS.getVolatile(keys, slot);
+            if (key == code) {
+                return slot;
+            } else if (key == EMPTY) {
+                if (LONGS.compareAndSet(keys, slot, EMPTY, code)) {
+                    return slot;
+                }
+                // Another thread took the slot; look at it again.
+                continue;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Find the slot a k-mer is stored in, or the empty slot it would be inserted into, using
+     * linear probing.
+     *
+     * @param keys Hash table.
+     * @param code Packed k-mer.
+     * @return Slot of the k-mer.
+     */
+    private static int slotOf(long[] keys, long code) {
+        int mask = keys.length - 1;
+        int slot = hash(code) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != code) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Mix the bits of a packed k-mer, so that similar k-mers end up in different slots.
+     *
+     * @param code Packed k-mer.
+     * @return Hash of the k-mer.
+     */
+    private static int hash(long code) {
+        code ^= code >>> 33;
+        code *= 0xff51afd7ed558ccdL;
+        code ^= code >>> 33;
+        return (int) code;
+    }
+
+    /**
+     * Get the number of positions stored in the index.
+     *
+     * @return Number of positions.
+     */
+    public int getNumPositions() {
+        return this.positions.limit();
+    }
+
+    /**
+     * Wrap already built tables, e.g. from a memory-mapped index file.
+     *
+     * @param shape Shape of the seeds.
+     * @param keys Hash table of packed k-mers; its capacity must be a power of two.
+     * @param offsets Start of each slot in positions, plus the total number of positions.
+     * @param positions Positions grouped by slot.
+     * @param size Number of distinct k-mers.
+     * @return K-mer index backed by the given buffers.
+     */
+    static KmerIndex wrap(
+            SeedShape shape, LongBuffer keys, IntBuffer offsets, IntBuffer positions, int size) {
+        return new KmerIndex(shape, keys, offsets, positions, size);
+    }
+
+    /**
+     * Get the hash table.
+     *
+     * @return Buffer of packed k-mers per slot.
+     */
+    LongBuffer getKeys() {
+        return this.keys.duplicate();
+    }
+
+    /**
+     * Get the offset table.
+     *
+     * @return Buffer of slot offsets.
+     */
+    IntBuffer getOffsets() {
+        return this.offsets.duplicate();
+    }
+
+    /**
+     * Get the positions.
+     *
+     * @return Buffer of positions grouped by slot.
+     */
+    IntBuffer getPositions() {
+        return this.positions.duplicate();
+    }
+
+    /** Private constructor for k-mer index, to be called from static methods. */
+    private KmerIndex(
+            SeedShape shape, LongBuffer keys, IntBuffer offsets, IntBuffer positions, int size) {
+        this.shape = shape;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.positions = positions;
+        this.size = size;
+        this.mask = keys.limit() - 1;
+    }
+}
@@ -0,0 +1,159 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counters, histograms and busy time of one thread of a pipeline, e.g. the reader, a mapping
+ * worker or the writer. A thread looks up its counters and histograms by name once and then
+ * updates them without synchronization; the metrics of all threads are read once they finish.
+ */
+public class Metrics {
+    private final String name;
+
+    private final Map<String, Counter> counters;
+
+    private final Map<String, Histogram> histograms;
+
+    /** Time the thread started, or 0 for merged metrics. */
+    private final long start;
+
+    private long elapsedNanos;
+
+    private long waitNanos;
+
+    /**
+     * Construct new metrics of a thread, which starts its clock.
+     *
+     * @param name Name of the thread.
+     */
+    public Metrics(String name) {
+        this.name = name;
+        this.counters = new LinkedHashMap<>();
+        this.histograms = new LinkedHashMap<>();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Merge the metrics of several threads, e.g. of all mapping workers.
+     *
+     * @param name Name of the merged metrics.
+     * @param metrics Metrics to merge.
+     * @return Metrics with the sums of all counters, histograms and times.
+     */
+    public static Metrics merge(String name, List<Metrics> metrics) {
+        Metrics merged = new Metrics(name);
+        for (Metrics m : metrics) {
+            for (Map.Entry<String, Counter> entry : m.counters.entrySet()) {
+                merged.getCounter(entry.getKey()).add(entry.getValue().get());
+            }
+            for (Map.Entry<String, Histogram> entry : m.histograms.entrySet()) {
+                merged.getHistogram(entry.getKey()).merge(entry.getValue());
+            }
+            merged.elapsedNanos += m.elapsedNanos;
+            merged.waitNanos += m.waitNanos;
+        }
+        return merged;
+    }
+
+    /**
+     * Get a counter, creating it on first use.
+     *
+     * @param name Name of the counter.
+     * @return Counter.
+     */
+    public Counter getCounter(String name) {
+        return this.counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * Get a histogram, creating it on first use.
+     *
+     * @param name Name of the histogram, ending in its unit, e.g. "_ns".
+     * @return Histogram.
+     */
+    public Histogram getHistogram(String name) {
+        return this.histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * Add time that the thread spent blocked, e.g. waiting for a queue.
+     *
+     * @param nanos Time in nanoseconds.
+     */
+    public void addWaitTime(long nanos) {
+        this.waitNanos += nanos;
+    }
+
+    /** Stop the clock of the thread. */
+    public void finish() {
+        this.elapsedNanos = System.nanoTime() - this.start;
+    }
+
+    /**
+     * Get the time the thread spent working, i.e. not blocked, until it finished.
+     *
+     * @return Busy time in nanoseconds.
+     */
+    public long getBusyNanos() {
+        return Math.max(0, this.elapsedNanos - this.waitNanos);
+    }
+
+    /**
+     * Get the time the thread spent blocked until it finished.
+     *
+     * @return Wait time in nanoseconds.
+     */
+    public long getWaitNanos() {
+        return this.waitNanos;
+    }
+
+    /**
+     * Write the metrics as a JSON object.
+     *
+     * @param json Writer to write to.
+     */
+    public void writeJson(JsonWriter json) {
+        json.beginObject();
+        json.name("name").value(this.name);
+        json.name("busy_seconds").value(getBusyNanos() / 1e9);
+        json.name("wait_seconds").value(this.waitNanos / 1e9);
+        for (Map.Entry<String, Counter> entry : this.counters.entrySet()) {
+            json.name(entry.getKey()).value(entry.getValue().get());
+        }
+        for (Map.Entry<String, Histogram> entry : this.histograms.entrySet()) {
+            json.name(entry.getKey());
+            entry.getValue().writeJson(json);
+        }
+        json.endObject();
+    }
+
+    /** Counter of events. Not thread-safe. */
+    public static class Counter {
+        private long value;
+
+        /** Count one event. */
+        public void increment() {
+            this.value += 1;
+        }
+
+        /**
+         * Count several events.
+         *
+         * @param n Number of events.
+         */
+        public void add(long n) {
+            this.value += n;
+        }
+
+        /**
+         * Get the number of events.
+         *
+         * @return Number of events.
+         */
+        public long get() {
+            return this.value;
+        }
+    }
+}
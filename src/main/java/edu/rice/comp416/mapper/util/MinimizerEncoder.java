@@ -0,0 +1,161 @@
+package edu.rice.comp416.mapper.util;
+
+/**
+ * Encoder that samples the seeds of another encoder: of every window of consecutive seed
+ * offsets, only the seed with the smallest hash, its (w,k)-minimizer, is emitted. Neighboring
+ * windows mostly share their minimizer, so about 2 / (w + 1) of the seeds are emitted, and any
+ * stretch of w + span - 1 bases that a reference and a read share yields a common seed.
+ *
+ * <p>The hash of a seed is the smaller hash of its code and of its reverse complement, so the
+ * same seeds are chosen on both strands. The window is kept in a monotonic queue, which takes
+ * constant amortized time per seed.
+ */
+public class MinimizerEncoder implements SeedEncoder {
+
+    private final SeedEncoder seeds;
+
+    /** Number of consecutive seed offsets in a window. */
+    private final int window;
+
+    /** Queue of the seeds of the window that may still become its minimizer. */
+    private final int[] offsets;
+
+    private final long[] codes;
+    private final long[] reverseCodes;
+    private final long[] hashes;
+
+    /** Index of the first seed of the queue in the circular arrays. */
+    private int head;
+
+    private int size;
+
+    /** Offset of the first seed a complete window may start at. */
+    private int start;
+
+    /** Offset of the last emitted seed. */
+    private int lastOffset;
+
+    private int offset;
+    private long code;
+    private long reverseCode;
+
+    /**
+     * Construct a new encoder.
+     *
+     * @param seeds Encoder of all seeds, which emits every seed.
+     * @param window Number of consecutive seed offsets to choose a minimizer from.
+     */
+    public MinimizerEncoder(SeedEncoder seeds, int window) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Minimizer window must be a positive integer.");
+        }
+        if (seeds.getContext() != 0) {
+            throw new IllegalArgumentException("Seeds to sample from must not be sampled.");
+        }
+
+        this.seeds = seeds;
+        this.window = window;
+        this.offsets = new int[window];
+        this.codes = new long[window];
+        this.reverseCodes = new long[window];
+        this.hashes = new long[window];
+    }
+
+    @Override
+    public int getK() {
+        return this.seeds.getK();
+    }
+
+    @Override
+    public int getSpan() {
+        return this.seeds.getSpan();
+    }
+
+    @Override
+    public int getContext() {
+        return this.window - 1;
+    }
+
+    @Override
+    public void reset(CharSequence s) {
+        reset(s, 0, s.length());
+    }
+
+    @Override
+    public void reset(CharSequence s, int start, int end) {
+        this.seeds.reset(s, start, end);
+        this.start = start;
+        this.head = 0;
+        this.size = 0;
+        this.lastOffset = Integer.MIN_VALUE;
+    }
+
+    @Override
+    public boolean next() {
+        while (this.seeds.next()) {
+            int offset = this.seeds.getOffset();
+            long code = this.seeds.getCode();
+            long reverseCode = this.seeds.getReverseCode();
+            long hash = Math.min(hash(code), hash(reverseCode));
+
+            // Drop the seeds that left the window, and the seeds that can no longer be a
+            // minimizer because a later seed has a smaller hash. Ties keep the earlier seed.
+            while (this.size > 0 && this.offsets[this.head] <= offset - this.window) {
+                this.head = (this.head + 1) % this.window;
+                this.size -= 1;
+            }
+            while (this.size > 0 && this.hashes[(this.head + this.size - 1) % this.window] > hash) {
+                this.size -= 1;
+            }
+
+            int tail = (this.head + this.size) % this.window;
+            this.offsets[tail] = offset;
+            this.codes[tail] = code;
+            this.reverseCodes[tail] = reverseCode;
+            this.hashes[tail] = hash;
+            this.size += 1;
+
+            // Windows are only complete once they lie entirely after the start.
+            if (offset - this.window + 1 >= this.start
+                    && this.offsets[this.head] != this.lastOffset) {
+                this.offset = this.offsets[this.head];
+                this.code = this.codes[this.head];
+                this.reverseCode = this.reverseCodes[this.head];
+                this.lastOffset = this.offset;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public int getOffset() {
+        return this.offset;
+    }
+
+    @Override
+    public long getCode() {
+        return this.code;
+    }
+
+    @Override
+    public long getReverseCode() {
+        return this.reverseCode;
+    }
+
+    /**
+     * Mix the bits of a packed seed, so that minimizers are not biased towards seeds rich in A.
+     *
+     * @param code Packed seed.
+     * @return Hash of the seed.
+     */
+    private static long hash(long code) {
+        code ^= code >>> 33;
+        code *= 0xff51afd7ed558ccdL;
+        code ^= code >>> 33;
+        code *= 0xc4ceb9fe1a85ec53L;
+        code ^= code >>> 33;
+        return code;
+    }
+}
@@ -0,0 +1,270 @@
+package edu.rice.comp416.mapper.util;
+
+/**
+ * Compares a read against a packed reference without copying the reference. The read is packed
+ * two bits per base, 32 bases per long, and XORed with the reference word at the same offset, so
+ * each word yields a mask with one bit per mismatching base. The number of mismatches is the
+ * popcount of the masks, and the mismatches are walked with trailing-zero scans to build the
+ * CIGAR string and the MD tag in one pass. Ambiguous bases never match, on either side. A packed
+ * read can also be searched for over a range of starts, e.g. near the alignment of its mate.
+ *
+ * <pre>{@code
+ * MismatchScanner scanner = new MismatchScanner();
+ * scanner.scan(reference.getSequence(), start, read);
+ * record.setCigarString(scanner.getCigar());
+ * }</pre>
+ */
+public class MismatchScanner {
+
+    /** Low bit of every base in a packed word. */
+    private static final long LOW_BITS = 0x5555555555555555L;
+
+    /** Packed bases of the read, like the words of a {@link PackedSequence}. */
+    private long[] readWords;
+
+    /** Ambiguous bases of each word of the read. Bit 2 * j is set if base j is ambiguous. */
+    private long[] readAmbiguous;
+
+    /** Mask of the bases of the last word of the read. */
+    private long lastMask;
+
+    private int length;
+
+    /** Mismatches of each word of the read. Bit 2 * j is set if base j of the word mismatches. */
+    private long[] mismatches;
+
+    private int numMismatches;
+
+    private int runnerUpMismatches;
+
+    private final StringBuilder cigar;
+
+    private final StringBuilder mismatchString;
+
+    /** Construct a new scanner. */
+    public MismatchScanner() {
+        this.readWords = new long[8];
+        this.readAmbiguous = new long[8];
+        this.mismatches = new long[8];
+        this.cigar = new StringBuilder();
+        this.mismatchString = new StringBuilder();
+    }
+
+    /**
+     * Compare a read against the reference bases it is aligned to, without gaps.
+     *
+     * @param reference Packed reference.
+     * @param start Position of the reference base aligned to the first base of the read.
+     * @param read Read sequence, as aligned.
+     */
+    public void scan(PackedSequence reference, int start, CharSequence read) {
+        if (start < 0 || start + read.length() > reference.length()) {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + start + ", " + (start + read.length()) + ") is out of bounds.");
+        }
+
+        pack(read);
+        this.numMismatches = count(reference, start, Integer.MAX_VALUE);
+        walk(reference, start);
+    }
+
+    /**
+     * Find the start in a range of the reference where a read has the fewest mismatches without
+     * gaps, e.g. to look for a mate near its pair. Only the number of mismatches is kept; the
+     * returned start can be scanned for the rest.
+     *
+     * @param reference Packed reference.
+     * @param from First start to try.
+     * @param to Start after the last one to try.
+     * @param read Read sequence, as aligned.
+     * @param maxMismatches Largest number of mismatches of a start that is found.
+     * @return Start with the fewest mismatches, the first one if tied, or -1 if no start has at
+     *     most maxMismatches mismatches.
+     */
+    public int search(
+            PackedSequence reference, int from, int to, CharSequence read, int maxMismatches) {
+        pack(read);
+
+        int best = -1;
+        int bestMismatches = maxMismatches + 1;
+        int runnerUpMismatches = maxMismatches + 1;
+        int end = Math.min(to, reference.length() - this.length + 1);
+        for (int start = Math.max(0, from); start < end; start++) {
+            // Counting stops as soon as the start cannot place first or second.
+            int count = count(reference, start, runnerUpMismatches - 1);
+            if (count < bestMismatches) {
+                runnerUpMismatches = bestMismatches;
+                bestMismatches = count;
+                best = start;
+            } else if (count < runnerUpMismatches) {
+                runnerUpMismatches = count;
+            }
+        }
+
+        this.numMismatches = bestMismatches;
+        this.runnerUpMismatches = runnerUpMismatches;
+        this.cigar.setLength(0);
+        this.mismatchString.setLength(0);
+        return best;
+    }
+
+    /**
+     * Get the number of mismatches of the last scan, i.e. its NM tag.
+     *
+     * @return Number of mismatching bases.
+     */
+    public int getNumMismatches() {
+        return this.numMismatches;
+    }
+
+    /**
+     * Get the number of mismatches of the second best start of the last search.
+     *
+     * @return Number of mismatching bases, or more than the largest number searched for if no
+     *     other start has few enough.
+     */
+    public int getRunnerUpMismatches() {
+        return this.runnerUpMismatches;
+    }
+
+    /**
+     * Get the CIGAR string of the last scan.
+     *
+     * @return Cigar string, only consisting of '=' and 'X' operands.
+     */
+    public String getCigar() {
+        return this.cigar.toString();
+    }
+
+    /**
+     * Get the mismatching positions of the last scan as an MD tag, i.e. the lengths of the runs
+     * of matches separated by the reference bases of the mismatches.
+     *
+     * @return MD tag, e.g. "10A0C5".
+     */
+    public String getMismatchString() {
+        return this.mismatchString.toString();
+    }
+
+    /**
+     * Pack a read two bits per base, and mark its ambiguous bases.
+     *
+     * @param read Read sequence.
+     */
+    private void pack(CharSequence read) {
+        this.length = read.length();
+        int numWords = PackedSequence.getNumWords(this.length);
+        if (numWords > this.readWords.length) {
+            int capacity = Math.max(numWords, 2 * this.readWords.length);
+            this.readWords = new long[capacity];
+            this.readAmbiguous = new long[capacity];
+            this.mismatches = new long[capacity];
+        }
+
+        for (int w = 0; w < numWords; w++) {
+            int from = w << 5;
+            int to = Math.min(this.length, from + 32);
+
+            long word = 0;
+            long ambiguous = 0;
+            for (int i = from; i < to; i++) {
+                int base = Transform.encodeBase(read.charAt(i));
+                if (base < 0) {
+                    ambiguous |= 1L << ((i - from) << 1);
+                } else {
+                    word |= (long) base << ((i - from) << 1);
+                }
+            }
+            this.readWords[w] = word;
+            this.readAmbiguous[w] = ambiguous;
+        }
+
+        int tail = this.length & 31;
+        this.lastMask = tail == 0 ? -1L : (1L << (tail << 1)) - 1;
+    }
+
+    /**
+     * Compare the packed read against the reference at a start, filling the mismatch masks.
+     *
+     * @param reference Packed reference.
+     * @param start Position of the reference base aligned to the first base of the read.
+     * @param limit Number of mismatches after which counting stops.
+     * @return Number of mismatches, or a number above the limit if counting stopped.
+     */
+    private int count(PackedSequence reference, int start, int limit) {
+        int numWords = PackedSequence.getNumWords(this.length);
+        int count = 0;
+        for (int w = 0; w < numWords; w++) {
+            int position = start + (w << 5);
+
+            // A base mismatches if either of its two bits differs.
+            long diff = this.readWords[w] ^ reference.getWord(position);
+            long bits =
+                    ((diff | (diff >>> 1)) & LOW_BITS)
+                            | this.readAmbiguous[w]
+                            | reference.getAmbiguousMask(position);
+            if (w == numWords - 1) {
+                bits &= this.lastMask;
+            }
+
+            this.mismatches[w] = bits;
+            count += Long.bitCount(bits);
+            if (count > limit) {
+                break;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Build the CIGAR string and the MD tag from the mismatch masks.
+     *
+     * @param reference Packed reference.
+     * @param start Position of the reference base aligned to the first base of the read.
+     */
+    private void walk(PackedSequence reference, int start) {
+        int length = this.length;
+        this.cigar.setLength(0);
+        this.mismatchString.setLength(0);
+
+        // Run of mismatches so far, from runStart to end, exclusive.
+        int runStart = 0;
+        int end = 0;
+        for (int w = 0; w < PackedSequence.getNumWords(length); w++) {
+            long bits = this.mismatches[w];
+            while (bits != 0) {
+                int i = (w << 5) + (Long.numberOfTrailingZeros(bits) >>> 1);
+                bits &= bits - 1;
+
+                if (i != end) {
+                    append(this.cigar, end - runStart, 'X');
+                    append(this.cigar, i - end, '=');
+                    runStart = i;
+                }
+                this.mismatchString.append(i - end);
+                this.mismatchString.append(reference.charAt(start + i));
+                end = i + 1;
+            }
+        }
+
+        append(this.cigar, end - runStart, 'X');
+        append(this.cigar, length - end, '=');
+        this.mismatchString.append(length - end);
+    }
+
+    /**
+     * Append an operation to a cigar string, unless it is empty, e.g. the initial '=' of a read
+     * that starts with a mismatch.
+     *
+     * @param cigar Cigar string so far.
+     * @param count Length of the operation.
+     * @param op Operation.
+     */
+    private static void append(StringBuilder cigar, int count, char op) {
+        if (count > 0) {
+            cigar.append(count);
+            cigar.append(op);
+        }
+    }
+}
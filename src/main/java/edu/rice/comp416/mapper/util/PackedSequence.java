@@ -0,0 +1,257 @@
+package edu.rice.comp416.mapper.util;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Nucleotide sequence packed two bits per base, 32 bases per long. Bases other than A,C,G,T are
+ * stored as A, and the runs they occur in are kept separately so that they read back as N.
+ */
+public class PackedSequence implements CharSequence {
+
+    /** Number of bases. */
+    private final int length;
+
+    /** Packed bases. Base i is stored in bits 2 * (i % 32) and up of word i / 32. */
+    private final LongBuffer words;
+
+    /** Sorted, non-overlapping runs of ambiguous bases, as start and exclusive end pairs. */
+    private final IntBuffer ambiguousRuns;
+
+    /**
+     * Pack given sequence.
+     *
+     * @param s Input sequence.
+     * @return Packed sequence.
+     */
+    public static PackedSequence fromSequence(CharSequence s) {
+        return fromSequences(List.of(s).iterator(), s.length());
+    }
+
+    /**
+     * Pack given sequences back to back into a single sequence.
+     *
+     * @param sequences Input sequences.
+     * @param length Total length of the input sequences.
+     * @return Packed concatenation of the sequences.
+     */
+    public static PackedSequence fromSequences(
+            Iterator<? extends CharSequence> sequences, int length) {
+        long[] words = new long[getNumWords(length)];
+        List<Integer> runs = new ArrayList<>();
+
+        int i = 0;
+        while (sequences.hasNext()) {
+            CharSequence s = sequences.next();
+            for (int j = 0; j < s.length(); j++, i++) {
+                int base = Transform.encodeBase(s.charAt(j));
+                if (base < 0) {
+                    if (runs.isEmpty() || runs.get(runs.size() - 1) != i) {
+                        runs.add(i);
+                        runs.add(i + 1);
+                    } else {
+                        runs.set(runs.size() - 1, i + 1);
+                    }
+                    base = 0;
+                }
+                words[i >>> 5] |= (long) base << ((i & 31) << 1);
+            }
+        }
+
+        if (i != length) {
+            throw new IllegalArgumentException("Sequences do not add up to the given length.");
+        }
+
+        int[] ambiguousRuns = runs.stream().mapToInt(Integer::intValue).toArray();
+        return new PackedSequence(length, LongBuffer.wrap(words), IntBuffer.wrap(ambiguousRuns));
+    }
+
+    /**
+     * Get the number of longs needed to pack a sequence.
+     *
+     * @param length Number of bases.
+     * @return Number of longs.
+     */
+    public static int getNumWords(int length) {
+        return (length + 31) >>> 5;
+    }
+
+    /**
+     * Get the 2-bit code of a base. Ambiguous bases read as A (0).
+     *
+     * @param i Position of the base.
+     * @return 2-bit code of the base, see {@link Transform#encodeBase(char)}.
+     */
+    public int getBase(int i) {
+        return (int) (this.words.get(i >>> 5) >>> ((i & 31) << 1)) & 3;
+    }
+
+    /**
+     * Check if a base is ambiguous, i.e. it was not one of A,C,G,T.
+     *
+     * @param i Position of the base.
+     * @return True if the base is ambiguous; false otherwise.
+     */
+    public boolean isAmbiguous(int i) {
+        int lo = 0;
+        int hi = this.ambiguousRuns.limit() / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.ambiguousRuns.get(2 * mid + 1) <= i) {
+                lo = mid + 1;
+            } else if (this.ambiguousRuns.get(2 * mid) > i) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get 32 bases starting at any position, packed like the words of the sequence. Bases past
+     * the end of the sequence read as A (0).
+     *
+     * @param i Position of the first base.
+     * @return Packed bases, base i + j in bits 2 * j and up.
+     */
+    long getWord(int i) {
+        int w = i >>> 5;
+        int shift = (i & 31) << 1;
+        long word = this.words.get(w) >>> shift;
+        if (shift != 0 && w + 1 < this.words.limit()) {
+            word |= this.words.get(w + 1) << (64 - shift);
+        }
+        return word;
+    }
+
+    /**
+     * Get which of 32 bases starting at any position are ambiguous.
+     *
+     * @param i Position of the first base.
+     * @return Mask with bit 2 * j set if base i + j is ambiguous.
+     */
+    long getAmbiguousMask(int i) {
+        int numRuns = this.ambiguousRuns.limit() / 2;
+        if (numRuns == 0) {
+            return 0;
+        }
+
+        // Find the first run that ends after i.
+        int lo = 0;
+        int hi = numRuns;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.ambiguousRuns.get(2 * mid + 1) <= i) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        long mask = 0;
+        for (int r = lo; r < numRuns && this.ambiguousRuns.get(2 * r) < i + 32; r++) {
+            int from = Math.max(i, this.ambiguousRuns.get(2 * r));
+            int to = Math.min(i + 32, this.ambiguousRuns.get(2 * r + 1));
+            for (int j = from; j < to; j++) {
+                mask |= 1L << ((j - i) << 1);
+            }
+        }
+        return mask;
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public char charAt(int i) {
+        if (i < 0 || i >= this.length) {
+            throw new IndexOutOfBoundsException("Position " + i + " is out of bounds.");
+        }
+
+        return isAmbiguous(i) ? 'N' : "ACGT".charAt(getBase(i));
+    }
+
+    /**
+     * Get part of the sequence as a string.
+     *
+     * @param start Position of the first base, inclusive.
+     * @param end Position of the last base, exclusive.
+     * @return Bases between start and end.
+     */
+    public String substring(int start, int end) {
+        if (start < 0 || end > this.length || start > end) {
+            throw new IndexOutOfBoundsException(
+                    "Range [" + start + ", " + end + ") is out of bounds.");
+        }
+
+        char[] bases = new char[end - start];
+        for (int i = start; i < end; i++) {
+            bases[i - start] = "ACGT".charAt(getBase(i));
+        }
+
+        // Ambiguous runs are rare, so they are patched in afterwards.
+        for (int r = 0; r < this.ambiguousRuns.limit(); r += 2) {
+            int from = Math.max(start, this.ambiguousRuns.get(r));
+            int to = Math.min(end, this.ambiguousRuns.get(r + 1));
+            for (int i = from; i < to; i++) {
+                bases[i - start] = 'N';
+            }
+        }
+
+        return new String(bases);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return substring(0, this.length);
+    }
+
+    /**
+     * Wrap already packed bases, e.g. from a memory-mapped index file.
+     *
+     * @param length Number of bases.
+     * @param words Packed bases.
+     * @param ambiguousRuns Runs of ambiguous bases.
+     * @return Packed sequence backed by the given buffers.
+     */
+    static PackedSequence wrap(int length, LongBuffer words, IntBuffer ambiguousRuns) {
+        return new PackedSequence(length, words, ambiguousRuns);
+    }
+
+    /**
+     * Get the packed bases.
+     *
+     * @return Buffer of packed bases.
+     */
+    LongBuffer getWords() {
+        return this.words.duplicate();
+    }
+
+    /**
+     * Get the runs of ambiguous bases.
+     *
+     * @return Buffer of start and exclusive end pairs.
+     */
+    IntBuffer getAmbiguousRuns() {
+        return this.ambiguousRuns.duplicate();
+    }
+
+    /** Private constructor for packed sequence, to be called from static methods. */
+    private PackedSequence(int length, LongBuffer words, IntBuffer ambiguousRuns) {
+        this.length = length;
+        this.words = words;
+        this.ambiguousRuns = ambiguousRuns;
+    }
+}
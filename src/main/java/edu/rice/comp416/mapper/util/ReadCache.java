@@ -0,0 +1,203 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of mapping outcomes, keyed by a 128-bit hash of the read sequences, e.g. from a
+ * {@link SequenceHasher}. The cache is set-associative: a key can only be kept in the few slots
+ * of the set its hash points to, and when the set is full one of them is evicted with the CLOCK
+ * algorithm, which passes over the slots that were used since the hand last came by. Sets are
+ * guarded by a fixed number of striped locks, so mapping workers can share the cache with little
+ * contention. The number of hits, misses and evictions is counted.
+ *
+ * @param <V> Type of the cached outcomes.
+ */
+public class ReadCache<V> {
+
+    /** Number of slots of a set. */
+    private static final int WAYS = 8;
+
+    /** Largest number of locks. */
+    private static final int MAX_STRIPES = 64;
+
+    private final int capacity;
+
+    /** Mask of the set index, as the number of sets is a power of two. */
+    private final int setMask;
+
+    private final long[] highKeys;
+    private final long[] lowKeys;
+
+    /** Cached outcomes, or null for an empty slot. */
+    private final Object[] values;
+
+    /** CLOCK bit of every slot, set when the slot is used. */
+    private final boolean[] referenced;
+
+    /** CLOCK hand of every set, as the index of a slot within the set. */
+    private final byte[] hands;
+
+    private final Object[] locks;
+    private final int stripeMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Construct a new empty cache.
+     *
+     * @param capacity Largest number of outcomes to keep, rounded up to a power of two of at
+     *     least the number of slots of a set.
+     */
+    public ReadCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Read cache size must be a positive integer.");
+        }
+        if (capacity > 1 << 30) {
+            throw new IllegalArgumentException("Read cache size must be at most 2^30.");
+        }
+
+        int numSets = Math.max(1, (Integer.highestOneBit(capacity - 1) << 1) / WAYS);
+        this.capacity = numSets * WAYS;
+        this.setMask = numSets - 1;
+        this.highKeys = new long[this.capacity];
+        this.lowKeys = new long[this.capacity];
+        this.values = new Object[this.capacity];
+        this.referenced = new boolean[this.capacity];
+        this.hands = new byte[numSets];
+
+        int numStripes = Math.min(numSets, MAX_STRIPES);
+        this.locks = new Object[numStripes];
+        for (int i = 0; i < numStripes; i++) {
+            this.locks[i] = new Object();
+        }
+        this.stripeMask = numStripes - 1;
+    }
+
+    /**
+     * Look up an outcome.
+     *
+     * @param high Upper 64 bits of the key.
+     * @param low Lower 64 bits of the key.
+     * @return Cached outcome, or null if it is not cached.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long high, long low) {
+        int set = (int) low & this.setMask;
+        synchronized (this.locks[set & this.stripeMask]) {
+            int slot = find(set, high, low);
+            if (slot >= 0) {
+                this.referenced[slot] = true;
+                this.hits.increment();
+                return (V) this.values[slot];
+            }
+        }
+
+        this.misses.increment();
+        return null;
+    }
+
+    /**
+     * Cache an outcome, replacing the outcome of the same key if there is one. If the set of the
+     * key is full, the first slot the CLOCK hand finds unused since its last pass is evicted.
+     *
+     * @param high Upper 64 bits of the key.
+     * @param low Lower 64 bits of the key.
+     * @param value Outcome to cache.
+     */
+    public void put(long high, long low, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Cached outcomes must not be null.");
+        }
+
+        int set = (int) low & this.setMask;
+        int first = set * WAYS;
+        synchronized (this.locks[set & this.stripeMask]) {
+            int slot = find(set, high, low);
+            if (slot < 0) {
+                slot = findEmpty(set);
+            }
+            if (slot < 0) {
+                int hand = this.hands[set];
+                while (this.referenced[first + hand]) {
+                    this.referenced[first + hand] = false;
+                    hand = (hand + 1) % WAYS;
+                }
+                slot = first + hand;
+                this.hands[set] = (byte) ((hand + 1) % WAYS);
+                this.evictions.increment();
+            }
+
+            this.highKeys[slot] = high;
+            this.lowKeys[slot] = low;
+            this.values[slot] = value;
+            this.referenced[slot] = false;
+        }
+    }
+
+    /**
+     * Get the largest number of outcomes the cache keeps.
+     *
+     * @return Capacity of the cache.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Get the fraction of the lookups that found an outcome.
+     *
+     * @return Hit rate, or NaN if there were no lookups.
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        return hits * 1.0 / (hits + getMisses());
+    }
+
+    /**
+     * Find the slot of a key in its set. Must be called with the lock of the set held.
+     *
+     * @param set Index of the set.
+     * @param high Upper 64 bits of the key.
+     * @param low Lower 64 bits of the key.
+     * @return Slot of the key, or -1 if it is not cached.
+     */
+    private int find(int set, long high, long low) {
+        for (int slot = set * WAYS; slot < (set + 1) * WAYS; slot++) {
+            if (this.values[slot] != null
+                    && this.lowKeys[slot] == low
+                    && this.highKeys[slot] == high) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find an empty slot in a set. Must be called with the lock of the set held.
+     *
+     * @param set Index of the set.
+     * @return Empty slot, or -1 if the set is full.
+     */
+    private int findEmpty(int set) {
+        for (int slot = set * WAYS; slot < (set + 1) * WAYS; slot++) {
+            if (this.values[slot] == null) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,144 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.biojava.nbio.core.sequence.DNASequence;
+
+/**
+ * Reference genome made of named contigs. All contigs are stored back to back in a single packed
+ * sequence, and positions in it are mapped back to contigs through a table of contig starts.
+ */
+public class Reference {
+    private final List<String> names;
+
+    /** Position of the first base of each contig, followed by the total length. */
+    private final int[] starts;
+
+    private final PackedSequence sequence;
+
+    /**
+     * Build reference from a loaded FASTA file.
+     *
+     * @param fasta FASTA entries, see {@link edu.rice.comp416.mapper.reader.ReadFasta}.
+     * @return Reference with one contig per FASTA entry.
+     */
+    public static Reference fromFasta(LinkedHashMap<String, DNASequence> fasta) {
+        List<String> names = new ArrayList<>(fasta.keySet());
+        int[] starts = new int[names.size() + 1];
+
+        int i = 0;
+        long length = 0;
+        for (DNASequence contig : fasta.values()) {
+            length += contig.getLength();
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Reference is too large to index.");
+            }
+            starts[++i] = (int) length;
+        }
+
+        PackedSequence sequence =
+                PackedSequence.fromSequences(
+                        fasta.values().stream()
+                                .map(DNASequence::getSequenceAsString)
+                                .iterator(),
+                        (int) length);
+
+        return new Reference(names, starts, sequence);
+    }
+
+    /**
+     * Get the number of contigs.
+     *
+     * @return Number of contigs.
+     */
+    public int getNumContigs() {
+        return this.names.size();
+    }
+
+    /**
+     * Get the name of a contig, i.e. its full FASTA description.
+     *
+     * @param contig Index of the contig.
+     * @return Name of the contig.
+     */
+    public String getName(int contig) {
+        return this.names.get(contig);
+    }
+
+    /**
+     * Get the length of a contig.
+     *
+     * @param contig Index of the contig.
+     * @return Number of bases in the contig.
+     */
+    public int getLength(int contig) {
+        return this.starts[contig + 1] - this.starts[contig];
+    }
+
+    /**
+     * Get the position of the first base of a contig in the concatenated sequence.
+     *
+     * @param contig Index of the contig.
+     * @return Start of the contig.
+     */
+    public int getStart(int contig) {
+        return this.starts[contig];
+    }
+
+    /**
+     * Find the contig that a position of the concatenated sequence belongs to, by binary search
+     * over the contig starts.
+     *
+     * @param position Position in the concatenated sequence.
+     * @return Index of the contig, or -1 if the position is outside of the reference.
+     */
+    public int getContig(int position) {
+        if (position < 0 || position >= this.starts[this.starts.length - 1]) {
+            return -1;
+        }
+
+        int i = Arrays.binarySearch(this.starts, position);
+        if (i < 0) {
+            return -i - 2;
+        }
+
+        // Skip empty contigs that start at the same position.
+        while (this.starts[i + 1] == position) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /**
+     * Get all contigs, concatenated in order.
+     *
+     * @return Packed sequence of the whole reference.
+     */
+    public PackedSequence getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Get the contig starts.
+     *
+     * @return Position of the first base of each contig, followed by the total length.
+     */
+    int[] getStarts() {
+        return this.starts;
+    }
+
+    /**
+     * Construct a reference from its contigs.
+     *
+     * @param names Name of each contig.
+     * @param starts Position of the first base of each contig, followed by the total length.
+     * @param sequence All contigs, concatenated in order.
+     */
+    Reference(List<String> names, int[] starts, PackedSequence sequence) {
+        this.names = names;
+        this.starts = starts;
+        this.sequence = sequence;
+    }
+}
@@ -3,70 +3,198 @@ package edu.rice.comp416.mapper.util;
 import edu.rice.comp416.mapper.Mapper;
 import htsjdk.samtools.*;
 import java.nio.file.Paths;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import org.biojava.nbio.core.sequence.DNASequence;
 
-/** Utility to create and write to a sam file. */
+/**
+ * Utility to create and write to a sam or bam file. SAM records are written by htsjdk on a
+ * background thread; BAM blocks are compressed by a pool of threads, see {@link BAMWriter}.
+ * Alignments are written in the order they are added, or sorted by coordinate when the writer is
+ * closed, see {@link AlignmentSorter}.
+ */
 public class SAMWriter {
     private final SAMFileHeader fileHeader;
     private final SAMFileWriter fileWriter;
 
+    /** Sorter that alignments are added to, or null if they are written as they are added. */
+    private final AlignmentSorter sorter;
+
+    /**
+     * Constructor for a sam writer that writes alignments in the order they are added.
+     *
+     * @param path Path to the new .sam or .bam file.
+     * @param reference Reference genome to initialize the header with.
+     */
+    public SAMWriter(String path, Reference reference) {
+        this(path, reference, false, 0);
+    }
+
     /**
      * Constructor for a sam writer.
      *
-     * @param path Path to the new .sam file.
+     * @param path Path to the new .sam or .bam file.
      * @param reference Reference genome to initialize the header with.
+     * @param sorted True to sort alignments by coordinate; false to keep the order they are added
+     *     in.
+     * @param sortBufferSize Memory budget for sorting in bytes, beyond which sorted runs are
+     *     spilled to temporary files.
      */
-    public SAMWriter(String path, LinkedHashMap<String, DNASequence> reference) {
+    public SAMWriter(String path, Reference reference, boolean sorted, long sortBufferSize) {
         this.fileHeader = new SAMFileHeader();
         this.fileHeader.addComment(
                 "Genome-Scale Mapper (Katherine Dyson, Elizabeth Sims, Berk Alp Yakici)");
 
-        for (Map.Entry<String, DNASequence> entry : reference.entrySet()) {
+        for (int i = 0; i < reference.getNumContigs(); i++) {
             SAMSequenceRecord sequenceRecord =
                     new SAMSequenceRecord(
-                            entry.getKey().split(" ")[0], entry.getValue().getLength());
+                            reference.getName(i).split(" ")[0], reference.getLength(i));
             this.fileHeader.addSequence(sequenceRecord);
         }
 
-        this.fileWriter =
-                new SAMFileWriterFactory().makeSAMWriter(this.fileHeader, true, Paths.get(path));
+        if (sorted) {
+            this.fileHeader.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+            this.sorter = new AlignmentSorter(this.fileHeader, sortBufferSize);
+        } else {
+            this.sorter = null;
+        }
+
+        if (path.endsWith(".bam")) {
+            this.fileWriter = new BAMWriter(path, this.fileHeader, getNumDeflateThreads());
+        } else {
+            this.fileWriter =
+                    new SAMFileWriterFactory()
+                            .setUseAsyncIo(true)
+                            .makeSAMWriter(this.fileHeader, true, Paths.get(path));
+        }
     }
 
     /**
-     * Add alignment to the .sam file.
+     * Add alignment to the .sam or .bam file.
      *
      * @param result Result from mapper.
-     * @param pairResult Result of pair/mate from mapper.
+     * @param pairResult Result of pair/mate from mapper, or null if the mate is not mapped.
      * @param isFirstPair Is the current result the first pair/mate.
      * @param quality Quality of the map.
+     * @param properPair True if the mates face each other at a likely insert size.
      */
     public void addAlignment(
-            Mapper.Result result, Mapper.Result pairResult, boolean isFirstPair, int quality) {
+            Mapper.Result result,
+            Mapper.Result pairResult,
+            boolean isFirstPair,
+            int quality,
+            boolean properPair) {
         SAMRecord record = new SAMRecord(this.fileHeader);
 
         record.setReadName(result.getDescription());
-        record.setFlags(
-                0x1 + 0x2 + (isFirstPair ? 0x40 : 0x80) + (result.getReversed() ? 0x10 : 0x20));
-        record.setReferenceName(this.fileHeader.getSequence(0).getSequenceName());
-        record.setAlignmentStart(result.getPos());
+        record.setReferenceIndex(result.getContig());
+        record.setAlignmentStart(result.getPos() + 1);
         record.setMappingQuality(quality);
         record.setCigarString(result.getCigar());
-        record.setMateReferenceName(this.fileHeader.getSequence(0).getSequenceName());
-        record.setMateAlignmentStart(pairResult.getPos());
-        record.setInferredInsertSize(
-                pairResult.getPos()
-                        - result.getPos()
-                        + result.getSequence().length() * ((result.getReversed() ? -1 : 1)));
+
+        if (pairResult == null) {
+            // An unmapped mate is placed at the position of the read.
+            record.setFlags(
+                    0x1 + 0x8 + (isFirstPair ? 0x40 : 0x80) + (result.getReversed() ? 0x10 : 0));
+            record.setMateReferenceIndex(result.getContig());
+            record.setMateAlignmentStart(result.getPos() + 1);
+        } else {
+            boolean sameContig = result.getContig() == pairResult.getContig();
+            record.setFlags(
+                    0x1
+                            + (properPair ? 0x2 : 0)
+                            + (isFirstPair ? 0x40 : 0x80)
+                            + (result.getReversed() ? 0x10 : 0)
+                            + (pairResult.getReversed() ? 0x20 : 0));
+            record.setMateReferenceIndex(pairResult.getContig());
+            record.setMateAlignmentStart(pairResult.getPos() + 1);
+
+            // Insert size is only defined for mates on the same contig.
+            if (sameContig) {
+                record.setInferredInsertSize(
+                        pairResult.getPos()
+                                - result.getPos()
+                                + result.getSequence().length()
+                                        * ((result.getReversed() ? -1 : 1)));
+            }
+        }
         record.setReadString(result.getSequence());
         record.setBaseQualityString(result.getQuality());
+        if (result.getMismatchString() != null) {
+            record.setAttribute("NM", result.getNumMismatches());
+            record.setAttribute("MD", result.getMismatchString());
+        }
 
-        this.fileWriter.addAlignment(record);
+        add(record);
     }
 
-    /** Close the file writer. */
+    /**
+     * Add a read that is not mapped to the .sam or .bam file. If its mate is mapped, the read is
+     * placed at the position of its mate, so that the two sort together.
+     *
+     * @param description Description of the read.
+     * @param sequence Read sequence, as read.
+     * @param quality Read quality, as read.
+     * @param pairResult Result of pair/mate from mapper, or null if the mate is not mapped either.
+     * @param isFirstPair Is the current read the first pair/mate.
+     */
+    public void addUnmappedRead(
+            String description,
+            String sequence,
+            String quality,
+            Mapper.Result pairResult,
+            boolean isFirstPair) {
+        SAMRecord record = new SAMRecord(this.fileHeader);
+
+        record.setReadName(description);
+        if (pairResult == null) {
+            record.setFlags(0x1 + 0x4 + 0x8 + (isFirstPair ? 0x40 : 0x80));
+        } else {
+            record.setFlags(
+                    0x1
+                            + 0x4
+                            + (isFirstPair ? 0x40 : 0x80)
+                            + (pairResult.getReversed() ? 0x20 : 0));
+            record.setReferenceIndex(pairResult.getContig());
+            record.setAlignmentStart(pairResult.getPos() + 1);
+            record.setMateReferenceIndex(pairResult.getContig());
+            record.setMateAlignmentStart(pairResult.getPos() + 1);
+        }
+        record.setMappingQuality(0);
+        record.setReadString(sequence);
+        record.setBaseQualityString(quality);
+
+        add(record);
+    }
+
+    /**
+     * Write a record, or add it to the sorter if sorting.
+     *
+     * @param record Record to write.
+     */
+    private void add(SAMRecord record) {
+        if (this.sorter != null) {
+            this.sorter.add(record);
+        } else {
+            this.fileWriter.addAlignment(record);
+        }
+    }
+
+    /** Close the file writer, after writing the sorted alignments if sorting. */
     public void close() {
-        this.fileWriter.close();
+        try {
+            if (this.sorter != null) {
+                this.sorter.writeTo(this.fileWriter);
+            }
+        } finally {
+            this.fileWriter.close();
+        }
+    }
+
+    /**
+     * Get the number of threads that compress BAM blocks. Blocks are only compressed while
+     * alignments are written, so every core is offered to them.
+     *
+     * @return Number of threads.
+     */
+    private static int getNumDeflateThreads() {
+        return Runtime.getRuntime().availableProcessors();
     }
 }
@@ -0,0 +1,81 @@
+package edu.rice.comp416.mapper.util;
+
+/**
+ * Walks the seeds of a sequence, e.g. all of its k-mers or a sample of them, as 2-bit packed
+ * codes of the seed and of its reverse complement. The reference and the reads are seeded with
+ * encoders of the same {@link SeedShape}, so that their seeds can be looked up in each other.
+ * Encoders allocate nothing per seed and can be reset and reused for any number of sequences.
+ */
+public interface SeedEncoder {
+
+    /**
+     * Get the number of bases packed into a code, i.e. the k-mer size of the index.
+     *
+     * @return Number of bases in a code.
+     */
+    int getK();
+
+    /**
+     * Get the number of bases a seed covers, which is more than {@link #getK()} for spaced
+     * seeds.
+     *
+     * @return Span of a seed.
+     */
+    int getSpan();
+
+    /**
+     * Get the number of neighboring seed offsets on either side that decide whether a seed is
+     * emitted, e.g. for sampled seeds. A chunk of a sequence emits the same seeds as the whole
+     * sequence if the encoder also sees this many offsets before and after the chunk.
+     *
+     * @return Number of offsets, or 0 if every seed is emitted.
+     */
+    int getContext();
+
+    /**
+     * Start encoding a new sequence.
+     *
+     * @param s Input sequence.
+     */
+    void reset(CharSequence s);
+
+    /**
+     * Start encoding part of a sequence. Only seeds that lie entirely between start and end, and
+     * are chosen from neighbors between start and end, are emitted.
+     *
+     * @param s Input sequence.
+     * @param start Position of the first base, inclusive.
+     * @param end Position of the last base, exclusive.
+     */
+    void reset(CharSequence s, int start, int end);
+
+    /**
+     * Advance to the next seed, in ascending order of offsets. Seeds that contain characters
+     * other than A,C,G,T are skipped.
+     *
+     * @return True if there is a next seed; false if the sequence is exhausted.
+     */
+    boolean next();
+
+    /**
+     * Get the position of the current seed.
+     *
+     * @return Position of the first base of the current seed in the sequence.
+     */
+    int getOffset();
+
+    /**
+     * Get the code of the current seed.
+     *
+     * @return Packed bases of the seed.
+     */
+    long getCode();
+
+    /**
+     * Get the code of the reverse complement of the current seed, which matches the code of the
+     * seed on the opposite strand.
+     *
+     * @return Packed bases of the reverse complement of the seed.
+     */
+    long getReverseCode();
+}
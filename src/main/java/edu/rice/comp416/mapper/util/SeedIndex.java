@@ -0,0 +1,33 @@
+package edu.rice.comp416.mapper.util;
+
+/**
+ * Index that finds the positions of fixed-size seeds in a reference. Lookups go through
+ * primitive values only, so seeding a read does not allocate.
+ */
+public interface SeedIndex {
+
+    /**
+     * Get the seed (k-mer) size of the index.
+     *
+     * @return K-mer size.
+     */
+    int getK();
+
+    /**
+     * Find the range of hits of a packed k-mer. The hits are read with {@link #getPosition(int)}
+     * for every index from range[0] (inclusive) to range[1] (exclusive).
+     *
+     * @param code Packed k-mer, see {@link Transform#encodeKmer(CharSequence, int, int)}.
+     * @param range Output array of length two for the start and end of the range.
+     * @return Number of hits, i.e. range[1] - range[0]; 0 if the k-mer does not occur.
+     */
+    int lookup(long code, int[] range);
+
+    /**
+     * Get the position of a hit.
+     *
+     * @param i Index within a range returned by {@link #lookup(long, int[])}.
+     * @return Position of the hit in the indexed sequence.
+     */
+    int getPosition(int i);
+}
@@ -0,0 +1,193 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.Objects;
+
+/**
+ * Shape of the seeds of an index: the mask of the bases a seed packs, and the window of seeds
+ * that minimizers are chosen from. Contiguous k-mers without sampling have a mask of k ones and a
+ * window of 1. The reference and the reads must be seeded with the same shape.
+ */
+public class SeedShape {
+
+    /** Mask of the seed, '1' for a care position and '0' for a don't-care position. */
+    private final String mask;
+
+    /** Number of consecutive seed offsets a minimizer is chosen from, or 1 for every seed. */
+    private final int window;
+
+    /** Number of care positions. */
+    private final int k;
+
+    /**
+     * Construct a new seed shape.
+     *
+     * @param mask Mask of the seed, e.g. "1101"; it starts and ends with a '1', has between 1 and
+     *     {@link KmerIndex#MAX_K} ones and spans at most {@link SpacedSeedEncoder#MAX_SPAN} bases.
+     * @param window Number of consecutive seed offsets a minimizer is chosen from, or 1 to keep
+     *     every seed.
+     * @throws IllegalArgumentException If the mask or window is invalid.
+     */
+    public SeedShape(String mask, int window) {
+        if (!mask.matches("1([01]*1)?")) {
+            throw new IllegalArgumentException(
+                    "Seed mask must consist of '0' and '1' and start and end with '1'.");
+        }
+        if (mask.length() > SpacedSeedEncoder.MAX_SPAN) {
+            throw new IllegalArgumentException(
+                    "Seed mask must span at most " + SpacedSeedEncoder.MAX_SPAN + " bases.");
+        }
+
+        int k = (int) mask.chars().filter(c -> c == '1').count();
+        if (k > KmerIndex.MAX_K) {
+            throw new IllegalArgumentException(
+                    "Seed mask must have at most " + KmerIndex.MAX_K + " care positions.");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("Minimizer window must be a positive integer.");
+        }
+
+        this.mask = mask;
+        this.window = window;
+        this.k = k;
+    }
+
+    /**
+     * Get the shape of contiguous k-mers without sampling.
+     *
+     * @param k K-mer size, between 1 and {@link KmerIndex#MAX_K}.
+     * @return Seed shape.
+     */
+    public static SeedShape contiguous(int k) {
+        if (k <= 0 || k > KmerIndex.MAX_K) {
+            throw new IllegalArgumentException(
+                    "K-mer size must be between 1 and " + KmerIndex.MAX_K + ".");
+        }
+        return new SeedShape("1".repeat(k), 1);
+    }
+
+    /**
+     * Get the shape of a seed stored as the bits of its mask.
+     *
+     * @param maskBits Bit j set if base j of the seed is a care position.
+     * @param span Number of bases of the seed.
+     * @param window Number of consecutive seed offsets a minimizer is chosen from.
+     * @return Seed shape.
+     */
+    public static SeedShape fromMaskBits(long maskBits, int span, int window) {
+        StringBuilder mask = new StringBuilder(span);
+        for (int j = 0; j < span; j++) {
+            mask.append((maskBits >>> j & 1) != 0 ? '1' : '0');
+        }
+        return new SeedShape(mask.toString(), window);
+    }
+
+    /**
+     * Create an encoder of the seeds of this shape.
+     *
+     * @return New seed encoder.
+     */
+    public SeedEncoder newEncoder() {
+        SeedEncoder encoder =
+                isContiguous() ? new KmerEncoder(this.k) : new SpacedSeedEncoder(this.mask);
+        return this.window > 1 ? new MinimizerEncoder(encoder, this.window) : encoder;
+    }
+
+    /**
+     * Check if seeds are k-mers of consecutive bases.
+     *
+     * @return True if the mask has no don't-care positions; false otherwise.
+     */
+    public boolean isContiguous() {
+        return this.k == this.mask.length();
+    }
+
+    /**
+     * Check if seeds are sampled.
+     *
+     * @return True if only minimizers are kept; false if every seed is kept.
+     */
+    public boolean isSampled() {
+        return this.window > 1;
+    }
+
+    /**
+     * Get the expected fraction of seed offsets that are kept, e.g. to scale the number of seed
+     * hits a read needs to map.
+     *
+     * @return 2 / (w + 1) for minimizers of window w, or 1 if every seed is kept.
+     */
+    public double getDensity() {
+        return isSampled() ? 2.0 / (this.window + 1) : 1;
+    }
+
+    /**
+     * Get the number of care positions, i.e. the number of bases packed into a seed.
+     *
+     * @return Weight of the seed.
+     */
+    public int getK() {
+        return this.k;
+    }
+
+    /**
+     * Get the number of bases a seed covers.
+     *
+     * @return Span of the seed.
+     */
+    public int getSpan() {
+        return this.mask.length();
+    }
+
+    /**
+     * Get the mask of the seed.
+     *
+     * @return Mask, '1' for a care position and '0' for a don't-care position.
+     */
+    public String getMask() {
+        return this.mask;
+    }
+
+    /**
+     * Get the mask of the seed as bits.
+     *
+     * @return Bit j set if base j of the seed is a care position.
+     */
+    public long getMaskBits() {
+        long bits = 0;
+        for (int j = 0; j < this.mask.length(); j++) {
+            if (this.mask.charAt(j) == '1') {
+                bits |= 1L << j;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Get the window that minimizers are chosen from.
+     *
+     * @return Number of consecutive seed offsets, or 1 if every seed is kept.
+     */
+    public int getWindow() {
+        return this.window;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SeedShape)) {
+            return false;
+        }
+        SeedShape other = (SeedShape) o;
+        return this.mask.equals(other.mask) && this.window == other.window;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.mask, this.window);
+    }
+
+    @Override
+    public String toString() {
+        String seeds = isContiguous() ? "k=" + this.k : "mask " + this.mask;
+        return isSampled() ? seeds + " minimizers of window " + this.window : seeds;
+    }
+}
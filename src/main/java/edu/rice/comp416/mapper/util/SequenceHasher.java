@@ -0,0 +1,153 @@
+package edu.rice.comp416.mapper.util;
+
+/**
+ * 128-bit hash of one or more sequences, e.g. the mates of a read pair. Sequences are packed two
+ * bits per base, 32 bases per long, and every packed word is mixed into the hash together with
+ * the mask of its ambiguous bases, in the manner of MurmurHash3. Any character other than an
+ * uppercase A,C,G,T is ambiguous and is also mixed in as is, so that sequences only hash alike if
+ * they are equal. The length of each sequence is mixed in after it, which separates sequences.
+ *
+ * <pre>{@code
+ * hasher.reset(0);
+ * hasher.add(first.getSequenceView());
+ * hasher.add(second.getSequenceView());
+ * cache.get(hasher.getHigh(), hasher.getLow());
+ * }</pre>
+ */
+public class SequenceHasher {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+
+    /** Total number of characters added. */
+    private long length;
+
+    /** Finalized hash, valid if nothing was added since it was computed. */
+    private long high;
+
+    private long low;
+    private boolean finished;
+
+    /**
+     * Start a new hash.
+     *
+     * @param seed Seed of the hash, e.g. to tell apart ways of mapping the same sequences.
+     */
+    public void reset(long seed) {
+        this.h1 = seed;
+        this.h2 = seed;
+        this.length = 0;
+        this.finished = false;
+    }
+
+    /**
+     * Add a sequence to the hash.
+     *
+     * @param s Sequence.
+     */
+    public void add(CharSequence s) {
+        int n = s.length();
+        for (int from = 0; from < n; from += 32) {
+            int to = Math.min(n, from + 32);
+            long word = 0;
+            long ambiguous = 0;
+            for (int i = from; i < to; i++) {
+                char c = s.charAt(i);
+                int base = Transform.encodeBase(c);
+                if (base < 0 || c != "ACGT".charAt(base)) {
+                    // Ambiguous bases are rare, so their characters are mixed in one by one.
+                    ambiguous |= 1L << ((i - from) << 1);
+                    mix(c, i);
+                } else {
+                    word |= (long) base << ((i - from) << 1);
+                }
+            }
+            mix(word, ambiguous);
+        }
+
+        mix(n, -1L);
+        this.length += n;
+        this.finished = false;
+    }
+
+    /**
+     * Get the upper 64 bits of the hash of the sequences added so far.
+     *
+     * @return Upper half of the hash.
+     */
+    public long getHigh() {
+        finish();
+        return this.high;
+    }
+
+    /**
+     * Get the lower 64 bits of the hash of the sequences added so far.
+     *
+     * @return Lower half of the hash.
+     */
+    public long getLow() {
+        finish();
+        return this.low;
+    }
+
+    /**
+     * Mix a 128-bit block into the hash.
+     *
+     * @param k1 First half of the block.
+     * @param k2 Second half of the block.
+     */
+    private void mix(long k1, long k2) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        this.h1 ^= k1;
+        this.h1 = Long.rotateLeft(this.h1, 27);
+        this.h1 += this.h2;
+        this.h1 = this.h1 * 5 + 0x52dce729;
+
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        this.h2 ^= k2;
+        this.h2 = Long.rotateLeft(this.h2, 31);
+        this.h2 += this.h1;
+        this.h2 = this.h2 * 5 + 0x38495ab5;
+    }
+
+    /** Finalize a copy of the hash, leaving the state as is so more sequences can be added. */
+    private void finish() {
+        if (this.finished) {
+            return;
+        }
+
+        long a = this.h1 ^ this.length;
+        long b = this.h2 ^ this.length;
+        a += b;
+        b += a;
+        a = fmix(a);
+        b = fmix(b);
+        a += b;
+        b += a;
+        this.high = a;
+        this.low = b;
+        this.finished = true;
+    }
+
+    /**
+     * Mix the bits of a long, so that every input bit affects every output bit.
+     *
+     * @param k Input.
+     * @return Mixed bits.
+     */
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,182 @@
+package edu.rice.comp416.mapper.util;
+
+/**
+ * Rolling encoder over the spaced seeds of a sequence. A spaced seed covers a span of bases but
+ * only packs the bases at the care positions of its mask, e.g. "1101" packs the first, second
+ * and fourth base of every 4 bases. A read whose mismatches fall on the don't-care positions
+ * still hits, so spaced seeds are more sensitive than contiguous k-mers of the same weight.
+ *
+ * <p>Like {@link KmerEncoder}, each step shifts one base into the code of the whole span and of
+ * its reverse complement, and the care positions are gathered from those codes run by run.
+ */
+public class SpacedSeedEncoder implements SeedEncoder {
+
+    /** Largest supported span, so that the code of the whole span fits in a long. */
+    public static final int MAX_SPAN = 32;
+
+    /** Number of care positions. */
+    private final int k;
+
+    private final int span;
+
+    /** Mask of the 2 * span low bits of a code. */
+    private final long mask;
+
+    /** Shift of the first base of a span in its code. */
+    private final int shift;
+
+    /** Shift of each run of care positions in the code of the span. */
+    private final int[] runShifts;
+
+    /** Mask of the bits of each run of care positions. */
+    private final long[] runMasks;
+
+    /** Number of bits of each run of care positions. */
+    private final int[] runBits;
+
+    private CharSequence s;
+
+    /** Position of the next base to shift in. */
+    private int i;
+
+    /** Position after the last base to shift in. */
+    private int end;
+
+    /** Number of consecutive A,C,G,T bases ending at position i - 1. */
+    private int valid;
+
+    private long code;
+
+    private long reverseCode;
+
+    /**
+     * Construct a new encoder.
+     *
+     * @param seedMask Mask of the seed, '1' for a care position and '0' for a don't-care
+     *     position, e.g. "1101". It starts and ends with a care position.
+     */
+    public SpacedSeedEncoder(String seedMask) {
+        SeedShape shape = new SeedShape(seedMask, 1);
+        this.k = shape.getK();
+        this.span = shape.getSpan();
+        this.mask = this.span == MAX_SPAN ? -1L : (1L << (2 * this.span)) - 1;
+        this.shift = 2 * (this.span - 1);
+
+        int numRuns = 0;
+        for (int j = 0; j < this.span; j++) {
+            if (seedMask.charAt(j) == '1' && (j == 0 || seedMask.charAt(j - 1) == '0')) {
+                numRuns += 1;
+            }
+        }
+
+        this.runShifts = new int[numRuns];
+        this.runMasks = new long[numRuns];
+        this.runBits = new int[numRuns];
+        int run = 0;
+        for (int j = 0; j < this.span; ) {
+            if (seedMask.charAt(j) == '0') {
+                j++;
+                continue;
+            }
+
+            int runStart = j;
+            while (j < this.span && seedMask.charAt(j) == '1') {
+                j++;
+            }
+            this.runBits[run] = 2 * (j - runStart);
+            this.runShifts[run] = 2 * (this.span - j);
+            this.runMasks[run] = (1L << this.runBits[run]) - 1;
+            run++;
+        }
+    }
+
+    @Override
+    public int getK() {
+        return this.k;
+    }
+
+    @Override
+    public int getSpan() {
+        return this.span;
+    }
+
+    @Override
+    public int getContext() {
+        return 0;
+    }
+
+    @Override
+    public void reset(CharSequence s) {
+        reset(s, 0, s.length());
+    }
+
+    @Override
+    public void reset(CharSequence s, int start, int end) {
+        this.s = s;
+        this.i = start;
+        this.end = end;
+        this.valid = 0;
+        this.code = 0;
+        this.reverseCode = 0;
+    }
+
+    /**
+     * Advance to the next seed. Seeds whose span contains characters other than A,C,G,T are
+     * skipped, even at don't-care positions.
+     *
+     * @return True if there is a next seed; false if the sequence is exhausted.
+     */
+    @Override
+    public boolean next() {
+        while (this.i < this.end) {
+            int base = Transform.encodeBase(this.s.charAt(this.i));
+            this.i += 1;
+
+            if (base < 0) {
+                this.valid = 0;
+                continue;
+            }
+
+            this.code = ((this.code << 2) | base) & this.mask;
+            this.reverseCode = (this.reverseCode >>> 2) | ((long) (3 - base) << this.shift);
+            this.valid += 1;
+
+            if (this.valid >= this.span) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public int getOffset() {
+        return this.i - this.span;
+    }
+
+    @Override
+    public long getCode() {
+        return gather(this.code);
+    }
+
+    @Override
+    public long getReverseCode() {
+        return gather(this.reverseCode);
+    }
+
+    /**
+     * Pack the care positions of a span next to each other.
+     *
+     * @param spanCode Packed bases of the whole span.
+     * @return Packed bases of the care positions, the first one in the highest bits.
+     */
+    private long gather(long spanCode) {
+        long gathered = 0;
+        for (int r = 0; r < this.runBits.length; r++) {
+            gathered =
+                    (gathered << this.runBits[r])
+                            | ((spanCode >>> this.runShifts[r]) & this.runMasks[r]);
+        }
+        return gathered;
+    }
+}
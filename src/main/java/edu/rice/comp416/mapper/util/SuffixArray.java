@@ -0,0 +1,196 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.Arrays;
+
+/** Linear-time suffix array construction by induced sorting (SA-IS). */
+public class SuffixArray {
+
+    /**
+     * Build the suffix array of a text over an integer alphabet.
+     *
+     * @param text Input text. Its last symbol must be 0, and 0 must not occur anywhere else.
+     * @param alphabetSize Number of symbols; every symbol must be between 0 and alphabetSize - 1.
+     * @return Suffix array, i.e. the start positions of all suffixes in sorted order.
+     */
+    public static int[] build(int[] text, int alphabetSize) {
+        int n = text.length;
+        if (n == 0 || text[n - 1] != 0) {
+            throw new IllegalArgumentException("Text must end with a unique 0 sentinel.");
+        }
+
+        int[] sa = new int[n];
+        sais(text, sa, n, alphabetSize);
+        return sa;
+    }
+
+    /**
+     * Sort the suffixes of s into sa.
+     *
+     * @param s Text ending with a unique 0 sentinel.
+     * @param sa Output suffix array, of length at least n.
+     * @param n Length of the text.
+     * @param alphabetSize Number of symbols.
+     */
+    private static void sais(int[] s, int[] sa, int n, int alphabetSize) {
+        if (n == 1) {
+            sa[0] = 0;
+            return;
+        }
+
+        // Classify every suffix as S-type (true) or L-type (false).
+        boolean[] types = new boolean[n];
+        types[n - 1] = true;
+        for (int i = n - 2; i >= 0; i--) {
+            types[i] = s[i] < s[i + 1] || (s[i] == s[i + 1] && types[i + 1]);
+        }
+
+        // Sort the LMS substrings by placing LMS suffixes at the ends of their buckets and
+        // inducing the order of the others.
+        int[] buckets = new int[alphabetSize];
+        getBuckets(s, n, buckets, true);
+        Arrays.fill(sa, 0, n, -1);
+        for (int i = 1; i < n; i++) {
+            if (isLms(types, i)) {
+                sa[--buckets[s[i]]] = i;
+            }
+        }
+        induceL(s, sa, n, types, buckets);
+        induceS(s, sa, n, types, buckets);
+
+        // Move the sorted LMS substrings to the front.
+        int n1 = 0;
+        for (int i = 0; i < n; i++) {
+            if (isLms(types, sa[i])) {
+                sa[n1++] = sa[i];
+            }
+        }
+
+        // Name the LMS substrings, giving equal substrings the same name. Names are stored at
+        // n1 + pos / 2, which cannot collide as LMS positions are at least two apart.
+        Arrays.fill(sa, n1, n, -1);
+        int name = 0;
+        int prev = -1;
+        for (int i = 0; i < n1; i++) {
+            int pos = sa[i];
+            boolean diff = false;
+            for (int d = 0; d < n; d++) {
+                if (prev == -1
+                        || s[pos + d] != s[prev + d]
+                        || types[pos + d] != types[prev + d]) {
+                    diff = true;
+                    break;
+                } else if (d > 0 && (isLms(types, pos + d) || isLms(types, prev + d))) {
+                    break;
+                }
+            }
+
+            if (diff) {
+                name += 1;
+                prev = pos;
+            }
+            sa[n1 + pos / 2] = name - 1;
+        }
+
+        int[] s1 = new int[n1];
+        for (int i = n1, j = 0; i < n; i++) {
+            if (sa[i] >= 0) {
+                s1[j++] = sa[i];
+            }
+        }
+
+        // Sort the reduced problem, recursing only if some names are not unique.
+        int[] sa1 = new int[n1];
+        if (name < n1) {
+            sais(s1, sa1, n1, name);
+        } else {
+            for (int i = 0; i < n1; i++) {
+                sa1[s1[i]] = i;
+            }
+        }
+
+        // Induce the full suffix array from the sorted LMS suffixes.
+        for (int i = 1, j = 0; i < n; i++) {
+            if (isLms(types, i)) {
+                s1[j++] = i;
+            }
+        }
+        getBuckets(s, n, buckets, true);
+        Arrays.fill(sa, 0, n, -1);
+        for (int i = n1 - 1; i >= 0; i--) {
+            int j = s1[sa1[i]];
+            sa[--buckets[s[j]]] = j;
+        }
+        induceL(s, sa, n, types, buckets);
+        induceS(s, sa, n, types, buckets);
+    }
+
+    /**
+     * Compute the start or the end of each symbol's bucket.
+     *
+     * @param s Text.
+     * @param n Length of the text.
+     * @param buckets Output array with one entry per symbol.
+     * @param end True to compute bucket ends (exclusive); false to compute bucket starts.
+     */
+    private static void getBuckets(int[] s, int n, int[] buckets, boolean end) {
+        Arrays.fill(buckets, 0);
+        for (int i = 0; i < n; i++) {
+            buckets[s[i]] += 1;
+        }
+
+        int sum = 0;
+        for (int c = 0; c < buckets.length; c++) {
+            sum += buckets[c];
+            buckets[c] = end ? sum : sum - buckets[c];
+        }
+    }
+
+    /**
+     * Induce the order of L-type suffixes, scanning left to right.
+     *
+     * @param s Text.
+     * @param sa Partially filled suffix array.
+     * @param n Length of the text.
+     * @param types Type of every suffix.
+     * @param buckets Scratch array for bucket pointers.
+     */
+    private static void induceL(int[] s, int[] sa, int n, boolean[] types, int[] buckets) {
+        getBuckets(s, n, buckets, false);
+        for (int i = 0; i < n; i++) {
+            int j = sa[i] - 1;
+            if (j >= 0 && !types[j]) {
+                sa[buckets[s[j]]++] = j;
+            }
+        }
+    }
+
+    /**
+     * Induce the order of S-type suffixes, scanning right to left.
+     *
+     * @param s Text.
+     * @param sa Partially filled suffix array.
+     * @param n Length of the text.
+     * @param types Type of every suffix.
+     * @param buckets Scratch array for bucket pointers.
+     */
+    private static void induceS(int[] s, int[] sa, int n, boolean[] types, int[] buckets) {
+        getBuckets(s, n, buckets, true);
+        for (int i = n - 1; i >= 0; i--) {
+            int j = sa[i] - 1;
+            if (j >= 0 && types[j]) {
+                sa[--buckets[s[j]]] = j;
+            }
+        }
+    }
+
+    /**
+     * Check if a suffix is leftmost S-type, i.e. S-type with an L-type suffix before it.
+     *
+     * @param types Type of every suffix.
+     * @param i Start of the suffix.
+     * @return True if the suffix is an LMS suffix; false otherwise.
+     */
+    private static boolean isLms(boolean[] types, int i) {
+        return i > 0 && types[i] && !types[i - 1];
+    }
+}
@@ -28,4 +28,17 @@ public class Timer {
         this.stop();
         return Math.round((this.finish - this.start) * 1e-9 * 100.0) / 100.0;
     }
+
+    /**
+     * Get the number of events per second over the elapsed time. If the timer is still ticking,
+     * then it stops the timer before returning the rate.
+     *
+     * @param count Number of events that happened while the timer was ticking.
+     * @return Events per second, rounded to the nearest integer.
+     */
+    public long getRate(long count) {
+        this.stop();
+        long elapsed = Math.max(1, this.finish - this.start);
+        return Math.round(count / (elapsed * 1e-9));
+    }
 }
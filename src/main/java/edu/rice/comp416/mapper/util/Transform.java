@@ -6,38 +6,43 @@ import java.util.Iterator;
 /** Utilities for string transformations. */
 public class Transform {
 
+    /** Complement of every nucleotide code by its ASCII character, or 0 for other characters. */
+    private static final char[] COMPLEMENTS = new char[128];
+
+    static {
+        String codes = "ACGTNRYKMSWBDHV";
+        String complements = "TGCANYRMKSWVHDB";
+        for (int i = 0; i < codes.length(); i++) {
+            char c = codes.charAt(i);
+            char complement = complements.charAt(i);
+            COMPLEMENTS[c] = complement;
+            COMPLEMENTS[Character.toLowerCase(c)] = Character.toLowerCase(complement);
+        }
+    }
+
     /**
-     * Get the reverse complement of input sequence.
+     * Get the reverse complement of input sequence. Lowercase bases keep their case, and N and
+     * the other IUPAC ambiguity codes are complemented as well, so that any read the seed
+     * encoders accept can also be aligned to the reverse strand.
      *
      * @param s Input sequence.
      * @return Reverse complement of the input sequence.
-     * @throws UnsupportedEncodingException If the input sequence contains characters other than
-     *     A,T,C,G.
+     * @throws UnsupportedEncodingException If the input sequence contains characters that are
+     *     not nucleotide codes.
      */
     public static String getReverseComplement(String s) throws UnsupportedEncodingException {
-        StringBuilder r = new StringBuilder();
-
-        for (int i = s.length() - 1; i >= 0; i--) {
-            switch (s.charAt(i)) {
-                case 'A':
-                    r.append('T');
-                    break;
-                case 'T':
-                    r.append('A');
-                    break;
-                case 'C':
-                    r.append('G');
-                    break;
-                case 'G':
-                    r.append('C');
-                    break;
-                default:
-                    throw new UnsupportedEncodingException(
-                            "The input sequence can only contain A,T,C,G.");
+        char[] r = new char[s.length()];
+        for (int i = 0; i < r.length; i++) {
+            char c = s.charAt(s.length() - 1 - i);
+            char complement = c < COMPLEMENTS.length ? COMPLEMENTS[c] : 0;
+            if (complement == 0) {
+                throw new UnsupportedEncodingException(
+                        "The input sequence can only contain nucleotide codes, found '" + c + "'.");
             }
+            r[i] = complement;
         }
 
-        return r.toString();
+        return new String(r);
     }
 
     /**
@@ -55,6 +60,70 @@ public class Transform {
         return r.toString();
     }
 
+    /**
+     * Get the 2-bit code of a nucleotide (A=0, C=1, G=2, T=3). Lowercase bases are accepted.
+     *
+     * @param c Nucleotide character.
+     * @return 2-bit code of the nucleotide, or -1 if it is not one of A,C,G,T.
+     */
+    public static int encodeBase(char c) {
+        switch (c) {
+            case 'A':
+            case 'a':
+                return 0;
+            case 'C':
+            case 'c':
+                return 1;
+            case 'G':
+            case 'g':
+                return 2;
+            case 'T':
+            case 't':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Pack a k-mer of the input sequence into a long, two bits per base with the first base in
+     * the most significant position.
+     *
+     * @param s Input sequence.
+     * @param start Position of the first base of the k-mer.
+     * @param k K-mer size, at most 31.
+     * @return Packed k-mer, or -1 if the k-mer contains characters other than A,C,G,T.
+     */
+    public static long encodeKmer(CharSequence s, int start, int k) {
+        long code = 0;
+        for (int i = start; i < start + k; i++) {
+            int base = encodeBase(s.charAt(i));
+            if (base < 0) {
+                return -1;
+            }
+            code = (code << 2) | base;
+        }
+
+        return code;
+    }
+
+    /**
+     * Unpack a k-mer that was packed with {@link #encodeKmer(CharSequence, int, int)}.
+     *
+     * @param code Packed k-mer.
+     * @param k K-mer size.
+     * @return K-mer as a string.
+     */
+    public static String decodeKmer(long code, int k) {
+        char[] kmer = new char[k];
+        for (int i = k - 1; i >= 0; i--) {
+            kmer[i] = "ACGT".charAt((int) (code & 3));
+            code >>>= 2;
+        }
+
+        return new String(kmer);
+    }
+
     /**
      * Get an iterator over k-mers of given size from the input sequence.
      *
@@ -59,6 +59,38 @@ public class Trie {
         return fromKmers(kmers, 0);
     }
 
+    /**
+     * Build trie from the k-mers of given sequence. K-mers that contain characters other than
+     * A,C,G,T are skipped.
+     *
+     * @param s Input sequence.
+     * @param k K-mer size.
+     * @param offset Offset for the position of the first k-mer in s.
+     * @return An instance of Trie built from the k-mers of given sequence.
+     */
+    public static Trie fromSequence(CharSequence s, int k, int offset) {
+        Trie trie = new Trie();
+
+        KmerEncoder encoder = new KmerEncoder(k);
+        encoder.reset(s);
+        while (encoder.next()) {
+            Node curNode = trie.g;
+            for (int i = k - 1; i >= 0; i--) {
+                char c = getBase(encoder.getCode(), i);
+                Node childNode = curNode.getChild(c);
+                if (childNode == null) {
+                    childNode = new Node(c);
+                    curNode.addChild(childNode);
+                }
+                curNode = childNode;
+            }
+
+            curNode.addLoc(offset + encoder.getOffset());
+        }
+
+        return trie;
+    }
+
     /**
      * Check if the trie contains the string.
      *
@@ -79,6 +111,22 @@ public class Trie {
         return getNodeFromString(s).getLocs();
     }
 
+    /**
+     * Get the list of positions where a packed k-mer matches, without decoding it to a string.
+     *
+     * @param code Packed k-mer, see {@link Transform#encodeKmer(CharSequence, int, int)}.
+     * @param k K-mer size.
+     * @return List of integers, representing the location.
+     */
+    public List<Integer> position(long code, int k) {
+        Node curNode = this.g;
+        for (int i = k - 1; i >= 0 && curNode != null; i--) {
+            curNode = curNode.getChild(getBase(code, i));
+        }
+
+        return curNode == null ? this.g.getLocs() : curNode.getLocs();
+    }
+
     /**
      * Get a string to print the trie, starting from its root.
      *
@@ -117,6 +165,17 @@ public class Trie {
         return curNode;
     }
 
+    /**
+     * Get a base of a packed k-mer.
+     *
+     * @param code Packed k-mer.
+     * @param i Number of bases after the base in the k-mer.
+     * @return Base as a character.
+     */
+    private static char getBase(long code, int i) {
+        return "ACGT".charAt((int) (code >>> (2 * i)) & 3);
+    }
+
     /** Private constructor for trie, to be called from public methods. */
     private Trie() {
         this.g = new Node(' ');
@@ -148,6 +207,22 @@ public class Trie {
             return this.n;
         }
 
+        /**
+         * Get the child of the current node that represents a character.
+         *
+         * @param c Character of the child.
+         * @return Child node, or null if there is no such child.
+         */
+        public Node getChild(char c) {
+            for (Node childNode : this.n) {
+                if (childNode.c == c) {
+                    return childNode;
+                }
+            }
+
+            return null;
+        }
+
         /**
          * Add a new child to this node.
          *
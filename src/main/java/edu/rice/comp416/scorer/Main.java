@@ -1,13 +1,25 @@
 package edu.rice.comp416.scorer;
 
+import edu.rice.comp416.mapper.util.JsonWriter;
+import edu.rice.comp416.scorer.util.ContigIds;
+import edu.rice.comp416.scorer.util.PartitionedScorer;
 import edu.rice.comp416.scorer.util.SAMReader;
+import edu.rice.comp416.scorer.util.Score;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 public class Main {
+    /** Flags that are followed by a value. */
+    private static final String VALUE_FLAGS = "bnrRtw";
+
     public static void main(String[] args) {
         if (args.length == 0) {
             reportError(
@@ -16,12 +28,31 @@ public class Main {
             System.exit(1);
         }
 
-        // Parse all flags.
+        // Parse all flags and their values. Every other argument is a SAM file.
         Set<Character> flags = new HashSet<>();
+        Map<Character, String> flagValues = new HashMap<>();
+        List<String> files = new ArrayList<>();
 
-        for (String arg : args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
             if (arg.length() == 2 && arg.startsWith("-")) {
-                flags.add(arg.charAt(1));
+                char flag = arg.charAt(1);
+                flags.add(flag);
+
+                if (VALUE_FLAGS.indexOf(flag) >= 0) {
+                    if (i + 1 == args.length) {
+                        reportError(
+                                "Flag '"
+                                        + arg
+                                        + "' requires a value.\n"
+                                        + "\tTry '-h' for information on command-line syntax.\n");
+                        printHelpMessage();
+                        System.exit(1);
+                    }
+                    flagValues.put(flag, args[++i]);
+                }
+            } else {
+                files.add(arg);
             }
         }
 
@@ -33,7 +64,7 @@ public class Main {
         String mapFile = "";
         String refFile = "";
 
-        for (String arg : args) {
+        for (String arg : files) {
             if (arg.endsWith(".sam")) {
                 if (mapFile.isBlank()) {
                     mapFile = arg;
@@ -71,11 +102,96 @@ public class Main {
             System.exit(1);
         }
 
+        int numBuckets = parseInt(flagValues, 'b', 0);
+        if (flagValues.containsKey('b') && numBuckets <= 0) {
+            reportError(
+                    "Number of buckets must be a positive integer.\n"
+                            + "\tTry '-h' for information on command-line syntax.\n");
+            printHelpMessage();
+            System.exit(1);
+        }
+
+        Score score = null;
+        try {
+            score =
+                    new Score(
+                            parseInt(flagValues, 't', Score.DEFAULT_TOLERANCE),
+                            parseInt(flagValues, 'w', Score.DEFAULT_BIN_WIDTH),
+                            parseInt(flagValues, 'n', Score.DEFAULT_NUM_BINS));
+        } catch (IllegalArgumentException e) {
+            reportError(e.getMessage() + "\n\tTry '-h' for information on command-line syntax.\n");
+            printHelpMessage();
+            System.exit(1);
+        }
+
+        if (numBuckets > 0) {
+            scoreBuckets(mapFile, refFile, numBuckets, score);
+        } else {
+            scoreInMemory(mapFile, refFile, score);
+        }
+
+        double recall = score.getRecall();
+        double precision = score.getPrecision();
+
+        System.out.println("Recall: " + recall);
+        System.out.println("Precision: " + precision);
+
+        try {
+            if (flagValues.containsKey('r')) {
+                JsonWriter json = new JsonWriter();
+                score.writeJson(json);
+                Files.writeString(Path.of(flagValues.get('r')), json.toString() + "\n");
+            }
+            if (flagValues.containsKey('R')) {
+                Files.writeString(Path.of(flagValues.get('R')), score.toRocTsv());
+            }
+        } catch (IOException e) {
+            reportError("Failed to write the score report: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parse the value of a flag as an integer, exiting with an error if it is not one.
+     *
+     * @param flagValues Values of the flags.
+     * @param flag Flag.
+     * @param defaultValue Value if the flag is not given.
+     * @return Value of the flag.
+     */
+    private static int parseInt(Map<Character, String> flagValues, char flag, int defaultValue) {
+        if (!flagValues.containsKey(flag)) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(flagValues.get(flag));
+        } catch (NumberFormatException e) {
+            reportError(
+                    "Value of flag '-"
+                            + flag
+                            + "' must be an integer.\n"
+                            + "\tTry '-h' for information on command-line syntax.\n");
+            printHelpMessage();
+            System.exit(1);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Score a mapping by loading all mapped reads of both files into memory.
+     *
+     * @param mapFile SAM file generated by the mapper.
+     * @param refFile SAM ground truth file.
+     * @param score Score to add the reads to.
+     */
+    private static void scoreInMemory(String mapFile, String refFile, Score score) {
         SAMReader mappingSAM = null;
         SAMReader referenceSAM = null;
         try {
-            mappingSAM = new SAMReader(mapFile);
-            referenceSAM = new SAMReader(refFile);
+            ContigIds contigs = new ContigIds();
+            mappingSAM = new SAMReader(mapFile, contigs);
+            referenceSAM = new SAMReader(refFile, contigs);
         } catch (FileNotFoundException e) {
             reportError(e.getMessage());
             System.exit(1);
@@ -87,36 +203,40 @@ public class Main {
             System.exit(1);
         }
 
-        Map<String, Integer> mapPos = mappingSAM.getReadPos();
-        Map<String, Integer> refPos = referenceSAM.getReadPos();
-
-        int falsePositive = 0;
-        int falseNegative = 0;
-        int truePositive = 0;
-
-        for (Map.Entry<String, Integer> entry : mapPos.entrySet()) {
-            if (refPos.containsKey(entry.getKey())) {
-                if (Math.abs(refPos.get(entry.getKey()) - entry.getValue()) <= 10) {
-                    truePositive += 1;
-                } else {
-                    falsePositive += 1;
-                }
-            } else {
-                falsePositive += 1;
-            }
+        Map<String, Long> mapReads = null;
+        Map<String, Long> refReads = null;
+        try {
+            mapReads = mappingSAM.getReads();
+            refReads = referenceSAM.getReads();
+        } catch (IllegalStateException | NumberFormatException e) {
+            reportError("Cannot read SAM files: " + e.getMessage());
+            System.exit(1);
         }
+        score.compare(mapReads, refReads);
+    }
 
-        for (Map.Entry<String, Integer> entry : refPos.entrySet()) {
-            if (!mapPos.containsKey(entry.getKey())) {
-                falseNegative += 1;
-            }
+    /**
+     * Score a mapping by partitioning both files into buckets on disk, and scoring the buckets in
+     * parallel.
+     *
+     * @param mapFile SAM file generated by the mapper.
+     * @param refFile SAM ground truth file.
+     * @param numBuckets Number of buckets to split each file into.
+     * @param score Score to add the reads to.
+     */
+    private static void scoreBuckets(String mapFile, String refFile, int numBuckets, Score score) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        PartitionedScorer scorer = new PartitionedScorer(numBuckets, processors);
+        try {
+            scorer.score(Path.of(mapFile), Path.of(refFile), score);
+        } catch (IOException e) {
+            reportError(e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            reportError("An interrupted exception occurred. See stack trace for more details.");
+            e.printStackTrace();
+            System.exit(1);
         }
-
-        double recall = truePositive * 1.0 / (truePositive + falseNegative);
-        double precision = truePositive * 1.0 / (truePositive + falsePositive);
-
-        System.out.println("Recall: " + recall);
-        System.out.println("Precision: " + precision);
     }
 
     public static void reportMessage(String message) {
@@ -142,6 +262,17 @@ public class Main {
                     + "\n"
                     + "Optional flags:\n"
                     + "\t-h\t  prints this message\n"
+                    + "\t-b BUCKETS\t  scores through BUCKETS buckets on disk in parallel, which"
+                    + " bounds memory on large files\n"
+                    + "\t-t TOLERANCE\t  counts reads within TOLERANCE bases of their true"
+                    + " position as correct (default 10)\n"
+                    + "\t-w WIDTH\t  sets the bin width of the position error histogram"
+                    + " (default 1)\n"
+                    + "\t-n BINS\t  sets the number of bins of the position error histogram"
+                    + " (default 50)\n"
+                    + "\t-r FILE\t  writes a JSON report with the position error histogram, the"
+                    + " strand and mate breakdowns and the MAPQ ROC curve to FILE\n"
+                    + "\t-R FILE\t  writes the MAPQ ROC curve as tab-separated values to FILE\n"
                     + "\n"
                     + "Example use:\n"
                     + "\tscore map.sam truth.txt";
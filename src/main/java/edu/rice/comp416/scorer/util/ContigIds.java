@@ -0,0 +1,99 @@
+package edu.rice.comp416.scorer.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Numbers the contigs named in the SAM files of a mapping and of its truth, so that a packed read
+ * holds its contig in a few bits, see {@link SAMReader#pack(int, int, int, int)}. Contigs are
+ * numbered in the order they are first seen, and a contig gets the same number in both files as
+ * long as both are read with the same instance, also from different threads.
+ *
+ * <p>Lines of a SAM file are usually grouped by contig, so each thread reads the contigs of its
+ * lines through a {@link Lookup}, which only numbers the contig of a line if it differs from the
+ * contig of the line before.
+ */
+public class ContigIds {
+
+    /** Largest number of contigs that can be numbered. */
+    public static final int MAX_CONTIGS = 1 << 17;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * Get the number of a contig, numbering it if it is new.
+     *
+     * @param name Name of the contig, as in the RNAME field.
+     * @return Number of the contig, from 0 to {@link #MAX_CONTIGS} - 1.
+     * @throws IllegalStateException If the contig is new and there already are {@link
+     *     #MAX_CONTIGS} contigs.
+     */
+    public synchronized int getId(String name) {
+        Integer id = this.ids.get(name);
+        if (id == null) {
+            if (this.ids.size() == MAX_CONTIGS) {
+                throw new IllegalStateException(
+                        "SAM files name more than "
+                                + MAX_CONTIGS
+                                + " contigs, which cannot be told apart.");
+            }
+            id = this.ids.size();
+            this.ids.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * Construct a lookup of the contigs of the lines of a scanner, for use by a single thread.
+     *
+     * @return New lookup.
+     */
+    public Lookup newLookup() {
+        return new Lookup();
+    }
+
+    /**
+     * Looks up the numbers of the contigs of the lines of a scanner. The name and number of the
+     * contig of the previous line are kept, so that lines of the same contig are neither copied
+     * to a string nor looked up. Not thread-safe.
+     */
+    public class Lookup {
+        private byte[] name = new byte[64];
+        private int length;
+
+        /** Number of the contig of the previous line, or -1 before the first line. */
+        private int id = -1;
+
+        /**
+         * Get the number of the contig of the current line of a scanner.
+         *
+         * @param scanner Scanner at an alignment line.
+         * @return Number of the contig.
+         * @throws IllegalStateException If the contig is new and there already are {@link
+         *     #MAX_CONTIGS} contigs.
+         */
+        public int getId(SamScanner scanner) {
+            int length = scanner.getLength(SamScanner.RNAME);
+            if (this.id >= 0 && length == this.length) {
+                int i = 0;
+                while (i < length && scanner.getByte(SamScanner.RNAME, i) == this.name[i]) {
+                    i++;
+                }
+                if (i == length) {
+                    return this.id;
+                }
+            }
+
+            this.id = -1;
+            if (length > this.name.length) {
+                this.name = new byte[Math.max(length, 2 * this.name.length)];
+            }
+            for (int i = 0; i < length; i++) {
+                this.name[i] = scanner.getByte(SamScanner.RNAME, i);
+            }
+            this.length = length;
+            this.id = ContigIds.this.getId(scanner.getString(SamScanner.RNAME));
+            return this.id;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package edu.rice.comp416.scorer.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Scores a mapping against the truth without holding either SAM file in memory. Both files are
+ * scanned at the same time, and the name, contig, position, flag and mapping quality of every
+ * mapped read are written to one of a number of bucket files on disk by a hash of the read name,
+ * so that both mates of a read and its entries in both files land in the same bucket. The buckets
+ * are then scored independently and in parallel, and only one bucket per thread is held in memory
+ * at a time.
+ *
+ * <pre>{@code
+ * Score score = new Score();
+ * new PartitionedScorer(64, 4).score(mapFile, truthFile, score);
+ * }</pre>
+ */
+public class PartitionedScorer {
+
+    /** Default number of buckets per SAM file. */
+    public static final int DEFAULT_NUM_BUCKETS = 64;
+
+    /** Size of the write buffer of each bucket file. */
+    private static final int BUFFER_SIZE = 1 << 14;
+
+    private final int numBuckets;
+    private final int parallelism;
+
+    /**
+     * Construct a new scorer.
+     *
+     * @param numBuckets Number of buckets to split each SAM file into. Memory use is roughly the
+     *     size of the larger file divided by this, per thread.
+     * @param parallelism Number of buckets to score at the same time.
+     */
+    public PartitionedScorer(int numBuckets, int parallelism) {
+        if (numBuckets <= 0) {
+            throw new IllegalArgumentException("Number of buckets must be a positive integer.");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be a positive integer.");
+        }
+
+        this.numBuckets = numBuckets;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Score a mapping against the truth.
+     *
+     * @param mapFile SAM file generated by the mapper.
+     * @param truthFile SAM file of the true positions of the reads.
+     * @param score Score to add the reads to, which also gives the tolerance and bins.
+     * @throws IOException If a SAM file cannot be read, or the buckets cannot be written.
+     * @throws InterruptedException If interrupted while waiting for the buckets.
+     */
+    public void score(Path mapFile, Path truthFile, Score score)
+            throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("scorer-buckets");
+        ContigIds contigs = new ContigIds();
+        ExecutorService executorService =
+                Executors.newFixedThreadPool(Math.max(2, this.parallelism));
+        try {
+            Future<List<Path>> mapBuckets =
+                    executorService.submit(() -> partition(mapFile, dir.resolve("map"), contigs));
+            Future<List<Path>> truthBuckets =
+                    executorService.submit(
+                            () -> partition(truthFile, dir.resolve("truth"), contigs));
+            List<Path> mapPaths = get(mapBuckets);
+            List<Path> truthPaths = get(truthBuckets);
+
+            List<Future<Score>> scores = new ArrayList<>();
+            for (int i = 0; i < this.numBuckets; i++) {
+                Path mapPath = mapPaths.get(i);
+                Path truthPath = truthPaths.get(i);
+                Callable<Score> task =
+                        () -> {
+                            Score bucket = score.emptyCopy();
+                            bucket.compare(readBucket(mapPath), readBucket(truthPath));
+                            return bucket;
+                        };
+                scores.add(executorService.submit(task));
+            }
+
+            for (Future<Score> bucket : scores) {
+                score.add(get(bucket));
+            }
+        } finally {
+            executorService.shutdownNow();
+            deleteBuckets(dir);
+        }
+    }
+
+    /**
+     * Get the bucket of a read. Only the part of the name before any mate suffix is hashed, so
+     * that "read/1", "read/2" and "read" share a bucket.
+     *
+     * @param scanner Scanner at an alignment line.
+     * @param numBuckets Number of buckets.
+     * @return Bucket of the read of the line.
+     */
+    static int getBucket(SamScanner scanner, int numBuckets) {
+        int length = scanner.getLength(SamScanner.QNAME);
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = scanner.getByte(SamScanner.QNAME, i);
+            if (b == '/') {
+                break;
+            }
+            h = 31 * h + b;
+        }
+
+        h *= 0x9e3779b9;
+        return Math.floorMod(h ^ (h >>> 16), numBuckets);
+    }
+
+    /**
+     * Write the name and the packed fields of every mapped read of a SAM file to its bucket, in
+     * the order of the file.
+     *
+     * @param samFile SAM file.
+     * @param prefix Path prefix of the bucket files.
+     * @param contigs Numbers of the contigs, shared by both SAM files.
+     * @return Paths of the bucket files.
+     * @throws IOException If the SAM file cannot be read, or the buckets cannot be written.
+     */
+    private List<Path> partition(Path samFile, Path prefix, ContigIds contigs)
+            throws IOException {
+        List<Path> paths = new ArrayList<>();
+        DataOutputStream[] buckets = new DataOutputStream[this.numBuckets];
+        ContigIds.Lookup lookup = contigs.newLookup();
+        try (SamScanner scanner = new SamScanner(samFile)) {
+            for (int i = 0; i < this.numBuckets; i++) {
+                Path path = Path.of(prefix + "." + i);
+                paths.add(path);
+                buckets[i] =
+                        new DataOutputStream(
+                                new BufferedOutputStream(
+                                        Files.newOutputStream(path), BUFFER_SIZE));
+            }
+
+            while (scanner.next()) {
+                // Unmapped reads have no position to score.
+                long read = SAMReader.readRecord(scanner, lookup);
+                if ((SAMReader.getFlag(read) & 0x4) != 0) {
+                    continue;
+                }
+
+                DataOutputStream out = buckets[getBucket(scanner, this.numBuckets)];
+                out.writeShort(scanner.getLength(SamScanner.QNAME));
+                scanner.writeField(SamScanner.QNAME, out);
+                out.writeLong(read);
+            }
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Cannot read SAM file " + samFile + ": " + e.getMessage(), e);
+        } finally {
+            for (DataOutputStream bucket : buckets) {
+                if (bucket != null) {
+                    bucket.close();
+                }
+            }
+        }
+
+        return paths;
+    }
+
+    /**
+     * Read the reads of a bucket, named like {@link SAMReader#getReads()}.
+     *
+     * @param path Path of the bucket file.
+     * @return Packed reads, by name.
+     * @throws IOException If the bucket cannot be read.
+     */
+    private static Map<String, Long> readBucket(Path path) throws IOException {
+        Map<String, Long> reads = new HashMap<>();
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            byte[] name = new byte[256];
+            while (true) {
+                int length;
+                try {
+                    length = in.readUnsignedShort();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (length > name.length) {
+                    name = new byte[Math.max(length, 2 * name.length)];
+                }
+                in.readFully(name, 0, length);
+                String seqName = new String(name, 0, length, StandardCharsets.US_ASCII);
+                SAMReader.putRead(reads, seqName, in.readLong());
+            }
+        }
+
+        // The bucket is only read once.
+        Files.delete(path);
+        return reads;
+    }
+
+    /**
+     * Delete the bucket files left over, e.g. after a failure, and their directory.
+     *
+     * @param dir Directory of the bucket files.
+     */
+    private static void deleteBuckets(Path dir) {
+        try (Stream<Path> paths = Files.list(dir)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            dir.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Wait for a task, rethrowing the exception it failed with.
+     *
+     * @param future Task.
+     * @param <T> Type of the result of the task.
+     * @return Result of the task.
+     * @throws IOException If the task failed with an IOException.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private static <T> T get(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
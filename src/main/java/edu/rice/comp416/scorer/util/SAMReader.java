@@ -1,49 +1,148 @@
 package edu.rice.comp416.scorer.util;
 
 import edu.rice.comp416.mapper.Main;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+/**
+ * Reads the mapped reads of a SAM file by name. Each read is packed into a single long holding
+ * its contig, position, flag and mapping quality, see {@link #pack(int, int, int, int)}.
+ */
 public class SAMReader {
-    private final BufferedReader fileReader;
+    private final SamScanner scanner;
+    private final ContigIds.Lookup contigs;
 
-    public SAMReader(String path) throws IOException {
-        this.fileReader = new BufferedReader(new FileReader(path));
+    /**
+     * Open a SAM file for reading.
+     *
+     * @param path Path to the SAM file.
+     * @param contigs Numbers of the contigs, shared with the SAM file the reads are compared to.
+     * @throws IOException If the file cannot be opened.
+     */
+    public SAMReader(String path, ContigIds contigs) throws IOException {
+        this.scanner = new SamScanner(new FileInputStream(path));
+        this.contigs = contigs.newLookup();
     }
 
-    public Map<String, Integer> getReadPos() {
-        Map<String, Integer> readPos = new HashMap<>();
-        String line;
+    /**
+     * Read all mapped reads of the file. Unmapped reads have no position to score and are left
+     * out.
+     *
+     * @return Packed reads, by name as given by {@link #putRead(Map, String, long)}.
+     */
+    public Map<String, Long> getReads() {
+        Map<String, Long> reads = new HashMap<>();
+        try (SamScanner scanner = this.scanner) {
+            while (scanner.next()) {
+                long read = readRecord(scanner, this.contigs);
+                if ((getFlag(read) & 0x4) == 0) {
+                    putRead(reads, scanner.getString(SamScanner.QNAME), read);
+                }
+            }
+        } catch (IOException e) {
+            Main.reportError(e.getMessage());
+        }
 
-        while (true) {
-            try {
-                if ((line = this.fileReader.readLine()) == null) break;
+        return reads;
+    }
 
-                if (line.startsWith("@")) continue;
+    /**
+     * Add a read. Names without a mate suffix get "/1" if the flag of the read marks it as the
+     * first mate and "/2" if it marks it as the second one, so that they match the names of the
+     * truth. Reads without either flag get "/1" the first time they are added and "/2" the
+     * second time.
+     *
+     * @param reads Packed reads so far, by name.
+     * @param name Name of the read, as in the SAM file.
+     * @param read Packed read.
+     */
+    public static void putRead(Map<String, Long> reads, String name, long read) {
+        if (!name.contains("/")) {
+            int flag = getFlag(read);
+            if ((flag & 0x40) != 0) {
+                name = name + "/1";
+            } else if ((flag & 0x80) != 0) {
+                name = name + "/2";
+            } else if (!reads.containsKey(name + "/1")) {
+                name = name + "/1";
+            } else if (!reads.containsKey(name + "/2")) {
+                name = name + "/2";
+            }
+        }
+        reads.put(name, read);
+    }
 
-                List<String> parsedLine = List.of(line.split("\t"));
+    /**
+     * Pack the fields of a read that are scored into a long.
+     *
+     * @param contig Number of the contig of the read, below {@link ContigIds#MAX_CONTIGS}.
+     * @param pos Position of the read, from 0 to 2^31 - 1 as in the SAM format.
+     * @param flag Flag of the read, of which the lowest 8 bits are kept, including the unmapped,
+     *     strand and mate bits.
+     * @param mapq Mapping quality of the read, from 0 to 255.
+     * @return Packed read.
+     */
+    public static long pack(int contig, int pos, int flag, int mapq) {
+        return ((long) pos << 33)
+                | ((contig & 0x1FFFFL) << 16)
+                | ((flag & 0xFFL) << 8)
+                | (mapq & 0xFF);
+    }
 
-                String seqName = parsedLine.get(0);
-                String seqPos = parsedLine.get(3);
+    /**
+     * Get the contig of a packed read.
+     *
+     * @param read Packed read.
+     * @return Number of the contig.
+     */
+    public static int getContig(long read) {
+        return (int) (read >>> 16) & 0x1FFFF;
+    }
 
-                if (!seqName.contains("/")) {
-                    if (!readPos.containsKey(seqName + "/1")) {
-                        seqName = seqName + "/1";
-                    } else if (!readPos.containsKey(seqName + "/2")) {
-                        seqName = seqName + "/2";
-                    }
-                }
-                readPos.put(seqName, Integer.parseInt(seqPos));
-            } catch (IOException e) {
-                Main.reportError(e.getMessage());
-                break;
-            }
-        }
+    /**
+     * Get the position of a packed read.
+     *
+     * @param read Packed read.
+     * @return Position.
+     */
+    public static int getPos(long read) {
+        return (int) (read >>> 33);
+    }
+
+    /**
+     * Get the flag of a packed read.
+     *
+     * @param read Packed read.
+     * @return Flag.
+     */
+    public static int getFlag(long read) {
+        return (int) (read >>> 8) & 0xFF;
+    }
+
+    /**
+     * Get the mapping quality of a packed read.
+     *
+     * @param read Packed read.
+     * @return Mapping quality, 255 if it is not available.
+     */
+    public static int getMapq(long read) {
+        return (int) read & 0xFF;
+    }
 
-        return readPos;
+    /**
+     * Pack the read of the current line of a scanner.
+     *
+     * @param scanner Scanner at an alignment line.
+     * @param contigs Lookup of the numbers of the contigs, of the thread of the scanner.
+     * @return Packed read.
+     */
+    static long readRecord(SamScanner scanner, ContigIds.Lookup contigs) {
+        return pack(
+                contigs.getId(scanner),
+                scanner.getInt(SamScanner.POS),
+                scanner.getInt(SamScanner.FLAG),
+                Math.min(scanner.getInt(SamScanner.MAPQ), 255));
     }
 }
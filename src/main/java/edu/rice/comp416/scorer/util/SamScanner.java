@@ -0,0 +1,295 @@
+package edu.rice.comp416.scorer.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Scans the alignment lines of a SAM file without splitting them. Lines are read into a reusable
+ * byte buffer, and the tabs separating the fields are only looked up as far as the fields that
+ * are asked for, so the long sequence and quality fields are never split or copied. Header lines
+ * are skipped.
+ *
+ * <pre>{@code
+ * try (SamScanner scanner = new SamScanner(path)) {
+ *     while (scanner.next()) {
+ *         int flag = scanner.getInt(SamScanner.FLAG);
+ *     }
+ * }
+ * }</pre>
+ */
+public class SamScanner implements Closeable {
+
+    /** Index of the read name field. */
+    public static final int QNAME = 0;
+
+    /** Index of the flag field. */
+    public static final int FLAG = 1;
+
+    /** Index of the reference name field, i.e. the contig of the read. */
+    public static final int RNAME = 2;
+
+    /** Index of the position field. */
+    public static final int POS = 3;
+
+    /** Index of the mapping quality field. */
+    public static final int MAPQ = 4;
+
+    /** Number of mandatory fields of an alignment line. */
+    private static final int NUM_FIELDS = 11;
+
+    private final InputStream in;
+
+    private byte[] buffer;
+
+    /** Number of bytes read into the buffer. */
+    private int limit;
+
+    /** Start of the next line in the buffer. */
+    private int next;
+
+    private boolean eof;
+
+    /** Start of the current line. */
+    private int lineStart;
+
+    /** End of the current line, exclusive of the line terminator. */
+    private int lineEnd;
+
+    /**
+     * Start of each field of the current line found so far, or the end of the line + 1 for the
+     * fields the line does not have.
+     */
+    private final int[] fieldStarts;
+
+    /** Number of fields of the current line whose start is known. */
+    private int numFound;
+
+    /**
+     * Open a SAM file for scanning.
+     *
+     * @param path Path to the SAM file.
+     * @throws IOException If the file cannot be opened.
+     */
+    public SamScanner(Path path) throws IOException {
+        this(Files.newInputStream(path));
+    }
+
+    /**
+     * Scan a SAM file from a stream.
+     *
+     * @param in Stream of the SAM file, closed with the scanner.
+     */
+    public SamScanner(InputStream in) {
+        this.in = in;
+        this.buffer = new byte[1 << 16];
+        this.fieldStarts = new int[NUM_FIELDS + 1];
+    }
+
+    /**
+     * Move to the next alignment line.
+     *
+     * @return True if there is a line; false at the end of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public boolean next() throws IOException {
+        while (nextLine()) {
+            if (this.lineEnd > this.lineStart && this.buffer[this.lineStart] != '@') {
+                this.fieldStarts[0] = this.lineStart;
+                this.numFound = 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of bytes of a field of the current line.
+     *
+     * @param field Index of the field, e.g. {@link #POS}.
+     * @return Length of the field.
+     */
+    public int getLength(int field) {
+        return getEnd(field) - getStart(field);
+    }
+
+    /**
+     * Get the byte at an offset within a field of the current line.
+     *
+     * @param field Index of the field.
+     * @param i Offset within the field.
+     * @return Byte at the offset.
+     */
+    public byte getByte(int field, int i) {
+        return this.buffer[getStart(field) + i];
+    }
+
+    /**
+     * Parse a field of the current line as a decimal integer.
+     *
+     * @param field Index of the field, e.g. {@link #FLAG}.
+     * @return Value of the field.
+     * @throws NumberFormatException If the field is not an integer.
+     */
+    public int getInt(int field) {
+        int start = getStart(field);
+        int end = getEnd(field);
+        boolean negative = start < end && this.buffer[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException("Field " + field + " is not an integer.");
+        }
+
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = this.buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(
+                        "Field " + field + " is not an integer: " + getString(field));
+            }
+            value = 10 * value + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Get a field of the current line as a string.
+     *
+     * @param field Index of the field.
+     * @return Contents of the field.
+     */
+    public String getString(int field) {
+        int start = getStart(field);
+        return new String(this.buffer, start, getEnd(field) - start, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Write the bytes of a field of the current line, without copying them first.
+     *
+     * @param field Index of the field.
+     * @param out Stream to write to.
+     * @throws IOException If the stream cannot be written.
+     */
+    public void writeField(int field, OutputStream out) throws IOException {
+        int start = getStart(field);
+        out.write(this.buffer, start, getEnd(field) - start);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    /**
+     * Get the start of a field of the current line.
+     *
+     * @param field Index of the field.
+     * @return Offset of the first byte of the field in the buffer.
+     * @throws IllegalStateException If the line does not have the field.
+     */
+    private int getStart(int field) {
+        if (field >= NUM_FIELDS) {
+            throw new IllegalArgumentException("Field " + field + " is not a mandatory field.");
+        }
+
+        find(field);
+        if (this.fieldStarts[field] > this.lineEnd) {
+            throw new IllegalStateException(
+                    "SAM line has fewer than " + (field + 1) + " fields: " + getLine());
+        }
+        return this.fieldStarts[field];
+    }
+
+    /**
+     * Get the end of a field of the current line.
+     *
+     * @param field Index of the field.
+     * @return Offset after the last byte of the field in the buffer.
+     */
+    private int getEnd(int field) {
+        find(field + 1);
+        return this.fieldStarts[field + 1] - 1;
+    }
+
+    /**
+     * Find the tabs of the current line up to the start of a field. A field past the end of the
+     * line starts right after it.
+     *
+     * @param field Index of the field.
+     */
+    private void find(int field) {
+        while (this.numFound <= field) {
+            int i = Math.min(this.fieldStarts[this.numFound - 1], this.lineEnd);
+            while (i < this.lineEnd && this.buffer[i] != '\t') {
+                i++;
+            }
+            this.fieldStarts[this.numFound++] = i + 1;
+        }
+    }
+
+    /**
+     * Get the current line as a string, e.g. for error messages.
+     *
+     * @return Current line.
+     */
+    private String getLine() {
+        return new String(
+                this.buffer,
+                this.lineStart,
+                this.lineEnd - this.lineStart,
+                StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Move to the next line of the file, reading more of the file as needed.
+     *
+     * @return True if there is a line; false at the end of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    private boolean nextLine() throws IOException {
+        int scanned = this.next;
+        while (true) {
+            int newline = scanned;
+            while (newline < this.limit && this.buffer[newline] != '\n') {
+                newline++;
+            }
+
+            if (newline < this.limit || (this.eof && this.next < this.limit)) {
+                this.lineStart = this.next;
+                this.lineEnd = newline;
+                this.next = Math.min(newline + 1, this.limit);
+                if (this.lineEnd > this.lineStart && this.buffer[this.lineEnd - 1] == '\r') {
+                    this.lineEnd--;
+                }
+                return true;
+            }
+            if (this.eof) {
+                return false;
+            }
+
+            // Move the partial line to the front, growing the buffer if it is full.
+            int partial = this.limit - this.next;
+            if (partial == this.buffer.length) {
+                byte[] grown = new byte[2 * this.buffer.length];
+                System.arraycopy(this.buffer, this.next, grown, 0, partial);
+                this.buffer = grown;
+            } else {
+                System.arraycopy(this.buffer, this.next, this.buffer, 0, partial);
+            }
+            this.next = 0;
+            this.limit = partial;
+            scanned = partial;
+
+            int n = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if (n < 0) {
+                this.eof = true;
+            } else {
+                this.limit += n;
+            }
+        }
+    }
+}
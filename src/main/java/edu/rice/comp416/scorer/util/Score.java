@@ -0,0 +1,432 @@
+package edu.rice.comp416.scorer.util;
+
+import edu.rice.comp416.mapper.util.JsonWriter;
+import java.util.Map;
+
+/**
+ * Counts of correctly and incorrectly placed reads of a mapping, compared against the truth. A
+ * read is a true positive if the mapping places it on its true contig within a tolerance of its
+ * true position, a false positive if it is placed elsewhere or is not in the truth, and a false
+ * negative if it is in the truth but not placed at all.
+ *
+ * <p>The counts are also kept by mapping quality, from which a ROC curve is derived by treating
+ * reads below a threshold as unplaced, by the strand and the mate of the read, and as a histogram
+ * of the distance of placed reads from their true position. All counts are kept in primitive
+ * arrays, and scores of disjoint sets of reads add up.
+ */
+public class Score {
+
+    /** Default largest distance from the true position of a correctly placed read. */
+    public static final int DEFAULT_TOLERANCE = 10;
+
+    /** Default width of the bins of the position error histogram. */
+    public static final int DEFAULT_BIN_WIDTH = 1;
+
+    /** Default number of bins of the position error histogram, before the overflow bin. */
+    public static final int DEFAULT_NUM_BINS = 50;
+
+    private static final int NUM_MAPQS = 256;
+
+    /** Outcomes of a read, as offsets into the breakdowns. */
+    private static final int TRUE_POSITIVE = 0;
+    private static final int FALSE_POSITIVE = 1;
+    private static final int FALSE_NEGATIVE = 2;
+    private static final int NUM_OUTCOMES = 3;
+
+    private static final String[] STRANDS = {"forward", "reverse"};
+    private static final String[] MATES = {"first", "second", "unpaired"};
+
+    private final int tolerance;
+    private final int binWidth;
+    private final int numBins;
+
+    /** Placed reads on their true contig within the tolerance of their true position. */
+    private final long[] correctByMapq;
+
+    /** Placed reads in the truth but away from their true position, by mapping quality. */
+    private final long[] misplacedByMapq;
+
+    /** Placed reads that are not in the truth, by mapping quality. */
+    private final long[] extraByMapq;
+
+    private long falseNegatives;
+
+    /**
+     * Distances of placed reads from their true position, the last bin counting the rest and the
+     * reads placed on another contig.
+     */
+    private final long[] errorBins;
+
+    /** Outcomes by strand, NUM_OUTCOMES per strand of {@link #STRANDS}. */
+    private final long[] byStrand;
+
+    /** Outcomes by mate, NUM_OUTCOMES per mate of {@link #MATES}. */
+    private final long[] byMate;
+
+    /** Construct an empty score with the default tolerance and bins. */
+    public Score() {
+        this(DEFAULT_TOLERANCE, DEFAULT_BIN_WIDTH, DEFAULT_NUM_BINS);
+    }
+
+    /**
+     * Construct an empty score.
+     *
+     * @param tolerance Largest distance from the true position of a correctly placed read.
+     * @param binWidth Width of the bins of the position error histogram.
+     * @param numBins Number of bins of the position error histogram. Larger errors are counted in
+     *     an additional overflow bin.
+     */
+    public Score(int tolerance, int binWidth, int numBins) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Tolerance must be a non-negative integer.");
+        }
+        if (binWidth <= 0) {
+            throw new IllegalArgumentException("Bin width must be a positive integer.");
+        }
+        if (numBins <= 0) {
+            throw new IllegalArgumentException("Number of bins must be a positive integer.");
+        }
+
+        this.tolerance = tolerance;
+        this.binWidth = binWidth;
+        this.numBins = numBins;
+        this.correctByMapq = new long[NUM_MAPQS];
+        this.misplacedByMapq = new long[NUM_MAPQS];
+        this.extraByMapq = new long[NUM_MAPQS];
+        this.errorBins = new long[numBins + 1];
+        this.byStrand = new long[STRANDS.length * NUM_OUTCOMES];
+        this.byMate = new long[MATES.length * NUM_OUTCOMES];
+    }
+
+    /**
+     * Construct an empty score with the same tolerance and bins as this one, e.g. to score a
+     * subset of the reads.
+     *
+     * @return Empty score.
+     */
+    public Score emptyCopy() {
+        return new Score(this.tolerance, this.binWidth, this.numBins);
+    }
+
+    /**
+     * Compare the reads of a mapping against the truth, and add them to the score.
+     *
+     * @param mapReads Packed mapped reads, by name, see {@link SAMReader#getReads()}.
+     * @param truthReads Packed reads of the truth, by name.
+     */
+    public void compare(Map<String, Long> mapReads, Map<String, Long> truthReads) {
+        for (Map.Entry<String, Long> entry : mapReads.entrySet()) {
+            long read = entry.getValue();
+            int mapq = SAMReader.getMapq(read);
+            Long truth = truthReads.get(entry.getKey());
+
+            int outcome;
+            if (truth == null) {
+                this.extraByMapq[mapq]++;
+                outcome = FALSE_POSITIVE;
+            } else {
+                // A read on another contig is as far from its true position as a read can be.
+                long error = Long.MAX_VALUE;
+                if (SAMReader.getContig(truth) == SAMReader.getContig(read)) {
+                    error = Math.abs((long) SAMReader.getPos(truth) - SAMReader.getPos(read));
+                }
+                this.errorBins[(int) Math.min(error / this.binWidth, this.numBins)]++;
+                if (error <= this.tolerance) {
+                    this.correctByMapq[mapq]++;
+                    outcome = TRUE_POSITIVE;
+                } else {
+                    this.misplacedByMapq[mapq]++;
+                    outcome = FALSE_POSITIVE;
+                }
+            }
+            count(entry.getKey(), SAMReader.getFlag(read), outcome);
+        }
+
+        for (Map.Entry<String, Long> entry : truthReads.entrySet()) {
+            if (!mapReads.containsKey(entry.getKey())) {
+                this.falseNegatives++;
+                count(entry.getKey(), SAMReader.getFlag(entry.getValue()), FALSE_NEGATIVE);
+            }
+        }
+    }
+
+    /**
+     * Add the counts of another score with the same tolerance and bins, e.g. of a different set
+     * of reads.
+     *
+     * @param other Score to add.
+     */
+    public void add(Score other) {
+        if (other.tolerance != this.tolerance
+                || other.binWidth != this.binWidth
+                || other.numBins != this.numBins) {
+            throw new IllegalArgumentException("Scores have different tolerances or bins.");
+        }
+
+        addAll(this.correctByMapq, other.correctByMapq);
+        addAll(this.misplacedByMapq, other.misplacedByMapq);
+        addAll(this.extraByMapq, other.extraByMapq);
+        addAll(this.errorBins, other.errorBins);
+        addAll(this.byStrand, other.byStrand);
+        addAll(this.byMate, other.byMate);
+        this.falseNegatives += other.falseNegatives;
+    }
+
+    public int getTolerance() {
+        return this.tolerance;
+    }
+
+    public long getTruePositives() {
+        return sum(this.correctByMapq, 0);
+    }
+
+    public long getFalsePositives() {
+        return sum(this.misplacedByMapq, 0) + sum(this.extraByMapq, 0);
+    }
+
+    public long getFalseNegatives() {
+        return this.falseNegatives;
+    }
+
+    /**
+     * Get the fraction of the reads in the truth that are placed correctly.
+     *
+     * @return Recall, or NaN if the truth is empty.
+     */
+    public double getRecall() {
+        return getRecall(0);
+    }
+
+    /**
+     * Get the fraction of the placed reads that are placed correctly.
+     *
+     * @return Precision, or NaN if no reads are placed.
+     */
+    public double getPrecision() {
+        return getPrecision(0);
+    }
+
+    /**
+     * Get the recall if reads with a mapping quality below a threshold were left unplaced.
+     *
+     * @param minMapq Lowest mapping quality of a placed read.
+     * @return Recall, or NaN if the truth is empty.
+     */
+    public double getRecall(int minMapq) {
+        long truePositives = sum(this.correctByMapq, minMapq);
+        return truePositives * 1.0 / (truePositives + getFalseNegatives(minMapq));
+    }
+
+    /**
+     * Get the precision if reads with a mapping quality below a threshold were left unplaced.
+     *
+     * @param minMapq Lowest mapping quality of a placed read.
+     * @return Precision, or NaN if no reads are placed.
+     */
+    public double getPrecision(int minMapq) {
+        long truePositives = sum(this.correctByMapq, minMapq);
+        long falsePositives = sum(this.misplacedByMapq, minMapq) + sum(this.extraByMapq, minMapq);
+        return truePositives * 1.0 / (truePositives + falsePositives);
+    }
+
+    /**
+     * Get the number of placed reads whose distance from their true position falls in a bin of
+     * the histogram.
+     *
+     * @param bin Bin, from 0 to the number of bins, the last one counting all larger distances.
+     * @return Number of reads.
+     */
+    public long getErrorCount(int bin) {
+        return this.errorBins[bin];
+    }
+
+    /**
+     * Write the ROC curve as tab-separated values, one row per mapping quality of a placed read
+     * from the highest to the lowest. Each row scores the reads with at least that quality.
+     *
+     * @return Header and rows of the ROC curve.
+     */
+    public String toRocTsv() {
+        StringBuilder tsv = new StringBuilder();
+        tsv.append("mapq\tplaced\ttrue_positives\tfalse_positives\tfalse_negatives");
+        tsv.append("\trecall\tprecision\n");
+        for (int mapq = NUM_MAPQS - 1; mapq >= 0; mapq--) {
+            if (getPlaced(mapq, mapq + 1) == 0) {
+                continue;
+            }
+
+            long truePositives = sum(this.correctByMapq, mapq);
+            long placed = getPlaced(mapq, NUM_MAPQS);
+            tsv.append(mapq).append('\t');
+            tsv.append(placed).append('\t');
+            tsv.append(truePositives).append('\t');
+            tsv.append(placed - truePositives).append('\t');
+            tsv.append(getFalseNegatives(mapq)).append('\t');
+            tsv.append(getRecall(mapq)).append('\t');
+            tsv.append(getPrecision(mapq)).append('\n');
+        }
+        return tsv.toString();
+    }
+
+    /**
+     * Write the score as a JSON object.
+     *
+     * @param json Writer to add the object to.
+     */
+    public void writeJson(JsonWriter json) {
+        json.beginObject();
+        json.name("tolerance").value(this.tolerance);
+        writeOutcomes(json, getTruePositives(), getFalsePositives(), this.falseNegatives);
+
+        json.name("position_error").beginObject();
+        json.name("bin_width").value(this.binWidth);
+        json.name("counts").beginArray();
+        for (int bin = 0; bin < this.numBins; bin++) {
+            json.value(this.errorBins[bin]);
+        }
+        json.endArray();
+        json.name("overflow").value(this.errorBins[this.numBins]);
+        json.endObject();
+
+        writeBreakdown(json, "strand", STRANDS, this.byStrand);
+        writeBreakdown(json, "mate", MATES, this.byMate);
+
+        json.name("roc").beginArray();
+        for (int mapq = NUM_MAPQS - 1; mapq >= 0; mapq--) {
+            if (getPlaced(mapq, mapq + 1) == 0) {
+                continue;
+            }
+
+            long truePositives = sum(this.correctByMapq, mapq);
+            long placed = getPlaced(mapq, NUM_MAPQS);
+            json.beginObject();
+            json.name("mapq").value(mapq);
+            json.name("placed").value(placed);
+            writeOutcomes(json, truePositives, placed - truePositives, getFalseNegatives(mapq));
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+    }
+
+    /**
+     * Count the outcome of a read by its strand and mate.
+     *
+     * @param name Name of the read, with a mate suffix if it has one.
+     * @param flag Flag of the read, in the mapping for placed reads and in the truth otherwise.
+     * @param outcome Outcome of the read.
+     */
+    private void count(String name, int flag, int outcome) {
+        int strand = (flag & 0x10) != 0 ? 1 : 0;
+        int mate;
+        if (name.endsWith("/1") || (flag & 0x40) != 0) {
+            mate = 0;
+        } else if (name.endsWith("/2") || (flag & 0x80) != 0) {
+            mate = 1;
+        } else {
+            mate = 2;
+        }
+
+        this.byStrand[strand * NUM_OUTCOMES + outcome]++;
+        this.byMate[mate * NUM_OUTCOMES + outcome]++;
+    }
+
+    /**
+     * Get the number of placed reads with a mapping quality in a range.
+     *
+     * @param from Lowest mapping quality, inclusive.
+     * @param to Highest mapping quality, exclusive.
+     * @return Number of placed reads.
+     */
+    private long getPlaced(int from, int to) {
+        long placed = 0;
+        for (int mapq = from; mapq < to; mapq++) {
+            placed += this.correctByMapq[mapq] + this.misplacedByMapq[mapq];
+            placed += this.extraByMapq[mapq];
+        }
+        return placed;
+    }
+
+    /**
+     * Get the number of false negatives if reads with a mapping quality below a threshold were
+     * left unplaced, i.e. including the reads of the truth among them.
+     *
+     * @param minMapq Lowest mapping quality of a placed read.
+     * @return Number of false negatives.
+     */
+    private long getFalseNegatives(int minMapq) {
+        long falseNegatives = this.falseNegatives;
+        for (int mapq = 0; mapq < minMapq; mapq++) {
+            falseNegatives += this.correctByMapq[mapq] + this.misplacedByMapq[mapq];
+        }
+        return falseNegatives;
+    }
+
+    /**
+     * Write counts of outcomes, and the recall and precision they give, as JSON fields.
+     *
+     * @param json Writer to add the fields to.
+     * @param truePositives Number of true positives.
+     * @param falsePositives Number of false positives.
+     * @param falseNegatives Number of false negatives.
+     */
+    private static void writeOutcomes(
+            JsonWriter json, long truePositives, long falsePositives, long falseNegatives) {
+        json.name("true_positives").value(truePositives);
+        json.name("false_positives").value(falsePositives);
+        json.name("false_negatives").value(falseNegatives);
+        json.name("recall").value(truePositives * 1.0 / (truePositives + falseNegatives));
+        json.name("precision").value(truePositives * 1.0 / (truePositives + falsePositives));
+    }
+
+    /**
+     * Write outcomes by group as a JSON object with one field per group.
+     *
+     * @param json Writer to add the object to.
+     * @param name Name of the object.
+     * @param groups Names of the groups.
+     * @param counts Outcomes, NUM_OUTCOMES per group.
+     */
+    private static void writeBreakdown(
+            JsonWriter json, String name, String[] groups, long[] counts) {
+        json.name(name).beginObject();
+        for (int i = 0; i < groups.length; i++) {
+            int offset = i * NUM_OUTCOMES;
+            json.name(groups[i]).beginObject();
+            writeOutcomes(
+                    json,
+                    counts[offset + TRUE_POSITIVE],
+                    counts[offset + FALSE_POSITIVE],
+                    counts[offset + FALSE_NEGATIVE]);
+            json.endObject();
+        }
+        json.endObject();
+    }
+
+    /**
+     * Get the sum of the counts of an array from an index on.
+     *
+     * @param counts Counts.
+     * @param from First index.
+     * @return Sum of the counts.
+     */
+    private static long sum(long[] counts, int from) {
+        long sum = 0;
+        for (int i = from; i < counts.length; i++) {
+            sum += counts[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Add the counts of an array to another one of the same length.
+     *
+     * @param counts Counts to add to.
+     * @param other Counts to add.
+     */
+    private static void addAll(long[] counts, long[] other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other[i];
+        }
+    }
+}
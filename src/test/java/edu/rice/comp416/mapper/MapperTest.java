@@ -0,0 +1,449 @@
+package edu.rice.comp416.mapper;
+
+import edu.rice.comp416.mapper.reader.FastqRecord;
+import edu.rice.comp416.mapper.util.SeedShape;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MapperTest {
+    @Test
+    public void testGetCigar() {
+        Assert.assertEquals("6=", Mapper.getCigar("ACGTAC", "ACGTAC"));
+        Assert.assertEquals("2=1X3=", Mapper.getCigar("ACGTAC", "ACTTAC"));
+        Assert.assertEquals("1X5=", Mapper.getCigar("ACGTAC", "TCGTAC"));
+        Assert.assertEquals("5=1X", Mapper.getCigar("ACGTAC", "ACGTAA"));
+    }
+
+    @Test
+    public void testOrderedOutput() throws Exception {
+        List<String> samples = writePairs(400);
+
+        String orderedFile = newTempFile(".sam");
+        newMapper(samples, orderedFile, 4).map();
+        List<String> orderedRecords = readRecords(orderedFile);
+        Assert.assertEquals(800, orderedRecords.size());
+        for (int i = 0; i < orderedRecords.size(); i++) {
+            String name = "r" + i / 2 + "/" + (i % 2 + 1);
+            Assert.assertEquals(name, orderedRecords.get(i).split("\t")[0]);
+        }
+
+        String unorderedFile = newTempFile(".sam");
+        Mapper unordered = newMapper(samples, unorderedFile, 4);
+        unordered.setOrderedOutput(false);
+        unordered.map();
+        List<String> unorderedRecords = readRecords(unorderedFile);
+        Assert.assertEquals(
+                orderedRecords.stream().sorted().collect(Collectors.toList()),
+                unorderedRecords.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testWorkerFailure() throws Exception {
+        List<String> samples = writePairs(400);
+        Mapper mapper =
+                new Mapper(getReferenceFile(), samples, newTempFile(".sam")) {
+                    @Override
+                    Result align(FastqRecord read, Seeder seeder, boolean forward)
+                            throws UnsupportedEncodingException {
+                        if (read.getDescription().equals("r50/1")) {
+                            throw new IllegalStateException("Worker failed.");
+                        }
+                        return super.align(read, seeder, forward);
+                    }
+                };
+        mapper.setNumWorkers(4);
+        mapper.setBatchSize(4);
+        mapper.generateReferenceIndex(SeedShape.contiguous(13), Mapper.IndexType.KMER);
+
+        // The failure must surface from map() rather than leave the writer waiting for the lost
+        // batch.
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> run = executorService.submit(mapper::map);
+            try {
+                run.get(60, TimeUnit.SECONDS);
+                Assert.fail("The failure of the worker was not reported.");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+                Assert.assertEquals("Worker failed.", e.getCause().getMessage());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testReverseReadWithAmbiguousBases() throws Exception {
+        String reference = getReference();
+        String first = reference.substring(1000, 1100);
+        String second = reverseComplement(reference.substring(1200, 1300)).toLowerCase();
+        second = second.substring(0, 40) + "NN" + second.substring(42);
+        String samFile = newTempFile(".sam");
+        newMapper(writeSamples(List.of(first), List.of(second)), samFile, 1).map();
+
+        List<String> records = readRecords(samFile);
+        Assert.assertEquals(2, records.size());
+        String[] fields = records.get(1).split("\t");
+        Assert.assertEquals("r0/2", fields[0]);
+        Assert.assertEquals(0x10, Integer.parseInt(fields[1]) & 0x14);
+        Assert.assertEquals("1201", fields[3]);
+    }
+
+    @Test
+    public void testPairOrientationFlags() throws Exception {
+        // Both mates on the reverse strand, a proper pair, and a pair too far apart.
+        String reference = getReference();
+        List<String> first =
+                List.of(
+                        reverseComplement(reference.substring(1200, 1300)),
+                        reference.substring(1000, 1100),
+                        reference.substring(1000, 1100));
+        List<String> second =
+                List.of(
+                        reverseComplement(reference.substring(1000, 1100)),
+                        reverseComplement(reference.substring(1200, 1300)),
+                        reverseComplement(reference.substring(3900, 4000)));
+        String samFile = newTempFile(".sam");
+        newMapper(writeSamples(first, second), samFile, 1).map();
+
+        List<String> records = readRecords(samFile);
+        Assert.assertEquals(6, records.size());
+        int[] flags = new int[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            flags[i] = Integer.parseInt(records.get(i).split("\t")[1]);
+        }
+        Assert.assertEquals(0x30, flags[0] & 0x32);
+        Assert.assertEquals(0x30, flags[1] & 0x32);
+        Assert.assertEquals(0x22, flags[2] & 0x32);
+        Assert.assertEquals(0x12, flags[3] & 0x32);
+        Assert.assertEquals(0x20, flags[4] & 0x32);
+        Assert.assertEquals(0x10, flags[5] & 0x32);
+    }
+
+    @Test
+    public void testMappingQualityOfPartialRepeat() throws Exception {
+        // A second contig repeats only the second half of the first mate.
+        String reference = getReference();
+        String first = reference.substring(1000, 1100);
+        Random random = new Random(416);
+        StringBuilder paralog = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            paralog.append("ACGT".charAt(random.nextInt(4)));
+            if (i == 300) {
+                paralog.append(first, 50, 100);
+            }
+        }
+        String referenceFile = newTempFile(".fasta");
+        Files.writeString(
+                Path.of(referenceFile), ">ref\n" + reference + "\n>paralog\n" + paralog + "\n");
+
+        String second = reverseComplement(reference.substring(1200, 1300));
+        String samFile = newTempFile(".sam");
+        newMapper(referenceFile, writeSamples(List.of(first), List.of(second)), samFile, 1).map();
+
+        // All 88 seeds of the mate vote, not only those seen before the paralog's 38 could
+        // no longer catch up.
+        String[] fields = readRecords(samFile).get(0).split("\t");
+        Assert.assertEquals("1001", fields[3]);
+        Assert.assertEquals(Mapper.getMappingQuality(88, 38), Integer.parseInt(fields[4]));
+        Assert.assertEquals(34, Integer.parseInt(fields[4]));
+    }
+
+    @Test
+    public void testUnmappedFirstMate() throws Exception {
+        String reference = getReference();
+        String unmappable = "N".repeat(100);
+        List<String> first = List.of(unmappable, reference.substring(1000, 1100), unmappable);
+        List<String> second =
+                List.of(
+                        reverseComplement(reference.substring(1200, 1300)),
+                        reverseComplement(reference.substring(1200, 1300)),
+                        unmappable);
+        String samFile = newTempFile(".sam");
+        newMapper(writeSamples(first, second), samFile, 1).map();
+
+        List<String> records = readRecords(samFile);
+        Assert.assertEquals(6, records.size());
+        int[] flags = new int[records.size()];
+        String[][] fields = new String[records.size()][];
+        for (int i = 0; i < records.size(); i++) {
+            fields[i] = records.get(i).split("\t");
+            Assert.assertEquals("r" + i / 2 + "/" + (i % 2 + 1), fields[i][0]);
+            flags[i] = Integer.parseInt(fields[i][1]);
+        }
+
+        // The second mate maps although the first one does not, and the first one is placed at
+        // its mate.
+        Assert.assertEquals(0x4, flags[0] & 0xC);
+        Assert.assertEquals(0x18, flags[1] & 0x1C);
+        Assert.assertEquals("1201", fields[1][3]);
+        Assert.assertEquals("1201", fields[0][3]);
+        Assert.assertEquals(0, flags[2] & 0xC);
+        Assert.assertEquals(0, flags[3] & 0xC);
+        Assert.assertEquals(0xC, flags[4] & 0xC);
+        Assert.assertEquals(0xC, flags[5] & 0xC);
+    }
+
+    @Test
+    public void testFallbackSeeds() throws Exception {
+        // The odd second mates have no 21-mer seed, but an 11-mer seed between each mismatch.
+        List<String> samples = writePairs(200);
+        String tieredFile = newTempFile(".sam");
+        String reportFile = newTempFile(".json");
+        Mapper tiered = new Mapper(getReferenceFile(), samples, tieredFile);
+        tiered.setNumWorkers(2);
+        tiered.setBatchSize(8);
+        tiered.setSuccessThreshold(0.05);
+        tiered.setReportFile(reportFile);
+        tiered.generateReferenceIndex(SeedShape.contiguous(21), Mapper.IndexType.KMER);
+        tiered.addFallbackSeeds(11);
+        tiered.map();
+
+        String report = Files.readString(Path.of(reportFile)).replaceAll("\\s", "");
+        Matcher tiers =
+                Pattern.compile("\"k\":(\\d+),\"reads\":(\\d+),\"aligned_reads\":(\\d+)")
+                        .matcher(report);
+        List<String> counters = new ArrayList<>();
+        while (tiers.find()) {
+            counters.add(tiers.group(1) + " " + tiers.group(2) + " " + tiers.group(3));
+        }
+        Assert.assertEquals(List.of("21 400 300", "11 100 100"), counters);
+
+        String singleFile = newTempFile(".sam");
+        Mapper single = new Mapper(getReferenceFile(), samples, singleFile);
+        single.setNumWorkers(1);
+        single.setSuccessThreshold(0.05);
+        single.generateReferenceIndex(SeedShape.contiguous(11), Mapper.IndexType.KMER);
+        single.map();
+
+        // The mates that fall back align as they do with 11-mers alone.
+        List<String> tieredRecords = readRecords(tieredFile);
+        List<String> singleRecords = readRecords(singleFile);
+        for (int i = 1; i < 200; i += 2) {
+            String record = tieredRecords.get(2 * i + 1);
+            Assert.assertTrue(record.startsWith("r" + i + "/2\t"));
+            Assert.assertEquals(0, Integer.parseInt(record.split("\t")[1]) & 0x4);
+            Assert.assertEquals(singleRecords.get(2 * i + 1), record);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeFallbackSeeds() throws Exception {
+        newMapper(writePairs(1), newTempFile(".sam"), 1).addFallbackSeeds(-1);
+    }
+
+    @Test
+    public void testMateRescueIsDeterministic() throws Exception {
+        // Enough pairs in small batches that the insert sizes are learned from many batches.
+        List<String> samples = writePairs(2500);
+        List<List<String>> runs = new ArrayList<>();
+        for (int numWorkers : new int[] {1, 4, 4}) {
+            String samFile = newTempFile(".sam");
+            Mapper mapper = newMapper(samples, samFile, numWorkers);
+            mapper.setMateRescue(true);
+            mapper.map();
+            runs.add(readRecords(samFile));
+        }
+
+        Assert.assertEquals(5000, runs.get(0).size());
+        long numUnmapped =
+                runs.get(0).stream()
+                        .filter(record -> (Integer.parseInt(record.split("\t")[1]) & 0x4) != 0)
+                        .count();
+        Assert.assertTrue(numUnmapped > 0 && numUnmapped < 1250);
+        Assert.assertEquals(runs.get(0), runs.get(1));
+        Assert.assertEquals(runs.get(0), runs.get(2));
+    }
+
+    @Test
+    public void testMateRescueWithoutInsertSizes() throws Exception {
+        // Only the 750 even pairs map confidently, too few to learn the insert sizes from.
+        List<String> samples = writePairs(1500);
+        String rescueFile = newTempFile(".sam");
+        Mapper mapper = newMapper(samples, rescueFile, 4);
+        mapper.setMateRescue(true);
+        mapper.map();
+
+        String plainFile = newTempFile(".sam");
+        newMapper(samples, plainFile, 4).map();
+        Assert.assertEquals(readRecords(plainFile), readRecords(rescueFile));
+    }
+
+    @Test
+    public void testReadCacheKeepsOutput() throws Exception {
+        // Each pair repeats six times, and the insert sizes are learned from cached pairs too.
+        List<String> samples = writePairs(3000, 500);
+        List<List<String>> runs = new ArrayList<>();
+        for (int readCacheSize : new int[] {0, 1000, 16}) {
+            String samFile = newTempFile(".sam");
+            Mapper mapper = newMapper(samples, samFile, 4);
+            mapper.setMateRescue(true);
+            mapper.setReadCacheSize(readCacheSize);
+            mapper.map();
+            runs.add(readRecords(samFile));
+        }
+
+        Assert.assertEquals(6000, runs.get(0).size());
+        Assert.assertEquals(runs.get(0), runs.get(1));
+        Assert.assertEquals(runs.get(0), runs.get(2));
+    }
+
+    /**
+     * Construct a mapper of the test reference that writes to a temporary SAM file.
+     *
+     * @param samples Paths of the sample files.
+     * @param outFile Path of the SAM file.
+     * @param numWorkers Number of mapping workers.
+     * @return Mapper with its index generated.
+     * @throws IOException If the files cannot be read.
+     */
+    static Mapper newMapper(List<String> samples, String outFile, int numWorkers)
+            throws IOException {
+        return newMapper(getReferenceFile(), samples, outFile, numWorkers);
+    }
+
+    /**
+     * Construct a mapper that writes to a temporary SAM file.
+     *
+     * @param referenceFile Path of the reference.
+     * @param samples Paths of the sample files.
+     * @param outFile Path of the SAM file.
+     * @param numWorkers Number of mapping workers.
+     * @return Mapper with its index generated.
+     * @throws IOException If the files cannot be read.
+     */
+    static Mapper newMapper(
+            String referenceFile, List<String> samples, String outFile, int numWorkers)
+            throws IOException {
+        Mapper mapper = new Mapper(referenceFile, samples, outFile);
+        mapper.setNumWorkers(numWorkers);
+        mapper.setBatchSize(8);
+        mapper.generateReferenceIndex(SeedShape.contiguous(13), Mapper.IndexType.KMER);
+        return mapper;
+    }
+
+    /**
+     * Read the alignment records of a SAM file.
+     *
+     * @param samFile Path of the SAM file.
+     * @return Lines of the records, without the header.
+     * @throws IOException If the SAM file cannot be read.
+     */
+    static List<String> readRecords(String samFile) throws IOException {
+        return Files.readAllLines(Path.of(samFile)).stream()
+                .filter(line -> !line.startsWith("@"))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Write pairs of reads taken from the test reference, with the second mate on the reverse
+     * strand 200 to 249 bases after the first. The second mate of every odd pair has a
+     * mismatch every 12 bases, so that it has no seed and only maps near its pair.
+     *
+     * @param numPairs Number of pairs.
+     * @return Paths of the two sample files.
+     * @throws IOException If the files cannot be written.
+     */
+    static List<String> writePairs(int numPairs) throws IOException {
+        return writePairs(numPairs, numPairs);
+    }
+
+    /**
+     * Write pairs of reads as {@link #writePairs(int)} does, where the i-th pair has the
+     * sequences of the pair at i modulo the number of distinct pairs.
+     *
+     * @param numPairs Number of pairs.
+     * @param numDistinct Number of pairs with distinct sequences.
+     * @return Paths of the two sample files.
+     * @throws IOException If the files cannot be written.
+     */
+    static List<String> writePairs(int numPairs, int numDistinct) throws IOException {
+        String reference = getReference();
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        for (int k = 0; k < numPairs; k++) {
+            int i = k % numDistinct;
+            int pos = 100 + (i * 997) % (reference.length() - 600);
+            int end = pos + 300 + i % 50;
+            first.add(reference.substring(pos, pos + 100));
+            char[] mate = reverseComplement(reference.substring(end - 100, end)).toCharArray();
+            for (int j = 6; i % 2 == 1 && j < mate.length; j += 12) {
+                mate[j] = mate[j] == 'A' ? 'C' : 'A';
+            }
+            second.add(new String(mate));
+        }
+        return writeSamples(first, second);
+    }
+
+    /**
+     * Write two sample files, naming the reads of the i-th pair "ri/1" and "ri/2".
+     *
+     * @param first Sequences of the first mates.
+     * @param second Sequences of the second mates.
+     * @return Paths of the two sample files.
+     * @throws IOException If the files cannot be written.
+     */
+    static List<String> writeSamples(List<String> first, List<String> second)
+            throws IOException {
+        List<String> paths = new ArrayList<>();
+        for (int j = 0; j < 2; j++) {
+            List<String> sequences = j == 0 ? first : second;
+            StringBuilder fastq = new StringBuilder();
+            for (int i = 0; i < sequences.size(); i++) {
+                String sequence = sequences.get(i);
+                fastq.append("@r").append(i).append('/').append(j + 1).append('\n');
+                fastq.append(sequence).append("\n+\n");
+                fastq.append("I".repeat(sequence.length())).append('\n');
+            }
+            String path = newTempFile(".fastq");
+            Files.writeString(Path.of(path), fastq);
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    static String getReference() throws IOException {
+        return Files.readAllLines(Path.of(getReferenceFile())).stream()
+                .filter(line -> !line.startsWith(">"))
+                .collect(Collectors.joining());
+    }
+
+    static String reverseComplement(String s) {
+        StringBuilder builder = new StringBuilder(s.length());
+        for (int i = s.length() - 1; i >= 0; i--) {
+            builder.append("TGCA".charAt("ACGT".indexOf(s.charAt(i))));
+        }
+        return builder.toString();
+    }
+
+    private static String getReferenceFile() {
+        return Objects.requireNonNull(
+                        MapperTest.class
+                                .getClassLoader()
+                                .getResource("sars_cov_2_reference_genome.fasta"))
+                .getFile();
+    }
+
+    static String newTempFile(String suffix) throws IOException {
+        File file = File.createTempFile("mapper", suffix);
+        file.deleteOnExit();
+        return file.getPath();
+    }
+}
@@ -0,0 +1,97 @@
+package edu.rice.comp416.mapper.reader;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressedInputTest {
+    @Test
+    public void testPlainFile() throws Exception {
+        String contents = getFastq(10);
+        File file = File.createTempFile("sample", ".fastq");
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.US_ASCII));
+
+        Assert.assertFalse(CompressedInput.isCompressed(file.getPath()));
+        Assert.assertEquals(contents, readAll(file.getPath()));
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        // Large enough to span several inflated chunks.
+        String contents = getFastq(20000);
+        File file = File.createTempFile("sample", ".fastq.gz");
+        file.deleteOnExit();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+            out.write(contents.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        Assert.assertTrue(CompressedInput.isCompressed(file.getPath()));
+        Assert.assertEquals(contents, readAll(file.getPath()));
+    }
+
+    @Test
+    public void testBgzf() throws Exception {
+        // Large enough to span many blocks, which are inflated in parallel.
+        String contents = getFastq(20000);
+        File file = File.createTempFile("sample", ".fastq.gz");
+        file.deleteOnExit();
+        try (OutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write(contents.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        Assert.assertTrue(CompressedInput.isCompressed(file.getPath()));
+        Assert.assertEquals(contents, readAll(file.getPath()));
+
+        try (FastqParser parser = new FastqParser(file.getPath())) {
+            FastqRecord record = new FastqRecord();
+            int count = 0;
+            while (parser.next(record)) {
+                Assert.assertEquals("r" + count, record.getDescription());
+                count += 1;
+            }
+            Assert.assertEquals(20000, count);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptBgzf() throws Exception {
+        File file = File.createTempFile("sample", ".fastq.gz");
+        file.deleteOnExit();
+        try (OutputStream out = new BlockCompressedOutputStream(file)) {
+            out.write(getFastq(100).getBytes(StandardCharsets.US_ASCII));
+        }
+
+        // Flip a byte of the deflated data of the first block.
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[40] ^= 0x55;
+        Files.write(file.toPath(), bytes);
+
+        readAll(file.getPath());
+    }
+
+    private static String getFastq(int numReads) {
+        StringBuilder fastq = new StringBuilder();
+        for (int i = 0; i < numReads; i++) {
+            fastq.append("@r").append(i).append('\n');
+            fastq.append("ACGTTGCA".repeat(i % 5 + 1)).append('\n');
+            fastq.append("+\n");
+            fastq.append("IIIIIIII".repeat(i % 5 + 1)).append('\n');
+        }
+        return fastq.toString();
+    }
+
+    private static String readAll(String filename) throws IOException {
+        try (InputStream in = CompressedInput.openStream(filename)) {
+            return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+}
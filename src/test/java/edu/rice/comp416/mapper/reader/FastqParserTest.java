@@ -0,0 +1,122 @@
+package edu.rice.comp416.mapper.reader;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import org.biojava.nbio.genome.io.fastq.Fastq;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FastqParserTest {
+    @Test
+    public void testMatchesBioJava() throws Exception {
+        for (String name : List.of("sample_1_trim.fastq", "sample_2_trim.fastq")) {
+            String file = getResource(name);
+
+            Iterator<Fastq> expected = ReadFastq.readFromFile(file).iterator();
+            try (FastqParser parser = new FastqParser(file)) {
+                FastqRecord record = new FastqRecord();
+                while (expected.hasNext()) {
+                    Fastq fastq = expected.next();
+                    Assert.assertTrue(parser.next(record));
+                    Assert.assertEquals(fastq.getDescription(), record.getDescription());
+                    Assert.assertEquals(fastq.getSequence(), record.getSequence());
+                    Assert.assertEquals(fastq.getQuality(), record.getQuality());
+                    Assert.assertEquals(
+                            fastq.getSequence(), record.getSequenceView().toString());
+                }
+                Assert.assertFalse(parser.next(record));
+            }
+        }
+    }
+
+    @Test
+    public void testLineEndings() throws Exception {
+        String file = write("@r1\r\nACGT\r\n+\r\nIIII\r\n\n@r2\nGGC\n+r2\n#$%");
+
+        try (FastqParser parser = new FastqParser(file)) {
+            FastqRecord record = new FastqRecord();
+            Assert.assertTrue(parser.next(record));
+            Assert.assertEquals("r1", record.getDescription());
+            Assert.assertEquals("ACGT", record.getSequence());
+            Assert.assertEquals("IIII", record.getQuality());
+
+            Assert.assertTrue(parser.next(record));
+            Assert.assertEquals("r2", record.getDescription());
+            Assert.assertEquals("GGC", record.getSequence());
+            Assert.assertEquals("#$%", record.getQuality());
+            Assert.assertEquals(3, record.getSequenceLength());
+
+            Assert.assertFalse(parser.next(record));
+        }
+    }
+
+    @Test
+    public void testMalformedRecords() throws Exception {
+        assertFails(write("r1\nACGT\n+\nIIII\n"), IOException.class);
+        assertFails(write("@r1\nACGT\n-\nIIII\n"), IOException.class);
+        assertFails(write("@r1\nACGT\n+\nIII\n"), IOException.class);
+        assertFails(write("@r1\nACGT\n+\n"), EOFException.class);
+    }
+
+    @Test
+    public void testPairedLockstep() throws Exception {
+        String first = write("@a/1\nAC\n+\nII\n@b/1\nGT\n+\nII\n");
+        String second = write("@a/2\nCA\n+\nII\n@b/2\nTG\n+\nII\n");
+
+        List<FastqRecord> records = List.of(new FastqRecord(), new FastqRecord());
+        try (PairedFastqReader reader =
+                new PairedFastqReader(List.of(new FastqParser(first), new FastqParser(second)))) {
+            Assert.assertEquals(2, reader.getNumSources());
+            Assert.assertTrue(reader.next(records));
+            Assert.assertEquals("a/1", records.get(0).getDescription());
+            Assert.assertEquals("a/2", records.get(1).getDescription());
+            Assert.assertTrue(reader.next(records));
+            Assert.assertEquals("GT", records.get(0).getSequence());
+            Assert.assertEquals("TG", records.get(1).getSequence());
+            Assert.assertFalse(reader.next(records));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testPairedDifferentLengths() throws Exception {
+        String first = write("@a/1\nAC\n+\nII\n@b/1\nGT\n+\nII\n");
+        String second = write("@a/2\nCA\n+\nII\n");
+
+        List<FastqRecord> records = List.of(new FastqRecord(), new FastqRecord());
+        try (PairedFastqReader reader =
+                new PairedFastqReader(List.of(new FastqParser(first), new FastqParser(second)))) {
+            while (reader.next(records)) {
+                // Read until the shorter file ends.
+            }
+        }
+    }
+
+    private String getResource(String name) {
+        return Objects.requireNonNull(this.getClass().getClassLoader().getResource(name))
+                .getFile();
+    }
+
+    private static String write(String contents) throws IOException {
+        File file = File.createTempFile("sample", ".fastq");
+        file.deleteOnExit();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.US_ASCII));
+        return file.getPath();
+    }
+
+    private static void assertFails(String file, Class<? extends IOException> type)
+            throws IOException {
+        try (FastqParser parser = new FastqParser(file)) {
+            FastqRecord record = new FastqRecord();
+            parser.next(record);
+            Assert.fail("Expected " + type.getSimpleName() + ".");
+        } catch (IOException e) {
+            Assert.assertEquals(type, e.getClass());
+        }
+    }
+}
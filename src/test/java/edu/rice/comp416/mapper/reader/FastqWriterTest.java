@@ -0,0 +1,34 @@
+package edu.rice.comp416.mapper.reader;
+
+import java.io.File;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FastqWriterTest {
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (String suffix : List.of(".fastq", ".fastq.gz")) {
+            File file = File.createTempFile("unmapped", suffix);
+            file.deleteOnExit();
+
+            FastqRecord record = new FastqRecord();
+            try (FastqWriter writer = new FastqWriter(file.getPath())) {
+                for (int i = 0; i < 1000; i++) {
+                    record.set("r" + i + "/1", "ACGTN".substring(i % 5), "IIII#".substring(i % 5));
+                    writer.write(record);
+                }
+            }
+
+            try (FastqParser parser = new FastqParser(file.getPath())) {
+                for (int i = 0; i < 1000; i++) {
+                    Assert.assertTrue(parser.next(record));
+                    Assert.assertEquals("r" + i + "/1", record.getDescription());
+                    Assert.assertEquals("ACGTN".substring(i % 5), record.getSequence());
+                    Assert.assertEquals("IIII#".substring(i % 5), record.getQuality());
+                }
+                Assert.assertFalse(parser.next(record));
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package edu.rice.comp416.mapper.util;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.ProgressLoggerInterface;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AlignmentSorterTest {
+    @Test
+    public void testInMemory() {
+        List<SAMRecord> sorted = sort(1 << 20, 1000);
+        assertSorted(sorted, 1000);
+    }
+
+    @Test
+    public void testSpilled() {
+        SAMFileHeader fileHeader = getHeader();
+        AlignmentSorter sorter = new AlignmentSorter(fileHeader, 4096);
+        for (SAMRecord record : getRecords(fileHeader, 1000)) {
+            sorter.add(record);
+        }
+        Assert.assertTrue(sorter.getNumRuns() > 1);
+
+        Collector collector = new Collector(fileHeader);
+        sorter.writeTo(collector);
+        Assert.assertEquals(0, sorter.getNumRuns());
+        assertSorted(collector.records, 1000);
+
+        // Spilling does not change the order.
+        List<SAMRecord> inMemory = sort(1 << 20, 1000);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(
+                    inMemory.get(i).getReadName(), collector.records.get(i).getReadName());
+        }
+    }
+
+    @Test
+    public void testCapacity() {
+        // The buffer stays within its budget, give or take one alignment, also across spills.
+        SAMFileHeader fileHeader = getHeader();
+        long bufferSize = 1 << 16;
+        AlignmentSorter sorter = new AlignmentSorter(fileHeader, bufferSize);
+        long maxCapacity = 0;
+        for (SAMRecord record : getRecords(fileHeader, 20000)) {
+            sorter.add(record);
+            maxCapacity = Math.max(maxCapacity, sorter.getCapacity());
+        }
+        Assert.assertTrue(sorter.getNumRuns() > 1);
+        Assert.assertTrue(maxCapacity <= bufferSize + 1024);
+
+        Collector collector = new Collector(fileHeader);
+        sorter.writeTo(collector);
+        assertSorted(collector.records, 20000);
+    }
+
+    private static List<SAMRecord> sort(long bufferSize, int numRecords) {
+        SAMFileHeader fileHeader = getHeader();
+        AlignmentSorter sorter = new AlignmentSorter(fileHeader, bufferSize);
+        for (SAMRecord record : getRecords(fileHeader, numRecords)) {
+            sorter.add(record);
+        }
+        Assert.assertEquals(0, sorter.getNumRuns());
+
+        Collector collector = new Collector(fileHeader);
+        sorter.writeTo(collector);
+        return collector.records;
+    }
+
+    private static void assertSorted(List<SAMRecord> records, int numRecords) {
+        Assert.assertEquals(numRecords, records.size());
+        for (int i = 1; i < records.size(); i++) {
+            SAMRecord previous = records.get(i - 1);
+            SAMRecord record = records.get(i);
+            long previousKey = AlignmentSorter.getKey(previous);
+            long key = AlignmentSorter.getKey(record);
+            Assert.assertTrue(previousKey <= key);
+
+            // Ties keep the order the records were added in.
+            if (previousKey == key) {
+                Assert.assertTrue(getNumber(previous) < getNumber(record));
+            }
+        }
+
+        // Unmapped records go last.
+        Assert.assertTrue(records.get(numRecords - 1).getReadUnmappedFlag());
+    }
+
+    private static int getNumber(SAMRecord record) {
+        return Integer.parseInt(record.getReadName().substring(1));
+    }
+
+    private static SAMFileHeader getHeader() {
+        SAMFileHeader fileHeader = new SAMFileHeader();
+        fileHeader.addSequence(new SAMSequenceRecord("chr1", 1000));
+        fileHeader.addSequence(new SAMSequenceRecord("chr2", 500));
+        return fileHeader;
+    }
+
+    private static List<SAMRecord> getRecords(SAMFileHeader fileHeader, int numRecords) {
+        Random random = new Random(416);
+        List<SAMRecord> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            SAMRecord record = new SAMRecord(fileHeader);
+            record.setReadName("r" + i);
+            if (i % 50 == 0) {
+                record.setReadUnmappedFlag(true);
+            } else {
+                // Few distinct positions, so that there are many ties.
+                record.setReferenceIndex(random.nextInt(2));
+                record.setAlignmentStart(1 + random.nextInt(100));
+                record.setMappingQuality(60);
+                record.setCigarString("5=");
+            }
+            record.setReadString("ACGTA");
+            record.setBaseQualityString("IIIII");
+            records.add(record);
+        }
+        return records;
+    }
+
+    /** Writer that keeps the records it is given. */
+    private static class Collector implements SAMFileWriter {
+        private final SAMFileHeader fileHeader;
+        private final List<SAMRecord> records = new ArrayList<>();
+
+        Collector(SAMFileHeader fileHeader) {
+            this.fileHeader = fileHeader;
+        }
+
+        @Override
+        public void addAlignment(SAMRecord record) {
+            this.records.add(record);
+        }
+
+        @Override
+        public SAMFileHeader getFileHeader() {
+            return this.fileHeader;
+        }
+
+        @Override
+        public void setProgressLogger(ProgressLoggerInterface progressLogger) {}
+
+        @Override
+        public void close() {}
+    }
+}
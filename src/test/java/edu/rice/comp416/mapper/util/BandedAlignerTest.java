@@ -0,0 +1,144 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BandedAlignerTest {
+    String s;
+    PackedSequence reference;
+    BandedAligner aligner;
+
+    @Before
+    public void init() {
+        Random random = new Random(416);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append("ACGT".charAt(random.nextInt(4)));
+        }
+        // Bases around the indels, so that they can only be placed in one way.
+        builder.replace(89, 93, "ACGT");
+
+        s = builder.toString();
+        reference = PackedSequence.fromSequence(s);
+        aligner = new BandedAligner(8);
+    }
+
+    @Test
+    public void testUngapped() {
+        String read = s.substring(50, 150);
+        Assert.assertEquals(100, aligner.align(reference, 0, 200, 50, read));
+        Assert.assertEquals(50, aligner.getStart());
+        Assert.assertEquals("100=", aligner.getCigar());
+        Assert.assertEquals(0, aligner.getNumEdits());
+        Assert.assertEquals("100", aligner.getMismatchString());
+    }
+
+    @Test
+    public void testDeletion() {
+        String read = s.substring(50, 90) + s.substring(92, 152);
+        int score = aligner.align(reference, 50, 200, 50, read);
+        Assert.assertEquals(
+                100 - BandedAligner.GAP_OPEN - 2 * BandedAligner.GAP_EXTEND, score);
+        Assert.assertEquals(50, aligner.getStart());
+        Assert.assertEquals("40=2D60=", aligner.getCigar());
+        Assert.assertEquals(2, aligner.getNumEdits());
+        Assert.assertEquals("40^CG60", aligner.getMismatchString());
+    }
+
+    @Test
+    public void testInsertion() {
+        String read = s.substring(50, 90) + "TT" + s.substring(90, 148);
+        char mismatch = s.charAt(120) == 'A' ? 'C' : 'A';
+        read = read.substring(0, 72) + mismatch + read.substring(73);
+
+        aligner.align(reference, 0, 200, 50, read);
+        Assert.assertEquals(50, aligner.getStart());
+        Assert.assertEquals("40=2I30=1X27=", aligner.getCigar());
+        Assert.assertEquals(3, aligner.getNumEdits());
+        Assert.assertEquals("70" + s.charAt(120) + "27", aligner.getMismatchString());
+    }
+
+    @Test
+    public void testShiftedDiagonal() {
+        // The read starts 3 bases before the diagonal, e.g. after a deletion near its start.
+        String read = s.substring(107, 187);
+        aligner.align(reference, 0, 200, 110, read);
+        Assert.assertEquals(107, aligner.getStart());
+        Assert.assertEquals("80=", aligner.getCigar());
+    }
+
+    @Test
+    public void testAmbiguousRead() {
+        String read = s.substring(50, 60) + "N".repeat(30) + s.substring(90, 150);
+        Assert.assertEquals(70, aligner.align(reference, 0, 200, 50, read));
+        Assert.assertEquals(50, aligner.getStart());
+        Assert.assertEquals("10=30X60=", aligner.getCigar());
+        Assert.assertEquals(70, aligner.getDiagonalScore());
+    }
+
+    @Test
+    public void testAmbiguousReference() {
+        // Gaps do not pay off over a run of N, which neither scores nor costs anything.
+        String masked = s.substring(0, 100) + "N".repeat(30) + s.substring(130);
+        String read = s.substring(80, 180);
+        Assert.assertEquals(
+                70, aligner.align(PackedSequence.fromSequence(masked), 0, 200, 80, read));
+        Assert.assertEquals(80, aligner.getStart());
+        Assert.assertEquals("20=30X50=", aligner.getCigar());
+        Assert.assertEquals("20" + "N0".repeat(29) + "N50", aligner.getMismatchString());
+
+        String both = masked.substring(80, 180);
+        aligner.align(PackedSequence.fromSequence(masked), 0, 200, 80, both);
+        Assert.assertEquals("20=30X50=", aligner.getCigar());
+    }
+
+    @Test
+    public void testNoAdjacentGaps() {
+        // A run of mismatches costs more than an insertion and a deletion, which must still be
+        // separated by an aligned base.
+        String read =
+                s.substring(50, 90) + complement(s.substring(90, 100)) + s.substring(100, 150);
+        aligner.align(reference, 0, 200, 50, read);
+        Assert.assertEquals(50, aligner.getStart());
+        Assert.assertFalse(aligner.getCigar().matches(".*(I[0-9]+D|D[0-9]+I).*"));
+    }
+
+    @Test
+    public void testClippedEnds() {
+        String read = complement(s.substring(50, 56)) + s.substring(56, 150);
+        aligner.align(reference, 0, 200, 50, read);
+        Assert.assertEquals(56, aligner.getStart());
+        Assert.assertEquals("6S94=", aligner.getCigar());
+        Assert.assertEquals(0, aligner.getNumEdits());
+        Assert.assertEquals("94", aligner.getMismatchString());
+
+        read = s.substring(50, 144) + complement(s.substring(144, 150));
+        aligner.align(reference, 0, 200, 50, read);
+        Assert.assertEquals(50, aligner.getStart());
+        Assert.assertEquals("94=6S", aligner.getCigar());
+    }
+
+    @Test
+    public void testDeletionNearEnds() {
+        String read = s.substring(50, 55) + s.substring(58, 158);
+        aligner.align(reference, 0, 200, 50, read);
+        Assert.assertEquals(50, aligner.getStart());
+        Assert.assertEquals("5=3D100=", aligner.getCigar());
+
+        read = s.substring(50, 140) + s.substring(143, 153);
+        aligner.align(reference, 0, 200, 50, read);
+        Assert.assertEquals(50, aligner.getStart());
+        Assert.assertEquals("90=3D10=", aligner.getCigar());
+        Assert.assertEquals("90^" + s.substring(140, 143) + "10", aligner.getMismatchString());
+    }
+
+    private static String complement(String sequence) {
+        StringBuilder builder = new StringBuilder();
+        for (char c : sequence.toCharArray()) {
+            builder.append("TGCA".charAt("ACGT".indexOf(c)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package edu.rice.comp416.mapper.util;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BgzfOutputStreamTest {
+    @Test
+    public void testRoundTrip() throws Exception {
+        // Random bytes do not compress, and sequence-like text does; both span many blocks.
+        Random random = new Random(416);
+        byte[] data = new byte[1 << 20];
+        random.nextBytes(data);
+        for (int i = data.length / 2; i < data.length; i++) {
+            data[i] = (byte) "ACGT".charAt(random.nextInt(4));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BgzfOutputStream out = new BgzfOutputStream(bytes, 3)) {
+            out.write(data, 0, 1000);
+            out.write(data[1000]);
+            out.write(data, 1001, data.length - 1001);
+        }
+        byte[] compressed = bytes.toByteArray();
+
+        BlockCompressedInputStream in =
+                new BlockCompressedInputStream(new ByteArrayInputStream(compressed));
+        Assert.assertArrayEquals(data, in.readAllBytes());
+
+        // The file ends with the BGZF end-of-file marker.
+        byte[] eof = BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK;
+        Assert.assertArrayEquals(
+                eof,
+                Arrays.copyOfRange(compressed, compressed.length - eof.length, compressed.length));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new BgzfOutputStream(bytes, 1).close();
+
+        Assert.assertArrayEquals(
+                BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK, bytes.toByteArray());
+    }
+}
@@ -0,0 +1,44 @@
+package edu.rice.comp416.mapper.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DiagonalCounterTest {
+    @Test
+    public void testBestAndSecond() {
+        DiagonalCounter counter = new DiagonalCounter();
+        counter.add(100);
+        counter.add(-5);
+        counter.add(-5);
+        counter.add(100);
+        counter.add(100);
+        counter.add(7);
+
+        Assert.assertEquals(100, counter.getBestDiagonal());
+        Assert.assertEquals(3, counter.getBestCount());
+        Assert.assertEquals(2, counter.getSecondCount());
+        Assert.assertEquals(2, counter.get(-5));
+        Assert.assertEquals(0, counter.get(8));
+        Assert.assertEquals(3, counter.size());
+
+        counter.clear();
+        Assert.assertEquals(0, counter.getBestCount());
+        Assert.assertEquals(0, counter.get(100));
+        Assert.assertEquals(0, counter.size());
+    }
+
+    @Test
+    public void testGrow() {
+        DiagonalCounter counter = new DiagonalCounter();
+        for (int i = 0; i < 10000; i++) {
+            counter.add(i * 31);
+        }
+        counter.add(62);
+
+        Assert.assertEquals(10000, counter.size());
+        Assert.assertEquals(62, counter.getBestDiagonal());
+        Assert.assertEquals(2, counter.getBestCount());
+        Assert.assertEquals(1, counter.getSecondCount());
+        Assert.assertEquals(1, counter.get(9999 * 31));
+    }
+}
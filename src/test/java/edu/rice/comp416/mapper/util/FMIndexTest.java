@@ -0,0 +1,85 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FMIndexTest {
+    @Test
+    public void testFind() {
+        FMIndex index = FMIndex.fromSequence("ACGTACGNACGTT", 3);
+        int[] range = new int[2];
+
+        Assert.assertEquals(3, index.find("ACG", range));
+        Assert.assertEquals(List.of(0, 4, 8), positions(index, range));
+        Assert.assertEquals(0, index.find("CGN", range));
+        Assert.assertEquals(0, index.find("TTT", range));
+        Assert.assertEquals(1, index.find("GTT", range));
+        Assert.assertEquals(List.of(10), positions(index, range));
+    }
+
+    @Test
+    public void testLookupMatchesKmerIndex() {
+        Random random = new Random(416);
+        StringBuilder sequence = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sequence.append(i % 700 == 0 ? 'N' : "ACGT".charAt(random.nextInt(4)));
+        }
+
+        FMIndex fmIndex = FMIndex.fromSequence(sequence, 6);
+        KmerIndex kmerIndex = KmerIndex.fromSequence(sequence, 6);
+        int[] fmRange = new int[2];
+        int[] kmerRange = new int[2];
+
+        for (int offset = 0; offset + 6 <= sequence.length(); offset += 7) {
+            long code = Transform.encodeKmer(sequence, offset, 6);
+            Assert.assertEquals(kmerIndex.lookup(code, kmerRange), fmIndex.lookup(code, fmRange));
+            Assert.assertEquals(positions(kmerIndex, kmerRange), positions(fmIndex, fmRange));
+        }
+    }
+
+    @Test
+    public void testLookupAcrossContigs() {
+        Reference reference =
+                new Reference(
+                        List.of("a", "b", "c"),
+                        new int[] {0, 8, 8, 16},
+                        PackedSequence.fromSequences(
+                                List.of("ACGTTTAC", "", "GTACGTTT").iterator(), 16));
+        FMIndex fmIndex = FMIndex.fromReference(reference, 4);
+        KmerIndex kmerIndex = KmerIndex.fromReference(reference, 4);
+        int[] fmRange = new int[2];
+        int[] kmerRange = new int[2];
+
+        Assert.assertEquals(16, fmIndex.length());
+
+        // ACGT, TACG and CGTA also occur across the contig boundary at 6, 5 and 7.
+        long code = Transform.encodeKmer("ACGT", 0, 4);
+        kmerIndex.lookup(code, kmerRange);
+        fmIndex.lookup(code, fmRange);
+        Assert.assertEquals(List.of(0, 10), positions(kmerIndex, kmerRange));
+        Assert.assertEquals(List.of(0, 10), positions(fmIndex, fmRange));
+
+        code = Transform.encodeKmer("TACG", 0, 4);
+        kmerIndex.lookup(code, kmerRange);
+        fmIndex.lookup(code, fmRange);
+        Assert.assertEquals(List.of(9), positions(kmerIndex, kmerRange));
+        Assert.assertEquals(List.of(9), positions(fmIndex, fmRange));
+
+        code = Transform.encodeKmer("CGTA", 0, 4);
+        Assert.assertEquals(0, kmerIndex.lookup(code, kmerRange));
+        Assert.assertEquals(0, fmIndex.lookup(code, fmRange));
+    }
+
+    private static List<Integer> positions(SeedIndex index, int[] range) {
+        List<Integer> positions = new ArrayList<>();
+        for (int i = range[0]; i < range[1]; i++) {
+            positions.add(index.getPosition(i));
+        }
+        Collections.sort(positions);
+        return positions;
+    }
+}
@@ -0,0 +1,44 @@
+package edu.rice.comp416.mapper.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+    @Test
+    public void testRecord() {
+        Histogram histogram = new Histogram();
+        Assert.assertEquals(0, histogram.getPercentile(0.5));
+        Assert.assertEquals(0, histogram.getMean(), 0);
+
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        histogram.record(0);
+
+        Assert.assertEquals(101, histogram.getCount());
+        Assert.assertEquals(5050, histogram.getSum());
+        Assert.assertEquals(100, histogram.getMax());
+        Assert.assertEquals(50, histogram.getMean(), 1e-9);
+
+        // The median, 50, lies in the bucket from 32 to 63.
+        Assert.assertEquals(63, histogram.getPercentile(0.5));
+        Assert.assertEquals(0, histogram.getPercentile(0));
+        Assert.assertEquals(100, histogram.getPercentile(0.99));
+        Assert.assertEquals(100, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void testMerge() {
+        Histogram first = new Histogram();
+        Histogram second = new Histogram();
+        first.record(3);
+        second.record(1L << 40);
+        second.record(-5);
+
+        first.merge(second);
+        Assert.assertEquals(3, first.getCount());
+        Assert.assertEquals(3 + (1L << 40), first.getSum());
+        Assert.assertEquals(1L << 40, first.getMax());
+        Assert.assertEquals(3, first.getPercentile(0.5));
+    }
+}
@@ -0,0 +1,67 @@
+package edu.rice.comp416.mapper.util;
+
+import java.io.File;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IndexFileTest {
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        String first = "ACGTACGNACGTTACGATCGATCGGATCGATCAGCTAGCTAGC";
+        String second = "TTTTGGGGCCCCAAAA";
+        Reference reference =
+                new Reference(
+                        List.of("chr1 first contig", "chr2"),
+                        new int[] {0, 43, 59},
+                        PackedSequence.fromSequences(List.of(first, second).iterator(), 59));
+        KmerIndex index = KmerIndex.fromReference(reference, 5);
+
+        File file = File.createTempFile("reference", ".idx");
+        file.deleteOnExit();
+        IndexFile.save(file.getPath(), reference, index);
+
+        IndexFile loaded = IndexFile.load(file.getPath());
+        Reference loadedReference = loaded.getReference();
+
+        Assert.assertEquals(2, loadedReference.getNumContigs());
+        Assert.assertEquals("chr1 first contig", loadedReference.getName(0));
+        Assert.assertEquals("chr2", loadedReference.getName(1));
+        Assert.assertEquals(16, loadedReference.getLength(1));
+        Assert.assertEquals(43, loadedReference.getStart(1));
+        Assert.assertEquals(first + second, loadedReference.getSequence().toString());
+
+        KmerIndex loadedIndex = loaded.getIndex();
+        Assert.assertEquals(5, loadedIndex.getK());
+        Assert.assertEquals(index.size(), loadedIndex.size());
+
+        int slot = loadedIndex.find(Transform.encodeKmer("GATCG", 0, 5));
+        Assert.assertEquals(3, loadedIndex.getEnd(slot) - loadedIndex.getStart(slot));
+        Assert.assertEquals(15, loadedIndex.getPosition(loadedIndex.getStart(slot)));
+        Assert.assertEquals(24, loadedIndex.getPosition(loadedIndex.getStart(slot) + 2));
+        Assert.assertEquals(1, loadedIndex.count(Transform.encodeKmer("GCCCC", 0, 5)));
+        Assert.assertEquals(-1, loadedIndex.find(Transform.encodeKmer("CGNAC", 0, 5)));
+        Assert.assertEquals(-1, loadedIndex.find(Transform.encodeKmer("AGCTT", 0, 5)));
+    }
+
+    @Test
+    public void testSaveAndLoadSampled() throws Exception {
+        String sequence = "ACGTACGNACGTTACGATCGATCGGATCGATCAGCTAGCTAGCTTTTGGGGCCCCAAAA";
+        Reference reference =
+                new Reference(
+                        List.of("chr1"),
+                        new int[] {0, 59},
+                        PackedSequence.fromSequences(List.of(sequence).iterator(), 59));
+        SeedShape shape = new SeedShape("11011", 4);
+        KmerIndex index = KmerIndex.fromReference(reference, shape);
+
+        File file = File.createTempFile("reference", ".idx");
+        file.deleteOnExit();
+        IndexFile.save(file.getPath(), reference, index);
+
+        KmerIndex loadedIndex = IndexFile.load(file.getPath()).getIndex();
+        Assert.assertEquals(shape, loadedIndex.getShape());
+        Assert.assertEquals(4, loadedIndex.getK());
+        Assert.assertEquals(index.getNumPositions(), loadedIndex.getNumPositions());
+    }
+}
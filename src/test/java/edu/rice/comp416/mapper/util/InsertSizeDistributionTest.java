@@ -0,0 +1,24 @@
+package edu.rice.comp416.mapper.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InsertSizeDistributionTest {
+    @Test
+    public void testLearn() {
+        InsertSizeDistribution distribution = new InsertSizeDistribution(8);
+        for (int insertSize : new int[] {300, 320, 340, 360, 380, 400, 420, 440}) {
+            Assert.assertFalse(distribution.isReady());
+            distribution.add(insertSize);
+        }
+
+        Assert.assertTrue(distribution.isReady());
+        Assert.assertEquals(380, distribution.getMedian());
+        Assert.assertEquals(340 - 2 * 80, distribution.getMin());
+        Assert.assertEquals(420 + 2 * 80, distribution.getMax());
+
+        // Insert sizes after the distribution is learned are ignored.
+        distribution.add(10000);
+        Assert.assertEquals(580, distribution.getMax());
+    }
+}
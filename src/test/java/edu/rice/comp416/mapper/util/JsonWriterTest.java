@@ -0,0 +1,33 @@
+package edu.rice.comp416.mapper.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonWriterTest {
+    @Test
+    public void testWrite() {
+        JsonWriter json = new JsonWriter();
+        json.beginObject();
+        json.name("name").value("a \"b\"\n");
+        json.name("count").value(3);
+        json.name("rate").value(Double.NaN);
+        json.name("list").beginArray().value(true).value(0.5).endArray();
+        json.name("empty").beginObject().endObject();
+        json.name("none").value((String) null);
+        json.endObject();
+
+        Assert.assertEquals(
+                "{\n"
+                        + "  \"name\": \"a \\\"b\\\"\\n\",\n"
+                        + "  \"count\": 3,\n"
+                        + "  \"rate\": null,\n"
+                        + "  \"list\": [\n"
+                        + "    true,\n"
+                        + "    0.5\n"
+                        + "  ],\n"
+                        + "  \"empty\": {},\n"
+                        + "  \"none\": null\n"
+                        + "}",
+                json.toString());
+    }
+}
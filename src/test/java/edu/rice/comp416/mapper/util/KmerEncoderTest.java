@@ -0,0 +1,42 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KmerEncoderTest {
+    @Test
+    public void testNext() throws Exception {
+        String s = "ACGTNACGTTA";
+        KmerEncoder encoder = new KmerEncoder(3);
+        encoder.reset(s);
+
+        List<Integer> offsets = new ArrayList<>();
+        while (encoder.next()) {
+            int offset = encoder.getOffset();
+            String kmer = s.substring(offset, offset + 3);
+            String reverseComplement = Transform.getReverseComplement(kmer);
+
+            offsets.add(offset);
+            Assert.assertEquals(Transform.encodeKmer(kmer, 0, 3), encoder.getCode());
+            Assert.assertEquals(
+                    Transform.encodeKmer(reverseComplement, 0, 3), encoder.getReverseCode());
+        }
+
+        Assert.assertEquals(List.of(0, 1, 5, 6, 7, 8), offsets);
+    }
+
+    @Test
+    public void testResetRange() {
+        KmerEncoder encoder = new KmerEncoder(2);
+        encoder.reset("ACGTACGT", 3, 6);
+
+        Assert.assertTrue(encoder.next());
+        Assert.assertEquals(3, encoder.getOffset());
+        Assert.assertEquals(Transform.encodeKmer("TA", 0, 2), encoder.getCode());
+        Assert.assertTrue(encoder.next());
+        Assert.assertEquals(4, encoder.getOffset());
+        Assert.assertFalse(encoder.next());
+    }
+}
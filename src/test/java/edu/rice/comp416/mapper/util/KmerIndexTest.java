@@ -0,0 +1,116 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KmerIndexTest {
+    KmerIndex index;
+
+    @Before
+    public void init() {
+        index = KmerIndex.fromSequence("ACGTACGNACGTT", 3);
+    }
+
+    @Test
+    public void testFind() {
+        Assert.assertTrue(index.find(Transform.encodeKmer("ACG", 0, 3)) >= 0);
+        Assert.assertTrue(index.find(Transform.encodeKmer("GTA", 0, 3)) >= 0);
+        Assert.assertEquals(-1, index.find(Transform.encodeKmer("TTT", 0, 3)));
+        Assert.assertEquals(-1, index.find(Transform.encodeKmer("CGN", 0, 3)));
+        Assert.assertEquals(5, index.size());
+    }
+
+    @Test
+    public void testPosition() {
+        int slot = index.find(Transform.encodeKmer("ACG", 0, 3));
+        Assert.assertEquals(3, index.getEnd(slot) - index.getStart(slot));
+        Assert.assertEquals(0, index.getPosition(index.getStart(slot)));
+        Assert.assertEquals(4, index.getPosition(index.getStart(slot) + 1));
+        Assert.assertEquals(8, index.getPosition(index.getStart(slot) + 2));
+
+        Assert.assertEquals(1, index.count(Transform.encodeKmer("GTT", 0, 3)));
+        Assert.assertEquals(0, index.count(Transform.encodeKmer("GNA", 0, 3)));
+    }
+
+    @Test
+    public void testOffset() {
+        KmerIndex shifted = KmerIndex.fromSequence("ACGTACG", 4, 100);
+        int slot = shifted.find(Transform.encodeKmer("TACG", 0, 4));
+        Assert.assertEquals(103, shifted.getPosition(shifted.getStart(slot)));
+    }
+
+    @Test
+    public void testTableCapacity() {
+        Assert.assertEquals(2, KmerIndex.tableCapacity(0));
+        Assert.assertEquals(8, KmerIndex.tableCapacity(4));
+        Assert.assertEquals(1 << 30, KmerIndex.tableCapacity(751619276));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTableCapacityTooLarge() {
+        KmerIndex.tableCapacity(751619277);
+    }
+
+    @Test
+    public void testParallelBuild() {
+        Reference reference = randomReference();
+
+        KmerIndex serial = KmerIndex.fromReference(reference, 8, 1);
+        KmerIndex parallel = KmerIndex.fromReference(reference, 8, 4);
+        assertSameIndex(serial, parallel, reference);
+    }
+
+    @Test
+    public void testParallelSampledBuild() {
+        Reference reference = randomReference();
+        SeedShape shape = new SeedShape("1101011", 6);
+
+        KmerIndex serial = KmerIndex.fromReference(reference, shape, 1);
+        KmerIndex parallel = KmerIndex.fromReference(reference, shape, 4);
+        Assert.assertEquals(shape, parallel.getShape());
+        Assert.assertEquals(5, parallel.getK());
+        assertSameIndex(serial, parallel, reference);
+
+        // Only minimizers are kept, about 2 / (w + 1) of the seeds.
+        Assert.assertEquals(2.0 / 7, serial.getNumPositions() / 300000.0, 0.03);
+    }
+
+    private static Reference randomReference() {
+        Random random = new Random(416);
+        StringBuilder[] contigs = new StringBuilder[3];
+        for (int c = 0; c < contigs.length; c++) {
+            contigs[c] = new StringBuilder();
+            for (int i = 0; i < 100000; i++) {
+                char base = random.nextInt(50) == 0 ? 'N' : "ACGT".charAt(random.nextInt(4));
+                contigs[c].append(base);
+            }
+        }
+        int[] starts = {0, 100000, 200000, 300000};
+        return new Reference(
+                List.of("a", "b", "c"),
+                starts,
+                PackedSequence.fromSequences(List.of(contigs).iterator(), 300000));
+    }
+
+    private static void assertSameIndex(KmerIndex serial, KmerIndex parallel, Reference reference) {
+        Assert.assertEquals(serial.size(), parallel.size());
+        Assert.assertEquals(serial.getNumPositions(), parallel.getNumPositions());
+
+        SeedEncoder encoder = serial.getShape().newEncoder();
+        encoder.reset(reference.getSequence());
+        while (encoder.next()) {
+            int a = serial.find(encoder.getCode());
+            int b = parallel.find(encoder.getCode());
+            int count = serial.getEnd(a) - serial.getStart(a);
+            Assert.assertEquals(count, parallel.getEnd(b) - parallel.getStart(b));
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(
+                        serial.getPosition(serial.getStart(a) + i),
+                        parallel.getPosition(parallel.getStart(b) + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsTest {
+    @Test
+    public void testMerge() {
+        Metrics first = new Metrics("worker-1");
+        first.getCounter("reads").add(2);
+        first.getHistogram("cigar_ns").record(100);
+        first.addWaitTime(5);
+        first.finish();
+
+        Metrics second = new Metrics("worker-2");
+        second.getCounter("reads").increment();
+        second.getCounter("gapped").increment();
+        second.getHistogram("cigar_ns").record(300);
+        second.finish();
+
+        Metrics merged = Metrics.merge("mapping", List.of(first, second));
+        Assert.assertEquals(3, merged.getCounter("reads").get());
+        Assert.assertEquals(1, merged.getCounter("gapped").get());
+        Assert.assertEquals(2, merged.getHistogram("cigar_ns").getCount());
+        Assert.assertEquals(300, merged.getHistogram("cigar_ns").getMax());
+        Assert.assertEquals(5, merged.getWaitNanos());
+        Assert.assertEquals(first.getBusyNanos() + second.getBusyNanos(), merged.getBusyNanos());
+    }
+}
@@ -0,0 +1,73 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MinimizerEncoderTest {
+    private static final int K = 11;
+    private static final int WINDOW = 8;
+
+    @Test
+    public void testEveryWindowHasMinimizer() {
+        String s = randomSequence(new Random(416), 20000);
+        List<Integer> offsets = minimizers(s);
+
+        // Minimizers are emitted in ascending order, no further apart than a window.
+        for (int i = 1; i < offsets.size(); i++) {
+            Assert.assertTrue(offsets.get(i) > offsets.get(i - 1));
+            Assert.assertTrue(offsets.get(i) - offsets.get(i - 1) <= WINDOW);
+        }
+        Assert.assertTrue(offsets.get(0) < WINDOW);
+        Assert.assertTrue(offsets.get(offsets.size() - 1) > s.length() - K - WINDOW);
+
+        // About 2 / (w + 1) of the seeds are kept.
+        double density = offsets.size() / (double) (s.length() - K + 1);
+        Assert.assertEquals(2.0 / (WINDOW + 1), density, 0.03);
+    }
+
+    @Test
+    public void testBothStrands() throws Exception {
+        String s = randomSequence(new Random(7), 5000);
+        List<Integer> forward = minimizers(s);
+        List<Integer> reverse = minimizers(Transform.getReverseComplement(s));
+
+        // The reverse complement has the same minimizers, seen from the other end.
+        List<Integer> mirrored = new ArrayList<>();
+        for (int i = reverse.size() - 1; i >= 0; i--) {
+            mirrored.add(s.length() - K - reverse.get(i));
+        }
+        Assert.assertEquals(forward, mirrored);
+    }
+
+    @Test
+    public void testCodes() {
+        String s = randomSequence(new Random(1), 200);
+        MinimizerEncoder encoder = new MinimizerEncoder(new KmerEncoder(K), WINDOW);
+        encoder.reset(s);
+        while (encoder.next()) {
+            int offset = encoder.getOffset();
+            Assert.assertEquals(Transform.encodeKmer(s, offset, K), encoder.getCode());
+        }
+    }
+
+    private static List<Integer> minimizers(String s) {
+        MinimizerEncoder encoder = new MinimizerEncoder(new KmerEncoder(K), WINDOW);
+        encoder.reset(s);
+        List<Integer> offsets = new ArrayList<>();
+        while (encoder.next()) {
+            offsets.add(encoder.getOffset());
+        }
+        return offsets;
+    }
+
+    private static String randomSequence(Random random, int length) {
+        StringBuilder s = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            s.append("ACGT".charAt(random.nextInt(4)));
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MismatchScannerTest {
+    @Test
+    public void testScan() {
+        PackedSequence reference = PackedSequence.fromSequence("TTACGTACTT");
+        MismatchScanner scanner = new MismatchScanner();
+
+        scanner.scan(reference, 2, "ACGTAC");
+        Assert.assertEquals(0, scanner.getNumMismatches());
+        Assert.assertEquals("6=", scanner.getCigar());
+        Assert.assertEquals("6", scanner.getMismatchString());
+
+        scanner.scan(reference, 2, "TCGTCA");
+        Assert.assertEquals(3, scanner.getNumMismatches());
+        Assert.assertEquals("1X3=2X", scanner.getCigar());
+        Assert.assertEquals("0A3A0C0", scanner.getMismatchString());
+    }
+
+    @Test
+    public void testAmbiguousBases() {
+        PackedSequence reference = PackedSequence.fromSequence("ACGNACGT");
+        MismatchScanner scanner = new MismatchScanner();
+
+        scanner.scan(reference, 0, "ACGAACNT");
+        Assert.assertEquals(2, scanner.getNumMismatches());
+        Assert.assertEquals("3=1X2=1X1=", scanner.getCigar());
+        Assert.assertEquals("3N2G1", scanner.getMismatchString());
+    }
+
+    @Test
+    public void testLongRead() {
+        Random random = new Random(416);
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            s.append("ACGT".charAt(random.nextInt(4)));
+        }
+        PackedSequence reference = PackedSequence.fromSequence(s);
+
+        // Unaligned start, and mismatches on both sides of word boundaries.
+        StringBuilder read = new StringBuilder(s.substring(37, 187));
+        for (int i : new int[] {0, 31, 32, 33, 100, 149}) {
+            read.setCharAt(i, read.charAt(i) == 'A' ? 'C' : 'A');
+        }
+
+        MismatchScanner scanner = new MismatchScanner();
+        scanner.scan(reference, 37, read);
+        Assert.assertEquals(6, scanner.getNumMismatches());
+        Assert.assertEquals("1X30=3X66=1X48=1X", scanner.getCigar());
+        Assert.assertEquals(
+                "0" + s.charAt(37) + "30" + s.charAt(68) + "0" + s.charAt(69) + "0" + s.charAt(70)
+                        + "66" + s.charAt(137) + "48" + s.charAt(186) + "0",
+                scanner.getMismatchString());
+    }
+
+    @Test
+    public void testSearch() {
+        Random random = new Random(416);
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            s.append("ACGT".charAt(random.nextInt(4)));
+        }
+        PackedSequence reference = PackedSequence.fromSequence(s);
+
+        StringBuilder read = new StringBuilder(s.substring(600, 700));
+        read.setCharAt(50, read.charAt(50) == 'A' ? 'C' : 'A');
+
+        MismatchScanner scanner = new MismatchScanner();
+        Assert.assertEquals(600, scanner.search(reference, 400, 800, read, 10));
+        Assert.assertEquals(1, scanner.getNumMismatches());
+        Assert.assertTrue(scanner.getRunnerUpMismatches() > 10);
+
+        Assert.assertEquals(-1, scanner.search(reference, 0, 600, read, 10));
+        Assert.assertEquals(-1, scanner.search(reference, 600, 700, read, 0));
+
+        // A second copy of the read makes the start ambiguous.
+        s.replace(100, 200, s.substring(600, 700));
+        reference = PackedSequence.fromSequence(s);
+        Assert.assertEquals(100, scanner.search(reference, 0, 1000, read, 10));
+        Assert.assertEquals(1, scanner.getRunnerUpMismatches());
+    }
+}
@@ -0,0 +1,41 @@
+package edu.rice.comp416.mapper.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackedSequenceTest {
+    @Test
+    public void testRoundTrip() {
+        String s = "ACGTTGCAACGTACGTACGTACGTACGTACGTAAAACCCC";
+        PackedSequence packed = PackedSequence.fromSequence(s);
+
+        Assert.assertEquals(s.length(), packed.length());
+        Assert.assertEquals(s, packed.toString());
+        Assert.assertEquals("GTAAAACC", packed.substring(30, 38));
+        Assert.assertEquals(0, packed.getBase(34));
+        Assert.assertEquals(2, packed.getBase(30));
+    }
+
+    @Test
+    public void testAmbiguousBases() {
+        PackedSequence packed = PackedSequence.fromSequence("NNACGTNACRT");
+
+        Assert.assertEquals("NNACGTNACNT", packed.toString());
+        Assert.assertEquals("GTNA", packed.substring(4, 8));
+        Assert.assertTrue(packed.isAmbiguous(0));
+        Assert.assertTrue(packed.isAmbiguous(6));
+        Assert.assertFalse(packed.isAmbiguous(7));
+        Assert.assertEquals('N', packed.charAt(9));
+        Assert.assertEquals('T', packed.charAt(10));
+    }
+
+    @Test
+    public void testWord() {
+        PackedSequence packed = PackedSequence.fromSequence("CCCCCCCCCCCCCCCCCCCCCCCCCCCCCCGTNA");
+
+        Assert.assertEquals(0x0e55555555555555L, packed.getWord(2));
+        Assert.assertEquals(0xeL, packed.getWord(30));
+        Assert.assertEquals(0x10L, packed.getAmbiguousMask(30));
+        Assert.assertEquals(0L, packed.getAmbiguousMask(0));
+    }
+}
@@ -0,0 +1,99 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReadCacheTest {
+    @Test
+    public void testGetAndPut() {
+        ReadCache<String> cache = new ReadCache<>(100);
+        Assert.assertEquals(128, cache.getCapacity());
+        Assert.assertNull(cache.get(1, 2));
+
+        cache.put(1, 2, "a");
+        cache.put(3, 2, "b");
+        Assert.assertEquals("a", cache.get(1, 2));
+        Assert.assertEquals("b", cache.get(3, 2));
+        cache.put(1, 2, "c");
+        Assert.assertEquals("c", cache.get(1, 2));
+
+        Assert.assertEquals(3, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(0.75, cache.getHitRate(), 1e-9);
+        Assert.assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void testClockEviction() {
+        // A single set of 8 slots.
+        ReadCache<Integer> cache = new ReadCache<>(1);
+        Assert.assertEquals(8, cache.getCapacity());
+        for (int i = 0; i < 8; i++) {
+            cache.put(i, 0, i);
+        }
+
+        // Recently used keys survive, and the first unused one is evicted.
+        cache.get(0, 0);
+        cache.get(1, 0);
+        cache.put(8, 0, 8);
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(Integer.valueOf(0), cache.get(0, 0));
+        Assert.assertEquals(Integer.valueOf(1), cache.get(1, 0));
+        Assert.assertNull(cache.get(2, 0));
+        Assert.assertEquals(Integer.valueOf(8), cache.get(8, 0));
+    }
+
+    @Test
+    public void testBounded() {
+        ReadCache<Integer> cache = new ReadCache<>(64);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i * 0x9e3779b97f4a7c15L, i);
+        }
+
+        int cached = 0;
+        for (int i = 0; i < 1000; i++) {
+            Integer value = cache.get(i, i * 0x9e3779b97f4a7c15L);
+            if (value != null) {
+                Assert.assertEquals(i, value.intValue());
+                cached++;
+            }
+        }
+        Assert.assertEquals(64, cached);
+        Assert.assertEquals(1000 - 64, cache.getEvictions());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        ReadCache<Long> cache = new ReadCache<>(256);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread =
+                    new Thread(
+                            () -> {
+                                for (long i = 0; i < 10000; i++) {
+                                    long key = i % 512;
+                                    Long value = cache.get(key, key * 31);
+                                    if (value == null) {
+                                        cache.put(key, key * 31, key);
+                                    } else {
+                                        Assert.assertEquals(key, value.longValue());
+                                    }
+                                }
+                            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(40000, cache.getHits() + cache.getMisses());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new ReadCache<String>(0);
+    }
+}
@@ -0,0 +1,26 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReferenceTest {
+    @Test
+    public void testGetContig() {
+        Reference reference =
+                new Reference(
+                        List.of("a", "b", "c"),
+                        new int[] {0, 8, 8, 16},
+                        PackedSequence.fromSequences(
+                                List.of("ACGTTTAC", "", "GTACGTTT").iterator(), 16));
+
+        Assert.assertEquals(-1, reference.getContig(-1));
+        Assert.assertEquals(0, reference.getContig(0));
+        Assert.assertEquals(0, reference.getContig(7));
+        Assert.assertEquals(2, reference.getContig(8));
+        Assert.assertEquals(2, reference.getContig(15));
+        Assert.assertEquals(-1, reference.getContig(16));
+        Assert.assertEquals(0, reference.getLength(1));
+        Assert.assertEquals("GTACGTTT", reference.getSequence().substring(8, 16));
+    }
+}
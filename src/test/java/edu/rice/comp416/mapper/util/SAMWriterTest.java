@@ -0,0 +1,107 @@
+package edu.rice.comp416.mapper.util;
+
+import edu.rice.comp416.mapper.Mapper;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import java.io.File;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SAMWriterTest {
+    @Test
+    public void testBam() throws Exception {
+        String first = "ACGTACGTTTGCAGGCATCGATCGACTAGCTAGCATCGACTGACTAGC";
+        String second = "GGCATCAGCTACGACTACGACTAGCATCGA";
+        Reference reference =
+                new Reference(
+                        List.of("chr1 first contig", "chr2"),
+                        new int[] {0, first.length(), first.length() + second.length()},
+                        PackedSequence.fromSequences(
+                                List.of(first, second).iterator(),
+                                first.length() + second.length()));
+
+        File file = File.createTempFile("out", ".bam");
+        file.deleteOnExit();
+
+        SAMWriter samWriter = new SAMWriter(file.getPath(), reference);
+        for (int i = 0; i < 10000; i++) {
+            Mapper.Result read =
+                    new Mapper.Result("r" + i + "/1", "ACGTA", "IIIII", 0, i % 40, 60, "5=", false);
+            Mapper.Result mate =
+                    new Mapper.Result("r" + i + "/2", "GGCAT", "IIII#", 1, 3, 30, "5=", true);
+            samWriter.addAlignment(read, mate, true, 60, false);
+            samWriter.addAlignment(mate, read, false, 30, false);
+        }
+        samWriter.close();
+
+        try (SamReader reader = SamReaderFactory.makeDefault().open(file)) {
+            SAMSequenceDictionary dictionary = reader.getFileHeader().getSequenceDictionary();
+            Assert.assertEquals(2, dictionary.size());
+            Assert.assertEquals("chr1", dictionary.getSequence(0).getSequenceName());
+            Assert.assertEquals(30, dictionary.getSequence(1).getSequenceLength());
+
+            SAMRecordIterator records = reader.iterator();
+            for (int i = 0; i < 10000; i++) {
+                SAMRecord read = records.next();
+                Assert.assertEquals("r" + i + "/1", read.getReadName());
+                Assert.assertEquals("chr1", read.getReferenceName());
+                Assert.assertEquals(i % 40 + 1, read.getAlignmentStart());
+                Assert.assertEquals("chr2", read.getMateReferenceName());
+                Assert.assertEquals("ACGTA", read.getReadString());
+
+                SAMRecord mate = records.next();
+                Assert.assertEquals("r" + i + "/2", mate.getReadName());
+                Assert.assertEquals(30, mate.getMappingQuality());
+                Assert.assertTrue(mate.getReadNegativeStrandFlag());
+                Assert.assertEquals("IIII#", mate.getBaseQualityString());
+            }
+            Assert.assertFalse(records.hasNext());
+        }
+    }
+
+    @Test
+    public void testUnmappedReads() throws Exception {
+        String sequence = "ACGTACGTTTGCAGGCATCGATCGACTAGCTAGCATCGACTGACTAGC";
+        Reference reference =
+                new Reference(
+                        List.of("chr1"),
+                        new int[] {0, sequence.length()},
+                        PackedSequence.fromSequence(sequence));
+
+        File file = File.createTempFile("out", ".sam");
+        file.deleteOnExit();
+
+        SAMWriter samWriter = new SAMWriter(file.getPath(), reference);
+        Mapper.Result mapped = new Mapper.Result("r0/1", "TTGCA", "IIIII", 0, 9, 60, "5=", true);
+        samWriter.addAlignment(mapped, null, true, 60, false);
+        samWriter.addUnmappedRead("r0/2", "GGGGG", "#####", mapped, false);
+        samWriter.addUnmappedRead("r1/1", "CCCCC", "IIIII", null, true);
+        samWriter.close();
+
+        try (SamReader reader = SamReaderFactory.makeDefault().open(file)) {
+            SAMRecordIterator records = reader.iterator();
+
+            SAMRecord read = records.next();
+            Assert.assertEquals(0x1 + 0x8 + 0x10 + 0x40, read.getFlags());
+            Assert.assertEquals(10, read.getAlignmentStart());
+            Assert.assertEquals(10, read.getMateAlignmentStart());
+
+            SAMRecord mate = records.next();
+            Assert.assertEquals(0x1 + 0x4 + 0x20 + 0x80, mate.getFlags());
+            Assert.assertEquals("chr1", mate.getReferenceName());
+            Assert.assertEquals(10, mate.getAlignmentStart());
+            Assert.assertEquals(0, mate.getMappingQuality());
+            Assert.assertEquals("GGGGG", mate.getReadString());
+
+            SAMRecord unmapped = records.next();
+            Assert.assertEquals(0x1 + 0x4 + 0x8 + 0x40, unmapped.getFlags());
+            Assert.assertEquals(SAMRecord.NO_ALIGNMENT_REFERENCE_NAME, unmapped.getReferenceName());
+            Assert.assertEquals(SAMRecord.NO_ALIGNMENT_START, unmapped.getAlignmentStart());
+            Assert.assertFalse(records.hasNext());
+        }
+    }
+}
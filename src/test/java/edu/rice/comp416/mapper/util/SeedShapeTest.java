@@ -0,0 +1,34 @@
+package edu.rice.comp416.mapper.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SeedShapeTest {
+    @Test
+    public void testShape() {
+        SeedShape shape = new SeedShape("1101", 5);
+        Assert.assertEquals(3, shape.getK());
+        Assert.assertEquals(4, shape.getSpan());
+        Assert.assertFalse(shape.isContiguous());
+        Assert.assertTrue(shape.isSampled());
+        Assert.assertEquals(2.0 / 6, shape.getDensity(), 1e-9);
+        Assert.assertEquals(0b1011, shape.getMaskBits());
+        Assert.assertEquals(shape, SeedShape.fromMaskBits(0b1011, 4, 5));
+
+        SeedShape contiguous = SeedShape.contiguous(13);
+        Assert.assertTrue(contiguous.isContiguous());
+        Assert.assertFalse(contiguous.isSampled());
+        Assert.assertEquals(1, contiguous.getDensity(), 0);
+        Assert.assertTrue(contiguous.newEncoder() instanceof KmerEncoder);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMask() {
+        new SeedShape("0110", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindow() {
+        new SeedShape("111", 0);
+    }
+}
@@ -0,0 +1,60 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SequenceHasherTest {
+    private static long[] hash(long seed, String... sequences) {
+        SequenceHasher hasher = new SequenceHasher();
+        hasher.reset(seed);
+        for (String s : sequences) {
+            hasher.add(s);
+        }
+        return new long[] {hasher.getHigh(), hasher.getLow()};
+    }
+
+    @Test
+    public void testEqualSequences() {
+        String read = "ACGTTGCAACGTACGTTTGACCANNACGTACGTACGATCGATCGTAGCTAGCTAGCTAGC";
+        Assert.assertArrayEquals(hash(0, read, "TTT"), hash(0, read, "TTT"));
+        Assert.assertArrayEquals(
+                hash(0, read, "TTT"), hash(0, new StringBuilder(read).toString(), "TTT"));
+    }
+
+    @Test
+    public void testDifferentSequences() {
+        String read = "ACGTTGCAACGTACGTTTGACCAAAACGTACGTACGATCGATCGTAGCTAGCTAGCTAGC";
+        long[] h = hash(0, read);
+        Assert.assertFalse(equal(h, hash(1, read)));
+        Assert.assertFalse(equal(h, hash(0, read.replace("AAAA", "ANAA"))));
+        Assert.assertFalse(equal(h, hash(0, read.replace("AAAA", "AaAA"))));
+        Assert.assertFalse(equal(hash(0, "ACGTN"), hash(0, "ACGTR")));
+        Assert.assertFalse(equal(hash(0, "ACG", "T"), hash(0, "AC", "GT")));
+        Assert.assertFalse(equal(hash(0, "A"), hash(0, "AA")));
+    }
+
+    @Test
+    public void testNoCollisions() {
+        Random random = new Random(416);
+        Set<Long> highs = new HashSet<>();
+        Set<Long> lows = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            char[] bases = new char[100];
+            for (int j = 0; j < bases.length; j++) {
+                bases[j] = "ACGT".charAt(random.nextInt(4));
+            }
+            long[] h = hash(0, new String(bases));
+            highs.add(h[0]);
+            lows.add(h[1]);
+        }
+        Assert.assertEquals(10000, highs.size());
+        Assert.assertEquals(10000, lows.size());
+    }
+
+    private static boolean equal(long[] a, long[] b) {
+        return a[0] == b[0] && a[1] == b[1];
+    }
+}
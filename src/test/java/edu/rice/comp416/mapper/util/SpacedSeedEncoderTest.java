@@ -0,0 +1,51 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SpacedSeedEncoderTest {
+    @Test
+    public void testNext() throws Exception {
+        String s = "ACGTTGCANACGTTAGC";
+        SpacedSeedEncoder encoder = new SpacedSeedEncoder("11001");
+        Assert.assertEquals(3, encoder.getK());
+        Assert.assertEquals(5, encoder.getSpan());
+        encoder.reset(s);
+
+        List<Integer> offsets = new ArrayList<>();
+        while (encoder.next()) {
+            int offset = encoder.getOffset();
+            String span = s.substring(offset, offset + 5);
+            String reverseComplement = Transform.getReverseComplement(span);
+
+            offsets.add(offset);
+            Assert.assertEquals(Transform.encodeKmer(gather(span), 0, 3), encoder.getCode());
+            Assert.assertEquals(
+                    Transform.encodeKmer(gather(reverseComplement), 0, 3),
+                    encoder.getReverseCode());
+        }
+
+        Assert.assertEquals(List.of(0, 1, 2, 3, 9, 10, 11, 12), offsets);
+    }
+
+    @Test
+    public void testMismatchAtDontCare() {
+        SpacedSeedEncoder encoder = new SpacedSeedEncoder("1101");
+        encoder.reset("ACGT");
+        Assert.assertTrue(encoder.next());
+        long code = encoder.getCode();
+
+        // A mismatch at the don't-care position yields the same seed.
+        encoder.reset("ACAT");
+        Assert.assertTrue(encoder.next());
+        Assert.assertEquals(code, encoder.getCode());
+        Assert.assertEquals(Transform.encodeKmer("ACT", 0, 3), code);
+    }
+
+    /** Keep the bases of a span at the care positions of the mask "11001". */
+    private static String gather(String span) {
+        return "" + span.charAt(0) + span.charAt(1) + span.charAt(4);
+    }
+}
@@ -0,0 +1,47 @@
+package edu.rice.comp416.mapper.util;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SuffixArrayTest {
+    @Test
+    public void testBanana() {
+        // b=2, a=1, n=3, followed by the sentinel.
+        int[] text = {2, 1, 3, 1, 3, 1, 0};
+        Assert.assertArrayEquals(new int[] {6, 5, 3, 1, 0, 4, 2}, SuffixArray.build(text, 4));
+    }
+
+    @Test
+    public void testRandomTexts() {
+        Random random = new Random(416);
+        for (int trial = 0; trial < 200; trial++) {
+            int n = 1 + random.nextInt(300);
+            int alphabetSize = 2 + random.nextInt(5);
+            int[] text = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                // Repeat earlier runs now and then, which exercises the recursion.
+                text[i] =
+                        i > 8 && random.nextInt(4) == 0
+                                ? text[i - 8]
+                                : 1 + random.nextInt(alphabetSize - 1);
+            }
+
+            Assert.assertArrayEquals(naiveSuffixArray(text), SuffixArray.build(text, alphabetSize));
+        }
+    }
+
+    private static int[] naiveSuffixArray(int[] text) {
+        return IntStream.range(0, text.length)
+                .boxed()
+                .sorted(
+                        (a, b) ->
+                                Arrays.compare(
+                                        Arrays.copyOfRange(text, a, text.length),
+                                        Arrays.copyOfRange(text, b, text.length)))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+}
@@ -1,5 +1,6 @@
 package edu.rice.comp416.mapper.util;
 
+import java.io.UnsupportedEncodingException;
 import java.util.Iterator;
 import org.junit.Assert;
 import org.junit.Test;
@@ -11,6 +12,17 @@ public class TransformTest {
         Assert.assertEquals("AATGTACTA", Transform.getReverseComplement("TAGTACATT"));
     }
 
+    @Test
+    public void testGetReverseComplementAmbiguous() throws Exception {
+        Assert.assertEquals("gtNNacCT", Transform.getReverseComplement("AGgtNNac"));
+        Assert.assertEquals("nNRY", Transform.getReverseComplement("RYNn"));
+    }
+
+    @Test(expected = UnsupportedEncodingException.class)
+    public void testGetReverseComplementInvalid() throws Exception {
+        Transform.getReverseComplement("AC-T");
+    }
+
     @Test
     public void testGetReverse() {
         Assert.assertEquals("ABCDEFG", Transform.getReverse("GFEDCBA"));
@@ -46,4 +58,12 @@ public class TransformTest {
 
         Assert.assertEquals(0, test2Size);
     }
+
+    @Test
+    public void testEncodeKmer() {
+        Assert.assertEquals(0b00011011, Transform.encodeKmer("ACGT", 0, 4));
+        Assert.assertEquals(0b1011, Transform.encodeKmer("xxGTx", 2, 2));
+        Assert.assertEquals(-1, Transform.encodeKmer("ACNT", 0, 4));
+        Assert.assertEquals("TTGCA", Transform.decodeKmer(Transform.encodeKmer("ttgca", 0, 5), 5));
+    }
 }
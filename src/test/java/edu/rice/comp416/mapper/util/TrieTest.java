@@ -41,4 +41,16 @@ public class TrieTest {
         Assert.assertEquals(1, trie.position("bef").size());
         Assert.assertTrue(trie.position("bef").contains(2));
     }
+
+    @Test
+    public void testFromSequence() {
+        Trie sequenceTrie = Trie.fromSequence("ACGTNACGTA", 3, 10);
+
+        Assert.assertEquals(List.of(10, 15), sequenceTrie.position("ACG"));
+        Assert.assertEquals(List.of(10, 15), sequenceTrie.position(0b000110, 3));
+        Assert.assertEquals(
+                List.of(17), sequenceTrie.position(Transform.encodeKmer("GTA", 0, 3), 3));
+        Assert.assertFalse(sequenceTrie.contains("GTN"));
+        Assert.assertTrue(sequenceTrie.position(Transform.encodeKmer("TAC", 0, 3), 3).isEmpty());
+    }
 }
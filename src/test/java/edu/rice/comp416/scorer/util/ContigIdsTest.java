@@ -0,0 +1,40 @@
+package edu.rice.comp416.scorer.util;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ContigIdsTest {
+    @Test
+    public void testLookup() throws Exception {
+        String sam =
+                "r0\t0\tchr1\t1\n"
+                        + "r1\t0\tchr1\t2\n"
+                        + "r2\t0\tchr10\t3\n"
+                        + "r3\t0\tchr2\t4\n"
+                        + "r4\t0\tchr1\t5\n";
+        ContigIds contigs = new ContigIds();
+        contigs.getId("chr2");
+        ContigIds.Lookup lookup = contigs.newLookup();
+        int[] expected = {1, 1, 2, 0, 1};
+        try (SamScanner scanner =
+                new SamScanner(
+                        new ByteArrayInputStream(sam.getBytes(StandardCharsets.US_ASCII)))) {
+            for (int id : expected) {
+                Assert.assertTrue(scanner.next());
+                Assert.assertEquals(id, lookup.getId(scanner));
+            }
+            Assert.assertFalse(scanner.next());
+        }
+        Assert.assertEquals(2, contigs.getId("chr10"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTooManyContigs() {
+        ContigIds contigs = new ContigIds();
+        for (int i = 0; i <= ContigIds.MAX_CONTIGS; i++) {
+            contigs.getId("contig" + i);
+        }
+    }
+}
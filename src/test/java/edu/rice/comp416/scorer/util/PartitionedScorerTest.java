@@ -0,0 +1,67 @@
+package edu.rice.comp416.scorer.util;
+
+import edu.rice.comp416.mapper.util.JsonWriter;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartitionedScorerTest {
+    private static File writeSam(String contents) throws Exception {
+        File file = File.createTempFile("scorer", ".sam");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), contents);
+        return file;
+    }
+
+    @Test
+    public void testMatchesInMemory() throws Exception {
+        Random random = new Random(416);
+        String header = "@SQ\tSN:chr1\tLN:100000\n@SQ\tSN:chr2\tLN:100000\n";
+        StringBuilder truth = new StringBuilder(header);
+        StringBuilder map = new StringBuilder(header);
+        for (int i = 0; i < 2000; i++) {
+            for (int mate = 1; mate <= 2; mate++) {
+                int pos = 1 + random.nextInt(100000);
+                String contig = random.nextBoolean() ? "chr1" : "chr2";
+                truth.append("r" + i + "/" + mate + "\t0\t" + contig + "\t" + pos + "\t60\t*\n");
+
+                // Mapped reads are named without suffix, some are off, some are on the other
+                // contig, and some are unmapped.
+                int mapped = pos + (random.nextInt(10) == 0 ? 50 : random.nextInt(21) - 10);
+                if (random.nextInt(10) == 0) {
+                    contig = contig.equals("chr1") ? "chr2" : "chr1";
+                }
+                int flag = (random.nextInt(20) == 0 ? 4 : 0) | (random.nextBoolean() ? 16 : 0);
+                int mapq = random.nextInt(61);
+                map.append("r" + i + "\t" + flag + "\t" + contig + "\t" + mapped);
+                map.append("\t" + mapq + "\t*\n");
+            }
+        }
+        map.append("extra\t0\tchr1\t5\t60\t*\n");
+
+        File truthFile = writeSam(truth.toString());
+        File mapFile = writeSam(map.toString());
+
+        Score expected = new Score(5, 3, 10);
+        ContigIds contigs = new ContigIds();
+        expected.compare(
+                new SAMReader(mapFile.getPath(), contigs).getReads(),
+                new SAMReader(truthFile.getPath(), contigs).getReads());
+        Score actual = new Score(5, 3, 10);
+        new PartitionedScorer(7, 3).score(mapFile.toPath(), truthFile.toPath(), actual);
+
+        Assert.assertTrue(expected.getFalseNegatives() > 0);
+        Assert.assertTrue(expected.getFalsePositives() > 0);
+        Assert.assertEquals(expected.getTruePositives(), actual.getTruePositives());
+        Assert.assertEquals(expected.getFalsePositives(), actual.getFalsePositives());
+        Assert.assertEquals(expected.getFalseNegatives(), actual.getFalseNegatives());
+
+        JsonWriter expectedJson = new JsonWriter();
+        expected.writeJson(expectedJson);
+        JsonWriter actualJson = new JsonWriter();
+        actual.writeJson(actualJson);
+        Assert.assertEquals(expectedJson.toString(), actualJson.toString());
+    }
+}
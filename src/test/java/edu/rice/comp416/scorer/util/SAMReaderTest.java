@@ -0,0 +1,45 @@
+package edu.rice.comp416.scorer.util;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SAMReaderTest {
+    @Test
+    public void testPack() {
+        int contig = ContigIds.MAX_CONTIGS - 1;
+        long read = SAMReader.pack(contig, Integer.MAX_VALUE, 0x93, 255);
+        Assert.assertEquals(contig, SAMReader.getContig(read));
+        Assert.assertEquals(Integer.MAX_VALUE, SAMReader.getPos(read));
+        Assert.assertEquals(0x93, SAMReader.getFlag(read));
+        Assert.assertEquals(255, SAMReader.getMapq(read));
+    }
+
+    @Test
+    public void testMateNames() throws Exception {
+        // Coordinate sorted, so the second mate of r0 comes first, r1 has an unmapped first mate,
+        // and r2 has no mate flags at all.
+        String sam =
+                "@HD\tVN:1.6\tSO:coordinate\n"
+                        + "r1\t69\tchr1\t50\t0\t*\t=\t50\t0\tACGT\tIIII\n"
+                        + "r1\t137\tchr1\t50\t60\t4M\t=\t50\t0\tACGT\tIIII\n"
+                        + "r2\t0\tchr1\t60\t60\t4M\t*\t0\t0\tACGT\tIIII\n"
+                        + "r0\t163\tchr1\t100\t60\t4M\t=\t300\t204\tACGT\tIIII\n"
+                        + "r2\t16\tchr1\t200\t60\t4M\t*\t0\t0\tACGT\tIIII\n"
+                        + "r0\t83\tchr1\t300\t60\t4M\t=\t100\t-204\tACGT\tIIII\n";
+        File file = File.createTempFile("reader", ".sam");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), sam);
+
+        Map<String, Long> reads = new SAMReader(file.getPath(), new ContigIds()).getReads();
+        Assert.assertEquals(5, reads.size());
+        Assert.assertEquals(300, SAMReader.getPos(reads.get("r0/1")));
+        Assert.assertEquals(100, SAMReader.getPos(reads.get("r0/2")));
+        Assert.assertFalse(reads.containsKey("r1/1"));
+        Assert.assertEquals(50, SAMReader.getPos(reads.get("r1/2")));
+        Assert.assertEquals(60, SAMReader.getPos(reads.get("r2/1")));
+        Assert.assertEquals(200, SAMReader.getPos(reads.get("r2/2")));
+    }
+}
@@ -0,0 +1,68 @@
+package edu.rice.comp416.scorer.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SamScannerTest {
+    private static SamScanner scan(String sam) {
+        return new SamScanner(new ByteArrayInputStream(sam.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        String sam =
+                "@SQ\tSN:chr1\tLN:100\n"
+                        + "r1/1\t99\tchr1\t10\t60\t4M\t=\t20\t14\tACGT\tIIII\tNM:i:0\n"
+                        + "\n"
+                        + "r1/2\t147\tchr1\t20\t60\t4M\t=\t10\t-14\tTTTT\tIIII\r\n"
+                        + "r2\t4\t*\t0\t0\t*\t*\t0\t0\tACGT\tIIII";
+        try (SamScanner scanner = scan(sam)) {
+            Assert.assertTrue(scanner.next());
+            Assert.assertEquals("r1/1", scanner.getString(SamScanner.QNAME));
+            Assert.assertEquals(99, scanner.getInt(SamScanner.FLAG));
+            Assert.assertEquals("chr1", scanner.getString(SamScanner.RNAME));
+            Assert.assertEquals(10, scanner.getInt(SamScanner.POS));
+            Assert.assertEquals("IIII", scanner.getString(10));
+
+            Assert.assertTrue(scanner.next());
+            Assert.assertEquals(-14, scanner.getInt(8));
+            Assert.assertEquals("IIII", scanner.getString(10));
+
+            Assert.assertTrue(scanner.next());
+            Assert.assertEquals(2, scanner.getLength(SamScanner.QNAME));
+            Assert.assertEquals('2', scanner.getByte(SamScanner.QNAME, 1));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            scanner.writeField(SamScanner.QNAME, out);
+            Assert.assertEquals("r2", out.toString(StandardCharsets.US_ASCII));
+            Assert.assertEquals(4, scanner.getInt(SamScanner.FLAG));
+            Assert.assertEquals("*", scanner.getString(SamScanner.RNAME));
+            Assert.assertEquals("IIII", scanner.getString(10));
+
+            Assert.assertFalse(scanner.next());
+        }
+    }
+
+    @Test
+    public void testLongLines() throws Exception {
+        String seq = "A".repeat(200000);
+        String sam = "r1\t0\tchr1\t5\t60\t*\t*\t0\t0\t" + seq + "\t*\nr2\t16\tchr1\t7\n";
+        try (SamScanner scanner = scan(sam)) {
+            Assert.assertTrue(scanner.next());
+            Assert.assertEquals(seq.length(), scanner.getLength(9));
+            Assert.assertTrue(scanner.next());
+            Assert.assertEquals(7, scanner.getInt(SamScanner.POS));
+            Assert.assertFalse(scanner.next());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingField() throws Exception {
+        try (SamScanner scanner = scan("r1\t0\tchr1\n")) {
+            Assert.assertTrue(scanner.next());
+            scanner.getInt(SamScanner.POS);
+        }
+    }
+}
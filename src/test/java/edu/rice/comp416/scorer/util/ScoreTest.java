@@ -0,0 +1,94 @@
+package edu.rice.comp416.scorer.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ScoreTest {
+    private static Score score() {
+        Map<String, Long> truth = new HashMap<>();
+        truth.put("a/1", SAMReader.pack(0, 100, 0x40, 60));
+        truth.put("a/2", SAMReader.pack(0, 300, 0x90, 60));
+        truth.put("b/1", SAMReader.pack(0, 500, 0x40, 60));
+        truth.put("b/2", SAMReader.pack(0, 700, 0x90, 60));
+
+        Map<String, Long> map = new HashMap<>();
+        map.put("a/1", SAMReader.pack(0, 103, 0x40, 60));
+        map.put("a/2", SAMReader.pack(0, 340, 0x90, 20));
+        map.put("b/1", SAMReader.pack(0, 500, 0x50, 3));
+        map.put("c/1", SAMReader.pack(0, 900, 0x40, 0));
+
+        Score score = new Score(10, 5, 4);
+        score.compare(map, truth);
+        return score;
+    }
+
+    @Test
+    public void testCounts() {
+        Score score = score();
+        Assert.assertEquals(2, score.getTruePositives());
+        Assert.assertEquals(2, score.getFalsePositives());
+        Assert.assertEquals(1, score.getFalseNegatives());
+        Assert.assertEquals(2.0 / 3, score.getRecall(), 1e-9);
+        Assert.assertEquals(0.5, score.getPrecision(), 1e-9);
+
+        // Errors of 0 and 3 share the first bin, and 40 overflows.
+        Assert.assertEquals(2, score.getErrorCount(0));
+        Assert.assertEquals(0, score.getErrorCount(1));
+        Assert.assertEquals(1, score.getErrorCount(4));
+    }
+
+    @Test
+    public void testMapqThresholds() {
+        Score score = score();
+
+        // Above MAPQ 3, b/1 counts as a false negative instead of a true positive.
+        Assert.assertEquals(1.0 / 3, score.getRecall(4), 1e-9);
+        Assert.assertEquals(0.5, score.getPrecision(4), 1e-9);
+        Assert.assertEquals(1.0, score.getPrecision(21), 1e-9);
+        Assert.assertEquals(1.0 / 4, score.getRecall(21), 1e-9);
+
+        String[] rows = score.toRocTsv().split("\n");
+        Assert.assertEquals(5, rows.length);
+        Assert.assertTrue(rows[0].startsWith("mapq\tplaced\ttrue_positives"));
+        Assert.assertTrue(rows[1].startsWith("60\t1\t1\t0\t3\t"));
+        Assert.assertTrue(rows[2].startsWith("20\t2\t1\t1\t2\t"));
+        Assert.assertTrue(rows[3].startsWith("3\t3\t2\t1\t1\t"));
+        Assert.assertTrue(rows[4].startsWith("0\t4\t2\t2\t1\t"));
+    }
+
+    @Test
+    public void testAdd() {
+        Score score = score();
+        score.add(score());
+        Assert.assertEquals(4, score.getTruePositives());
+        Assert.assertEquals(2, score.getFalseNegatives());
+        Assert.assertEquals(4, score.getErrorCount(0));
+    }
+
+    @Test
+    public void testOtherContig() {
+        Map<String, Long> truth = new HashMap<>();
+        truth.put("a/1", SAMReader.pack(0, 100, 0x40, 60));
+        truth.put("a/2", SAMReader.pack(1, 300, 0x90, 60));
+        Map<String, Long> map = new HashMap<>();
+        map.put("a/1", SAMReader.pack(1, 100, 0x40, 60));
+        map.put("a/2", SAMReader.pack(1, 302, 0x90, 60));
+        Assert.assertEquals(1, SAMReader.getContig(map.get("a/1")));
+        Assert.assertEquals(0x90, SAMReader.getFlag(map.get("a/2")));
+
+        // The right position on the wrong contig is counted as misplaced, and overflows.
+        Score score = new Score(10, 5, 4);
+        score.compare(map, truth);
+        Assert.assertEquals(1, score.getTruePositives());
+        Assert.assertEquals(1, score.getFalsePositives());
+        Assert.assertEquals(1, score.getErrorCount(0));
+        Assert.assertEquals(1, score.getErrorCount(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddDifferentBins() {
+        score().add(new Score());
+    }
+}